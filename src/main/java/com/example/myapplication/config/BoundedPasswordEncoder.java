@@ -0,0 +1,169 @@
+package com.example.myapplication.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * パスワードのハッシュ化・照合を専用のスレッドプールで実行するPasswordEncoder
+ * BCryptはCPUを占有するため、同時に実行する数をスレッド数に、待機できる数をキューの長さに制限する
+ * キューが満杯の場合は待たせずに{@link HashingRejectedException}で即座に失敗させる
+ */
+@Slf4j
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    /**
+     * 拒否した場合に再試行までの待機時間として返す秒数（Retry-Afterヘッダー）
+     */
+    public static final String RETRY_AFTER_SECONDS = "5";
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejectedCount = new LongAdder();
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity) {
+        this(delegate, threads, queueCapacity, new SimpleMeterRegistry());
+    }
+
+    /**
+     * @param delegate      ハッシュ化・照合を行うPasswordEncoder
+     * @param threads       同時に実行する最大数
+     * @param queueCapacity 実行を待機できる最大数
+     * @param meterRegistry 所要時間・待機数・拒否数のメトリクスの登録先
+     */
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.encodeTimer = Timer.builder("password.hash")
+                .tag("operation", "encode")
+                .description("パスワードのハッシュ化・照合の所要時間（待機時間を除く）")
+                .register(meterRegistry);
+        this.matchesTimer = Timer.builder("password.hash")
+                .tag("operation", "matches")
+                .description("パスワードのハッシュ化・照合の所要時間（待機時間を除く）")
+                .register(meterRegistry);
+        Gauge.builder("password.hash.queue.size", executor, e -> e.getQueue().size())
+                .description("実行を待機しているハッシュ化・照合の数")
+                .register(meterRegistry);
+        Gauge.builder("password.hash.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("実行中のハッシュ化・照合の数")
+                .register(meterRegistry);
+        FunctionCounter.builder("password.hash.rejected", rejectedCount, LongAdder::sum)
+                .description("キューが満杯のため拒否したハッシュ化・照合の数")
+                .register(meterRegistry);
+        log.info("BoundedPasswordEncoder initialized: threads={}, queueCapacity={}", threads, queueCapacity);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return execute(() -> delegate.encode(rawPassword), encodeTimer);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return execute(() -> delegate.matches(rawPassword, encodedPassword), matchesTimer);
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * スレッドプールを停止する
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> T execute(Callable<T> task, Timer timer) {
+        Future<T> future;
+        try {
+            future = executor.submit(() -> timer.recordCallable(task));
+        } catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            log.warn("パスワードのハッシュ化が混み合っているため処理を拒否しました: 待機数={}", executor.getQueue().size());
+            throw new HashingRejectedException();
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("パスワードのハッシュ化中に割り込まれました", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("パスワードのハッシュ化に失敗しました", e.getCause());
+        }
+    }
+
+    /**
+     * 目標時間内にハッシュ化できる最大のBCryptのコスト（strength）を計測して求める
+     * コストが1増えるとハッシュ化の時間は2倍になるため、基準のコストでの所要時間から推定する
+     *
+     * @param targetHashTime 1回のハッシュ化の目標時間
+     * @param minStrength    コストの最小値
+     * @param maxStrength    コストの最大値
+     * @return 選択したコスト
+     */
+    public static int calibrateStrength(Duration targetHashTime, int minStrength, int maxStrength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(minStrength);
+        // JITコンパイル前の計測を避けるため、1回目は計測に含めない
+        encoder.encode("calibration");
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            encoder.encode("calibration");
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        int strength = minStrength;
+        long estimated = best;
+        while (strength < maxStrength && estimated * 2 <= targetHashTime.toNanos()) {
+            strength++;
+            estimated *= 2;
+        }
+        log.info("BCryptのコストを {} に設定しました（コスト {} での計測値: {}ms、推定所要時間: {}ms、目標: {}ms）",
+                strength, minStrength, best / 1_000_000, estimated / 1_000_000, targetHashTime.toMillis());
+        return strength;
+    }
+
+    /**
+     * パスワードのハッシュ化・照合の待機数が上限に達していたため処理を拒否したことを表す例外
+     * ログイン時は認証処理の例外として扱われるため、AuthenticationServiceExceptionを継承する
+     */
+    public static final class HashingRejectedException extends AuthenticationServiceException {
+
+        HashingRejectedException() {
+            super("パスワードのハッシュ化が混み合っています");
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package com.example.myapplication.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.time.Duration;
+
 /**
  * 共通のセキュリティ設定クラス
  * 全プロファイルで共通して使用されるBeanを定義します
@@ -15,9 +19,25 @@ public class CommonSecurityConfig {
     /**
      * パスワードエンコーダーの設定
      * 全プロファイルで共通して使用されます
+     * BCryptのハッシュ化・照合はリクエストスレッドではなく、同時実行数を制限した専用のスレッドで実行します
+     * コストを指定しない場合は、起動時に計測して目標時間内に収まる最大のコストを選択します
+     * （既存のハッシュはハッシュに含まれるコストで照合されるため、コストを変更しても照合できます）
      */
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    @Bean(destroyMethod = "shutdown")
+    public PasswordEncoder passwordEncoder(
+            @Value("${app.security.password.bcrypt.strength:0}") int strength,
+            @Value("${app.security.password.bcrypt.target-hash-time:PT0.25S}") Duration targetHashTime,
+            @Value("${app.security.password.bcrypt.min-strength:10}") int minStrength,
+            @Value("${app.security.password.bcrypt.max-strength:14}") int maxStrength,
+            @Value("${app.security.password.hash.threads:0}") int threads,
+            @Value("${app.security.password.hash.queue-capacity:100}") int queueCapacity,
+            MeterRegistry meterRegistry) {
+        int bcryptStrength = strength > 0
+                ? strength
+                : BoundedPasswordEncoder.calibrateStrength(targetHashTime, minStrength, maxStrength);
+        // 既定ではCPUコア数の半分までとし、他のリクエストの処理にCPUを残す
+        int hashThreads = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(bcryptStrength), hashThreads, queueCapacity,
+                meterRegistry);
     }
 }
@@ -0,0 +1,36 @@
+package com.example.myapplication.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.h2.tools.Server;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * H2のTCPサーバーの設定
+ * 有効にすると、このインスタンスが開いているデータベースファイルに他のインスタンスからTCPで接続できる
+ * （他のインスタンスは spring.datasource.url を jdbc:h2:tcp://ホスト:ポート/./data/myapp とする）
+ * 同じJVM内では同じデータベースを共有するため、このインスタンス自身はファイルのURLのまま接続する
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "app.h2.tcp-server.enabled", havingValue = "true")
+public class H2TcpServerConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public Server h2TcpServer(@Value("${app.h2.tcp-server.port:9092}") int port,
+                              @Value("${app.h2.tcp-server.allow-others:false}") boolean allowOthers) throws SQLException {
+        List<String> args = new ArrayList<>(List.of("-tcpPort", String.valueOf(port)));
+        if (allowOthers) {
+            // 他のホストからの接続を許可する場合は、spring.datasource.password を必ず設定すること
+            args.add("-tcpAllowOthers");
+        }
+        log.info("H2 TCP server: port={}, allowOthers={}", port, allowOthers);
+        return Server.createTcpServer(args.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.myapplication.config;
+
+import com.example.myapplication.entity.User;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+
+/**
+ * Hibernateの2次キャッシュの設定
+ * CaffeineのJCache実装でキャッシュ領域を作成し、件数の上限とTTLを設定したうえでHibernateに渡す
+ * キャッシュ領域の作成漏れに気付けるよう、Hibernateは存在しない領域を作成せずに起動を失敗させる
+ * （spring.jpa.properties.hibernate.javax.cache.missing_cache_strategy=fail）
+ * キャッシュはインスタンスごとに保持するため、複数のインスタンスで同じデータベースを使用する場合
+ * （app.datasource.shared=true）は、他のインスタンスでの更新（ユーザーの無効化等）がTTLの経過まで反映されないため、2次キャッシュを使用しない
+ */
+@Slf4j
+@Configuration
+public class HibernateCacheConfig {
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(
+            @Value("${app.users.entity-cache.max-size:10000}") long maxSize,
+            @Value("${app.users.entity-cache.ttl:PT10M}") Duration ttl) {
+        return createCacheManager("myapp-hibernate", maxSize, ttl);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheManagerCustomizer(
+            CacheManager hibernateCacheManager,
+            @Value("${app.datasource.shared:false}") boolean sharedDataSource) {
+        if (sharedDataSource) {
+            log.info("データベースを他のインスタンスと共有しているため、Hibernateの2次キャッシュを使用しません");
+        }
+        return properties -> {
+            properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+            if (sharedDataSource) {
+                properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, false);
+            }
+        };
+    }
+
+    /**
+     * usersテーブルのキャッシュ領域を作成したCacheManagerを作成する
+     * Hibernateを経由せずにusersテーブルを更新した場合も、TTLの経過後はデータベースの値を参照する
+     *
+     * @param name    CacheManagerの名前（同じ名前のCacheManagerは共有される）
+     * @param maxSize 各キャッシュ領域に保持する最大件数
+     * @param ttl     各キャッシュ領域に保持する期間
+     * @return キャッシュ領域を作成したCacheManager
+     */
+    public static CacheManager createCacheManager(String name, long maxSize, Duration ttl) {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(URI.create(name), provider.getDefaultClassLoader());
+        for (String region : new String[]{User.CACHE_REGION, User.NATURAL_ID_CACHE_REGION}) {
+            CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+            configuration.setMaximumSize(OptionalLong.of(maxSize));
+            configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+            configuration.setStatisticsEnabled(true);
+            cacheManager.createCache(region, configuration);
+        }
+        log.info("Hibernate cache manager initialized: name={}, maxSize={}, ttl={}", name, maxSize, ttl);
+        return cacheManager;
+    }
+}
@@ -3,12 +3,19 @@ package com.example.myapplication.config;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.HeadersConfigurer;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.AuthenticationFailureHandler;
+import org.springframework.security.web.authentication.DelegatingAuthenticationFailureHandler;
+import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
+
+import java.util.LinkedHashMap;
 
 /**
  * Spring Security設定クラス
@@ -43,6 +50,7 @@ public class SecurityConfig {
                 .formLogin(form -> form
                         .loginPage("/login")  // カスタムログインページ
                         .defaultSuccessUrl("/", true) // ログイン成功時のリダイレクト先
+                        .failureHandler(loginFailureHandler())
                         .permitAll()
                 )
                 // ログアウト設定
@@ -60,4 +68,18 @@ public class SecurityConfig {
 
         return http.build();
     }
+
+    /**
+     * ログイン失敗時の処理
+     * パスワードの照合が混み合っていて拒否された場合は、ログインエラーとせずに503を返す
+     */
+    private static AuthenticationFailureHandler loginFailureHandler() {
+        LinkedHashMap<Class<? extends AuthenticationException>, AuthenticationFailureHandler> handlers = new LinkedHashMap<>();
+        handlers.put(BoundedPasswordEncoder.HashingRejectedException.class, (request, response, exception) -> {
+            response.setHeader("Retry-After", BoundedPasswordEncoder.RETRY_AFTER_SECONDS);
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), exception.getMessage());
+        });
+        return new DelegatingAuthenticationFailureHandler(handlers,
+                new SimpleUrlAuthenticationFailureHandler("/login?error"));
+    }
 }
@@ -1,14 +1,71 @@
 package com.example.myapplication.config;
 
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.time.Duration;
+
+/**
+ * 外部API（Gemini API）呼び出しに使用するWebClientの設定
+ * コネクションプールの上限・接続待ち・アイドル接続の破棄とNettyレベルのタイムアウトを設定する
+ * プールの状態はMicrometerのメトリクス（reactor.netty.connection.provider.*）として公開する
+ */
+@Slf4j
 @Configuration
 public class WebClientConfig {
+
+    /**
+     * コネクションプールの名前（メトリクスのnameタグ）
+     */
+    static final String CONNECTION_POOL_NAME = "web-client";
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider webClientConnectionProvider(
+            @Value("${app.web-client.pool.max-connections:50}") int maxConnections,
+            @Value("${app.web-client.pool.pending-acquire-max-count:500}") int pendingAcquireMaxCount,
+            @Value("${app.web-client.pool.pending-acquire-timeout:PT10S}") Duration pendingAcquireTimeout,
+            @Value("${app.web-client.pool.max-idle-time:PT30S}") Duration maxIdleTime,
+            @Value("${app.web-client.pool.max-life-time:PT5M}") Duration maxLifeTime,
+            @Value("${app.web-client.pool.evict-interval:PT30S}") Duration evictInterval) {
+        log.info("WebClient connection pool: maxConnections={}, pendingAcquireMaxCount={}, maxIdleTime={}, maxLifeTime={}",
+                maxConnections, pendingAcquireMaxCount, maxIdleTime, maxLifeTime);
+        return ConnectionProvider.builder(CONNECTION_POOL_NAME)
+                .maxConnections(maxConnections)
+                // 接続の空きを待つリクエスト数と待機時間の上限（超えた場合は即座にエラーとする）
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                // 相手側に切断される前にアイドル接続を破棄し、古い接続を使い続けないようにする
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(evictInterval)
+                .metrics(true)
+                .build();
+    }
+
     @Bean
-    public WebClient webClient() {
-        return WebClient.builder()
+    public WebClient webClient(WebClient.Builder builder, ConnectionProvider webClientConnectionProvider,
+                               @Value("${app.web-client.connect-timeout:PT5S}") Duration connectTimeout,
+                               @Value("${app.web-client.response-timeout:PT30S}") Duration responseTimeout,
+                               @Value("${app.web-client.http2.enabled:true}") boolean http2Enabled) {
+        HttpClient httpClient = HttpClient.create(webClientConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Math.toIntExact(connectTimeout.toMillis()))
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                // レスポンスの受信中に読み込みが途絶えた場合のタイムアウト（ストリーミングでは断片の間隔）
+                .responseTimeout(responseTimeout)
+                // HTTP/2はTLSのALPNでネゴシエーションし、対応していない接続先ではHTTP/1.1を使用する
+                .protocol(http2Enabled
+                        ? new HttpProtocol[]{HttpProtocol.H2, HttpProtocol.HTTP11}
+                        : new HttpProtocol[]{HttpProtocol.HTTP11});
+        return builder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(1024 * 1024))
                 .build();
     }
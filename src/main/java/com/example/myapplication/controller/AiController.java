@@ -2,11 +2,18 @@ package com.example.myapplication.controller;
 
 import com.example.myapplication.service.AiService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
 
 /**
  * AI機能サンプル画面を制御するコントローラ
@@ -35,20 +42,43 @@ public class AiController {
 
     /**
      * 豆知識を取得してAI機能サンプル画面に表示
+     * Gemini APIの応答を待つ間はリクエストスレッドを解放する
      *
      * @param model ビューに渡すデータモデル
-     * @return AI機能サンプルテンプレート名
+     * @return AI機能サンプルテンプレート名を発行するMono
      */
     @PostMapping("/trivia")
-    public String getTrivia(Model model) {
-        try {
-            String trivia = aiService.getTrivia();
-            model.addAttribute("trivia", trivia);
-            model.addAttribute("success", true);
-        } catch (Exception e) {
-            model.addAttribute("error", "豆知識の取得に失敗しました: " + e.getMessage());
-            model.addAttribute("success", false);
-        }
-        return "ai-sample";
+    public Mono<String> getTrivia(Model model) {
+        return aiService.getTrivia()
+                .doOnNext(trivia -> {
+                    model.addAttribute("trivia", trivia);
+                    model.addAttribute("success", true);
+                })
+                .onErrorResume(e -> {
+                    model.addAttribute("error", "豆知識の取得に失敗しました: " + e.getMessage());
+                    model.addAttribute("success", false);
+                    return Mono.empty();
+                })
+                .thenReturn("ai-sample");
+    }
+
+    /**
+     * 豆知識をServer-Sent Eventsで順次送信する
+     * Gemini APIから届いたテキストの断片をtokenイベント（{@code {"text": "..."}}）として送信し、最後にdoneイベントを送信する
+     * エラーが発生した場合はerrorイベント（{@code {"error": "..."}}）でメッセージを送信して終了する
+     * 断片の先頭の空白が失われないよう、データはJSONで送信する
+     *
+     * @return 送信するイベントのFlux
+     */
+    @GetMapping(path = "/trivia/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public Flux<ServerSentEvent<Map<String, String>>> streamTrivia() {
+        return aiService.streamTrivia()
+                .map(token -> ServerSentEvent.builder(Map.of("text", token)).event("token").build())
+                .concatWith(Mono.just(ServerSentEvent.<Map<String, String>>builder().event("done").data(Map.of()).build()))
+                .onErrorResume(e -> Mono.just(ServerSentEvent.<Map<String, String>>builder()
+                        .event("error")
+                        .data(Map.of("error", "豆知識の取得に失敗しました: " + e.getMessage()))
+                        .build()));
     }
 }
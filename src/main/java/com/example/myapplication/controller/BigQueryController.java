@@ -1,18 +1,35 @@
 package com.example.myapplication.controller;
 
+import com.example.myapplication.dto.QueryResult;
+import com.example.myapplication.dto.QueryResultArrowWriter;
 import com.example.myapplication.service.BigQueryService;
+import com.example.myapplication.service.BigQueryWriteBuffer;
+import com.example.myapplication.service.RowInsertException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.google.cloud.bigquery.Field;
 import com.google.cloud.bigquery.Schema;
 import com.google.cloud.bigquery.StandardSQLTypeName;
+import com.google.cloud.bigquery.TableResult;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * BigQuery機能を提供するコントローラ
@@ -23,11 +40,27 @@ import java.util.Map;
 @RequestMapping("/")
 public class BigQueryController {
 
+    /**
+     * ストリーミング時にレスポンスをフラッシュする行数の間隔
+     */
+    private static final int STREAM_FLUSH_INTERVAL = 1000;
+
+    /**
+     * Arrow形式で書き出す際の1レコードバッチあたりの行数
+     */
+    private static final int ARROW_BATCH_ROWS = 8192;
+
     private final BigQueryService bigQueryService;
+    private final BigQueryWriteBuffer writeBuffer;
+    private final ObjectWriter rowWriter;
 
     @Autowired
-    public BigQueryController(BigQueryService bigQueryService) {
+    public BigQueryController(BigQueryService bigQueryService, BigQueryWriteBuffer writeBuffer,
+                              ObjectMapper objectMapper) {
         this.bigQueryService = bigQueryService;
+        this.writeBuffer = writeBuffer;
+        // 1行ごとのフラッシュを抑止し、フラッシュはSTREAM_FLUSH_INTERVAL単位で明示的に行う
+        this.rowWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     /**
@@ -60,7 +93,7 @@ public class BigQueryController {
     public String executeQuery(@RequestParam String sql, Model model) {
         try {
             log.info("BigQueryクエリリクエスト受信（UI）: {}", sql);
-            List<Map<String, Object>> result = bigQueryService.runQuery(sql);
+            QueryResult result = bigQueryService.runQuery(sql);
             model.addAttribute("querySuccess", true);
             model.addAttribute("queryResult", result);
             model.addAttribute("queryResultCount", result.size());
@@ -164,7 +197,7 @@ public class BigQueryController {
     public ResponseEntity<?> runQuery(@RequestParam String sql) {
         try {
             log.info("BigQueryクエリリクエスト受信: {}", sql);
-            List<Map<String, Object>> result = bigQueryService.runQuery(sql);
+            QueryResult result = bigQueryService.runQuery(sql);
             return ResponseEntity.ok(Map.of(
                     "success", true,
                     "rowCount", result.size(),
@@ -185,6 +218,116 @@ public class BigQueryController {
         }
     }
 
+    /**
+     * SQLクエリを実行して結果をNDJSON形式でストリーミング（REST API）
+     * 結果を全件メモリに展開せず、取得したページから順にレスポンスへ書き出す
+     *
+     * @param sql 実行するSQLクエリ
+     * @return 1行1JSONオブジェクトのストリーミングレスポンス
+     */
+    @GetMapping("/bigquery/api/query/stream")
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> streamQuery(@RequestParam String sql) {
+        try {
+            log.info("BigQueryストリーミングクエリリクエスト受信: {}", sql);
+            // クエリの検証と実行はここで行い、エラーはストリーミング開始前にステータスコードで返す
+            Iterable<Map<String, Object>> rows = bigQueryService.streamQuery(sql);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(outputStream -> writeNdjson(rows, outputStream));
+        } catch (IllegalArgumentException e) {
+            log.warn("無効なクエリパラメータ: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(jsonBody(Map.of(
+                            "success", false,
+                            "error", e.getMessage()
+                    )));
+        } catch (Exception e) {
+            log.error("BigQueryストリーミングクエリ実行エラー", e);
+            return ResponseEntity.internalServerError()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(jsonBody(Map.of(
+                            "success", false,
+                            "error", "クエリの実行に失敗しました: " + e.getMessage()
+                    )));
+        }
+    }
+
+    /**
+     * SQLクエリを実行して結果をApache ArrowのIPCストリーム形式で取得（REST API）
+     * 列指向のレコードバッチとして書き出すため、JSONへの変換を行わずに分析ツールへ取り込める
+     * 結果はページ単位で取得しながら書き出し、メモリへの展開やクエリ結果キャッシュへの保存は行わない
+     *
+     * @param sql 実行するSQLクエリ
+     * @return ArrowのIPCストリーム形式のレスポンス
+     */
+    @GetMapping("/bigquery/api/query.arrow")
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> runQueryAsArrow(@RequestParam String sql) {
+        try {
+            log.info("BigQueryクエリリクエスト受信（Arrow形式）: {}", sql);
+            // クエリの検証と実行はここで行い、結果の行はページ単位で取得しながらレコードバッチとして書き出す
+            TableResult result = bigQueryService.streamQueryResult(sql);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(QueryResultArrowWriter.MEDIA_TYPE))
+                    .body(outputStream -> {
+                        int batches = QueryResultArrowWriter.write(result.getSchema(), result.iterateAll(),
+                                outputStream, ARROW_BATCH_ROWS);
+                        log.info("BigQueryクエリ完了（Arrow形式）: {} バッチで送信", batches);
+                    });
+        } catch (IllegalArgumentException e) {
+            log.warn("無効なクエリパラメータ: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(jsonBody(Map.of(
+                            "success", false,
+                            "error", e.getMessage()
+                    )));
+        } catch (Exception e) {
+            log.error("BigQueryクエリ実行エラー（Arrow形式）", e);
+            return ResponseEntity.internalServerError()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(jsonBody(Map.of(
+                            "success", false,
+                            "error", "クエリの実行に失敗しました: " + e.getMessage()
+                    )));
+        }
+    }
+
+    /**
+     * ストリーミング系エンドポイントのエラー応答用に、JSONを書き出すレスポンスボディを作成する
+     *
+     * @param body レスポンスとして書き出す内容
+     * @return JSONを書き出すレスポンスボディ
+     */
+    private StreamingResponseBody jsonBody(Map<String, Object> body) {
+        return outputStream -> rowWriter.writeValue(outputStream, body);
+    }
+
+    /**
+     * クエリ結果の各行を改行区切りのJSONとして出力ストリームに書き出す
+     *
+     * @param rows         書き出す行
+     * @param outputStream レスポンスの出力ストリーム
+     * @throws IOException 書き込みに失敗した場合
+     */
+    private void writeNdjson(Iterable<Map<String, Object>> rows, OutputStream outputStream) throws IOException {
+        long rowCount = 0;
+        try (JsonGenerator generator = rowWriter.createGenerator(outputStream)) {
+            // 行の区切りは改行のみとし、既定の空白区切りは出力しない
+            generator.setRootValueSeparator(null);
+            for (Map<String, Object> row : rows) {
+                rowWriter.writeValue(generator, row);
+                generator.writeRaw('\n');
+                if (++rowCount % STREAM_FLUSH_INTERVAL == 0) {
+                    generator.flush();
+                }
+            }
+        }
+        log.info("BigQueryストリーミングクエリ完了: {} 件の結果を送信", rowCount);
+    }
+
     /**
      * サンプルテーブルを作成（REST API）
      *
@@ -228,6 +371,8 @@ public class BigQueryController {
 
     /**
      * テーブルにサンプルデータを挿入（REST API）
+     * データは書き込みバッファに追加され、他のリクエストの行とまとめて送信される
+     * 送信の完了を非同期に待つため、待機中にリクエストスレッドを占有しない
      *
      * @param tableName テーブル名
      * @param data      挿入するデータ
@@ -235,28 +380,52 @@ public class BigQueryController {
      */
     @PostMapping("/bigquery/api/table/{tableName}/data")
     @ResponseBody
-    public ResponseEntity<?> insertData(@PathVariable String tableName,
-                                       @RequestBody List<Map<String, Object>> data) {
+    public CompletableFuture<ResponseEntity<?>> insertData(@PathVariable String tableName,
+                                                          @RequestBody List<Map<String, Object>> data) {
         try {
             log.info("BigQueryデータ挿入リクエスト受信: {} に {} 件", tableName, data.size());
-            bigQueryService.insertData(tableName, data);
-            
-            return ResponseEntity.ok(Map.of(
-                    "success", true,
-                    "message", data.size() + " 件のデータが正常に挿入されました"
-            ));
+            return writeBuffer.submit(tableName, data)
+                    .handle((ignored, error) -> {
+                        if (error == null) {
+                            return ResponseEntity.ok(Map.of(
+                                    "success", true,
+                                    "message", data.size() + " 件のデータが正常に挿入されました"
+                            ));
+                        }
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        log.error("BigQueryデータ挿入エラー", cause);
+                        if (cause instanceof RowInsertException rowInsertException) {
+                            // エラーとなった行以外は挿入済みのため、再送すべき行を返す
+                            return ResponseEntity.internalServerError().body(Map.of(
+                                    "success", false,
+                                    "error", "データの挿入に失敗しました: " + cause.getMessage(),
+                                    "failedRows", rowInsertException.getRowErrors().keySet().stream().sorted().toList()
+                            ));
+                        }
+                        return ResponseEntity.internalServerError().body(Map.of(
+                                "success", false,
+                                "error", "データの挿入に失敗しました: " + cause.getMessage()
+                        ));
+                    });
         } catch (IllegalArgumentException e) {
             log.warn("無効なデータまたはテーブル名: {}", e.getMessage());
-            return ResponseEntity.badRequest().body(Map.of(
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(Map.of(
                     "success", false,
                     "error", e.getMessage()
-            ));
+            )));
+        } catch (RejectedExecutionException e) {
+            log.warn("書き込みバッファが満杯のためデータ挿入を拒否: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            )));
         } catch (Exception e) {
             log.error("BigQueryデータ挿入エラー", e);
-            return ResponseEntity.internalServerError().body(Map.of(
+            return CompletableFuture.completedFuture(ResponseEntity.internalServerError().body(Map.of(
                     "success", false,
                     "error", "データの挿入に失敗しました: " + e.getMessage()
-            ));
+            )));
         }
     }
 
@@ -295,14 +464,15 @@ public class BigQueryController {
     /**
      * データセット内のテーブル一覧を取得（REST API）
      *
+     * @param refresh trueの場合はキャッシュを使わずBigQueryから再取得する
      * @return テーブル一覧
      */
     @GetMapping("/bigquery/api/tables")
     @ResponseBody
-    public ResponseEntity<?> listTables() {
+    public ResponseEntity<?> listTables(@RequestParam(defaultValue = "false") boolean refresh) {
         try {
-            log.info("BigQueryテーブル一覧取得リクエスト受信");
-            List<String> tables = bigQueryService.listTables();
+            log.info("BigQueryテーブル一覧取得リクエスト受信（再取得: {}）", refresh);
+            List<String> tables = refresh ? bigQueryService.refreshTables() : bigQueryService.listTables();
             
             return ResponseEntity.ok(Map.of(
                     "success", true,
@@ -328,8 +498,8 @@ public class BigQueryController {
     public ResponseEntity<?> healthCheck() {
         try {
             log.info("BigQueryヘルスチェックリクエスト受信");
-            // 簡単なクエリでBigQueryの接続を確認
-            bigQueryService.runQuery("SELECT 1 as health_check");
+            // キャッシュを経由せずに簡単なクエリでBigQueryの接続を確認
+            bigQueryService.checkConnection();
             
             return ResponseEntity.ok(Map.of(
                     "success", true,
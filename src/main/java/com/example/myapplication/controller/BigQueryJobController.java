@@ -0,0 +1,167 @@
+package com.example.myapplication.controller;
+
+import com.example.myapplication.dto.QueryResult;
+import com.example.myapplication.service.QueryJobRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * クエリを非同期ジョブとして実行するREST APIを提供するコントローラ
+ * クエリの受付は即座にジョブIDを返し、状態と結果は別のリクエストで取得する
+ */
+@Slf4j
+@Controller
+public class BigQueryJobController {
+
+    /**
+     * 結果の1ページあたりの最大行数
+     */
+    private static final int MAX_PAGE_SIZE = 10000;
+
+    private final QueryJobRegistry jobRegistry;
+
+    @Autowired
+    public BigQueryJobController(QueryJobRegistry jobRegistry) {
+        this.jobRegistry = jobRegistry;
+    }
+
+    /**
+     * クエリを非同期ジョブとして受け付ける（REST API）
+     *
+     * @param sql 実行するSQLクエリ
+     * @return 受け付けたジョブのIDと状態
+     */
+    @PostMapping("/bigquery/api/jobs")
+    @ResponseBody
+    public ResponseEntity<?> submitJob(@RequestParam String sql) {
+        try {
+            log.info("BigQueryクエリジョブリクエスト受信: {}", sql);
+            QueryJobRegistry.QueryJob job = jobRegistry.submit(sql);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(statusBody(job));
+        } catch (IllegalArgumentException e) {
+            log.warn("無効なクエリパラメータ: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        } catch (RejectedExecutionException e) {
+            log.warn("クエリジョブの受付を拒否しました: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * ジョブの状態を取得する（REST API）
+     *
+     * @param jobId ジョブID
+     * @return ジョブの状態
+     */
+    @GetMapping("/bigquery/api/jobs/{jobId}")
+    @ResponseBody
+    public ResponseEntity<?> getJob(@PathVariable String jobId) {
+        return jobRegistry.find(jobId)
+                .<ResponseEntity<?>>map(job -> ResponseEntity.ok(statusBody(job)))
+                .orElseGet(() -> notFound(jobId));
+    }
+
+    /**
+     * 完了したジョブの結果をページ単位で取得する（REST API）
+     *
+     * @param jobId  ジョブID
+     * @param offset 取得を開始する行位置
+     * @param limit  取得する最大行数
+     * @return 結果のページ
+     */
+    @GetMapping("/bigquery/api/jobs/{jobId}/results")
+    @ResponseBody
+    public ResponseEntity<?> getResults(@PathVariable String jobId,
+                                        @RequestParam(defaultValue = "0") int offset,
+                                        @RequestParam(defaultValue = "1000") int limit) {
+        if (offset < 0 || limit <= 0 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", "offsetは0以上、limitは1以上" + MAX_PAGE_SIZE + "以下で指定してください"
+            ));
+        }
+
+        QueryJobRegistry.QueryJob job = jobRegistry.find(jobId).orElse(null);
+        if (job == null) {
+            return notFound(jobId);
+        }
+        QueryResult result = job.getResult();
+        if (result == null) {
+            // 未完了・失敗・キャンセルのジョブには結果がないため、状態を返す
+            Map<String, Object> body = statusBody(job);
+            body.put("success", false);
+            body.put("error", "ジョブの結果を取得できる状態ではありません: " + job.getStatus());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(body);
+        }
+
+        int from = Math.min(offset, result.size());
+        int to = Math.min(from + limit, result.size());
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("success", true);
+        body.put("jobId", job.getId());
+        body.put("rowCount", result.size());
+        body.put("offset", from);
+        body.put("nextOffset", to < result.size() ? to : null);
+        body.put("data", result.subList(from, to));
+        return ResponseEntity.ok(body);
+    }
+
+    /**
+     * ジョブをキャンセルする（REST API）
+     *
+     * @param jobId ジョブID
+     * @return キャンセル後のジョブの状態
+     */
+    @DeleteMapping("/bigquery/api/jobs/{jobId}")
+    @ResponseBody
+    public ResponseEntity<?> cancelJob(@PathVariable String jobId) {
+        log.info("BigQueryクエリジョブキャンセルリクエスト受信: {}", jobId);
+        return jobRegistry.cancel(jobId)
+                .<ResponseEntity<?>>map(job -> ResponseEntity.ok(statusBody(job)))
+                .orElseGet(() -> notFound(jobId));
+    }
+
+    private static Map<String, Object> statusBody(QueryJobRegistry.QueryJob job) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("success", true);
+        body.put("jobId", job.getId());
+        body.put("status", job.getStatus());
+        body.put("submittedAt", job.getSubmittedAt());
+        body.put("startedAt", job.getStartedAt());
+        body.put("completedAt", job.getCompletedAt());
+        QueryResult result = job.getResult();
+        if (result != null) {
+            body.put("rowCount", result.size());
+        }
+        if (job.getError() != null) {
+            body.put("error", job.getError());
+        }
+        return body;
+    }
+
+    private static ResponseEntity<?> notFound(String jobId) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                "success", false,
+                "error", "ジョブが見つかりません（期限切れの可能性があります）: " + jobId
+        ));
+    }
+}
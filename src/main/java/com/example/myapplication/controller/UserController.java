@@ -1,9 +1,12 @@
 package com.example.myapplication.controller;
 
+import com.example.myapplication.config.BoundedPasswordEncoder;
 import com.example.myapplication.dto.UserRegistrationDto;
 import com.example.myapplication.service.UserService;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
@@ -49,13 +52,15 @@ public class UserController {
      * @param result             バリデーション結果
      * @param model              Thymeleafモデル
      * @param redirectAttributes リダイレクト時の属性
+     * @param response           HTTPレスポンス
      * @return リダイレクト先またはフォーム表示
      */
     @PostMapping
     public String registerUser(@Valid @ModelAttribute("userRegistration") UserRegistrationDto userRegistration,
                                BindingResult result,
                                Model model,
-                               RedirectAttributes redirectAttributes) {
+                               RedirectAttributes redirectAttributes,
+                               HttpServletResponse response) {
 
         // パスワード一致チェック
         if (!userRegistration.isPasswordMatching()) {
@@ -81,6 +86,13 @@ public class UserController {
             result.rejectValue("username", "error.username", e.getMessage());
             return REGISTER_VIEW;
 
+        } catch (BoundedPasswordEncoder.HashingRejectedException e) {
+            // パスワードのハッシュ化が混み合っている場合は待たせずに503を返す
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader("Retry-After", BoundedPasswordEncoder.RETRY_AFTER_SECONDS);
+            model.addAttribute("errorMessage", "登録が混み合っています。しばらくしてから再度お試しください。");
+            return REGISTER_VIEW;
+
         } catch (Exception e) {
             // その他のエラー
             model.addAttribute("errorMessage", "登録中にエラーが発生しました。再度お試しください。");
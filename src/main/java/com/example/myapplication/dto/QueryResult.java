@@ -0,0 +1,298 @@
+package com.example.myapplication.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * クエリ結果を表すデータ転送オブジェクト
+ * 列情報は全行で共有し、各行の値は列位置に対応するObject[]で保持する
+ * 行ごとのHashMap生成を避けつつ、List&lt;Map&gt;として既存の呼び出し側やテンプレートから参照できる
+ * JSONには従来と同じ「列名をキーとするオブジェクトの配列」として直接シリアライズされる
+ */
+@JsonSerialize(using = QueryResult.Serializer.class)
+public final class QueryResult extends AbstractList<Map<String, Object>> {
+
+    private final Columns columns;
+    private final List<Object[]> rows;
+
+    private QueryResult(Columns columns, List<Object[]> rows) {
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    /**
+     * 列名と行データからクエリ結果を作成する
+     *
+     * @param columnNames 列名のリスト（列位置の順）
+     * @param rows        列位置の順に値を格納した行データ
+     * @return クエリ結果
+     */
+    public static QueryResult of(List<String> columnNames, List<Object[]> rows) {
+        return new QueryResult(new Columns(columnNames), rows);
+    }
+
+    /**
+     * クエリ結果を行単位で組み立てるビルダーを作成する
+     *
+     * @param columns 全行で共有する列情報
+     * @return ビルダー
+     */
+    public static Builder builder(Columns columns) {
+        return new Builder(columns);
+    }
+
+    public Columns getColumns() {
+        return columns;
+    }
+
+    /**
+     * 指定した行・列位置の値を取得する
+     *
+     * @param rowIndex    行位置
+     * @param columnIndex 列位置
+     * @return 値（NULLの場合はnull）
+     */
+    public Object getValue(int rowIndex, int columnIndex) {
+        return rows.get(rowIndex)[columnIndex];
+    }
+
+    @Override
+    public Row get(int index) {
+        return new Row(columns, rows.get(index));
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * クエリ結果の列情報
+     * 列名・列位置の対応とJSON出力用にエンコード済みの列名を一度だけ作成して保持する
+     * BigQueryのスキーマから作成した場合は、列の型名（INT64、STRINGなど）も保持する
+     */
+    public static final class Columns {
+
+        private final String[] names;
+        private final String[] types;
+        private final SerializedString[] encodedNames;
+        private final Map<String, Integer> positions;
+
+        public Columns(List<String> columnNames) {
+            this(columnNames, null);
+        }
+
+        /**
+         * @param columnNames 列名のリスト（列位置の順）
+         * @param columnTypes 列の型名のリスト（列位置の順、不明な場合はnull）
+         */
+        public Columns(List<String> columnNames, List<String> columnTypes) {
+            if (columnTypes != null && columnTypes.size() != columnNames.size()) {
+                throw new IllegalArgumentException("列名と型の数が一致しません");
+            }
+            this.names = columnNames.toArray(new String[0]);
+            this.types = columnTypes == null ? new String[names.length] : columnTypes.toArray(new String[0]);
+            this.encodedNames = new SerializedString[names.length];
+            this.positions = new HashMap<>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                encodedNames[i] = new SerializedString(names[i]);
+                positions.put(names[i], i);
+            }
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        public String getName(int index) {
+            return names[index];
+        }
+
+        /**
+         * 列の型名を取得する
+         *
+         * @param index 列位置
+         * @return BigQueryの型名（不明な場合はnull）
+         */
+        public String getType(int index) {
+            return types[index];
+        }
+
+        /**
+         * 列名から列位置を取得する
+         *
+         * @param name 列名
+         * @return 列位置（存在しない場合は-1）
+         */
+        public int indexOf(Object name) {
+            Integer position = positions.get(name);
+            return position == null ? -1 : position;
+        }
+    }
+
+    /**
+     * クエリ結果の1行
+     * 共有の列情報と値配列を参照するだけの読み取り専用Mapとして振る舞う
+     */
+    @JsonSerialize(using = RowSerializer.class)
+    public static final class Row extends AbstractMap<String, Object> {
+
+        private final Columns columns;
+        private final Object[] values;
+
+        public Row(Columns columns, Object[] values) {
+            this.columns = columns;
+            this.values = values;
+        }
+
+        /**
+         * 列位置を指定して値を取得する
+         *
+         * @param columnIndex 列位置
+         * @return 値（NULLの場合はnull）
+         */
+        public Object getValue(int columnIndex) {
+            return values[columnIndex];
+        }
+
+        @Override
+        public Object get(Object key) {
+            int index = columns.indexOf(key);
+            return index < 0 ? null : values[index];
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return columns.indexOf(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<>() {
+                        private int index = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < values.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int current = index++;
+                            return new SimpleImmutableEntry<>(columns.getName(current), values[current]);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return values.length;
+                }
+            };
+        }
+    }
+
+    /**
+     * クエリ結果を行単位で組み立てるビルダー
+     */
+    public static final class Builder {
+
+        private final Columns columns;
+        private final List<Object[]> rows = new ArrayList<>();
+
+        private Builder(Columns columns) {
+            this.columns = columns;
+        }
+
+        /**
+         * 列位置の順に値を格納した行を追加する
+         *
+         * @param values 行の値
+         * @return このビルダー
+         */
+        public Builder addRow(Object[] values) {
+            if (values.length != columns.size()) {
+                throw new IllegalArgumentException("行の列数がスキーマと一致しません");
+            }
+            rows.add(values);
+            return this;
+        }
+
+        public QueryResult build() {
+            return new QueryResult(columns, rows);
+        }
+    }
+
+    /**
+     * QueryResultを列名をキーとするJSONオブジェクトの配列として出力するシリアライザ
+     */
+    static final class Serializer extends StdSerializer<QueryResult> {
+
+        Serializer() {
+            super(QueryResult.class);
+        }
+
+        @Override
+        public void serialize(QueryResult value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartArray(value, value.size());
+            for (Object[] values : value.rows) {
+                writeRow(value.columns, values, gen, provider);
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    /**
+     * 1行を列名をキーとするJSONオブジェクトとして出力するシリアライザ
+     */
+    static final class RowSerializer extends StdSerializer<Row> {
+
+        RowSerializer() {
+            super(Row.class);
+        }
+
+        @Override
+        public void serialize(Row value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            writeRow(value.columns, value.values, gen, provider);
+        }
+    }
+
+    /**
+     * 1行分の値を、エンコード済みの列名をキーとするJSONオブジェクトとして書き出す
+     */
+    private static void writeRow(Columns columns, Object[] values, JsonGenerator gen, SerializerProvider provider)
+            throws IOException {
+        gen.writeStartObject(values, values.length);
+        for (int i = 0; i < values.length; i++) {
+            gen.writeFieldName(columns.encodedNames[i]);
+            provider.defaultSerializeValue(values[i], gen);
+        }
+        gen.writeEndObject();
+    }
+}
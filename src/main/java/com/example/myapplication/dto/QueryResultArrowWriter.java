@@ -0,0 +1,207 @@
+package com.example.myapplication.dto;
+
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.FieldList;
+import com.google.cloud.bigquery.FieldValue;
+import com.google.cloud.bigquery.FieldValueList;
+import com.google.cloud.bigquery.Schema;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.Decimal256Vector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.TimeMicroVector;
+import org.apache.arrow.vector.TimeStampMicroTZVector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.StructVector;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.FieldType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * クエリ結果をApache ArrowのIPCストリーム形式で書き出す
+ * スキーマはBigQueryの結果スキーマから作成し、行は読み出した順に指定した行数ごとのレコードバッチとして書き出す
+ * 結果の行はページ単位で読み出しながら書き出すため、結果全体をメモリに保持しない
+ * 各列はBigQueryの型に対応するArrowの型とし、REPEATEDはList、RECORDはStructとして書き出す
+ * 対応する型のない型（STRING・JSON・GEOGRAPHY・INTERVAL等）はBigQueryの文字列表現のまま文字列として書き出す
+ */
+public final class QueryResultArrowWriter {
+
+    /**
+     * ArrowのIPCストリーム形式のメディアタイプ
+     */
+    public static final String MEDIA_TYPE = "application/vnd.apache.arrow.stream";
+
+    private static final int NUMERIC_PRECISION = 38;
+    private static final int NUMERIC_SCALE = 9;
+    private static final int BIGNUMERIC_PRECISION = 76;
+    private static final int BIGNUMERIC_SCALE = 38;
+
+    private QueryResultArrowWriter() {
+    }
+
+    /**
+     * クエリ結果をArrowのIPCストリーム形式で書き出す
+     *
+     * @param schema       クエリ結果のスキーマ
+     * @param rows         クエリ結果の行（反復しながら書き出す）
+     * @param outputStream 書き出し先
+     * @param batchSize    1レコードバッチあたりの行数
+     * @return 書き出したレコードバッチの数
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public static int write(Schema schema, Iterable<FieldValueList> rows, OutputStream outputStream, int batchSize)
+            throws IOException {
+        FieldList fields = schema.getFields();
+        try (BufferAllocator allocator = new RootAllocator();
+             VectorSchemaRoot root = VectorSchemaRoot.create(toArrowSchema(schema), allocator);
+             ArrowStreamWriter writer = new ArrowStreamWriter(root, null, outputStream)) {
+            writer.start();
+            int batches = 0;
+            int count = 0;
+            root.allocateNew();
+            for (FieldValueList row : rows) {
+                for (int column = 0; column < fields.size(); column++) {
+                    setValue(root.getVector(column), count, row.get(column), fields.get(column));
+                }
+                if (++count == batchSize) {
+                    writeBatch(root, writer, count);
+                    batches++;
+                    count = 0;
+                    root.allocateNew();
+                }
+            }
+            if (count > 0) {
+                writeBatch(root, writer, count);
+                batches++;
+            }
+            writer.end();
+            return batches;
+        }
+    }
+
+    private static void writeBatch(VectorSchemaRoot root, ArrowStreamWriter writer, int count) throws IOException {
+        root.setRowCount(count);
+        writer.writeBatch();
+    }
+
+    /**
+     * BigQueryの結果スキーマからArrowのスキーマを作成する
+     */
+    static org.apache.arrow.vector.types.pojo.Schema toArrowSchema(Schema schema) {
+        List<org.apache.arrow.vector.types.pojo.Field> fields = new ArrayList<>();
+        for (Field field : schema.getFields()) {
+            fields.add(toArrowField(field));
+        }
+        return new org.apache.arrow.vector.types.pojo.Schema(fields);
+    }
+
+    private static org.apache.arrow.vector.types.pojo.Field toArrowField(Field field) {
+        org.apache.arrow.vector.types.pojo.Field element = toArrowElementField(field.getName(), field);
+        if (field.getMode() != Field.Mode.REPEATED) {
+            return element;
+        }
+        // ARRAYの要素はNULLにならない
+        org.apache.arrow.vector.types.pojo.Field item = new org.apache.arrow.vector.types.pojo.Field("item",
+                FieldType.notNullable(element.getType()), element.getChildren());
+        return new org.apache.arrow.vector.types.pojo.Field(field.getName(),
+                FieldType.nullable(ArrowType.List.INSTANCE), List.of(item));
+    }
+
+    private static org.apache.arrow.vector.types.pojo.Field toArrowElementField(String name, Field field) {
+        List<org.apache.arrow.vector.types.pojo.Field> children = null;
+        if (field.getSubFields() != null && !field.getSubFields().isEmpty()) {
+            children = new ArrayList<>();
+            for (Field subField : field.getSubFields()) {
+                children.add(toArrowField(subField));
+            }
+        }
+        return new org.apache.arrow.vector.types.pojo.Field(name, FieldType.nullable(toArrowType(field)), children);
+    }
+
+    private static ArrowType toArrowType(Field field) {
+        return switch (field.getType().getStandardType()) {
+            case INT64 -> new ArrowType.Int(64, true);
+            case FLOAT64 -> new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            case NUMERIC -> new ArrowType.Decimal(NUMERIC_PRECISION, NUMERIC_SCALE, 128);
+            case BIGNUMERIC -> new ArrowType.Decimal(BIGNUMERIC_PRECISION, BIGNUMERIC_SCALE, 256);
+            case BOOL -> ArrowType.Bool.INSTANCE;
+            case BYTES -> ArrowType.Binary.INSTANCE;
+            case DATE -> new ArrowType.Date(DateUnit.DAY);
+            case TIME -> new ArrowType.Time(TimeUnit.MICROSECOND, 64);
+            case DATETIME -> new ArrowType.Timestamp(TimeUnit.MICROSECOND, null);
+            case TIMESTAMP -> new ArrowType.Timestamp(TimeUnit.MICROSECOND, "UTC");
+            case STRUCT -> ArrowType.Struct.INSTANCE;
+            default -> ArrowType.Utf8.INSTANCE;
+        };
+    }
+
+    /**
+     * 1つの値をベクトルに設定する
+     * REPEATEDの列は要素ごとに、RECORDの列はフィールドごとに子ベクトルへ設定する
+     */
+    private static void setValue(FieldVector vector, int index, FieldValue value, Field field) {
+        if (value == null || value.isNull()) {
+            vector.setNull(index);
+        } else if (vector instanceof ListVector list) {
+            List<FieldValue> elements = value.getRepeatedValue();
+            int first = list.startNewValue(index);
+            for (int i = 0; i < elements.size(); i++) {
+                setValue(list.getDataVector(), first + i, elements.get(i), field);
+            }
+            list.endValue(index, elements.size());
+        } else if (vector instanceof StructVector struct) {
+            FieldValueList record = value.getRecordValue();
+            FieldList subFields = field.getSubFields();
+            struct.setIndexDefined(index);
+            for (int i = 0; i < subFields.size(); i++) {
+                setValue((FieldVector) struct.getVectorById(i), index, record.get(i), subFields.get(i));
+            }
+        } else if (vector instanceof BigIntVector longs) {
+            longs.setSafe(index, value.getLongValue());
+        } else if (vector instanceof Float8Vector doubles) {
+            doubles.setSafe(index, value.getDoubleValue());
+        } else if (vector instanceof DecimalVector decimals) {
+            decimals.setSafe(index, value.getNumericValue().setScale(NUMERIC_SCALE));
+        } else if (vector instanceof Decimal256Vector decimals) {
+            decimals.setSafe(index, value.getNumericValue().setScale(BIGNUMERIC_SCALE));
+        } else if (vector instanceof BitVector bits) {
+            bits.setSafe(index, value.getBooleanValue() ? 1 : 0);
+        } else if (vector instanceof VarBinaryVector bytes) {
+            bytes.setSafe(index, value.getBytesValue());
+        } else if (vector instanceof DateDayVector dates) {
+            dates.setSafe(index, (int) LocalDate.parse(value.getStringValue()).toEpochDay());
+        } else if (vector instanceof TimeMicroVector times) {
+            times.setSafe(index, LocalTime.parse(value.getStringValue()).toNanoOfDay() / 1000);
+        } else if (vector instanceof TimeStampMicroVector dateTimes) {
+            LocalDateTime dateTime = LocalDateTime.parse(value.getStringValue());
+            dateTimes.setSafe(index, Math.addExact(Math.multiplyExact(dateTime.toEpochSecond(ZoneOffset.UTC), 1_000_000L),
+                    dateTime.getNano() / 1000));
+        } else if (vector instanceof TimeStampMicroTZVector timestamps) {
+            timestamps.setSafe(index, value.getTimestampValue());
+        } else {
+            ((VarCharVector) vector).setSafe(index, value.getStringValue().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
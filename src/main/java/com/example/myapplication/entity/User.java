@@ -9,18 +9,40 @@ import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
+/**
+ * ユーザー
+ * 認証のたびにユーザー名で参照するため、Hibernateの2次キャッシュに保持する
+ * ユーザー名は登録後に変更しない自然キーとし、ユーザー名からIDへの対応もキャッシュに保持する
+ */
 @Entity
 @Table(name = "users")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = User.CACHE_REGION)
+@NaturalIdCache(region = User.NATURAL_ID_CACHE_REGION)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class User {
 
+    /**
+     * ユーザーを保持する2次キャッシュの領域名
+     */
+    public static final String CACHE_REGION = "users";
+
+    /**
+     * ユーザー名からIDへの対応を保持する2次キャッシュの領域名
+     */
+    public static final String NATURAL_ID_CACHE_REGION = "users-by-username";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @NaturalId
     @Column(unique = true, nullable = false)
     private String username;
 
@@ -0,0 +1,20 @@
+package com.example.myapplication.repository;
+
+import com.example.myapplication.entity.User;
+
+import java.util.Optional;
+
+/**
+ * UserRepositoryに追加する、メソッド名からクエリを生成しない検索
+ */
+public interface UserRepositoryCustom {
+
+    /**
+     * ユーザー名（自然キー）でユーザーを取得する
+     * ユーザー名からIDへの対応とユーザーは2次キャッシュから取得し、キャッシュにない場合のみデータベースを参照する
+     *
+     * @param username ユーザー名
+     * @return ユーザー（存在しない場合は空）
+     */
+    Optional<User> findByUsername(String username);
+}
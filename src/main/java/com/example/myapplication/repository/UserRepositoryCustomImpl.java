@@ -0,0 +1,30 @@
+package com.example.myapplication.repository;
+
+import com.example.myapplication.entity.User;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+/**
+ * UserRepositoryCustomの実装
+ * JPQLのクエリは2次キャッシュを参照しないため、HibernateのSessionで自然キーによる取得を行う
+ * トランザクション外ではunwrapしたSessionがすぐに閉じられるため、読み取り専用のトランザクション内で取得する
+ */
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+    private final EntityManager entityManager;
+
+    public UserRepositoryCustomImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<User> findByUsername(String username) {
+        return entityManager.unwrap(Session.class)
+                .bySimpleNaturalId(User.class)
+                .loadOptional(username);
+    }
+}
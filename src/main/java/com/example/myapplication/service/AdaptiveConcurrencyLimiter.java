@@ -0,0 +1,135 @@
+package com.example.myapplication.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * 呼び出し先の状態に合わせて同時呼び出し数の上限を調整するリミッター（AIMD方式）
+ * 呼び出しが成功し、上限の半分以上を使用している場合は上限を1増やし（加算的増加）、
+ * 過負荷を示すエラー（タイムアウトやレート制限など）の場合は上限に係数を掛けて減らす（乗算的減少）
+ * 上限に達している場合は呼び出しを待たせずに{@link LimitExceededException}で即座に失敗させる
+ */
+public final class AdaptiveConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final LongAdder rejectedCount = new LongAdder();
+    private int limit;
+    private int inFlight;
+
+    /**
+     * @param initialLimit 同時呼び出し数の初期上限
+     * @param minLimit     上限の最小値
+     * @param maxLimit     上限の最大値
+     * @param backoffRatio 過負荷時に上限に掛ける係数（0より大きく1未満）
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit
+                || backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("同時呼び出し数の上限の設定が不正です: initial=" + initialLimit
+                    + ", min=" + minLimit + ", max=" + maxLimit + ", backoffRatio=" + backoffRatio);
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * 同時呼び出し数を制限してMonoを実行する
+     *
+     * @param source 実行するMono
+     * @param isDrop 過負荷を示すエラーかどうかを判定する関数
+     * @param <T>    結果の型
+     * @return 同時呼び出し数を制限したMono
+     */
+    public <T> Mono<T> limit(Mono<T> source, Predicate<Throwable> isDrop) {
+        return limit(source.flux(), isDrop).singleOrEmpty();
+    }
+
+    /**
+     * 同時呼び出し数を制限してFluxを実行する
+     * Fluxが終了するまでを1つの呼び出しとして数える
+     *
+     * @param source 実行するFlux
+     * @param isDrop 過負荷を示すエラーかどうかを判定する関数
+     * @param <T>    要素の型
+     * @return 同時呼び出し数を制限したFlux
+     */
+    public <T> Flux<T> limit(Flux<T> source, Predicate<Throwable> isDrop) {
+        return Flux.defer(() -> {
+            if (!tryAcquire()) {
+                rejectedCount.increment();
+                return Flux.error(new LimitExceededException(getLimit()));
+            }
+            AtomicBoolean released = new AtomicBoolean();
+            return source
+                    .doOnComplete(() -> release(released, Outcome.SUCCESS))
+                    .doOnError(e -> release(released, isDrop.test(e) ? Outcome.DROPPED : Outcome.IGNORED))
+                    .doOnCancel(() -> release(released, Outcome.IGNORED));
+        });
+    }
+
+    /**
+     * @return 現在の同時呼び出し数の上限
+     */
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return 実行中の呼び出し数
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return 上限に達していたため拒否した呼び出し数
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (inFlight >= limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    private void release(AtomicBoolean released, Outcome outcome) {
+        if (!released.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (this) {
+            if (outcome == Outcome.SUCCESS && inFlight * 2 >= limit) {
+                // 上限を使い切りつつある状態で成功した場合のみ増やす（余裕がある状態で増やし続けないため）
+                limit = Math.min(maxLimit, limit + 1);
+            } else if (outcome == Outcome.DROPPED) {
+                limit = Math.max(minLimit, (int) (limit * backoffRatio));
+            }
+            inFlight--;
+        }
+    }
+
+    private enum Outcome {
+        SUCCESS, DROPPED, IGNORED
+    }
+
+    /**
+     * 同時呼び出し数が上限に達していたため呼び出しを拒否したことを表す例外
+     */
+    public static final class LimitExceededException extends RuntimeException {
+
+        LimitExceededException(int limit) {
+            super("同時呼び出し数が上限（" + limit + "）に達しています");
+        }
+    }
+}
@@ -1,15 +1,23 @@
 package com.example.myapplication.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Clock;
 import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -21,8 +29,33 @@ public class AiService {
 
     private static final Logger logger = LoggerFactory.getLogger(AiService.class);
 
+    private static final String GEMINI_BASE_URL = "https://generativelanguage.googleapis.com/v1beta/models/";
+
+    /**
+     * 応答（ストリーミングの場合は断片の間隔）のタイムアウト
+     */
+    private static final Duration RESPONSE_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final String TRIVIA_PROMPT = "100文字程度の日本語で豆知識を教えてください。";
+
+    private static final Map<String, Object> TRIVIA_GENERATION_CONFIG = Map.of(
+            "temperature", 2.0, // 値が大きいとAI応答がランダムになる：設定幅 0.0 ~ 2.0
+            "maxOutputTokens", 200
+    );
+
+    /**
+     * 一括生成の生成設定（temperatureはモデルの既定値を使用する）
+     */
+    private static final Map<String, Object> BATCH_GENERATION_CONFIG = Map.of(
+            "maxOutputTokens", 1024
+    );
+
     private final WebClient webClient;
-    private final ObjectMapper objectMapper;
+    private final GeminiResilience resilience;
+    private final PromptResponseCache promptCache;
+    private final TriviaPool triviaPool;
+    private final int batchParallelism;
+    private final int batchMaxPrompts;
 
     @Value("${app.ai.gemini.api-key:}")
     private String apiKey;
@@ -30,56 +63,174 @@ public class AiService {
     @Value("${app.ai.gemini.model:gemini-2.5-flash-lite}")
     private String model;
 
-    public AiService(WebClient webClient, ObjectMapper objectMapper) {
+    /**
+     * Gemini APIのモデルのURLの先頭部分（負荷テストでは応答を模擬するサーバーを指定する）
+     */
+    @Value("${app.ai.gemini.base-url:" + GEMINI_BASE_URL + "}")
+    private String baseUrl = GEMINI_BASE_URL;
+
+    @Autowired
+    public AiService(WebClient webClient,
+                     GeminiResilience resilience,
+                     PromptResponseCache promptCache,
+                     @Value("${app.ai.trivia-pool.capacity:50}") int poolCapacity,
+                     @Value("${app.ai.trivia-pool.low-watermark:10}") int poolLowWatermark,
+                     @Value("${app.ai.trivia-pool.high-watermark:40}") int poolHighWatermark,
+                     @Value("${app.ai.trivia-pool.refill-concurrency:2}") int poolRefillConcurrency,
+                     @Value("${app.ai.trivia-pool.rate-limit-backoff:PT1M}") Duration poolRateLimitBackoff,
+                     @Value("${app.ai.batch.parallelism:4}") int batchParallelism,
+                     @Value("${app.ai.batch.max-prompts:100}") int batchMaxPrompts) {
+        this.webClient = webClient;
+        this.resilience = resilience;
+        this.promptCache = promptCache;
+        this.triviaPool = new TriviaPool(this::requestTrivia, poolCapacity, poolLowWatermark, poolHighWatermark,
+                poolRefillConcurrency, poolRateLimitBackoff, Clock.systemUTC());
+        this.batchParallelism = batchParallelism;
+        this.batchMaxPrompts = batchMaxPrompts;
+        logger.info("AiService initialized: triviaPool capacity={}, watermarks={}-{}, refillConcurrency={}, batchParallelism={}",
+                poolCapacity, poolLowWatermark, poolHighWatermark, poolRefillConcurrency, batchParallelism);
+    }
+
+    public AiService(WebClient webClient) {
         this.webClient = webClient;
-        this.objectMapper = objectMapper;
+        this.resilience = GeminiResilience.disabled();
+        this.promptCache = PromptResponseCache.disabled();
+        this.triviaPool = TriviaPool.disabled();
+        this.batchParallelism = 4;
+        this.batchMaxPrompts = 100;
     }
 
     /**
-     * Gemini APIを使用して豆知識を取得する
+     * 豆知識を取得する
+     * 事前に生成した豆知識のプールから取り出し、プールが空の場合のみGemini APIを呼び出す
+     * 応答はスレッドを占有せずに待ち、受信したバッファから直接テキストを抽出する
+     * APIキーが設定されていない場合はIllegalStateException、API呼び出しに失敗した場合はRuntimeExceptionで終了する
      *
-     * @return 豆知識の文字列
-     * @throws RuntimeException API呼び出しに失敗した場合
+     * @return 豆知識の文字列を発行するMono
      */
-    public String getTrivia() {
-        // APIキーが設定されていない場合は例外をスローする
-        if (apiKey == null || apiKey.trim().isEmpty()) {
+    public Mono<String> getTrivia() {
+        // APIキーが設定されていない場合はエラーとする
+        if (!isApiKeyConfigured()) {
             logger.error("Gemini APIキーが設定されていません");
-            throw new IllegalStateException("APIキーが設定されていません。");
+            return Mono.error(new IllegalStateException("APIキーが設定されていません。"));
         }
 
-        try {
-            Map<String, Object> requestBody = createGeminiRequestBody();
+        return triviaPool.poll()
+                .map(Mono::just)
+                .orElseGet(() -> requestTrivia().onErrorMap(AiService::toApiException));
+    }
 
-            String response = webClient.post()
-                    .uri("https://generativelanguage.googleapis.com/v1beta/models/" + model + ":generateContent")
-                    .header("Content-Type", "application/json")
-                    .header("X-Goog-Api-Key", apiKey)
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .timeout(Duration.ofSeconds(30))
-                    .block();
+    /**
+     * 豆知識のプールを補充する
+     * 保持数が下限を下回っている場合のみ補充し、APIキーが設定されていない場合は何もしない
+     */
+    @Scheduled(fixedDelayString = "${app.ai.trivia-pool.refill-interval:PT5S}")
+    public void refillTriviaPool() {
+        if (triviaPool.isEnabled() && isApiKeyConfigured()) {
+            triviaPool.refill();
+        }
+    }
 
-            return parseGeminiResponse(response);
+    /**
+     * Gemini APIを呼び出して豆知識を1件生成する
+     */
+    private Mono<String> requestTrivia() {
+        return generateContent(TRIVIA_PROMPT, TRIVIA_GENERATION_CONFIG);
+    }
 
-        } catch (WebClientResponseException e) {
-            logger.error("Gemini API呼び出しでHTTPエラーが発生", e);
-            throw new RuntimeException("API呼び出しに失敗しました。");
-        } catch (Exception e) {
-            logger.error("Gemini API呼び出しで予期しないエラーが発生", e);
-            throw new RuntimeException("API呼び出しで予期しないエラーが発生しました。");
+    /**
+     * 複数のプロンプトからテキストを一括で生成する
+     * プロンプトごとのgenerateContentを同時実行数を制限して並行に送信し（HTTP/2では1本の接続に多重化される）、
+     * 結果はプロンプトの順に、先頭から生成を終えたものを順次発行する
+     * いずれかの生成に失敗した場合は、未送信のプロンプトを送信せずにエラーで終了する（エラーの扱いは{@link #getTrivia()}と同じ）
+     *
+     * @param prompts プロンプトのリスト
+     * @return プロンプトの順に生成されたテキストを発行するFlux
+     */
+    public Flux<String> generateAll(List<String> prompts) {
+        if (!isApiKeyConfigured()) {
+            logger.error("Gemini APIキーが設定されていません");
+            return Flux.error(new IllegalStateException("APIキーが設定されていません。"));
+        }
+        if (prompts.size() > batchMaxPrompts) {
+            return Flux.error(new IllegalArgumentException("一度に生成できるプロンプトは" + batchMaxPrompts + "件までです。"));
         }
+
+        logger.info("Gemini APIで一括生成します: プロンプト数={}, 同時実行数={}", prompts.size(), batchParallelism);
+        return Flux.fromIterable(prompts)
+                .flatMapSequential(prompt -> generateContent(prompt, BATCH_GENERATION_CONFIG), batchParallelism)
+                .onErrorMap(AiService::toApiException);
+    }
+
+    /**
+     * generateContentを呼び出してテキストを1件生成する
+     * 同じモデル・プロンプト・生成設定の結果がキャッシュされている場合はGemini APIを呼び出さない
+     * 呼び出す場合は同時呼び出し数の制限・サーキットブレーカー・再試行を適用する
+     */
+    private Mono<String> generateContent(String prompt, Map<String, Object> generationConfig) {
+        return promptCache.getOrLoad(model, prompt, generationConfig,
+                () -> resilience.decorate(requestContent(prompt, generationConfig)));
+    }
+
+    private Mono<String> requestContent(String prompt, Map<String, Object> generationConfig) {
+        return webClient.post()
+                .uri(baseUrl + model + ":generateContent")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Goog-Api-Key", apiKey)
+                .bodyValue(createGeminiRequestBody(prompt, generationConfig))
+                .retrieve()
+                .bodyToFlux(DataBuffer.class)
+                .as(GeminiTextExtractor::extractText)
+                .timeout(RESPONSE_TIMEOUT)
+                .map(String::trim)
+                .switchIfEmpty(Mono.error(() -> {
+                    logger.warn("Gemini APIレスポンスの解析に失敗しました。期待される形式ではありません");
+                    return new ResponseParseException("AIからの応答を解析できませんでした。期待される形式ではありません。");
+                }));
+    }
+
+    /**
+     * Gemini APIのストリーミング生成（streamGenerateContent）で豆知識を取得する
+     * 生成されたテキストを、Gemini APIから届いた断片ごとに順次発行する
+     * エラーの扱いは{@link #getTrivia()}と同じ
+     *
+     * @return 豆知識のテキストの断片を発行するFlux
+     */
+    public Flux<String> streamTrivia() {
+        if (!isApiKeyConfigured()) {
+            logger.error("Gemini APIキーが設定されていません");
+            return Flux.error(new IllegalStateException("APIキーが設定されていません。"));
+        }
+
+        // レスポンスは断片ごとのレスポンスを要素とするJSON配列として、生成に合わせて順次届く
+        Flux<String> call = webClient.post()
+                .uri(baseUrl + model + ":streamGenerateContent")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Goog-Api-Key", apiKey)
+                .bodyValue(createGeminiRequestBody(TRIVIA_PROMPT, TRIVIA_GENERATION_CONFIG))
+                .retrieve()
+                .bodyToFlux(DataBuffer.class)
+                // 生成終了を示す断片などテキストを含まないものは読み飛ばされる
+                .as(GeminiTextExtractor::extractTexts)
+                // 断片の間隔がタイムアウトを超えた場合に打ち切る
+                .timeout(RESPONSE_TIMEOUT)
+                .filter(text -> !text.isEmpty());
+        return resilience.decorate(call)
+                .onErrorMap(AiService::toApiException);
+    }
+
+    private boolean isApiKeyConfigured() {
+        return apiKey != null && !apiKey.trim().isEmpty();
     }
 
     /**
      * Gemini API用のリクエストボディを生成する
      *
+     * @param prompt           プロンプト
+     * @param generationConfig 生成設定
      * @return Gemini APIに送信するリクエストボディ（Map形式）
      */
-    private static Map<String, Object> createGeminiRequestBody() {
-        String prompt = "100文字程度の日本語で豆知識を教えてください。";
-
+    private static Map<String, Object> createGeminiRequestBody(String prompt, Map<String, Object> generationConfig) {
         // Gemini API リクエストボディの構築
         return Map.of(
                 "contents", new Object[]{
@@ -87,45 +238,41 @@ public class AiService {
                                 Map.of("text", prompt)
                         })
                 },
-                "generationConfig", Map.of(
-                        "temperature", 2.0, // 値が大きいとAI応答がランダムになる：設定幅 0.0 ~ 2.0
-                        "maxOutputTokens", 200
-                )
+                "generationConfig", generationConfig
         );
     }
 
     /**
-     * Gemini APIのレスポンスから豆知識テキストを抽出する
-     *
-     * @param response Gemini APIからのJSONレスポンス
-     * @return 抽出された豆知識テキスト
+     * API呼び出しのエラーを画面に表示するメッセージの例外に変換する
      */
-    private String parseGeminiResponse(String response) {
-        try {
-            JsonNode root = objectMapper.readTree(response);
-            JsonNode candidates = root.get("candidates");
-
-            if (candidates != null && candidates.isArray() && !candidates.isEmpty()) {
-                JsonNode firstCandidate = candidates.get(0);
-                JsonNode content = firstCandidate.get("content");
-
-                if (content != null) {
-                    JsonNode parts = content.get("parts");
-                    if (parts != null && parts.isArray() && !parts.isEmpty()) {
-                        JsonNode text = parts.get(0).get("text");
-                        if (text != null) {
-                            return text.asText().trim();
-                        }
-                    }
-                }
-            }
-
-            logger.warn("Gemini APIレスポンスの解析に失敗しました。期待される形式ではありません: {}", response);
-            throw new RuntimeException("AIからの応答を解析できませんでした。期待される形式ではありません。");
-
-        } catch (Exception e) {
+    private static Throwable toApiException(Throwable e) {
+        if (e instanceof ResponseParseException) {
+            return e;
+        }
+        if (e instanceof CallNotPermittedException || e instanceof AdaptiveConcurrencyLimiter.LimitExceededException) {
+            // 呼び出し先の過負荷時は待たずに失敗させる
+            logger.warn("Gemini APIの呼び出しを見合わせました: {}", e.getMessage());
+            return new RuntimeException("AI機能が混み合っています。しばらくしてから再試行してください。");
+        }
+        if (e instanceof WebClientResponseException) {
+            logger.error("Gemini API呼び出しでHTTPエラーが発生", e);
+            return new RuntimeException("API呼び出しに失敗しました。");
+        }
+        if (e instanceof DecodingException) {
             logger.error("Gemini APIレスポンスの解析中にエラーが発生", e);
-            throw new RuntimeException("AIからの応答を解析できませんでした。");
+            return new ResponseParseException("AIからの応答を解析できませんでした。");
+        }
+        logger.error("Gemini API呼び出しで予期しないエラーが発生", e);
+        return new RuntimeException("API呼び出しで予期しないエラーが発生しました。");
+    }
+
+    /**
+     * Gemini APIのレスポンスを解析できなかったことを表す例外
+     */
+    private static final class ResponseParseException extends RuntimeException {
+
+        ResponseParseException(String message) {
+            super(message);
         }
     }
 }
@@ -0,0 +1,119 @@
+package com.example.myapplication.service;
+
+import com.example.myapplication.dto.QueryResult;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.Decimal256Vector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.TimeMicroVector;
+import org.apache.arrow.vector.TimeStampMicroTZVector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.StructVector;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Arrow形式のレコードバッチをクエリ結果の行（列位置の順に値を格納したObject[]）に変換する
+ * 値はREST APIで取得した場合（FieldValue#getValue）と同じ文字列表現に揃える
+ * REPEATED・RECORDの列はREST APIと同じ形に変換できないため対応しない（StorageReadApiReader#isApplicableで除外する）
+ */
+final class ArrowRowDecoder {
+
+    private ArrowRowDecoder() {
+    }
+
+    /**
+     * レコードバッチの全行を変換して追加する
+     * 列は名前で対応付けるため、バッチの列順がクエリ結果の列順と異なっていてもよい
+     *
+     * @param root    レコードバッチ
+     * @param columns クエリ結果の列情報
+     * @param out     変換した行の追加先
+     */
+    static void decode(VectorSchemaRoot root, QueryResult.Columns columns, List<Object[]> out) {
+        List<FieldVector> vectors = root.getFieldVectors();
+        int[] positions = new int[vectors.size()];
+        for (int i = 0; i < vectors.size(); i++) {
+            positions[i] = columns.indexOf(vectors.get(i).getName());
+        }
+
+        int rowCount = root.getRowCount();
+        for (int row = 0; row < rowCount; row++) {
+            Object[] values = new Object[columns.size()];
+            for (int i = 0; i < vectors.size(); i++) {
+                if (positions[i] >= 0) {
+                    values[positions[i]] = toValue(vectors.get(i), row);
+                }
+            }
+            out.add(values);
+        }
+    }
+
+    private static Object toValue(FieldVector vector, int index) {
+        if (vector.isNull(index)) {
+            return null;
+        }
+        if (vector instanceof VarCharVector strings) {
+            return new String(strings.get(index), StandardCharsets.UTF_8);
+        }
+        if (vector instanceof BigIntVector longs) {
+            return Long.toString(longs.get(index));
+        }
+        if (vector instanceof Float8Vector doubles) {
+            return Double.toString(doubles.get(index));
+        }
+        if (vector instanceof BitVector bits) {
+            return Boolean.toString(bits.get(index) != 0);
+        }
+        if (vector instanceof DecimalVector decimals) {
+            return decimals.getObject(index).toPlainString();
+        }
+        if (vector instanceof Decimal256Vector decimals) {
+            return decimals.getObject(index).toPlainString();
+        }
+        if (vector instanceof DateDayVector dates) {
+            return LocalDate.ofEpochDay(dates.get(index)).toString();
+        }
+        if (vector instanceof TimeStampMicroTZVector timestamps) {
+            // TIMESTAMPはREST APIと同じくエポックからの秒数（小数部はマイクロ秒まで）で表す
+            return toEpochSeconds(timestamps.get(index));
+        }
+        if (vector instanceof TimeStampMicroVector datetimes) {
+            long micros = datetimes.get(index);
+            return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                    (int) Math.floorMod(micros, 1_000_000L) * 1000, ZoneOffset.UTC).toString();
+        }
+        if (vector instanceof TimeMicroVector times) {
+            return LocalTime.ofNanoOfDay(times.get(index) * 1000).toString();
+        }
+        if (vector instanceof VarBinaryVector bytes) {
+            return Base64.getEncoder().encodeToString(bytes.get(index));
+        }
+        if (vector instanceof ListVector || vector instanceof StructVector) {
+            throw new UnsupportedOperationException("REPEATED・RECORDの列には対応していません: " + vector.getName());
+        }
+        return String.valueOf(vector.getObject(index));
+    }
+
+    /**
+     * エポックからのマイクロ秒をREST APIと同じ秒数の文字列（例: 1672531200.0、1672531200.123456）にする
+     */
+    static String toEpochSeconds(long micros) {
+        BigDecimal seconds = BigDecimal.valueOf(micros, 6).stripTrailingZeros();
+        return (seconds.scale() < 1 ? seconds.setScale(1) : seconds).toPlainString();
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.myapplication.service;
+
+import com.google.api.gax.rpc.ServerStream;
+import com.google.cloud.bigquery.TableId;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadClient;
+import com.google.cloud.bigquery.storage.v1.CreateReadSessionRequest;
+import com.google.cloud.bigquery.storage.v1.DataFormat;
+import com.google.cloud.bigquery.storage.v1.ReadRowsRequest;
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
+import com.google.cloud.bigquery.storage.v1.ReadSession;
+import com.google.protobuf.ByteString;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ReadChannel;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.ipc.message.MessageSerializer;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.arrow.vector.util.ByteArrayReadableSeekableByteChannel;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * BigQueryReadClientを使用してArrow形式の読み込みセッションを作成する
+ * 読み込みクライアントは最初にセッションを作成した時点で作成する
+ */
+final class BigQueryArrowReadSessionFactory implements StorageReadApiReader.ArrowReadSessionFactory {
+
+    private BigQueryReadClient client;
+
+    @Override
+    public StorageReadApiReader.ArrowReadSession open(TableId tableId, int maxStreams) {
+        String table = String.format("projects/%s/datasets/%s/tables/%s",
+                tableId.getProject(), tableId.getDataset(), tableId.getTable());
+        CreateReadSessionRequest request = CreateReadSessionRequest.newBuilder()
+                .setParent("projects/" + tableId.getProject())
+                .setReadSession(ReadSession.newBuilder()
+                        .setTable(table)
+                        .setDataFormat(DataFormat.ARROW))
+                .setMaxStreamCount(maxStreams)
+                .build();
+        BigQueryReadClient readClient = client();
+        ReadSession session = readClient.createReadSession(request);
+        Schema schema = deserialize(session.getArrowSchema().getSerializedSchema(), MessageSerializer::deserializeSchema);
+        return new ArrowSession(readClient, session, schema);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (client != null) {
+            client.close();
+            client = null;
+        }
+    }
+
+    private synchronized BigQueryReadClient client() {
+        if (client == null) {
+            try {
+                client = BigQueryReadClient.create();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Storage Read APIのクライアントを作成できませんでした", e);
+            }
+        }
+        return client;
+    }
+
+    private static <T> T deserialize(ByteString bytes, Deserializer<T> deserializer) {
+        try {
+            return deserializer.read(new ReadChannel(new ByteArrayReadableSeekableByteChannel(bytes.toByteArray())));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Arrow形式のデータを読み込めませんでした", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Deserializer<T> {
+        T read(ReadChannel channel) throws IOException;
+    }
+
+    /**
+     * 作成済みの読み込みセッション
+     */
+    private record ArrowSession(BigQueryReadClient client, ReadSession session, Schema schema)
+            implements StorageReadApiReader.ArrowReadSession {
+
+        @Override
+        public int getStreamCount() {
+            return session.getStreamsCount();
+        }
+
+        @Override
+        public void readStream(int stream, BufferAllocator allocator, Consumer<VectorSchemaRoot> consumer) {
+            ReadRowsRequest request = ReadRowsRequest.newBuilder()
+                    .setReadStream(session.getStreams(stream).getName())
+                    .build();
+            try (VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator)) {
+                VectorLoader loader = new VectorLoader(root);
+                ServerStream<ReadRowsResponse> responses = client.readRowsCallable().call(request);
+                for (ReadRowsResponse response : responses) {
+                    if (!response.hasArrowRecordBatch()) {
+                        continue;
+                    }
+                    try (ArrowRecordBatch batch = deserialize(response.getArrowRecordBatch().getSerializedRecordBatch(),
+                            channel -> MessageSerializer.deserializeRecordBatch(channel, allocator))) {
+                        loader.load(batch);
+                        consumer.accept(root);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            // セッションはサーバー側で期限切れとなるため、明示的な終了処理はない
+        }
+    }
+}
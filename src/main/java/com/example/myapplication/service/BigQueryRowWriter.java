@@ -0,0 +1,24 @@
+package com.example.myapplication.service;
+
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.TableId;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BigQueryのテーブルに行を書き込む処理
+ * 実装ごとに使用するAPI（insertAll、Storage Write APIなど）が異なる
+ */
+public interface BigQueryRowWriter {
+
+    /**
+     * 行をテーブルに書き込む
+     *
+     * @param bigQuery BigQueryクライアント
+     * @param tableId  書き込み先のテーブル
+     * @param rows     書き込むデータ行のリスト
+     * @return 書き込みの結果（書き込めなかった行はエラーとして含め、書き込み済みの行と区別できるようにする）
+     */
+    InsertResult write(BigQuery bigQuery, TableId tableId, List<Map<String, Object>> rows);
+}
@@ -1,16 +1,21 @@
 package com.example.myapplication.service;
 
+import com.example.myapplication.dto.QueryResult;
 import com.google.api.gax.paging.Page;
+import com.google.cloud.PageImpl;
 import com.google.cloud.bigquery.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * BigQuery機能を提供するサービスクラス
@@ -23,12 +28,30 @@ public class BigQueryService {
     private final BigQuery bigQuery;
     private final String projectId;
     private final String datasetId;
+    private final QueryResultCache queryResultCache;
+    private final QueryCoalescer queryCoalescer;
+    private final BigQueryRowWriter rowWriter;
+    private final StorageReadApiReader storageReadApiReader;
+
+    /**
+     * テーブル一覧のキャッシュ（未取得の場合はnull）
+     * 定期的にバックグラウンドで再取得し、テーブルの作成・削除時はその場で更新する
+     */
+    private final AtomicReference<List<String>> cachedTables = new AtomicReference<>();
 
     @Autowired
     public BigQueryService(@Value("${app.bigquery.project-id}") String projectId,
-                          @Value("${app.bigquery.dataset-id}") String datasetId) {
+                          @Value("${app.bigquery.dataset-id}") String datasetId,
+                          QueryResultCache queryResultCache,
+                          QueryCoalescer queryCoalescer,
+                          BigQueryRowWriter rowWriter,
+                          StorageReadApiReader storageReadApiReader) {
         this.projectId = projectId;
         this.datasetId = datasetId;
+        this.queryResultCache = queryResultCache;
+        this.queryCoalescer = queryCoalescer;
+        this.rowWriter = rowWriter;
+        this.storageReadApiReader = storageReadApiReader;
         
         BigQuery tempBigQuery = null;
         try {
@@ -43,9 +66,33 @@ public class BigQueryService {
 
     // テスト用のコンストラクタ
     public BigQueryService(String projectId, String datasetId, BigQuery bigQuery) {
+        this(projectId, datasetId, bigQuery, QueryResultCache.disabled(), QueryCoalescer.disabled());
+    }
+
+    // テスト用のコンストラクタ
+    public BigQueryService(String projectId, String datasetId, BigQuery bigQuery,
+                           QueryResultCache queryResultCache, QueryCoalescer queryCoalescer) {
+        this(projectId, datasetId, bigQuery, queryResultCache, queryCoalescer, ChunkedInsertAllWriter.withDefaults());
+    }
+
+    // テスト用のコンストラクタ
+    public BigQueryService(String projectId, String datasetId, BigQuery bigQuery,
+                           QueryResultCache queryResultCache, QueryCoalescer queryCoalescer,
+                           BigQueryRowWriter rowWriter) {
+        this(projectId, datasetId, bigQuery, queryResultCache, queryCoalescer, rowWriter, StorageReadApiReader.disabled());
+    }
+
+    // テスト用のコンストラクタ
+    public BigQueryService(String projectId, String datasetId, BigQuery bigQuery,
+                           QueryResultCache queryResultCache, QueryCoalescer queryCoalescer,
+                           BigQueryRowWriter rowWriter, StorageReadApiReader storageReadApiReader) {
         this.projectId = projectId;
         this.datasetId = datasetId;
         this.bigQuery = bigQuery;
+        this.queryResultCache = queryResultCache;
+        this.queryCoalescer = queryCoalescer;
+        this.rowWriter = rowWriter;
+        this.storageReadApiReader = storageReadApiReader;
         try {
             log.info("BigQueryService initialized with project: {}, dataset: {}", projectId, datasetId);
         } catch (Exception e) {
@@ -56,12 +103,14 @@ public class BigQueryService {
 
     /**
      * SQLクエリを実行して結果を取得する
+     * 同じSQLの結果がキャッシュされている場合はBigQueryにジョブを発行せずに返す
+     * 同じSQLのクエリが実行中の場合は、新たなジョブを発行せずにその結果を共有する
      *
      * @param sql 実行するSQLクエリ
      * @return クエリ結果のリスト（Map形式）
      * @throws RuntimeException クエリ実行に失敗した場合
      */
-    public List<Map<String, Object>> runQuery(String sql) {
+    public QueryResult runQuery(String sql) {
         if (sql == null || sql.trim().isEmpty()) {
             throw new IllegalArgumentException("SQLクエリが空です");
         }
@@ -71,21 +120,106 @@ public class BigQueryService {
             return createSampleQueryResult();
         }
 
+        return queryResultCache.getOrLoad(sql, () -> queryCoalescer.execute(sql, () -> executeQuery(sql, null)));
+    }
+
+    /**
+     * 指定したジョブIDでBigQueryにジョブを発行してSQLクエリを実行する
+     * ジョブIDを指定することで、実行中のジョブを{@link #cancelJob(JobId)}でキャンセルできる
+     * キャンセルが同じSQLを実行中の他の呼び出し元に影響しないよう、同一クエリの集約は行わない
+     * （クエリ結果キャッシュは{@link #runQuery(String)}と同様に使用する）
+     *
+     * @param sql   実行するSQLクエリ
+     * @param jobId 発行するジョブのID
+     * @return クエリ結果
+     * @throws RuntimeException クエリ実行に失敗した場合
+     */
+    public QueryResult runQuery(String sql, JobId jobId) {
+        if (sql == null || sql.trim().isEmpty()) {
+            throw new IllegalArgumentException("SQLクエリが空です");
+        }
+
+        if (bigQuery == null) {
+            log.info("BigQuery開発モード: クエリ '{}' のサンプルデータを返します", sql);
+            return createSampleQueryResult();
+        }
+
+        return queryResultCache.getOrLoad(sql, () -> executeQuery(sql, jobId));
+    }
+
+    /**
+     * BigQueryのジョブをキャンセルする
+     * キャンセルは非同期に行われるため、戻った時点でジョブが停止しているとは限らない
+     *
+     * @param jobId キャンセルするジョブのID
+     * @return キャンセルを要求できた場合true（ジョブが存在しない場合や開発モードの場合はfalse）
+     */
+    public boolean cancelJob(JobId jobId) {
+        if (bigQuery == null) {
+            return false;
+        }
+        try {
+            boolean cancelled = bigQuery.cancel(jobId);
+            log.info("BigQueryジョブのキャンセルを要求しました: {}（{}）", jobId.getJob(), cancelled ? "受付済み" : "ジョブなし");
+            return cancelled;
+        } catch (BigQueryException e) {
+            log.warn("BigQueryジョブのキャンセルに失敗しました: {}: {}", jobId.getJob(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * BigQueryへの接続を確認する
+     * ヘルスチェックで使用するため、クエリ結果キャッシュ・同一クエリの集約・BigQuery側のキャッシュを使用せずに
+     * 毎回クエリジョブを発行する
+     *
+     * @throws RuntimeException BigQueryに接続できない場合
+     */
+    public void checkConnection() {
+        if (bigQuery == null) {
+            log.info("BigQuery開発モード: 接続確認をスキップします");
+            return;
+        }
+        try {
+            bigQuery.query(QueryJobConfiguration.newBuilder("SELECT 1 as health_check")
+                    .setUseQueryCache(false)
+                    .build());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("接続確認が中断されました", e);
+        } catch (Exception e) {
+            throw new RuntimeException("BigQueryに接続できません: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * BigQueryにクエリジョブを発行して結果を取得する
+     * 結果の行数が閾値以上の場合は、REST APIでのページングの代わりにStorage Read APIで読み込む
+     * （REPEATED・RECORDの列を含む場合はREST APIで読み込む）
+     *
+     * @param jobId 発行するジョブのID（nullの場合はクライアントライブラリが割り当てる）
+     */
+    private QueryResult executeQuery(String sql, JobId jobId) {
         try {
             log.info("BigQueryクエリを実行: {}", sql);
             QueryJobConfiguration queryConfig = QueryJobConfiguration.newBuilder(sql).build();
-            TableResult result = bigQuery.query(queryConfig);
+            TableResult result = jobId == null ? bigQuery.query(queryConfig) : bigQuery.query(queryConfig, jobId);
+
+            // 列情報はスキーマから一度だけ作成し、各行は列位置で値を取り出す
+            QueryResult.Columns columns = toColumns(result.getSchema());
+            if (storageReadApiReader.isApplicable(columns, result.getTotalRows())) {
+                QueryResult rows = readWithStorageApi(sql, result, columns);
+                if (rows != null) {
+                    log.info("BigQueryクエリ完了: {} 件の結果をStorage Read APIで取得", rows.size());
+                    return rows;
+                }
+            }
 
-            List<Map<String, Object>> rows = new ArrayList<>();
+            QueryResult.Builder builder = QueryResult.builder(columns);
             for (FieldValueList row : result.iterateAll()) {
-                Map<String, Object> rowMap = new HashMap<>();
-                for (Field field : result.getSchema().getFields()) {
-                    String fieldName = field.getName();
-                    FieldValue fieldValue = row.get(fieldName);
-                    rowMap.put(fieldName, fieldValue.isNull() ? null : fieldValue.getValue());
-                }
-                rows.add(rowMap);
+                builder.addRow(toValues(row, columns.size()));
             }
+            QueryResult rows = builder.build();
 
             log.info("BigQueryクエリ完了: {} 件の結果を取得", rows.size());
             return rows;
@@ -100,26 +234,165 @@ public class BigQueryService {
         }
     }
 
+    /**
+     * クエリ結果の一時テーブルをStorage Read APIで読み込む
+     * ORDER BYを含むクエリは並び順を保つため1ストリームで読み込む
+     *
+     * @return クエリ結果（一時テーブルが特定できない場合や読み込みに失敗した場合はnull）
+     */
+    private QueryResult readWithStorageApi(String sql, TableResult result, QueryResult.Columns columns) {
+        try {
+            Job job = result.getJobId() == null ? null : bigQuery.getJob(result.getJobId());
+            if (job == null || !(job.getConfiguration() instanceof QueryJobConfiguration configuration)
+                    || configuration.getDestinationTable() == null) {
+                return null;
+            }
+            return storageReadApiReader.read(configuration.getDestinationTable(), columns, SqlStatements.hasOrderBy(sql));
+        } catch (Exception | LinkageError e) {
+            // Apache Arrowを初期化できない実行環境（JVMオプションの不足等）ではLinkageErrorとなる
+            log.warn("Storage Read APIでの読み込みに失敗したため、REST APIで読み込みます: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * SQLクエリを実行し、結果を逐次的に読み出せる形で返す
+     * クエリジョブの完了までは同期的に待機するが、結果行はページ単位で遅延取得されるため
+     * 結果件数に関わらずメモリ使用量は一定に保たれる
+     *
+     * @param sql 実行するSQLクエリ
+     * @return 反復時にページを取得しながら行を返すIterable（Map形式）
+     * @throws RuntimeException クエリ実行に失敗した場合
+     */
+    public Iterable<Map<String, Object>> streamQuery(String sql) {
+        if (sql == null || sql.trim().isEmpty()) {
+            throw new IllegalArgumentException("SQLクエリが空です");
+        }
+
+        if (bigQuery == null) {
+            log.info("BigQuery開発モード: クエリ '{}' のサンプルデータをストリーミングします", sql);
+            return createSampleQueryResult();
+        }
+
+        TableResult result = executeStreamingQuery(sql);
+        QueryResult.Columns columns = toColumns(result.getSchema());
+
+        // iterateAll()は次ページを必要になった時点で取得するため、全件をメモリに保持しない
+        return () -> new Iterator<>() {
+            private final Iterator<FieldValueList> pageRows = result.iterateAll().iterator();
+
+            @Override
+            public boolean hasNext() {
+                return pageRows.hasNext();
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                return new QueryResult.Row(columns, toValues(pageRows.next(), columns.size()));
+            }
+        };
+    }
+
+    /**
+     * SQLクエリを実行し、結果スキーマとページ単位で遅延取得される行を返す
+     * 結果の型を保ったまま変換する場合（Arrow形式での書き出し等）に使用する
+     * {@link #streamQuery(String)}と同様に、結果をメモリに展開せず、キャッシュにも保存しない
+     *
+     * @param sql 実行するSQLクエリ
+     * @return クエリ結果（{@link TableResult#iterateAll()}は反復時に次ページを取得する）
+     * @throws RuntimeException クエリ実行に失敗した場合
+     */
+    public TableResult streamQueryResult(String sql) {
+        if (sql == null || sql.trim().isEmpty()) {
+            throw new IllegalArgumentException("SQLクエリが空です");
+        }
+
+        if (bigQuery == null) {
+            log.info("BigQuery開発モード: クエリ '{}' のサンプルデータをストリーミングします", sql);
+            return createSampleTableResult();
+        }
+        return executeStreamingQuery(sql);
+    }
+
+    private TableResult executeStreamingQuery(String sql) {
+        try {
+            log.info("BigQueryストリーミングクエリを実行: {}", sql);
+            QueryJobConfiguration queryConfig = QueryJobConfiguration.newBuilder(sql).build();
+            return bigQuery.query(queryConfig);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("BigQueryストリーミングクエリが中断されました", e);
+            throw new RuntimeException("クエリが中断されました", e);
+        } catch (Exception e) {
+            log.error("BigQueryストリーミングクエリ実行に失敗", e);
+            throw new RuntimeException("クエリの実行に失敗しました: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * スキーマから全行で共有する列情報を作成する
+     */
+    private static QueryResult.Columns toColumns(Schema schema) {
+        FieldList fields = schema.getFields();
+        List<String> columnNames = new ArrayList<>(fields.size());
+        List<String> columnTypes = new ArrayList<>(fields.size());
+        for (Field field : fields) {
+            columnNames.add(field.getName());
+            columnTypes.add(field.getMode() == Field.Mode.REPEATED ? "ARRAY" : field.getType().getStandardType().name());
+        }
+        return new QueryResult.Columns(columnNames, columnTypes);
+    }
+
+    /**
+     * 1行分のFieldValueListを列位置の順に値を格納した配列に変換する
+     */
+    private static Object[] toValues(FieldValueList row, int columnCount) {
+        Object[] values = new Object[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            FieldValue fieldValue = row.get(i);
+            values[i] = fieldValue.isNull() ? null : fieldValue.getValue();
+        }
+        return values;
+    }
+
     /**
      * 開発モード用のサンプルクエリ結果を作成
      */
-    private List<Map<String, Object>> createSampleQueryResult() {
-        List<Map<String, Object>> sampleData = new ArrayList<>();
-        Map<String, Object> row1 = new HashMap<>();
-        row1.put("id", 1);
-        row1.put("name", "サンプルユーザー1");
-        row1.put("email", "sample1@example.com");
-        row1.put("created_at", "2023-01-01T00:00:00Z");
-        sampleData.add(row1);
-
-        Map<String, Object> row2 = new HashMap<>();
-        row2.put("id", 2);
-        row2.put("name", "サンプルユーザー2");
-        row2.put("email", "sample2@example.com");
-        row2.put("created_at", "2023-01-02T00:00:00Z");
-        sampleData.add(row2);
-
-        return sampleData;
+    private QueryResult createSampleQueryResult() {
+        QueryResult.Columns columns = new QueryResult.Columns(
+                List.of("id", "name", "email", "created_at"),
+                List.of("INT64", "STRING", "STRING", "TIMESTAMP"));
+        return QueryResult.builder(columns)
+                .addRow(new Object[]{1, "サンプルユーザー1", "sample1@example.com", "2023-01-01T00:00:00Z"})
+                .addRow(new Object[]{2, "サンプルユーザー2", "sample2@example.com", "2023-01-02T00:00:00Z"})
+                .build();
+    }
+
+    /**
+     * 開発モード用のサンプルクエリ結果を、REST APIと同じ値の表現で作成
+     */
+    private static TableResult createSampleTableResult() {
+        FieldList fields = FieldList.of(
+                Field.of("id", StandardSQLTypeName.INT64),
+                Field.of("name", StandardSQLTypeName.STRING),
+                Field.of("email", StandardSQLTypeName.STRING),
+                Field.of("created_at", StandardSQLTypeName.TIMESTAMP));
+        List<FieldValueList> rows = List.of(
+                sampleRow(fields, "1", "サンプルユーザー1", "sample1@example.com", "1672531200.0"),
+                sampleRow(fields, "2", "サンプルユーザー2", "sample2@example.com", "1672617600.0"));
+        return TableResult.newBuilder()
+                .setSchema(Schema.of(fields))
+                .setTotalRows((long) rows.size())
+                .setPageNoSchema(new PageImpl<>(null, null, rows))
+                .build();
+    }
+
+    private static FieldValueList sampleRow(FieldList fields, String... values) {
+        List<FieldValue> row = new ArrayList<>(values.length);
+        for (String value : values) {
+            row.add(FieldValue.of(FieldValue.Attribute.PRIMITIVE, value));
+        }
+        return FieldValueList.of(row, fields);
     }
 
     /**
@@ -150,10 +423,12 @@ public class BigQueryService {
 
             Table table = bigQuery.create(tableInfo);
             log.info("BigQueryテーブル作成完了: {}", table.getTableId());
+            updateCachedTables(tableName, true);
 
         } catch (BigQueryException e) {
             if (e.getCode() == 409) {
                 log.warn("テーブルは既に存在します: {}.{}.{}", projectId, datasetId, tableName);
+                updateCachedTables(tableName, true);
             } else {
                 log.error("BigQueryテーブル作成に失敗", e);
                 throw new RuntimeException("テーブルの作成に失敗しました: " + e.getMessage(), e);
@@ -169,9 +444,26 @@ public class BigQueryService {
      *
      * @param tableName テーブル名
      * @param rows      挿入するデータ行のリスト
-     * @throws RuntimeException データ挿入に失敗した場合
+     * @throws RowInsertException 一部またはすべての行がエラーとなった場合
+     * @throws RuntimeException   データ挿入に失敗した場合
      */
     public void insertData(String tableName, List<Map<String, Object>> rows) {
+        InsertResult result = insertRows(tableName, rows);
+        if (result.hasErrors()) {
+            throw new RowInsertException(result.rowErrors());
+        }
+    }
+
+    /**
+     * データをテーブルに挿入し、行ごとの結果を返す
+     * 一部の行がエラーとなっても例外とせず、エラーとなった行を結果で返す
+     *
+     * @param tableName テーブル名
+     * @param rows      挿入するデータ行のリスト
+     * @return 挿入の結果（エラーとなった行はrowsでの行番号で表す）
+     * @throws RuntimeException データ挿入に失敗した場合
+     */
+    public InsertResult insertRows(String tableName, List<Map<String, Object>> rows) {
         if (tableName == null || tableName.trim().isEmpty()) {
             throw new IllegalArgumentException("テーブル名が空です");
         }
@@ -181,33 +473,29 @@ public class BigQueryService {
 
         if (bigQuery == null) {
             log.info("BigQuery開発モード: テーブル '{}' に {} 件のデータ挿入をシミュレートしました", tableName, rows.size());
-            return;
+            return new InsertResult(rows.size(), 0, 0, Map.of());
         }
 
         try {
             log.info("BigQueryテーブルにデータを挿入: {}.{}.{}, {} 件", projectId, datasetId, tableName, rows.size());
             TableId tableId = TableId.of(projectId, datasetId, tableName);
 
-            List<InsertAllRequest.RowToInsert> rowsToInsert = new ArrayList<>();
-            for (Map<String, Object> row : rows) {
-                rowsToInsert.add(InsertAllRequest.RowToInsert.of(row));
-            }
-
-            InsertAllRequest insertRequest = InsertAllRequest.newBuilder(tableId)
-                    .setRows(rowsToInsert)
-                    .build();
-
-            InsertAllResponse response = bigQuery.insertAll(insertRequest);
-            if (response.hasErrors()) {
-                log.error("データ挿入でエラーが発生: {}", response.getInsertErrors());
-                throw new RuntimeException("データ挿入でエラーが発生しました");
+            // テーブルの設定に応じてinsertAllまたはStorage Write APIで書き込む
+            InsertResult result = rowWriter.write(bigQuery, tableId, rows);
+            if (result.hasErrors()) {
+                log.error("データ挿入でエラーが発生: {} 件中 {} 件, {}", rows.size(), result.rowErrors().size(), result.rowErrors());
+            } else {
+                log.info("BigQueryデータ挿入完了: {} 件（{} リクエスト, 再送 {} 回）",
+                        rows.size(), result.requestCount(), result.retries());
             }
-
-            log.info("BigQueryデータ挿入完了: {} 件", rows.size());
+            return result;
 
         } catch (Exception e) {
             log.error("BigQueryデータ挿入に失敗", e);
             throw new RuntimeException("データ挿入に失敗しました: " + e.getMessage(), e);
+        } finally {
+            // 一部の行が挿入された可能性もあるため、成否に関わらず無効化する
+            invalidateQueryResults(tableName);
         }
     }
 
@@ -231,6 +519,8 @@ public class BigQueryService {
             log.info("BigQueryテーブルを削除: {}.{}.{}", projectId, datasetId, tableName);
             TableId tableId = TableId.of(projectId, datasetId, tableName);
             boolean deleted = bigQuery.delete(tableId);
+            invalidateQueryResults(tableName);
+            updateCachedTables(tableName, false);
 
             if (deleted) {
                 log.info("BigQueryテーブル削除完了: {}", tableId);
@@ -244,8 +534,18 @@ public class BigQueryService {
         }
     }
 
+    /**
+     * テーブルを参照するクエリの実行中の結果とキャッシュを無効化する
+     * 集約を先に外すことで、キャッシュの無効化後に更新前から実行中のクエリへ集約されないようにする
+     */
+    private void invalidateQueryResults(String tableName) {
+        queryCoalescer.invalidateTable(tableName);
+        queryResultCache.invalidateTable(tableName);
+    }
+
     /**
      * データセット内のテーブル一覧を取得する
+     * キャッシュ済みの一覧がある場合はBigQueryに問い合わせずに返す
      *
      * @return テーブル名のリスト
      * @throws RuntimeException テーブル一覧取得に失敗した場合
@@ -256,6 +556,56 @@ public class BigQueryService {
             return List.of("sample_table1", "sample_table2", "users", "products");
         }
 
+        List<String> tables = cachedTables.get();
+        if (tables != null) {
+            return tables;
+        }
+        return refreshTables();
+    }
+
+    /**
+     * BigQueryからテーブル一覧を再取得し、キャッシュを更新する
+     *
+     * @return テーブル名のリスト
+     * @throws RuntimeException テーブル一覧取得に失敗した場合
+     */
+    public List<String> refreshTables() {
+        if (bigQuery == null) {
+            return listTables();
+        }
+
+        List<String> before = cachedTables.get();
+        List<String> tables = fetchTables();
+        // 取得中にテーブルの作成・削除で更新された場合は、その更新を上書きしない
+        if (!cachedTables.compareAndSet(before, tables)) {
+            log.debug("テーブル一覧の取得中にキャッシュが更新されたため、取得結果を破棄しました");
+            return cachedTables.get();
+        }
+        return tables;
+    }
+
+    /**
+     * テーブル一覧のキャッシュを定期的にバックグラウンドで再取得する
+     * 画面表示などのリクエスト処理ではBigQueryへの問い合わせを待たずにキャッシュを参照する
+     */
+    @Scheduled(initialDelayString = "${app.bigquery.table-cache.initial-delay:PT0S}",
+            fixedDelayString = "${app.bigquery.table-cache.refresh-interval:PT1M}")
+    public void refreshTableCache() {
+        if (bigQuery == null) {
+            return;
+        }
+        try {
+            refreshTables();
+        } catch (Exception e) {
+            // 取得に失敗した場合は直前のキャッシュを使い続ける
+            log.warn("テーブル一覧のバックグラウンド更新に失敗しました: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * BigQueryからデータセット内のテーブル一覧を取得する
+     */
+    private List<String> fetchTables() {
         try {
             log.info("BigQueryテーブル一覧を取得: {}.{}", projectId, datasetId);
             DatasetId datasetIdObj = DatasetId.of(projectId, datasetId);
@@ -267,11 +617,31 @@ public class BigQueryService {
             }
 
             log.info("BigQueryテーブル一覧取得完了: {} 件", tableNames.size());
-            return tableNames;
+            return List.copyOf(tableNames);
 
         } catch (Exception e) {
             log.error("BigQueryテーブル一覧取得に失敗", e);
             throw new RuntimeException("テーブル一覧の取得に失敗しました: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * テーブルの作成・削除に合わせてテーブル一覧のキャッシュを更新する
+     * 未取得の場合は次回の取得時に反映されるため何もしない
+     */
+    private void updateCachedTables(String tableName, boolean created) {
+        cachedTables.updateAndGet(tables -> {
+            if (tables == null || tables.contains(tableName) == created) {
+                return tables;
+            }
+            List<String> updated = new ArrayList<>(tables);
+            if (created) {
+                updated.add(tableName);
+                Collections.sort(updated);
+            } else {
+                updated.remove(tableName);
+            }
+            return List.copyOf(updated);
+        });
+    }
 }
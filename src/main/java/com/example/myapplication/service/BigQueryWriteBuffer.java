@@ -0,0 +1,265 @@
+package com.example.myapplication.service;
+
+import com.google.cloud.bigquery.BigQueryError;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BigQueryへのデータ挿入をテーブルごとにまとめて送信する書き込みバッファ
+ * 複数の呼び出し元から受け付けた行を、行数・推定バイト数・待機時間（linger）のいずれかの条件で
+ * 1回のinsertAllとして送信する
+ * バッファ済みの行数が上限に達した場合は、空きができるまで呼び出し元を待機させる（バックプレッシャー）
+ * 行ごとのエラーは呼び出し元ごとの行の範囲に振り分け、エラーとなった行を含む呼び出し元にのみ
+ * その呼び出し元の行番号で{@link RowInsertException}を通知する
+ */
+@Slf4j
+@Component
+public class BigQueryWriteBuffer {
+
+    private final BigQueryService bigQueryService;
+    private final boolean enabled;
+    private final int maxBatchRows;
+    private final long maxBatchBytes;
+    private final Duration linger;
+    private final Duration enqueueTimeout;
+
+    /**
+     * バッファ可能な行数の残り（送信が完了した時点で返却される）
+     */
+    private final Semaphore capacity;
+    private final int maxBufferedRows;
+
+    private final ConcurrentMap<String, TableBuffer> buffers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService lingerScheduler;
+    private final ExecutorService flushExecutor;
+
+    @Autowired
+    public BigQueryWriteBuffer(BigQueryService bigQueryService,
+                               @Value("${app.bigquery.write-buffer.enabled:true}") boolean enabled,
+                               @Value("${app.bigquery.write-buffer.max-batch-rows:500}") int maxBatchRows,
+                               @Value("${app.bigquery.write-buffer.max-batch-bytes:5242880}") long maxBatchBytes,
+                               @Value("${app.bigquery.write-buffer.linger:PT0.2S}") Duration linger,
+                               @Value("${app.bigquery.write-buffer.max-buffered-rows:10000}") int maxBufferedRows,
+                               @Value("${app.bigquery.write-buffer.enqueue-timeout:PT5S}") Duration enqueueTimeout,
+                               @Value("${app.bigquery.write-buffer.flush-threads:4}") int flushThreads) {
+        this.bigQueryService = bigQueryService;
+        this.enabled = enabled;
+        this.maxBatchRows = maxBatchRows;
+        this.maxBatchBytes = maxBatchBytes;
+        this.linger = linger;
+        this.maxBufferedRows = maxBufferedRows;
+        this.capacity = new Semaphore(maxBufferedRows, true);
+        this.enqueueTimeout = enqueueTimeout;
+        this.lingerScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("bq-write-linger"));
+        this.flushExecutor = Executors.newFixedThreadPool(flushThreads, daemonThreads("bq-write-flush"));
+        log.info("BigQueryWriteBuffer initialized: enabled={}, maxBatchRows={}, maxBatchBytes={}, linger={}, maxBufferedRows={}",
+                enabled, maxBatchRows, maxBatchBytes, linger, maxBufferedRows);
+    }
+
+    /**
+     * 行をバッファに追加し、送信が完了した時点で完了するFutureを返す
+     * 1回のバッチ上限を超える行数の場合は、バッファを介さずにそのまま送信する
+     *
+     * @param tableName テーブル名
+     * @param rows      挿入するデータ行のリスト
+     * @return 行の送信が完了（または失敗）した時点で完了するFuture
+     * （一部の行がエラーとなった場合は{@link RowInsertException}で失敗する）
+     * @throws IllegalArgumentException   テーブル名またはデータが空の場合
+     * @throws RejectedExecutionException バッファが満杯のまま待機時間を超えた場合
+     */
+    public CompletableFuture<Void> submit(String tableName, List<Map<String, Object>> rows) {
+        if (tableName == null || tableName.trim().isEmpty()) {
+            throw new IllegalArgumentException("テーブル名が空です");
+        }
+        if (rows == null || rows.isEmpty()) {
+            throw new IllegalArgumentException("挿入するデータが空です");
+        }
+
+        if (!enabled) {
+            bigQueryService.insertData(tableName, rows);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (rows.size() >= maxBatchRows) {
+            int permits = Math.min(rows.size(), maxBufferedRows);
+            acquire(permits);
+            return CompletableFuture.runAsync(() -> bigQueryService.insertData(tableName, rows), flushExecutor)
+                    .whenComplete((ignored, error) -> capacity.release(permits));
+        }
+
+        acquire(rows.size());
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        buffers.computeIfAbsent(tableName, TableBuffer::new).add(rows, completion);
+        return completion;
+    }
+
+    /**
+     * バッファ済みの行数（送信中の行を含む）
+     *
+     * @return バッファ済みの行数
+     */
+    public int getBufferedRows() {
+        return maxBufferedRows - capacity.availablePermits();
+    }
+
+    /**
+     * 全テーブルのバッファを送信する
+     */
+    public void flushAll() {
+        buffers.values().forEach(TableBuffer::flush);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        flushAll();
+        lingerScheduler.shutdown();
+        flushExecutor.shutdown();
+        if (!flushExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("書き込みバッファの送信が終了時に完了しませんでした");
+        }
+    }
+
+    private void acquire(int rowCount) {
+        try {
+            if (!capacity.tryAcquire(rowCount, enqueueTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new RejectedExecutionException("書き込みバッファが満杯です。しばらくしてから再試行してください");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("書き込みバッファへの追加が中断されました", e);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger sequence = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 1テーブル分のバッファ
+     */
+    private final class TableBuffer {
+
+        private final String tableName;
+        private List<Map<String, Object>> rows = new ArrayList<>();
+        private List<Pending> pendings = new ArrayList<>();
+        private long bytes;
+        private ScheduledFuture<?> lingerTask;
+
+        private TableBuffer(String tableName) {
+            this.tableName = tableName;
+        }
+
+        private void add(List<Map<String, Object>> newRows, CompletableFuture<Void> completion) {
+            boolean full;
+            synchronized (this) {
+                pendings.add(new Pending(completion, rows.size(), newRows.size()));
+                rows.addAll(newRows);
+                for (Map<String, Object> row : newRows) {
+                    bytes += RowSizes.estimate(row);
+                }
+                full = rows.size() >= maxBatchRows || bytes >= maxBatchBytes;
+                if (!full && lingerTask == null) {
+                    lingerTask = lingerScheduler.schedule(this::flush, linger.toMillis(), TimeUnit.MILLISECONDS);
+                }
+            }
+            if (full) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            List<Map<String, Object>> batch;
+            List<Pending> batchPendings;
+            synchronized (this) {
+                if (rows.isEmpty()) {
+                    return;
+                }
+                batch = rows;
+                batchPendings = pendings;
+                rows = new ArrayList<>();
+                pendings = new ArrayList<>();
+                bytes = 0;
+                if (lingerTask != null) {
+                    lingerTask.cancel(false);
+                    lingerTask = null;
+                }
+            }
+            flushExecutor.execute(() -> send(batch, batchPendings));
+        }
+
+        private void send(List<Map<String, Object>> batch, List<Pending> batchPendings) {
+            InsertResult result = null;
+            Exception failure = null;
+            try {
+                log.debug("書き込みバッファを送信: {} に {} 件（{} リクエスト分）", tableName, batch.size(), batchPendings.size());
+                result = bigQueryService.insertRows(tableName, batch);
+            } catch (Exception e) {
+                failure = e;
+            }
+            // 呼び出し元に完了を通知する前に空きを返却し、待機中の追加を再開させる
+            capacity.release(batch.size());
+            for (Pending pending : batchPendings) {
+                if (failure != null) {
+                    // どの行が挿入されたか分からないため、全ての呼び出し元に通知する
+                    pending.completion().completeExceptionally(failure);
+                    continue;
+                }
+                Map<Long, List<BigQueryError>> errors = pending.errorsOf(result.rowErrors());
+                if (errors.isEmpty()) {
+                    pending.completion().complete(null);
+                } else {
+                    pending.completion().completeExceptionally(new RowInsertException(errors));
+                }
+            }
+        }
+    }
+
+    /**
+     * 送信待ちの呼び出し
+     *
+     * @param completion 送信の完了を通知するFuture
+     * @param offset     バッチ内での先頭の行番号
+     * @param rowCount   行数
+     */
+    private record Pending(CompletableFuture<Void> completion, int offset, int rowCount) {
+
+        /**
+         * バッチ全体の行ごとのエラーから、この呼び出しの行のエラーを呼び出し元の行番号で取り出す
+         */
+        private Map<Long, List<BigQueryError>> errorsOf(Map<Long, List<BigQueryError>> rowErrors) {
+            Map<Long, List<BigQueryError>> errors = new HashMap<>();
+            rowErrors.forEach((index, rowError) -> {
+                if (index >= offset && index < offset + rowCount) {
+                    errors.put(index - offset, rowError);
+                }
+            });
+            return errors;
+        }
+    }
+}
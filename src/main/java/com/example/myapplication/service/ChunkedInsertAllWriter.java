@@ -0,0 +1,253 @@
+package com.example.myapplication.service;
+
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.BigQueryError;
+import com.google.cloud.bigquery.BigQueryException;
+import com.google.cloud.bigquery.InsertAllRequest;
+import com.google.cloud.bigquery.InsertAllResponse;
+import com.google.cloud.bigquery.TableId;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * insertAll（ストリーミング挿入）をリクエストサイズの上限内に分割して送信する
+ * 行数と推定バイト数で行をチャンクに分割し、並列数を制限して同時に送信する
+ * 各行には送信前にinsertIdを割り当てるため、失敗したチャンクや一時的なエラーとなった行を再送しても行が重複しない
+ * チャンクごとの結果は1つの{@link InsertResult}にまとめて返す
+ * 送信に失敗したチャンクがあっても例外とはせず、そのチャンクの全行をエラーとして結果に含める
+ */
+@Slf4j
+@Component
+public class ChunkedInsertAllWriter implements BigQueryRowWriter {
+
+    /**
+     * BigQueryの推奨値に合わせた1リクエストあたりの行数
+     */
+    public static final int DEFAULT_MAX_CHUNK_ROWS = 500;
+
+    /**
+     * 1リクエストあたりの上限（10MB）に余裕を持たせた推定バイト数
+     */
+    public static final long DEFAULT_MAX_CHUNK_BYTES = 9L * 1024 * 1024;
+
+    /**
+     * 同じinsertIdで再送すれば挿入できる可能性がある行エラーの理由
+     * stoppedは同じリクエストの他の行のエラーにより挿入されなかった行を表す
+     */
+    private static final Set<String> RETRYABLE_ROW_REASONS = Set.of("backendError", "stopped", "internalError", "timeout");
+
+    /**
+     * リクエスト自体が失敗した場合に、チャンクの各行に設定するエラーの理由
+     */
+    static final String REQUEST_FAILED_REASON = "requestFailed";
+
+    private final int maxChunkRows;
+    private final long maxChunkBytes;
+    private final int maxRetries;
+    private final Duration retryBackoff;
+    private final int parallelism;
+    private final FanOutExecutor fanOutExecutor;
+    private final boolean ownsExecutor;
+
+    @Autowired
+    public ChunkedInsertAllWriter(FanOutExecutor fanOutExecutor,
+                                  @Value("${app.bigquery.insert.max-chunk-rows:500}") int maxChunkRows,
+                                  @Value("${app.bigquery.insert.max-chunk-bytes:9437184}") long maxChunkBytes,
+                                  @Value("${app.bigquery.insert.parallelism:4}") int parallelism,
+                                  @Value("${app.bigquery.insert.max-retries:3}") int maxRetries,
+                                  @Value("${app.bigquery.insert.retry-backoff:PT0.2S}") Duration retryBackoff) {
+        this(fanOutExecutor, false, maxChunkRows, maxChunkBytes, parallelism, maxRetries, retryBackoff);
+    }
+
+    public ChunkedInsertAllWriter(int maxChunkRows, long maxChunkBytes, int parallelism, int maxRetries,
+                                  Duration retryBackoff) {
+        this(FanOutExecutor.platform("bq-insert", parallelism), true,
+                maxChunkRows, maxChunkBytes, parallelism, maxRetries, retryBackoff);
+    }
+
+    private ChunkedInsertAllWriter(FanOutExecutor fanOutExecutor, boolean ownsExecutor, int maxChunkRows,
+                                   long maxChunkBytes, int parallelism, int maxRetries, Duration retryBackoff) {
+        this.fanOutExecutor = fanOutExecutor;
+        this.ownsExecutor = ownsExecutor;
+        this.maxChunkRows = maxChunkRows;
+        this.maxChunkBytes = maxChunkBytes;
+        this.parallelism = parallelism;
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+        log.info("ChunkedInsertAllWriter initialized: maxChunkRows={}, maxChunkBytes={}, parallelism={}, maxRetries={}",
+                maxChunkRows, maxChunkBytes, parallelism, maxRetries);
+    }
+
+    /**
+     * 既定の設定でインスタンスを作成する
+     *
+     * @return 既定の分割・並列・再送設定のインスタンス
+     */
+    public static ChunkedInsertAllWriter withDefaults() {
+        return new ChunkedInsertAllWriter(DEFAULT_MAX_CHUNK_ROWS, DEFAULT_MAX_CHUNK_BYTES, 4, 3, Duration.ofMillis(200));
+    }
+
+    /**
+     * 行をチャンクに分割してinsertAllで送信する
+     */
+    @Override
+    public InsertResult write(BigQuery bigQuery, TableId tableId, List<Map<String, Object>> rows) {
+        List<Chunk> chunks = split(rows);
+        if (chunks.size() == 1) {
+            // 1チャンクの場合はスレッドを切り替えずに呼び出し元で送信する
+            return merge(rows.size(), List.of(send(bigQuery, tableId, chunks.get(0))));
+        }
+
+        log.info("insertAllを {} チャンクに分割して送信: {}, {} 件", chunks.size(), tableId, rows.size());
+        List<Supplier<ChunkResult>> tasks = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks) {
+            tasks.add(() -> send(bigQuery, tableId, chunk));
+        }
+        List<ChunkResult> results = fanOutExecutor.invokeAll(tasks, parallelism);
+        return merge(rows.size(), results);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ownsExecutor) {
+            fanOutExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 行数と推定バイト数の上限を超えないようにチャンクへ分割し、各行にinsertIdを割り当てる
+     */
+    List<Chunk> split(List<Map<String, Object>> rows) {
+        List<Chunk> chunks = new ArrayList<>();
+        int firstIndex = 0;
+        for (List<Map<String, Object>> partition : RowSizes.partition(rows, maxChunkRows, maxChunkBytes)) {
+            List<InsertAllRequest.RowToInsert> rowsToInsert = new ArrayList<>(partition.size());
+            for (Map<String, Object> row : partition) {
+                rowsToInsert.add(InsertAllRequest.RowToInsert.of(UUID.randomUUID().toString(), row));
+            }
+            chunks.add(new Chunk(firstIndex, rowsToInsert));
+            firstIndex += partition.size();
+        }
+        return chunks;
+    }
+
+    /**
+     * 1チャンクを送信する
+     * リクエスト自体が失敗した場合はチャンク全体を、一時的な行エラー（backendError・stopped等）となった場合はその行のみを、
+     * 同じinsertIdのまま待機時間を伸ばしながら再送する
+     * 再送できないエラーや再送回数の上限に達した場合は、未挿入の行をエラーとして返す
+     */
+    private ChunkResult send(BigQuery bigQuery, TableId tableId, Chunk chunk) {
+        Map<Long, List<BigQueryError>> errors = new TreeMap<>();
+        // 送信する行のチャンク内での行番号
+        List<Integer> pending = new ArrayList<>(chunk.rows().size());
+        for (int i = 0; i < chunk.rows().size(); i++) {
+            pending.add(i);
+        }
+        int attempt = 0;
+        while (true) {
+            List<InsertAllRequest.RowToInsert> rows = new ArrayList<>(pending.size());
+            pending.forEach(index -> rows.add(chunk.rows().get(index)));
+            List<Integer> retryable = new ArrayList<>();
+            Map<Long, List<BigQueryError>> retryableErrors = new TreeMap<>();
+            try {
+                InsertAllResponse response = bigQuery.insertAll(InsertAllRequest.newBuilder(tableId)
+                        .setRows(rows)
+                        .build());
+                if (response.hasErrors()) {
+                    response.getInsertErrors().forEach((requestIndex, rowErrors) -> {
+                        long index = pending.get(requestIndex.intValue());
+                        if (isRetryable(rowErrors)) {
+                            retryable.add((int) index);
+                            retryableErrors.put(index, rowErrors);
+                        } else {
+                            errors.put(index, rowErrors);
+                        }
+                    });
+                }
+            } catch (BigQueryException e) {
+                if (attempt >= maxRetries || !isRetryable(e)) {
+                    log.error("insertAllチャンク（先頭行 {}、{} 件）の送信に失敗しました: {}",
+                            chunk.firstIndex(), pending.size(), e.getMessage());
+                    List<BigQueryError> requestError = List.of(toError(e));
+                    pending.forEach(index -> errors.put((long) index, requestError));
+                    return new ChunkResult(chunk, errors, attempt);
+                }
+                attempt++;
+                log.warn("insertAllチャンク（先頭行 {}、{} 件）の送信に失敗したため再送します（{}/{}回目）: {}",
+                        chunk.firstIndex(), pending.size(), attempt, maxRetries, e.getMessage());
+                sleep(retryBackoff.multipliedBy(1L << Math.min(attempt - 1, 10)));
+                continue;
+            }
+
+            if (retryable.isEmpty()) {
+                return new ChunkResult(chunk, errors, attempt);
+            }
+            if (attempt >= maxRetries) {
+                errors.putAll(retryableErrors);
+                return new ChunkResult(chunk, errors, attempt);
+            }
+            attempt++;
+            log.warn("insertAllチャンク（先頭行 {}）の {} 件が一時的なエラーとなったため再送します（{}/{}回目）",
+                    chunk.firstIndex(), retryable.size(), attempt, maxRetries);
+            pending.clear();
+            pending.addAll(retryable);
+            sleep(retryBackoff.multipliedBy(1L << Math.min(attempt - 1, 10)));
+        }
+    }
+
+    /**
+     * 行のエラーがすべて再送で解消し得るものかどうかを判定する
+     */
+    private static boolean isRetryable(List<BigQueryError> rowErrors) {
+        return !rowErrors.isEmpty()
+                && rowErrors.stream().allMatch(error -> RETRYABLE_ROW_REASONS.contains(error.getReason()));
+    }
+
+    private static BigQueryError toError(BigQueryException e) {
+        BigQueryError error = e.getError();
+        return error != null ? error : new BigQueryError(REQUEST_FAILED_REASON, null, e.getMessage());
+    }
+
+    private static boolean isRetryable(BigQueryException e) {
+        return e.isRetryable() || e.getCode() == 429 || e.getCode() >= 500 || e.getCode() == 0;
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("insertAllの再送待機が中断されました", e);
+        }
+    }
+
+    private static InsertResult merge(int rowCount, List<ChunkResult> results) {
+        Map<Long, List<BigQueryError>> rowErrors = new TreeMap<>();
+        int retries = 0;
+        for (ChunkResult result : results) {
+            retries += result.retries();
+            // チャンク内の行番号を元のリスト全体での行番号に変換する
+            result.errors().forEach((index, errors) -> rowErrors.put(result.chunk().firstIndex() + index, errors));
+        }
+        return new InsertResult(rowCount, results.size(), retries, rowErrors);
+    }
+
+    record Chunk(int firstIndex, List<InsertAllRequest.RowToInsert> rows) {
+    }
+
+    private record ChunkResult(Chunk chunk, Map<Long, List<BigQueryError>> errors, int retries) {
+    }
+}
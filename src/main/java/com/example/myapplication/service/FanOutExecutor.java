@@ -0,0 +1,147 @@
+package com.example.myapplication.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.system.JavaVersion;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 1つのリクエストから複数のブロッキング呼び出し（チャンクの送信やストリームの読み込み）を
+ * 並列に実行するための実行環境
+ * 仮想スレッドが有効な場合（{@code spring.threads.virtual.enabled=true}、Java 21以降）は
+ * タスクごとに仮想スレッドを作成し、それ以外は固定数のプラットフォームスレッドで実行する
+ * 同時に実行するタスク数は呼び出しごとに指定した並列数で制限する
+ */
+@Slf4j
+@Component
+public class FanOutExecutor {
+
+    private static final String THREAD_NAME_PREFIX = "fan-out";
+
+    private final Executor executor;
+    private final ExecutorService platformPool;
+
+    @Autowired
+    public FanOutExecutor(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                          @Value("${app.fan-out.platform-threads:16}") int platformThreads) {
+        this(virtualThreads && isVirtualThreadSupported(), THREAD_NAME_PREFIX, platformThreads);
+        if (virtualThreads && !isVirtual()) {
+            log.warn("仮想スレッドはJava 21以降でのみ使用できるため、プラットフォームスレッドで実行します（実行環境: Java {}）",
+                    JavaVersion.getJavaVersion());
+        }
+        log.info("FanOutExecutor initialized: virtualThreads={}, platformThreads={}", isVirtual(), platformThreads);
+    }
+
+    private FanOutExecutor(boolean virtualThreads, String threadNamePrefix, int platformThreads) {
+        if (virtualThreads) {
+            this.executor = new VirtualThreadTaskExecutor(threadNamePrefix + "-");
+            this.platformPool = null;
+        } else {
+            AtomicInteger sequence = new AtomicInteger();
+            this.platformPool = Executors.newFixedThreadPool(Math.max(1, platformThreads), runnable -> {
+                Thread thread = new Thread(runnable, threadNamePrefix + "-" + sequence.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor = platformPool;
+        }
+    }
+
+    /**
+     * 固定数のプラットフォームスレッドで実行するインスタンスを作成する
+     *
+     * @param threadNamePrefix スレッド名の接頭辞
+     * @param threads          スレッド数
+     * @return プラットフォームスレッドで実行するインスタンス
+     */
+    public static FanOutExecutor platform(String threadNamePrefix, int threads) {
+        return new FanOutExecutor(false, threadNamePrefix, threads);
+    }
+
+    /**
+     * タスクごとに仮想スレッドを作成して実行するインスタンスを作成する
+     *
+     * @param threadNamePrefix スレッド名の接頭辞
+     * @return 仮想スレッドで実行するインスタンス
+     * @throws UnsupportedOperationException 実行環境がJava 21未満の場合
+     */
+    public static FanOutExecutor virtual(String threadNamePrefix) {
+        if (!isVirtualThreadSupported()) {
+            throw new UnsupportedOperationException("仮想スレッドはJava 21以降でのみ使用できます");
+        }
+        return new FanOutExecutor(true, threadNamePrefix, 0);
+    }
+
+    /**
+     * 実行環境で仮想スレッドを使用できるかどうかを判定する
+     *
+     * @return Java 21以降の場合true
+     */
+    public static boolean isVirtualThreadSupported() {
+        return JavaVersion.getJavaVersion().isEqualOrNewerThan(JavaVersion.TWENTY_ONE);
+    }
+
+    /**
+     * @return 仮想スレッドで実行する場合true
+     */
+    public boolean isVirtual() {
+        return platformPool == null;
+    }
+
+    /**
+     * タスクを並列に実行し、すべての完了を待って結果をタスクの順に返す
+     * 同時に実行するタスクはparallelism件までとし、それを超えるタスクは先行するタスクの完了を待って開始する
+     *
+     * @param tasks       実行するタスク
+     * @param parallelism 同時に実行する最大タスク数
+     * @param <T>         タスクの結果の型
+     * @return タスクの結果（タスクの順）
+     * @throws RuntimeException いずれかのタスクが失敗した場合（タスクが送出した例外）
+     */
+    public <T> List<T> invokeAll(List<? extends Supplier<T>> tasks, int parallelism) {
+        Semaphore permits = new Semaphore(Math.max(1, parallelism));
+        List<CompletableFuture<T>> futures = new ArrayList<>(tasks.size());
+        for (Supplier<T> task : tasks) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(future -> future.cancel(true));
+                throw new IllegalStateException("並列実行の開始待ちが中断されました", e);
+            }
+            futures.add(CompletableFuture.supplyAsync(task, executor)
+                    .whenComplete((result, error) -> permits.release()));
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (platformPool != null) {
+            platformPool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.myapplication.service;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gemini API呼び出しの耐障害性の設定
+ * 呼び出しを次の順に包む
+ * <ol>
+ *     <li>同時呼び出し数の適応的な制限（{@link AdaptiveConcurrencyLimiter}）</li>
+ *     <li>サーキットブレーカー（失敗率が閾値を超えると一定時間呼び出さずに即座に失敗させる）</li>
+ *     <li>429・5xxの場合の再試行（指数バックオフとジッター）</li>
+ * </ol>
+ * 上限の値・ブレーカーの状態・再試行回数はMicrometerのメトリクスとして公開する
+ */
+@Slf4j
+@Component
+public class GeminiResilience {
+
+    static final String CIRCUIT_BREAKER_NAME = "gemini";
+
+    /**
+     * 再試行の待機時間に加えるランダムな揺らぎの割合
+     */
+    private static final double RETRY_JITTER = 0.5;
+
+    private final boolean enabled;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final CircuitBreaker circuitBreaker;
+    private final int maxRetries;
+    private final Duration minBackoff;
+    private final Duration maxBackoff;
+    private final LongAdder retryCount = new LongAdder();
+
+    @Autowired
+    public GeminiResilience(@Value("${app.ai.resilience.enabled:true}") boolean enabled,
+                            @Value("${app.ai.resilience.limit.initial:10}") int initialLimit,
+                            @Value("${app.ai.resilience.limit.min:1}") int minLimit,
+                            @Value("${app.ai.resilience.limit.max:50}") int maxLimit,
+                            @Value("${app.ai.resilience.retry.max-retries:2}") int maxRetries,
+                            @Value("${app.ai.resilience.retry.min-backoff:PT0.5S}") Duration minBackoff,
+                            @Value("${app.ai.resilience.retry.max-backoff:PT5S}") Duration maxBackoff,
+                            @Value("${app.ai.resilience.circuit-breaker.failure-rate-threshold:50}") float failureRateThreshold,
+                            @Value("${app.ai.resilience.circuit-breaker.sliding-window-size:20}") int slidingWindowSize,
+                            @Value("${app.ai.resilience.circuit-breaker.wait-in-open-state:PT30S}") Duration waitInOpenState,
+                            MeterRegistry meterRegistry) {
+        this(enabled, new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, 0.9),
+                maxRetries, minBackoff, maxBackoff, failureRateThreshold, slidingWindowSize, waitInOpenState);
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+        Gauge.builder("gemini.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Gemini APIの同時呼び出し数の上限")
+                .register(meterRegistry);
+        Gauge.builder("gemini.concurrency.in-flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("実行中のGemini API呼び出し数")
+                .register(meterRegistry);
+        FunctionCounter.builder("gemini.concurrency.rejected", limiter, AdaptiveConcurrencyLimiter::getRejectedCount)
+                .description("同時呼び出し数の上限により拒否したGemini API呼び出し数")
+                .register(meterRegistry);
+        FunctionCounter.builder("gemini.retries", retryCount, LongAdder::sum)
+                .description("Gemini API呼び出しの再試行回数")
+                .register(meterRegistry);
+    }
+
+    public GeminiResilience(boolean enabled, AdaptiveConcurrencyLimiter limiter, int maxRetries,
+                            Duration minBackoff, Duration maxBackoff, float failureRateThreshold,
+                            int slidingWindowSize, Duration waitInOpenState) {
+        this.enabled = enabled;
+        this.limiter = limiter;
+        this.maxRetries = maxRetries;
+        this.minBackoff = minBackoff;
+        this.maxBackoff = maxBackoff;
+        this.circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(slidingWindowSize)
+                .waitDurationInOpenState(waitInOpenState)
+                .permittedNumberOfCallsInHalfOpenState(3)
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                // 過負荷や障害を示すエラーのみを失敗として数える
+                .recordException(GeminiResilience::isOverload)
+                .build());
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(CIRCUIT_BREAKER_NAME);
+        circuitBreaker.getEventPublisher().onStateTransition(event ->
+                log.warn("Gemini APIのサーキットブレーカーの状態が変化しました: {}", event.getStateTransition()));
+        log.info("GeminiResilience initialized: enabled={}, limit={}, maxRetries={}, failureRateThreshold={}, slidingWindowSize={}",
+                enabled, limiter.getLimit(), maxRetries, failureRateThreshold, slidingWindowSize);
+    }
+
+    /**
+     * 制限・ブレーカー・再試行を行わないインスタンスを作成する
+     *
+     * @return 呼び出しをそのまま実行する無効なインスタンス
+     */
+    public static GeminiResilience disabled() {
+        return new GeminiResilience(false, new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5),
+                0, Duration.ZERO, Duration.ZERO, 50, 1, Duration.ofSeconds(1));
+    }
+
+    /**
+     * Gemini APIの呼び出しを包む
+     *
+     * @param call Gemini APIの呼び出し
+     * @param <T>  結果の型
+     * @return 制限・ブレーカー・再試行を適用した呼び出し
+     */
+    public <T> Mono<T> decorate(Mono<T> call) {
+        if (!enabled) {
+            return call;
+        }
+        return limiter.limit(call, GeminiResilience::isOverload)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .retryWhen(retrySpec());
+    }
+
+    /**
+     * Gemini APIのストリーミング呼び出しを包む
+     * 再試行の対象となる429・5xxはテキストの発行前に返るため、再試行でテキストが重複することはない
+     *
+     * @param call Gemini APIのストリーミング呼び出し
+     * @param <T>  要素の型
+     * @return 制限・ブレーカー・再試行を適用した呼び出し
+     */
+    public <T> Flux<T> decorate(Flux<T> call) {
+        if (!enabled) {
+            return call;
+        }
+        return limiter.limit(call, GeminiResilience::isOverload)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .retryWhen(retrySpec());
+    }
+
+    /**
+     * @return サーキットブレーカーの現在の状態
+     */
+    public CircuitBreaker.State getCircuitBreakerState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * @return 同時呼び出し数のリミッター
+     */
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    private Retry retrySpec() {
+        return Retry.backoff(maxRetries, minBackoff)
+                .maxBackoff(maxBackoff)
+                .jitter(RETRY_JITTER)
+                .filter(GeminiResilience::isRetryable)
+                .doBeforeRetry(signal -> {
+                    retryCount.increment();
+                    log.warn("Gemini API呼び出しを再試行します（{}/{}回目）: {}",
+                            signal.totalRetries() + 1, maxRetries, signal.failure().getMessage());
+                })
+                // 再試行し尽くした場合は最後のエラーをそのまま返す
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    /**
+     * 再試行すべきエラー（429・5xx）かどうかを判定する
+     */
+    static boolean isRetryable(Throwable e) {
+        return e instanceof WebClientResponseException response
+                && (response.getStatusCode().value() == 429 || response.getStatusCode().is5xxServerError());
+    }
+
+    /**
+     * 呼び出し先の過負荷や障害を示すエラー（タイムアウト・接続エラー・429・5xx）かどうかを判定する
+     */
+    static boolean isOverload(Throwable e) {
+        return isRetryable(e) || e instanceof TimeoutException || e instanceof WebClientRequestException;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.myapplication.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Gemini APIのレスポンスから生成されたテキスト（candidates[0].content.parts[0].text）を抽出する
+ * 受信したDataBufferをコピーせずにJacksonのノンブロッキングパーサーへ渡し、
+ * 文字列やJsonNodeのツリーを作らずにトークン単位で読み進める
+ */
+final class GeminiTextExtractor {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * テキストの位置（レスポンスのルートからのパス）
+     */
+    private static final Object[] TEXT_PATH = {"candidates", 0, "content", "parts", 0, "text"};
+
+    private final JsonParser parser;
+    private final ByteBufferFeeder feeder;
+    private final boolean responseArray;
+    private boolean found;
+
+    private GeminiTextExtractor(boolean responseArray) {
+        try {
+            this.parser = JSON_FACTORY.createNonBlockingByteBufferParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("JSONパーサーを作成できませんでした", e);
+        }
+        this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+        this.responseArray = responseArray;
+    }
+
+    /**
+     * generateContentのレスポンスからテキストを抽出する
+     * テキストを見つけた後は解析をやめ、残りのレスポンスは読み捨てる（接続をプールに戻すため）
+     *
+     * @param body レスポンスボディ
+     * @return テキスト（レスポンスにテキストが含まれない場合は空）
+     */
+    static Mono<String> extractText(Flux<DataBuffer> body) {
+        return Flux.defer(() -> {
+                    GeminiTextExtractor extractor = new GeminiTextExtractor(false);
+                    return body.flatMapIterable(extractor::process)
+                            .doFinally(signal -> extractor.close());
+                })
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                .singleOrEmpty();
+    }
+
+    /**
+     * streamGenerateContentのレスポンス（レスポンスのJSON配列）から、要素ごとにテキストを抽出する
+     * 配列の要素を受信し終えるのを待たず、テキストの値を読み終えた時点で発行する
+     *
+     * @param body レスポンスボディ
+     * @return 要素ごとのテキスト（テキストを含まない要素は読み飛ばす）
+     */
+    static Flux<String> extractTexts(Flux<DataBuffer> body) {
+        return Flux.defer(() -> {
+                    GeminiTextExtractor extractor = new GeminiTextExtractor(true);
+                    return body.flatMapIterable(extractor::process)
+                            .doFinally(signal -> extractor.close());
+                })
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /**
+     * 受信したバッファを解析し、読み終えたテキストを返す
+     * テキストを含まないバッファが大半のため、その場合は空のリストを返す
+     */
+    private List<String> process(DataBuffer buffer) {
+        if (found) {
+            DataBufferUtils.release(buffer);
+            return List.of();
+        }
+        List<String> texts = new ArrayList<>(1);
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            while (iterator.hasNext() && !found) {
+                feed(iterator.next(), texts::add);
+            }
+        } catch (IOException e) {
+            throw new DecodingException("Gemini APIのレスポンスを解析できませんでした: " + e.getMessage(), e);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+        return texts;
+    }
+
+    /**
+     * バッファを渡し、続きのデータが必要になるまでトークンを読み進める
+     * バッファの内容はこのメソッド内ですべて読み終えるため、呼び出し後にバッファを解放してよい
+     */
+    private void feed(ByteBuffer byteBuffer, Consumer<String> output) throws IOException {
+        feeder.feedInput(byteBuffer);
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.NOT_AVAILABLE && token != null) {
+            if (token == JsonToken.VALUE_STRING && isTextPath(parser.getParsingContext())) {
+                output.accept(parser.getText());
+                if (!responseArray) {
+                    // 単一のレスポンスではテキストは1つのため、以降は解析しない
+                    found = true;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 現在の値の位置がテキストのパスと一致するかどうかを、パスの文字列を組み立てずに判定する
+     */
+    private boolean isTextPath(JsonStreamContext context) {
+        JsonStreamContext current = context;
+        for (int i = TEXT_PATH.length - 1; i >= 0; i--) {
+            if (current == null) {
+                return false;
+            }
+            if (TEXT_PATH[i] instanceof String name) {
+                if (!current.inObject() || !name.equals(current.getCurrentName())) {
+                    return false;
+                }
+            } else if (!current.inArray() || current.getCurrentIndex() != (Integer) TEXT_PATH[i]) {
+                return false;
+            }
+            current = current.getParent();
+        }
+        if (responseArray) {
+            return current.inArray() && current.getParent() != null && current.getParent().inRoot();
+        }
+        return current.inRoot();
+    }
+
+    private void close() {
+        try {
+            parser.close();
+        } catch (IOException e) {
+            // 解析を終えたパーサーのため無視する
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.myapplication.service;
+
+import com.google.cloud.bigquery.BigQueryError;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * データ挿入の結果
+ * 複数のリクエストに分けて送信した場合も、1回の挿入としてまとめた結果を表す
+ *
+ * @param rowCount     送信した行数
+ * @param requestCount 送信したリクエスト（チャンク・追記）の数
+ * @param retries      全リクエストでの再送回数の合計
+ * @param rowErrors    エラーとなった行（元のリストでの行番号）とそのエラー
+ */
+public record InsertResult(int rowCount, int requestCount, int retries, Map<Long, List<BigQueryError>> rowErrors) {
+
+    public boolean hasErrors() {
+        return !rowErrors.isEmpty();
+    }
+}
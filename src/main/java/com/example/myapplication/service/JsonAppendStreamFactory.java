@@ -0,0 +1,146 @@
+package com.example.myapplication.service;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.bigquery.TableId;
+import com.google.cloud.bigquery.storage.v1.AppendRowsResponse;
+import com.google.cloud.bigquery.storage.v1.BigQueryWriteClient;
+import com.google.cloud.bigquery.storage.v1.Exceptions;
+import com.google.cloud.bigquery.storage.v1.JsonStreamWriter;
+import com.google.cloud.bigquery.storage.v1.RowError;
+import com.google.cloud.bigquery.storage.v1.TableName;
+import com.google.cloud.bigquery.storage.v1.WriteStream;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.Descriptors;
+import lombok.extern.slf4j.Slf4j;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * JsonStreamWriterを使用してStorage Write APIのストリームを開く
+ * 行はテーブルスキーマから生成したprotobufメッセージに変換して送信される
+ * 書き込みクライアントは最初にストリームを開いた時点で作成する
+ */
+@Slf4j
+final class JsonAppendStreamFactory implements StorageWriteApiWriter.AppendStreamFactory {
+
+    private BigQueryWriteClient client;
+
+    @Override
+    public StorageWriteApiWriter.AppendStream open(TableId tableId, StorageWriteApiWriter.StreamType streamType) {
+        TableName table = TableName.of(tableId.getProject(), tableId.getDataset(), tableId.getTable());
+        try {
+            if (streamType == StorageWriteApiWriter.StreamType.COMMITTED) {
+                WriteStream stream = client().createWriteStream(table,
+                        WriteStream.newBuilder().setType(WriteStream.Type.COMMITTED).build());
+                JsonStreamWriter writer = JsonStreamWriter.newBuilder(stream.getName(), stream.getTableSchema(), client())
+                        .build();
+                return new JsonAppendStream(writer, true);
+            }
+            return new JsonAppendStream(JsonStreamWriter.newBuilder(table.toString(), client()).build(), false);
+        } catch (IOException | Descriptors.DescriptorValidationException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("Storage Write APIのストリームを開けませんでした: " + tableId, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (client != null) {
+            client.close();
+            client = null;
+        }
+    }
+
+    private synchronized BigQueryWriteClient client() throws IOException {
+        if (client == null) {
+            client = BigQueryWriteClient.create();
+        }
+        return client;
+    }
+
+    /**
+     * JsonStreamWriterによる書き込みストリーム
+     * コミット済みストリームの場合は、追記した行数から次のオフセットを求めて指定する
+     */
+    private final class JsonAppendStream implements StorageWriteApiWriter.AppendStream {
+
+        private final JsonStreamWriter writer;
+        private final boolean committed;
+        private long nextOffset;
+
+        private JsonAppendStream(JsonStreamWriter writer, boolean committed) {
+            this.writer = writer;
+            this.committed = committed;
+        }
+
+        @Override
+        public CompletableFuture<Void> append(List<Map<String, Object>> rows) {
+            JSONArray array = new JSONArray();
+            for (Map<String, Object> row : rows) {
+                array.put(new JSONObject(row));
+            }
+
+            ApiFuture<AppendRowsResponse> response;
+            try {
+                response = committed ? writer.append(array, nextOffset) : writer.append(array);
+            } catch (Exceptions.AppendSerializtionError e) {
+                return CompletableFuture.failedFuture(new StorageWriteApiWriter.AppendRowsException(e.getRowIndexToErrorMessage()));
+            } catch (IOException | Descriptors.DescriptorValidationException e) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Storage Write APIへの追記に失敗しました", e));
+            }
+            nextOffset += rows.size();
+
+            CompletableFuture<Void> completion = new CompletableFuture<>();
+            ApiFutures.addCallback(response, new ApiFutureCallback<>() {
+                @Override
+                public void onSuccess(AppendRowsResponse result) {
+                    if (result.getRowErrorsCount() > 0) {
+                        Map<Integer, String> rowErrors = new HashMap<>();
+                        for (RowError error : result.getRowErrorsList()) {
+                            rowErrors.put((int) error.getIndex(), error.getMessage());
+                        }
+                        completion.completeExceptionally(new StorageWriteApiWriter.AppendRowsException(rowErrors));
+                    } else if (result.hasError()) {
+                        completion.completeExceptionally(new IllegalStateException(
+                                "Storage Write APIへの追記に失敗しました: " + result.getError().getMessage()));
+                    } else {
+                        completion.complete(null);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    if (t instanceof Exceptions.AppendSerializtionError serializationError) {
+                        completion.completeExceptionally(
+                                new StorageWriteApiWriter.AppendRowsException(serializationError.getRowIndexToErrorMessage()));
+                    } else {
+                        completion.completeExceptionally(t);
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+            return completion;
+        }
+
+        @Override
+        public void close() {
+            writer.close();
+            if (committed) {
+                try {
+                    client().finalizeWriteStream(writer.getStreamName());
+                } catch (Exception e) {
+                    log.warn("コミット済みストリームの確定に失敗しました: {}", e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.myapplication.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Gemini APIの生成結果をプロンプト単位で保持するキャッシュ
+ * モデル・プロンプト・生成設定のハッシュをキーとし、件数の上限・TTL・W-TinyLFUによる追い出しを行う
+ * temperatureが閾値を超える呼び出しは毎回異なる結果を期待しているため、キャッシュせずに毎回生成する
+ * ディレクトリを指定した場合は生成結果をファイルにも保存し、再起動後もTTLの間は再利用する
+ * 保存したファイルは定期的に確認し、有効期間を過ぎたものと、合計サイズの上限を超えた分の古いものから削除する
+ */
+@Slf4j
+@Component
+public class PromptResponseCache {
+
+    /**
+     * ディスクに保存する生成結果の合計サイズの上限の既定値（100MB）
+     */
+    static final long DEFAULT_DISK_MAX_SIZE_BYTES = 100L * 1024 * 1024;
+
+    private final boolean enabled;
+    private final double maxTemperature;
+    private final AsyncCache<String, String> cache;
+    private final Path diskDirectory;
+    private final Duration diskTtl;
+    private final long diskMaxSizeBytes;
+    private final Clock clock;
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder diskMisses = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder diskEvictions = new LongAdder();
+
+    @Autowired
+    public PromptResponseCache(@Value("${app.ai.prompt-cache.enabled:true}") boolean enabled,
+                               @Value("${app.ai.prompt-cache.max-entries:1000}") long maxEntries,
+                               @Value("${app.ai.prompt-cache.ttl:PT1H}") Duration ttl,
+                               @Value("${app.ai.prompt-cache.max-temperature:1.0}") double maxTemperature,
+                               @Value("${app.ai.prompt-cache.disk.directory:}") String diskDirectory,
+                               @Value("${app.ai.prompt-cache.disk.ttl:P7D}") Duration diskTtl,
+                               @Value("${app.ai.prompt-cache.disk.max-size-bytes:104857600}") long diskMaxSizeBytes,
+                               MeterRegistry meterRegistry) {
+        this(enabled, maxEntries, ttl, maxTemperature,
+                diskDirectory.isBlank() ? null : Path.of(diskDirectory), diskTtl, diskMaxSizeBytes, Clock.systemUTC());
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "gemini.prompt-responses");
+        FunctionCounter.builder("gemini.prompt-cache.disk.gets", diskHits, LongAdder::sum)
+                .tag("result", "hit")
+                .description("ディスクに保存した生成結果の参照数")
+                .register(meterRegistry);
+        FunctionCounter.builder("gemini.prompt-cache.disk.gets", diskMisses, LongAdder::sum)
+                .tag("result", "miss")
+                .description("ディスクに保存した生成結果の参照数")
+                .register(meterRegistry);
+        FunctionCounter.builder("gemini.prompt-cache.skipped", skipped, LongAdder::sum)
+                .description("temperatureが閾値を超えるためキャッシュしなかった生成数")
+                .register(meterRegistry);
+        FunctionCounter.builder("gemini.prompt-cache.disk.evictions", diskEvictions, LongAdder::sum)
+                .description("有効期間の経過・合計サイズの上限により削除したファイル数")
+                .register(meterRegistry);
+    }
+
+    // テスト用のコンストラクタ
+    public PromptResponseCache(boolean enabled, long maxEntries, Duration ttl, double maxTemperature,
+                               Path diskDirectory, Duration diskTtl, Clock clock) {
+        this(enabled, maxEntries, ttl, maxTemperature, diskDirectory, diskTtl, DEFAULT_DISK_MAX_SIZE_BYTES, clock);
+    }
+
+    /**
+     * @param enabled          キャッシュを使用する場合true
+     * @param maxEntries       メモリに保持する最大件数
+     * @param ttl              メモリに保持する期間
+     * @param maxTemperature   キャッシュするtemperatureの上限（生成設定にtemperatureがない場合はキャッシュする）
+     * @param diskDirectory    生成結果を保存するディレクトリ（nullの場合はディスクに保存しない）
+     * @param diskTtl          ディスクに保存した生成結果の有効期間
+     * @param diskMaxSizeBytes ディスクに保存する生成結果の合計サイズの上限（バイト）
+     * @param clock            時計
+     */
+    public PromptResponseCache(boolean enabled, long maxEntries, Duration ttl, double maxTemperature,
+                               Path diskDirectory, Duration diskTtl, long diskMaxSizeBytes, Clock clock) {
+        this.enabled = enabled;
+        this.maxTemperature = maxTemperature;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+        this.diskDirectory = diskDirectory;
+        this.diskTtl = diskTtl;
+        this.diskMaxSizeBytes = diskMaxSizeBytes;
+        this.clock = clock;
+        if (enabled && diskDirectory != null) {
+            try {
+                Files.createDirectories(diskDirectory);
+            } catch (IOException e) {
+                throw new IllegalStateException("プロンプトキャッシュのディレクトリを作成できませんでした: " + diskDirectory, e);
+            }
+        }
+        log.info("PromptResponseCache initialized: enabled={}, maxEntries={}, ttl={}, maxTemperature={}, diskDirectory={}, diskMaxSizeBytes={}",
+                enabled, maxEntries, ttl, maxTemperature, diskDirectory, diskMaxSizeBytes);
+    }
+
+    /**
+     * キャッシュを使用しないインスタンスを作成する
+     *
+     * @return 常に生成を行う無効なキャッシュ
+     */
+    public static PromptResponseCache disabled() {
+        return new PromptResponseCache(false, 0, Duration.ZERO, 0, null, Duration.ZERO, 0, Clock.systemUTC());
+    }
+
+    /**
+     * キャッシュされた生成結果を返し、存在しない場合はloaderで生成した結果を格納して返す
+     * 同じキーの生成が実行中の場合は、新たに生成せずにその結果を共有する
+     * 生成に失敗した場合や結果が空の場合はキャッシュしない
+     *
+     * @param model            モデル名
+     * @param prompt           プロンプト
+     * @param generationConfig 生成設定
+     * @param loader           キャッシュミス時に生成を行うMonoを返す関数
+     * @return 生成結果
+     */
+    public Mono<String> getOrLoad(String model, String prompt, Map<String, Object> generationConfig,
+                                  Supplier<Mono<String>> loader) {
+        if (!enabled) {
+            return Mono.defer(loader);
+        }
+        if (!isCacheable(generationConfig)) {
+            return Mono.defer(() -> {
+                skipped.increment();
+                return loader.get();
+            });
+        }
+
+        String key = key(model, prompt, generationConfig);
+        // 呼び出し元がキャンセルしても、共有している生成はキャンセルしない
+        return Mono.fromFuture(() -> cache.get(key, (k, executor) ->
+                readFromDisk(k)
+                        .switchIfEmpty(Mono.defer(loader).doOnNext(text -> writeToDisk(k, text)))
+                        .toFuture()), true);
+    }
+
+    private boolean isCacheable(Map<String, Object> generationConfig) {
+        return !(generationConfig.get("temperature") instanceof Number temperature)
+                || temperature.doubleValue() <= maxTemperature;
+    }
+
+    /**
+     * モデル・プロンプト・生成設定からキーを作成する
+     * 生成設定は項目名の順に並べて連結し、Mapの実装による順序の違いで別のキーにならないようにする
+     */
+    static String key(String model, String prompt, Map<String, Object> generationConfig) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(new TreeMap<>(generationConfig).toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256を使用できません", e);
+        }
+    }
+
+    /**
+     * ディスクに保存した有効期間内の生成結果を読み込む
+     */
+    private Mono<String> readFromDisk(String key) {
+        if (diskDirectory == null) {
+            return Mono.empty();
+        }
+        return Mono.fromCallable(() -> {
+                    Path file = diskDirectory.resolve(key);
+                    try {
+                        if (Files.getLastModifiedTime(file).toInstant().plus(diskTtl).isBefore(clock.instant())) {
+                            Files.deleteIfExists(file);
+                            diskMisses.increment();
+                            return null;
+                        }
+                        String text = Files.readString(file, StandardCharsets.UTF_8);
+                        diskHits.increment();
+                        return text;
+                    } catch (NoSuchFileException e) {
+                        diskMisses.increment();
+                        return null;
+                    }
+                })
+                .onErrorResume(IOException.class, e -> {
+                    log.warn("プロンプトキャッシュのファイルを読み込めませんでした: {}", e.getMessage());
+                    return Mono.empty();
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 生成結果をディスクに保存する
+     * 一時ファイルに書き込んでから置き換え、読み込み中のファイルが途中の内容にならないようにする
+     * 保存は非同期に行い、失敗しても生成結果の返却には影響させない
+     */
+    private void writeToDisk(String key, String text) {
+        if (diskDirectory == null) {
+            return;
+        }
+        Mono.fromCallable(() -> {
+                    Path temp = Files.createTempFile(diskDirectory, key, ".tmp");
+                    try {
+                        Files.writeString(temp, text, StandardCharsets.UTF_8);
+                        return Files.move(temp, diskDirectory.resolve(key),
+                                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } finally {
+                        Files.deleteIfExists(temp);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(path -> {
+                }, e -> log.warn("プロンプトキャッシュのファイルを保存できませんでした: {}", e.getMessage()));
+    }
+
+    /**
+     * ディスクに保存したファイルを整理する
+     * 有効期間を過ぎたファイル（書き込み途中で残った一時ファイルを含む）を削除し、
+     * 残ったファイルの合計サイズが上限を超える場合は、保存日時の古いものから上限以下になるまで削除する
+     *
+     * @return 削除したファイル数
+     */
+    @Scheduled(fixedDelayString = "${app.ai.prompt-cache.disk.cleanup-interval:PT10M}")
+    public int cleanupDisk() {
+        if (!enabled || diskDirectory == null) {
+            return 0;
+        }
+        List<DiskEntry> entries = new ArrayList<>();
+        try (Stream<Path> files = Files.list(diskDirectory)) {
+            files.forEach(file -> {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    if (attributes.isRegularFile()) {
+                        entries.add(new DiskEntry(file, attributes.lastModifiedTime().toInstant(), attributes.size()));
+                    }
+                } catch (IOException e) {
+                    // 一覧の取得後に読み込み・保存で削除・置き換えられたファイルは対象外とする
+                }
+            });
+        } catch (IOException e) {
+            log.warn("プロンプトキャッシュのディレクトリを確認できませんでした: {}", e.getMessage());
+            return 0;
+        }
+
+        Instant expiredBefore = clock.instant().minus(diskTtl);
+        long totalSize = entries.stream().mapToLong(DiskEntry::size).sum();
+        entries.sort(Comparator.comparing(DiskEntry::modifiedAt));
+        int deleted = 0;
+        for (DiskEntry entry : entries) {
+            if (!entry.modifiedAt().isBefore(expiredBefore) && totalSize <= diskMaxSizeBytes) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(entry.file());
+                deleted++;
+            } catch (IOException e) {
+                log.warn("プロンプトキャッシュのファイルを削除できませんでした: {}", e.getMessage());
+            }
+            totalSize -= entry.size();
+        }
+        if (deleted > 0) {
+            diskEvictions.add(deleted);
+            log.info("プロンプトキャッシュのファイルを {} 件削除しました（残りの合計サイズ: {} バイト）", deleted, totalSize);
+        }
+        return deleted;
+    }
+
+    private record DiskEntry(Path file, Instant modifiedAt, long size) {
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.myapplication.service;
+
+import com.example.myapplication.dto.QueryResult;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 同一クエリの同時実行を1つのBigQueryジョブに集約する（single-flight）
+ * 正規化したSQLが同じ参照系クエリを実行中に受け付けた呼び出しは、新たなジョブを発行せず
+ * 実行中のジョブの結果（または例外）を共有する
+ * 集約ウィンドウを設定した場合、完了した結果をその期間だけ後続の呼び出しにも共有する
+ * テーブルが更新された場合は、そのテーブルを参照する実行中のクエリを集約の対象から外し、
+ * 更新後の呼び出しが更新前に開始したクエリの結果を受け取らないようにする
+ */
+@Slf4j
+@Component
+public class QueryCoalescer {
+
+    private final boolean enabled;
+    private final Duration window;
+    private final ConcurrentMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executedCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    @Autowired
+    public QueryCoalescer(@Value("${app.bigquery.coalescing.enabled:true}") boolean enabled,
+                          @Value("${app.bigquery.coalescing.window:PT0S}") Duration window,
+                          MeterRegistry meterRegistry) {
+        this(enabled, window);
+        FunctionCounter.builder("bigquery.query.coalescing", executedCount, LongAdder::sum)
+                .description("集約の対象となったクエリ呼び出し数")
+                .tag("result", "executed")
+                .register(meterRegistry);
+        FunctionCounter.builder("bigquery.query.coalescing", coalescedCount, LongAdder::sum)
+                .description("集約の対象となったクエリ呼び出し数")
+                .tag("result", "coalesced")
+                .register(meterRegistry);
+    }
+
+    public QueryCoalescer(boolean enabled, Duration window) {
+        this.enabled = enabled;
+        this.window = window;
+        log.info("QueryCoalescer initialized: enabled={}, window={}", enabled, window);
+    }
+
+    /**
+     * 集約を行わないインスタンスを作成する
+     *
+     * @return 常にクエリを実行する無効なインスタンス
+     */
+    public static QueryCoalescer disabled() {
+        return new QueryCoalescer(false, Duration.ZERO);
+    }
+
+    /**
+     * 同じSQLのクエリが実行中であればその結果を待ち、なければloaderでクエリを実行する
+     * 更新系のクエリは集約せず、常にloaderを呼び出したうえで対象テーブルを参照する実行中のクエリを集約の対象から外す
+     *
+     * @param sql    実行するSQLクエリ
+     * @param loader クエリを実行する処理
+     * @return クエリ結果
+     */
+    public QueryResult execute(String sql, Supplier<QueryResult> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        String key = SqlStatements.normalize(sql);
+        Optional<Set<String>> tables = SqlStatements.referencedTables(key);
+        if (!SqlStatements.isReadStatement(key)) {
+            try {
+                return loader.get();
+            } finally {
+                // 一部が更新された可能性もあるため、成否に関わらず外す
+                tables.ifPresentOrElse(names -> names.forEach(this::invalidateTable), inFlight::clear);
+            }
+        }
+
+        Flight flight = new Flight(new CompletableFuture<>(), tables.orElse(null));
+        Flight existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalescedCount.increment();
+            log.debug("実行中の同一クエリに集約しました: {}", key);
+            return await(existing.result());
+        }
+
+        executedCount.increment();
+        try {
+            QueryResult result = loader.get();
+            flight.result().complete(result);
+            return result;
+        } catch (Throwable e) {
+            flight.result().completeExceptionally(e);
+            throw e;
+        } finally {
+            release(key, flight);
+        }
+    }
+
+    /**
+     * 指定したテーブルを参照する実行中（集約ウィンドウ内を含む）のクエリを集約の対象から外す
+     * 外したクエリの実行は継続し、すでに集約された呼び出しはその結果を受け取る
+     * QueryResultCacheの無効化より先に呼び出すこと（無効化後の世代で集約された古い結果がキャッシュされないようにする）
+     *
+     * @param tableName テーブル名
+     */
+    public void invalidateTable(String tableName) {
+        if (!enabled || tableName == null) {
+            return;
+        }
+        String table = tableName.toLowerCase(Locale.ROOT);
+        // 参照しているテーブルを特定できないクエリも、更新されたテーブルを参照している可能性があるため外す
+        inFlight.values().removeIf(flight -> flight.tables() == null || flight.tables().contains(table));
+    }
+
+    public long getExecutedCount() {
+        return executedCount.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * 完了したジョブを集約対象から外す
+     * 集約ウィンドウが設定されている場合は、その期間が経過してから外す
+     */
+    private void release(String key, Flight flight) {
+        // 失敗した結果は共有し続けず、次の呼び出しで再実行させる
+        if (window.isZero() || window.isNegative() || flight.result().isCompletedExceptionally()) {
+            inFlight.remove(key, flight);
+            return;
+        }
+        CompletableFuture.delayedExecutor(window.toMillis(), TimeUnit.MILLISECONDS)
+                .execute(() -> inFlight.remove(key, flight));
+    }
+
+    private static QueryResult await(CompletableFuture<QueryResult> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 実行中のクエリ
+     *
+     * @param result 結果
+     * @param tables 参照しているテーブル名（特定できない場合はnull）
+     */
+    private record Flight(CompletableFuture<QueryResult> result, Set<String> tables) {
+    }
+}
@@ -0,0 +1,322 @@
+package com.example.myapplication.service;
+
+import com.example.myapplication.dto.QueryResult;
+import com.google.cloud.bigquery.JobId;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * クエリを非同期に実行するジョブの管理
+ * 受け付けたクエリはジョブIDを即座に返し、同時実行数を制限したスレッドプールで実行する
+ * 完了したジョブの結果は一定期間保持し、期限を過ぎたものは定期的に削除する
+ * 保持するジョブの数と1ジョブあたりの結果のサイズには上限を設け、メモリ使用量を制限する
+ */
+@Slf4j
+@Component
+public class QueryJobRegistry {
+
+    /**
+     * ジョブの状態
+     */
+    public enum Status {
+        PENDING, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+
+        public boolean isDone() {
+            return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    /**
+     * 保持するジョブ数の既定の上限
+     */
+    public static final int DEFAULT_MAX_RETAINED = 1000;
+
+    /**
+     * 1ジョブあたりに保持する結果のサイズ（推定バイト数）の既定の上限
+     */
+    public static final long DEFAULT_MAX_RESULT_BYTES = 32L * 1024 * 1024;
+
+    private final BigQueryService bigQueryService;
+    private final Duration resultTtl;
+    private final int maxRetained;
+    private final long maxResultBytes;
+    private final Clock clock;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<String, QueryJob> jobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public QueryJobRegistry(BigQueryService bigQueryService,
+                            @Value("${app.bigquery.jobs.max-concurrent:4}") int maxConcurrent,
+                            @Value("${app.bigquery.jobs.max-queued:100}") int maxQueued,
+                            @Value("${app.bigquery.jobs.result-ttl:PT10M}") Duration resultTtl,
+                            @Value("${app.bigquery.jobs.max-retained:1000}") int maxRetained,
+                            @Value("${app.bigquery.jobs.max-result-bytes:33554432}") long maxResultBytes) {
+        this(bigQueryService, maxConcurrent, maxQueued, resultTtl, maxRetained, maxResultBytes, Clock.systemUTC());
+    }
+
+    public QueryJobRegistry(BigQueryService bigQueryService, int maxConcurrent, int maxQueued,
+                            Duration resultTtl, Clock clock) {
+        this(bigQueryService, maxConcurrent, maxQueued, resultTtl, DEFAULT_MAX_RETAINED, DEFAULT_MAX_RESULT_BYTES, clock);
+    }
+
+    public QueryJobRegistry(BigQueryService bigQueryService, int maxConcurrent, int maxQueued,
+                            Duration resultTtl, int maxRetained, long maxResultBytes, Clock clock) {
+        this.bigQueryService = bigQueryService;
+        this.resultTtl = resultTtl;
+        this.maxRetained = maxRetained;
+        this.maxResultBytes = maxResultBytes;
+        this.clock = clock;
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueued), runnable -> {
+            Thread thread = new Thread(runnable, "bq-query-job-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("QueryJobRegistry initialized: maxConcurrent={}, maxQueued={}, resultTtl={}, maxRetained={}, maxResultBytes={}",
+                maxConcurrent, maxQueued, resultTtl, maxRetained, maxResultBytes);
+    }
+
+    /**
+     * クエリを受け付けてジョブを作成する
+     * クエリの実行は待たずに返す
+     *
+     * @param sql 実行するSQLクエリ
+     * @return 作成したジョブ
+     * @throws IllegalArgumentException   SQLクエリが空の場合
+     * @throws RejectedExecutionException 実行待ちのジョブ、または保持するジョブが上限に達している場合
+     */
+    public QueryJob submit(String sql) {
+        if (sql == null || sql.trim().isEmpty()) {
+            throw new IllegalArgumentException("SQLクエリが空です");
+        }
+
+        if (jobs.size() >= maxRetained && evictOldestCompleted(jobs.size() - maxRetained + 1) == 0) {
+            throw new RejectedExecutionException("保持できるクエリジョブが上限に達しています。しばらくしてから再試行してください");
+        }
+        QueryJob job = new QueryJob(UUID.randomUUID().toString(), sql, clock.instant());
+        jobs.put(job.getId(), job);
+        try {
+            job.future = executor.submit(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new RejectedExecutionException("実行待ちのクエリが上限に達しています。しばらくしてから再試行してください", e);
+        }
+        log.info("クエリジョブを受け付けました: {}", job.getId());
+        return job;
+    }
+
+    /**
+     * ジョブを取得する
+     *
+     * @param jobId ジョブID
+     * @return ジョブ（存在しないか期限切れの場合は空）
+     */
+    public Optional<QueryJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    /**
+     * ジョブをキャンセルする
+     * 実行中の場合はBigQueryのジョブをキャンセルし、実行スレッドにも割り込んで完了待ちを中断させる
+     * ジョブは同一クエリの集約を行わずに実行しているため、キャンセルが他のリクエストの結果に影響することはない
+     *
+     * @param jobId ジョブID
+     * @return キャンセル後のジョブ（存在しないか期限切れの場合は空）
+     */
+    public Optional<QueryJob> cancel(String jobId) {
+        QueryJob job = jobs.get(jobId);
+        if (job == null) {
+            return Optional.empty();
+        }
+        if (job.finish(Status.CANCELLED, null, null, clock.instant())) {
+            Future<?> future = job.future;
+            if (future != null) {
+                future.cancel(true);
+            }
+            if (job.getStartedAt() != null) {
+                // 実行スレッドへの割り込みだけではBigQuery側のジョブは停止せず、スロットを使い続ける
+                bigQueryService.cancelJob(job.getBigQueryJobId());
+            }
+            log.info("クエリジョブをキャンセルしました: {}", jobId);
+        }
+        return Optional.of(job);
+    }
+
+    /**
+     * 結果の保持期限を過ぎたジョブを削除する
+     */
+    @Scheduled(fixedDelayString = "${app.bigquery.jobs.cleanup-interval:PT1M}")
+    public void purgeExpired() {
+        Instant threshold = clock.instant().minus(resultTtl);
+        int before = jobs.size();
+        jobs.values().removeIf(job -> job.getCompletedAt() != null && job.getCompletedAt().isBefore(threshold));
+        int removed = before - jobs.size();
+        if (removed > 0) {
+            log.info("期限切れのクエリジョブを {} 件削除しました", removed);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 完了したジョブを完了日時の古い順に削除する
+     *
+     * @param count 削除する最大件数
+     * @return 削除した件数
+     */
+    private int evictOldestCompleted(int count) {
+        List<QueryJob> completed = jobs.values().stream()
+                .filter(job -> job.getCompletedAt() != null)
+                .sorted(Comparator.comparing(QueryJob::getCompletedAt))
+                .limit(count)
+                .toList();
+        completed.forEach(job -> jobs.remove(job.getId(), job));
+        if (!completed.isEmpty()) {
+            log.info("保持するクエリジョブが上限（{} 件）に達したため、古い完了済みジョブを {} 件削除しました",
+                    maxRetained, completed.size());
+        }
+        return completed.size();
+    }
+
+    private void run(QueryJob job) {
+        if (!job.start(clock.instant())) {
+            return;
+        }
+        try {
+            QueryResult result = bigQueryService.runQuery(job.getSql(), job.getBigQueryJobId());
+            long resultBytes = QueryResultCache.estimateBytes(result);
+            if (resultBytes > maxResultBytes) {
+                log.warn("クエリジョブの結果が保持できるサイズを超えました: {}: 約 {} バイト", job.getId(), resultBytes);
+                job.finish(Status.FAILED, null, "クエリ結果が大きすぎるため保持できません（約 " + resultBytes
+                        + " バイト）。/bigquery/api/query/stream を使用してください", clock.instant());
+                return;
+            }
+            job.finish(Status.SUCCEEDED, result, null, clock.instant());
+        } catch (Exception e) {
+            if (job.getStatus() == Status.CANCELLED) {
+                // キャンセルとジョブの発行が競合した場合に備え、発行済みのジョブを再度キャンセルする
+                bigQueryService.cancelJob(job.getBigQueryJobId());
+                return;
+            }
+            log.warn("クエリジョブが失敗しました: {}: {}", job.getId(), e.getMessage());
+            job.finish(Status.FAILED, null, e.getMessage(), clock.instant());
+        }
+    }
+
+    /**
+     * 非同期に実行するクエリのジョブ
+     */
+    public static final class QueryJob {
+
+        private final String id;
+        private final String sql;
+        private final JobId bigQueryJobId;
+        private final Instant submittedAt;
+        private Status status = Status.PENDING;
+        private Instant startedAt;
+        private Instant completedAt;
+        private QueryResult result;
+        private String error;
+        private volatile Future<?> future;
+
+        private QueryJob(String id, String sql, Instant submittedAt) {
+            this.id = id;
+            this.sql = sql;
+            this.bigQueryJobId = JobId.of("myapp_query_job_" + id.replace('-', '_'));
+            this.submittedAt = submittedAt;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * @return クエリの実行時に発行するBigQueryのジョブのID（キャンセルに使用する）
+         */
+        public JobId getBigQueryJobId() {
+            return bigQueryJobId;
+        }
+
+        public Instant getSubmittedAt() {
+            return submittedAt;
+        }
+
+        public synchronized Status getStatus() {
+            return status;
+        }
+
+        public synchronized Instant getStartedAt() {
+            return startedAt;
+        }
+
+        public synchronized Instant getCompletedAt() {
+            return completedAt;
+        }
+
+        /**
+         * @return クエリ結果（成功していない場合はnull）
+         */
+        public synchronized QueryResult getResult() {
+            return result;
+        }
+
+        /**
+         * @return エラーメッセージ（失敗していない場合はnull）
+         */
+        public synchronized String getError() {
+            return error;
+        }
+
+        private synchronized boolean start(Instant now) {
+            if (status != Status.PENDING) {
+                return false;
+            }
+            status = Status.RUNNING;
+            startedAt = now;
+            return true;
+        }
+
+        /**
+         * ジョブを終了状態にする
+         * 既に終了している場合（キャンセル後に実行が完了した場合など）は状態を変更しない
+         */
+        private synchronized boolean finish(Status newStatus, QueryResult newResult, String newError, Instant now) {
+            if (status.isDone()) {
+                return false;
+            }
+            status = newStatus;
+            result = newResult;
+            error = newError;
+            completedAt = now;
+            return true;
+        }
+    }
+}
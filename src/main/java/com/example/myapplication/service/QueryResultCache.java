@@ -0,0 +1,168 @@
+package com.example.myapplication.service;
+
+import com.example.myapplication.dto.QueryResult;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * BigQueryのクエリ結果をプロセス内に保持するキャッシュ
+ * 正規化したSQLをキーとし、推定メモリサイズの上限・TTL・W-TinyLFUによる追い出しを行う
+ * データ挿入やテーブル削除の際は、そのテーブルを参照するエントリを無効化する
+ */
+@Slf4j
+@Component
+public class QueryResultCache {
+
+    private final boolean enabled;
+    private final Cache<String, Entry> cache;
+
+    /**
+     * 無効化（invalidateTable）のたびに進む世代番号
+     * クエリ実行中に無効化が発生した場合、古い結果をキャッシュに格納しないために使用する
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired
+    public QueryResultCache(@Value("${app.bigquery.query-cache.enabled:true}") boolean enabled,
+                            @Value("${app.bigquery.query-cache.max-size-bytes:67108864}") long maxSizeBytes,
+                            @Value("${app.bigquery.query-cache.ttl:PT5M}") Duration ttl,
+                            MeterRegistry meterRegistry) {
+        this(enabled, maxSizeBytes, ttl);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "bigquery.query-results");
+    }
+
+    public QueryResultCache(boolean enabled, long maxSizeBytes, Duration ttl) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSizeBytes)
+                .weigher((String key, Entry entry) -> entry.weight())
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        log.info("QueryResultCache initialized: enabled={}, maxSizeBytes={}, ttl={}", enabled, maxSizeBytes, ttl);
+    }
+
+    /**
+     * キャッシュを使用しないインスタンスを作成する
+     *
+     * @return 常にクエリを実行する無効なキャッシュ
+     */
+    public static QueryResultCache disabled() {
+        return new QueryResultCache(false, 0, Duration.ZERO);
+    }
+
+    /**
+     * キャッシュされた結果を返し、存在しない場合はloaderで取得した結果を格納して返す
+     * 参照系以外のクエリ・非決定的な関数を含むクエリ・参照しているテーブルを特定できないクエリはキャッシュせず、
+     * 更新系のクエリの場合は参照しているテーブルのエントリを無効化する（特定できない場合はすべて無効化する）
+     *
+     * @param sql    実行するSQLクエリ
+     * @param loader キャッシュミス時にクエリを実行する処理
+     * @return クエリ結果
+     */
+    public QueryResult getOrLoad(String sql, Supplier<QueryResult> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        String key = SqlStatements.normalize(sql);
+        Optional<Set<String>> tables = SqlStatements.referencedTables(key);
+        if (!isCacheable(key) || tables.isEmpty()) {
+            QueryResult result = loader.get();
+            if (!SqlStatements.isReadStatement(key)) {
+                tables.ifPresentOrElse(names -> names.forEach(this::invalidateTable), this::invalidateAll);
+            }
+            return result;
+        }
+
+        Entry cached = cache.getIfPresent(key);
+        if (cached != null) {
+            log.debug("クエリ結果キャッシュにヒット: {}", key);
+            return cached.result();
+        }
+
+        long loadGeneration = generation.get();
+        QueryResult result = loader.get();
+        Entry entry = new Entry(result, tables.get(), estimateWeight(key, result));
+        // 実行中にテーブルが更新された場合、取得した結果は古い可能性があるため格納しない
+        if (generation.get() == loadGeneration) {
+            cache.put(key, entry);
+            if (generation.get() != loadGeneration) {
+                cache.asMap().remove(key, entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 指定したテーブルを参照するキャッシュエントリを無効化する
+     *
+     * @param tableName テーブル名
+     */
+    public void invalidateTable(String tableName) {
+        if (!enabled || tableName == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        String table = tableName.toLowerCase(Locale.ROOT);
+        boolean removed = cache.asMap().values().removeIf(entry -> entry.tables().contains(table));
+        if (removed) {
+            log.info("テーブル '{}' を参照するクエリ結果キャッシュを無効化しました", tableName);
+        }
+    }
+
+    /**
+     * すべてのキャッシュエントリを無効化する
+     */
+    public void invalidateAll() {
+        if (!enabled) {
+            return;
+        }
+        generation.incrementAndGet();
+        cache.invalidateAll();
+        log.info("クエリ結果キャッシュをすべて無効化しました");
+    }
+
+    private static boolean isCacheable(String sql) {
+        return SqlStatements.isReadStatement(sql) && !SqlStatements.isNonDeterministic(sql);
+    }
+
+    /**
+     * キャッシュエントリのおおよそのヒープ使用量を見積もる
+     */
+    private static int estimateWeight(String key, QueryResult result) {
+        return (int) Math.min(64L + key.length() * 2L + estimateBytes(result), Integer.MAX_VALUE);
+    }
+
+    /**
+     * クエリ結果のおおよそのヒープ使用量（バイト）を見積もる
+     */
+    static long estimateBytes(QueryResult result) {
+        long weight = 0;
+        int columnCount = result.getColumns().size();
+        for (int row = 0; row < result.size(); row++) {
+            weight += 16L + 4L * columnCount;
+            for (int column = 0; column < columnCount; column++) {
+                Object value = result.getValue(row, column);
+                weight += value instanceof String string ? 40L + string.length() * 2L : 16L;
+            }
+        }
+        return weight;
+    }
+
+    private record Entry(QueryResult result, Set<String> tables, int weight) {
+    }
+}
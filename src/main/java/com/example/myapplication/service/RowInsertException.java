@@ -0,0 +1,30 @@
+package com.example.myapplication.service;
+
+import com.google.cloud.bigquery.BigQueryError;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * データ挿入で一部またはすべての行がエラーとなったことを表す例外
+ * エラーとなった行以外は挿入済みのため、再試行する場合はエラーとなった行のみを再送する
+ */
+public class RowInsertException extends RuntimeException {
+
+    private final transient Map<Long, List<BigQueryError>> rowErrors;
+
+    /**
+     * @param rowErrors エラーとなった行（呼び出し元が渡したリストでの行番号）とそのエラー
+     */
+    public RowInsertException(Map<Long, List<BigQueryError>> rowErrors) {
+        super("データ挿入でエラーが発生しました（" + rowErrors.size() + " 件）");
+        this.rowErrors = Map.copyOf(rowErrors);
+    }
+
+    /**
+     * @return エラーとなった行（呼び出し元が渡したリストでの行番号）とそのエラー
+     */
+    public Map<Long, List<BigQueryError>> getRowErrors() {
+        return rowErrors;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.myapplication.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BigQueryに送信する行データのサイズを見積もるユーティリティ
+ * 実際にJSONへシリアライズせずに、送信時のおおよそのバイト数を求める
+ */
+final class RowSizes {
+
+    private RowSizes() {
+    }
+
+    /**
+     * 1行をJSONとして送信した場合のおおよそのバイト数を見積もる
+     *
+     * @param row 行データ
+     * @return 推定バイト数
+     */
+    static long estimate(Map<String, ?> row) {
+        long bytes = 2;
+        for (Map.Entry<String, ?> entry : row.entrySet()) {
+            bytes += entry.getKey().length() + 4 + estimateValue(entry.getValue());
+        }
+        return bytes;
+    }
+
+    /**
+     * 行数と推定バイト数の上限を超えないように行を分割する
+     * 1行で上限を超える場合でも、その行だけのまとまりとして返す
+     *
+     * @param rows     分割する行データ
+     * @param maxRows  1まとまりあたりの最大行数
+     * @param maxBytes 1まとまりあたりの最大推定バイト数
+     * @return 元の順序を保った行のまとまりのリスト
+     */
+    static <T extends Map<String, ?>> List<List<T>> partition(List<T> rows, int maxRows, long maxBytes) {
+        List<List<T>> partitions = new ArrayList<>();
+        List<T> current = new ArrayList<>();
+        long currentBytes = 0;
+        for (T row : rows) {
+            long rowBytes = estimate(row);
+            if (!current.isEmpty() && (current.size() >= maxRows || currentBytes + rowBytes > maxBytes)) {
+                partitions.add(current);
+                current = new ArrayList<>();
+                currentBytes = 0;
+            }
+            current.add(row);
+            currentBytes += rowBytes;
+        }
+        if (!current.isEmpty()) {
+            partitions.add(current);
+        }
+        return partitions;
+    }
+
+    private static long estimateValue(Object value) {
+        if (value == null) {
+            return 4;
+        }
+        if (value instanceof CharSequence text) {
+            // 日本語などのマルチバイト文字を考慮してUTF-8の最大幅で見積もる
+            return 2 + text.length() * 3L;
+        }
+        if (value instanceof Map<?, ?> nested) {
+            long bytes = 2;
+            for (Map.Entry<?, ?> entry : nested.entrySet()) {
+                bytes += String.valueOf(entry.getKey()).length() + 4 + estimateValue(entry.getValue());
+            }
+            return bytes;
+        }
+        if (value instanceof Collection<?> values) {
+            long bytes = 2;
+            for (Object element : values) {
+                bytes += estimateValue(element) + 1;
+            }
+            return bytes;
+        }
+        return String.valueOf(value).length();
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.myapplication.service;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BigQueryに発行するSQL文字列を解析するユーティリティ
+ * クエリ結果キャッシュや同一クエリの集約で使用するキーの正規化と、文の種類の判定を行う
+ */
+final class SqlStatements {
+
+    /**
+     * 直後にテーブル名が続くキーワード
+     */
+    private static final Pattern TABLE_KEYWORD = Pattern.compile(
+            "\\b(FROM|JOIN|INTO|UPDATE|TABLE|DELETE|MERGE|USING)\\b", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * テーブル名の各部分（`project`.`dataset`.`table` のように部分ごとに引用符で囲む形式と、
+     * `project.dataset.table` のように全体を囲む形式の両方を扱う）
+     */
+    private static final Pattern NAME_PART = Pattern.compile("`([^`]+)`|([\\w\\-*]+)");
+
+    private static final Pattern IF_EXISTS = Pattern.compile("IF\\s+(?:NOT\\s+)?EXISTS\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * テーブル名の位置に現れても、テーブル名・別名ではないキーワード
+     */
+    private static final Set<String> RESERVED_WORDS = Set.of(
+            "SELECT", "FROM", "WHERE", "JOIN", "INNER", "LEFT", "RIGHT", "FULL", "CROSS", "OUTER", "ON", "USING",
+            "GROUP", "ORDER", "HAVING", "LIMIT", "UNION", "EXCEPT", "INTERSECT", "WINDOW", "QUALIFY", "SET",
+            "AS", "FOR", "TABLESAMPLE", "WITH", "VALUES", "WHEN", "PIVOT", "UNPIVOT", "INTO", "OPTIONS",
+            "PARTITION", "CLUSTER", "UPDATE", "DELETE", "INSERT", "MERGE");
+
+    /**
+     * 実行のたびに結果が変わる関数（CURRENT_DATE等は括弧を省略して記述できる）
+     */
+    private static final Pattern NON_DETERMINISTIC = Pattern.compile(
+            "\\b(?:CURRENT_\\w+|RAND|GENERATE_UUID|SESSION_USER|NOW)\\s*\\("
+                    + "|\\b(?:CURRENT_(?:DATE|DATETIME|TIME|TIMESTAMP)|SESSION_USER)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern READ_STATEMENT = Pattern.compile("^\\(*\\s*(?:SELECT|WITH)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern ORDER_BY = Pattern.compile("\\bORDER\\s+BY\\b", Pattern.CASE_INSENSITIVE);
+
+    private SqlStatements() {
+    }
+
+    /**
+     * キーとして使用するためにSQLを正規化する
+     * 引用符の外側の連続する空白を1つにまとめ、前後の空白と末尾のセミコロンを除去する
+     * 文字列リテラルの大文字小文字は結果に影響するため変更しない
+     *
+     * @param sql SQLクエリ
+     * @return 正規化したSQL
+     */
+    static String normalize(String sql) {
+        StringBuilder normalized = new StringBuilder(sql.length());
+        char quote = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                normalized.append(c);
+                if (c == '\\' && i + 1 < sql.length()) {
+                    normalized.append(sql.charAt(++i));
+                } else if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                pendingSpace = !normalized.isEmpty();
+                continue;
+            }
+            if (pendingSpace) {
+                normalized.append(' ');
+                pendingSpace = false;
+            }
+            if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            }
+            normalized.append(c);
+        }
+        int end = normalized.length();
+        while (end > 0 && (normalized.charAt(end - 1) == ';' || normalized.charAt(end - 1) == ' ')) {
+            end--;
+        }
+        normalized.setLength(end);
+        return normalized.toString();
+    }
+
+    /**
+     * SQLが参照しているテーブル名（データセット等の修飾を除いた小文字の名前）を抽出する
+     * FROM句のカンマ区切りのテーブルも抽出する
+     * テーブル名として解釈できない参照（ワイルドカードテーブルやクエリパラメータ等）を含む場合は空を返し、
+     * 呼び出し元はどのテーブルを参照しているか分からないものとして扱う
+     *
+     * @param sql 正規化済みのSQL
+     * @return テーブル名の集合（解釈できない参照を含む場合は空）
+     */
+    static Optional<Set<String>> referencedTables(String sql) {
+        Set<String> tables = new HashSet<>();
+        Matcher keyword = TABLE_KEYWORD.matcher(sql);
+        while (keyword.find()) {
+            int position = skipIfExists(sql, skipSpaces(sql, keyword.end()));
+            boolean fromClause = keyword.group(1).equalsIgnoreCase("FROM");
+            // FROM/JOINの後の「名前(」はテーブル関数、INTO/TABLEの後の「名前(」は列の定義・列名の一覧
+            boolean tableFunctionAllowed = fromClause || keyword.group(1).equalsIgnoreCase("JOIN");
+            while (true) {
+                position = skipSpaces(sql, position);
+                // サブクエリ・文の終わりの場合は、サブクエリ内のキーワードで改めて抽出する
+                if (position >= sql.length() || sql.charAt(position) == '(' || sql.charAt(position) == ')') {
+                    break;
+                }
+                Matcher part = NAME_PART.matcher(sql).region(position, sql.length());
+                if (!part.lookingAt()) {
+                    return Optional.empty();
+                }
+                StringBuilder name = new StringBuilder();
+                do {
+                    name.append(part.group(1) != null ? part.group(1) : part.group(2));
+                    position = part.end();
+                    if (position >= sql.length() || sql.charAt(position) != '.') {
+                        break;
+                    }
+                    name.append('.');
+                    part.region(++position, sql.length());
+                } while (part.lookingAt());
+
+                position = skipSpaces(sql, position);
+                boolean function = tableFunctionAllowed && position < sql.length() && sql.charAt(position) == '(';
+                if (function || RESERVED_WORDS.contains(name.toString().toUpperCase(Locale.ROOT))) {
+                    // UNNEST等のテーブル関数や、DELETE FROMのようにキーワードが続く場合はテーブル名ではない
+                    break;
+                }
+                if (name.indexOf("*") >= 0 || name.charAt(name.length() - 1) == '.') {
+                    return Optional.empty();
+                }
+                tables.add(name.substring(name.lastIndexOf(".") + 1).toLowerCase(Locale.ROOT));
+                if (!fromClause) {
+                    break;
+                }
+                position = skipAlias(sql, position);
+                if (position >= sql.length() || sql.charAt(position) != ',') {
+                    break;
+                }
+                position++;
+            }
+        }
+        return Optional.of(tables);
+    }
+
+    private static int skipSpaces(String sql, int position) {
+        while (position < sql.length() && sql.charAt(position) == ' ') {
+            position++;
+        }
+        return position;
+    }
+
+    private static int skipIfExists(String sql, int position) {
+        Matcher matcher = IF_EXISTS.matcher(sql).region(position, sql.length());
+        return matcher.lookingAt() ? matcher.end() : position;
+    }
+
+    /**
+     * テーブル名の後の別名（AS 別名 / 別名）を読み飛ばす
+     */
+    private static int skipAlias(String sql, int position) {
+        Matcher word = NAME_PART.matcher(sql).region(position, sql.length());
+        if (word.lookingAt() && word.group(2) != null && word.group(2).equalsIgnoreCase("AS")) {
+            position = skipSpaces(sql, word.end());
+            word.region(position, sql.length());
+        }
+        if (word.lookingAt() && (word.group(1) != null
+                || !RESERVED_WORDS.contains(word.group(2).toUpperCase(Locale.ROOT)))) {
+            position = word.end();
+        }
+        return skipSpaces(sql, position);
+    }
+
+    /**
+     * 参照系（SELECT/WITH）の文かどうかを判定する
+     *
+     * @param sql 正規化済みのSQL
+     * @return 参照系の文の場合true
+     */
+    static boolean isReadStatement(String sql) {
+        return READ_STATEMENT.matcher(sql).find();
+    }
+
+    /**
+     * 実行のたびに結果が変わる関数を含むかどうかを判定する
+     *
+     * @param sql 正規化済みのSQL
+     * @return 非決定的な関数を含む場合true
+     */
+    static boolean isNonDeterministic(String sql) {
+        return NON_DETERMINISTIC.matcher(sql).find();
+    }
+
+    /**
+     * ORDER BYを含むかどうかを判定する
+     * ウィンドウ関数内のORDER BYも含むため、結果の並び順を保つ必要がある側に倒した判定となる
+     *
+     * @param sql SQL
+     * @return ORDER BYを含む場合true
+     */
+    static boolean hasOrderBy(String sql) {
+        return ORDER_BY.matcher(sql).find();
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.myapplication.service;
+
+import com.example.myapplication.dto.QueryResult;
+import com.google.cloud.bigquery.TableId;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * BigQuery Storage Read APIでクエリ結果のテーブルを読み込む
+ * 結果の行数が閾値以上の場合に、REST APIでのページングの代わりに使用する
+ * 読み込みセッションを複数ストリームに分割して並列に読み込み、Arrow形式のレコードバッチを
+ * クエリ結果の行に変換する
+ */
+@Slf4j
+@Component
+public class StorageReadApiReader {
+
+    private final ArrowReadSessionFactory sessionFactory;
+    private final boolean enabled;
+    private final long minRows;
+    private final int maxStreams;
+    private final FanOutExecutor fanOutExecutor;
+    private final boolean ownsExecutor;
+
+    @Autowired
+    public StorageReadApiReader(FanOutExecutor fanOutExecutor,
+                                @Value("${app.bigquery.storage-read.enabled:true}") boolean enabled,
+                                @Value("${app.bigquery.storage-read.min-rows:100000}") long minRows,
+                                @Value("${app.bigquery.storage-read.max-streams:4}") int maxStreams) {
+        this(new BigQueryArrowReadSessionFactory(), fanOutExecutor, false, enabled, minRows, maxStreams);
+    }
+
+    StorageReadApiReader(ArrowReadSessionFactory sessionFactory, boolean enabled, long minRows, int maxStreams) {
+        this(sessionFactory, FanOutExecutor.platform("bq-read", maxStreams), true, enabled, minRows, maxStreams);
+    }
+
+    private StorageReadApiReader(ArrowReadSessionFactory sessionFactory, FanOutExecutor fanOutExecutor,
+                                 boolean ownsExecutor, boolean enabled, long minRows, int maxStreams) {
+        this.sessionFactory = sessionFactory;
+        this.fanOutExecutor = fanOutExecutor;
+        this.ownsExecutor = ownsExecutor;
+        this.enabled = enabled;
+        this.minRows = minRows;
+        this.maxStreams = maxStreams;
+        log.info("StorageReadApiReader initialized: enabled={}, minRows={}, maxStreams={}", enabled, minRows, maxStreams);
+    }
+
+    /**
+     * Storage Read APIを使用しないインスタンスを作成する
+     *
+     * @return 常にREST APIで読み込ませる無効なインスタンス
+     */
+    public static StorageReadApiReader disabled() {
+        return new StorageReadApiReader((ArrowReadSessionFactory) null, false, Long.MAX_VALUE, 1);
+    }
+
+    /**
+     * 指定した列・行数の結果をStorage Read APIで読み込むべきかどうかを判定する
+     * REPEATED・RECORDの列を含む場合は、REST APIと同じ値の形に変換できないため読み込まない
+     *
+     * @param columns   クエリ結果の列情報
+     * @param totalRows クエリ結果の行数
+     * @return Storage Read APIで読み込む場合true
+     */
+    public boolean isApplicable(QueryResult.Columns columns, long totalRows) {
+        if (!enabled || totalRows < minRows) {
+            return false;
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            String type = columns.getType(i);
+            if ("ARRAY".equals(type) || "STRUCT".equals(type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * テーブルの全行を読み込む
+     * 並び順を保つ必要がある場合は、1つのストリームだけで読み込む
+     *
+     * @param tableId       読み込むテーブル（クエリ結果の一時テーブル）
+     * @param columns       クエリ結果の列情報
+     * @param preserveOrder テーブルの行の順序を保つ場合true
+     * @return クエリ結果
+     */
+    public QueryResult read(TableId tableId, QueryResult.Columns columns, boolean preserveOrder) {
+        int streams = preserveOrder ? 1 : maxStreams;
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowReadSession session = sessionFactory.open(tableId, streams)) {
+            int streamCount = session.getStreamCount();
+            log.info("Storage Read APIで読み込みます: {}（{} ストリーム）", tableId, streamCount);
+
+            List<Supplier<List<Object[]>>> tasks = new ArrayList<>(streamCount);
+            for (int stream = 0; stream < streamCount; stream++) {
+                int index = stream;
+                tasks.add(() -> readStream(session, index, allocator, columns));
+            }
+
+            // ストリームの順に連結する（1ストリームの場合はテーブルの行の順序となる）
+            QueryResult.Builder builder = QueryResult.builder(columns);
+            for (List<Object[]> rows : fanOutExecutor.invokeAll(tasks, streamCount)) {
+                for (Object[] values : rows) {
+                    builder.addRow(values);
+                }
+            }
+            return builder.build();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ownsExecutor) {
+            fanOutExecutor.shutdown();
+        }
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    private static List<Object[]> readStream(ArrowReadSession session, int stream, BufferAllocator allocator,
+                                             QueryResult.Columns columns) {
+        List<Object[]> rows = new ArrayList<>();
+        try (BufferAllocator child = allocator.newChildAllocator("bq-read-stream-" + stream, 0, Long.MAX_VALUE)) {
+            session.readStream(stream, child, batch -> ArrowRowDecoder.decode(batch, columns, rows));
+        }
+        return rows;
+    }
+
+    /**
+     * Arrow形式で読み込む1つの読み込みセッション
+     */
+    interface ArrowReadSession extends AutoCloseable {
+
+        int getStreamCount();
+
+        /**
+         * 1つのストリームの全レコードバッチを順に読み込む
+         * consumerに渡したレコードバッチは、呼び出しから戻った後に再利用・解放される
+         *
+         * @param stream    ストリーム番号
+         * @param allocator レコードバッチに使用するアロケータ
+         * @param consumer  レコードバッチを受け取る処理
+         */
+        void readStream(int stream, BufferAllocator allocator, Consumer<VectorSchemaRoot> consumer);
+
+        @Override
+        void close();
+    }
+
+    /**
+     * テーブルの読み込みセッションを作成する処理
+     */
+    interface ArrowReadSessionFactory {
+
+        ArrowReadSession open(TableId tableId, int maxStreams);
+
+        void close();
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.myapplication.service;
+
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.BigQueryError;
+import com.google.cloud.bigquery.TableId;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * BigQuery Storage Write APIで行を書き込む
+ * テーブルごとにストリームを開いたまま再利用し、行を追記単位に分割して応答を待たずに
+ * 続けて送信する（パイプライン化）
+ * ストリームは既定ストリーム（_default、少なくとも1回）またはコミット済みストリーム
+ * （オフセット指定による重複なし）を選択できる
+ */
+@Slf4j
+@Component
+public class StorageWriteApiWriter implements BigQueryRowWriter {
+
+    /**
+     * 書き込みに使用するストリームの種類
+     */
+    public enum StreamType {
+        /**
+         * テーブルの既定ストリーム（_default）
+         */
+        DEFAULT,
+        /**
+         * 作成したコミット済みストリーム（追記時にオフセットを指定する）
+         */
+        COMMITTED;
+
+        static StreamType parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * 追記自体が失敗した場合に、追記の各行に設定するエラーの理由
+     */
+    static final String APPEND_FAILED_REASON = "appendFailed";
+
+    private final AppendStreamFactory streamFactory;
+    private final StreamType streamType;
+    private final int maxAppendRows;
+    private final long maxAppendBytes;
+    private final ConcurrentMap<TableId, AppendStream> streams = new ConcurrentHashMap<>();
+
+    @Autowired
+    public StorageWriteApiWriter(@Value("${app.bigquery.storage-write.stream-type:default}") String streamType,
+                                 @Value("${app.bigquery.storage-write.max-append-rows:500}") int maxAppendRows,
+                                 @Value("${app.bigquery.storage-write.max-append-bytes:9437184}") long maxAppendBytes) {
+        this(new JsonAppendStreamFactory(), StreamType.parse(streamType), maxAppendRows, maxAppendBytes);
+    }
+
+    StorageWriteApiWriter(AppendStreamFactory streamFactory, StreamType streamType, int maxAppendRows, long maxAppendBytes) {
+        this.streamFactory = streamFactory;
+        this.streamType = streamType;
+        this.maxAppendRows = maxAppendRows;
+        this.maxAppendBytes = maxAppendBytes;
+        log.info("StorageWriteApiWriter initialized: streamType={}, maxAppendRows={}, maxAppendBytes={}",
+                streamType, maxAppendRows, maxAppendBytes);
+    }
+
+    /**
+     * 行を追記単位に分割し、テーブルのストリームへパイプライン化して追記する
+     * 追記は行の一部が不正な場合も含めて追記単位で拒否されるため、失敗した追記の全行をエラーとして返す
+     * コミット済みストリームでは、失敗した追記より後の追記もオフセットの不一致で失敗し、同様にエラーとなる
+     * 成功した追記の行は書き込み済みのため例外とはせず、追記ごとの結果をまとめて返す
+     * 追記に失敗したストリームは閉じ、次回の書き込みで開き直す
+     */
+    @Override
+    public InsertResult write(BigQuery bigQuery, TableId tableId, List<Map<String, Object>> rows) {
+        List<List<Map<String, Object>>> batches = RowSizes.partition(rows, maxAppendRows, maxAppendBytes);
+        List<CompletableFuture<Void>> appends = new ArrayList<>(batches.size());
+        AppendStream stream;
+        do {
+            stream = streams.computeIfAbsent(tableId, this::open);
+        } while (!appendAll(tableId, stream, batches, appends));
+
+        Map<Long, List<BigQueryError>> rowErrors = new TreeMap<>();
+        int failedAppends = 0;
+        int firstIndex = 0;
+        for (int i = 0; i < appends.size(); i++) {
+            int batchSize = batches.get(i).size();
+            try {
+                appends.get(i).join();
+            } catch (CompletionException e) {
+                failedAppends++;
+                rowErrors.putAll(errorsOf(e.getCause(), firstIndex, batchSize));
+            }
+            firstIndex += batchSize;
+        }
+
+        if (failedAppends > 0) {
+            log.error("Storage Write APIへの追記が {} 件中 {} 件失敗しました: {}", batches.size(), failedAppends, tableId);
+            invalidate(tableId, stream);
+        }
+        return new InsertResult(rows.size(), batches.size(), 0, rowErrors);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        streams.forEach(this::invalidate);
+        streamFactory.close();
+    }
+
+    private AppendStream open(TableId tableId) {
+        log.info("Storage Write APIのストリームを開きます: {}（{}）", tableId, streamType);
+        return streamFactory.open(tableId, streamType);
+    }
+
+    /**
+     * 追記の順序（コミット済みストリームではオフセット）を保つため、ストリームをロックして送信だけをまとめて行う
+     *
+     * @return 送信した場合true、他のスレッドがストリームを閉じていた場合false
+     */
+    private boolean appendAll(TableId tableId, AppendStream stream, List<List<Map<String, Object>>> batches,
+                              List<CompletableFuture<Void>> appends) {
+        synchronized (stream) {
+            if (streams.get(tableId) != stream) {
+                return false;
+            }
+            for (List<Map<String, Object>> batch : batches) {
+                appends.add(stream.append(batch));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 失敗した追記の全行のエラーを、元のリストでの行番号で作成する
+     * 不正な行にはそのエラーを、それ以外の行には同じ追記の他の行により拒否されたことを示すエラーを設定する
+     */
+    private static Map<Long, List<BigQueryError>> errorsOf(Throwable cause, int firstIndex, int batchSize) {
+        Map<Integer, String> invalidRows = cause instanceof AppendRowsException rowsException
+                ? rowsException.getRowErrors()
+                : Map.of();
+        List<BigQueryError> batchError = invalidRows.isEmpty()
+                ? List.of(new BigQueryError(APPEND_FAILED_REASON, null, cause.getMessage()))
+                : List.of(new BigQueryError("stopped", null, "同じ追記の他の行にエラーがあるため書き込まれませんでした"));
+        Map<Long, List<BigQueryError>> errors = new TreeMap<>();
+        for (int i = 0; i < batchSize; i++) {
+            String message = invalidRows.get(i);
+            errors.put((long) firstIndex + i,
+                    message != null ? List.of(new BigQueryError("invalid", null, message)) : batchError);
+        }
+        return errors;
+    }
+
+    /**
+     * ストリームを閉じる
+     * 他のスレッドが追記を送信している最中に閉じないよう、送信時と同じロックを取得する
+     */
+    private void invalidate(TableId tableId, AppendStream stream) {
+        synchronized (stream) {
+            if (!streams.remove(tableId, stream)) {
+                return;
+            }
+            try {
+                stream.close();
+            } catch (Exception e) {
+                log.warn("Storage Write APIのストリームを閉じる際にエラーが発生しました: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 1つの書き込みストリーム
+     */
+    interface AppendStream {
+
+        /**
+         * 行を追記する
+         * 応答を待たずに返し、追記が完了した時点で完了するFutureを返す
+         * 不正な行が含まれる場合、Futureは{@link AppendRowsException}で完了する
+         *
+         * @param rows 追記する行
+         * @return 追記が完了した時点で完了するFuture
+         */
+        CompletableFuture<Void> append(List<Map<String, Object>> rows);
+
+        void close();
+    }
+
+    /**
+     * テーブルの書き込みストリームを開く処理
+     */
+    interface AppendStreamFactory {
+
+        AppendStream open(TableId tableId, StreamType streamType);
+
+        void close();
+    }
+
+    /**
+     * 追記した行の一部が不正だったため、追記全体が拒否されたことを表す例外
+     */
+    static final class AppendRowsException extends RuntimeException {
+
+        private final Map<Integer, String> rowErrors;
+
+        AppendRowsException(Map<Integer, String> rowErrors) {
+            super("追記した行にエラーがあります: " + rowErrors);
+            this.rowErrors = rowErrors;
+        }
+
+        /**
+         * @return 追記内での行番号とエラーメッセージ
+         */
+        Map<Integer, String> getRowErrors() {
+            return rowErrors;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.myapplication.service;
+
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.TableId;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * テーブルごとの設定に応じて書き込み方式（insertAll / Storage Write API）を切り替える
+ * 設定のないテーブルは既定の書き込み方式を使用する
+ */
+@Slf4j
+@Primary
+@Component
+public class TableRoutingRowWriter implements BigQueryRowWriter {
+
+    /**
+     * 書き込み方式
+     */
+    public enum Mode {
+        INSERT_ALL,
+        STORAGE_WRITE;
+
+        /**
+         * 設定値（insert-all / storage-write）から書き込み方式を取得する
+         */
+        static Mode parse(String value) {
+            return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final BigQueryRowWriter insertAllWriter;
+    private final BigQueryRowWriter storageWriter;
+    private final Mode defaultMode;
+    private final Map<String, Mode> tableModes;
+
+    @Autowired
+    public TableRoutingRowWriter(ChunkedInsertAllWriter insertAllWriter,
+                                 StorageWriteApiWriter storageWriter,
+                                 @Value("${app.bigquery.write.default-mode:insert-all}") String defaultMode,
+                                 @Value("${app.bigquery.write.table-modes:}") String tableModes) {
+        this(insertAllWriter, storageWriter, Mode.parse(defaultMode), parseTableModes(tableModes));
+    }
+
+    public TableRoutingRowWriter(BigQueryRowWriter insertAllWriter, BigQueryRowWriter storageWriter,
+                                 Mode defaultMode, Map<String, Mode> tableModes) {
+        this.insertAllWriter = insertAllWriter;
+        this.storageWriter = storageWriter;
+        this.defaultMode = defaultMode;
+        this.tableModes = Map.copyOf(tableModes);
+        log.info("TableRoutingRowWriter initialized: defaultMode={}, tableModes={}", defaultMode, tableModes);
+    }
+
+    @Override
+    public InsertResult write(BigQuery bigQuery, TableId tableId, List<Map<String, Object>> rows) {
+        return switch (modeOf(tableId.getTable())) {
+            case INSERT_ALL -> insertAllWriter.write(bigQuery, tableId, rows);
+            case STORAGE_WRITE -> storageWriter.write(bigQuery, tableId, rows);
+        };
+    }
+
+    /**
+     * テーブルに適用される書き込み方式を取得する
+     *
+     * @param tableName テーブル名
+     * @return 書き込み方式
+     */
+    public Mode modeOf(String tableName) {
+        return tableModes.getOrDefault(tableName, defaultMode);
+    }
+
+    /**
+     * 「テーブル名:方式」をカンマ区切りで並べた設定値を解析する
+     * 例: events:storage-write,audit_log:insert-all
+     */
+    static Map<String, Mode> parseTableModes(String value) {
+        Map<String, Mode> modes = new HashMap<>();
+        if (value == null || value.isBlank()) {
+            return modes;
+        }
+        for (String entry : value.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int separator = entry.indexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("書き込み方式の設定が不正です: " + entry.trim());
+            }
+            modes.put(entry.substring(0, separator).trim(), Mode.parse(entry.substring(separator + 1)));
+        }
+        return modes;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.myapplication.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 事前に生成した豆知識を保持するプール
+ * 保持数が下限（lowWatermark）を下回ると、上限（highWatermark）まで豆知識をバックグラウンドで生成して補充する
+ * 補充時の同時呼び出し数を制限し、Gemini APIがレート制限（429）を返した場合は一定時間補充を停止する
+ */
+public final class TriviaPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(TriviaPool.class);
+
+    private final Supplier<Mono<String>> generator;
+    private final BlockingQueue<String> pool;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final int refillConcurrency;
+    private final Duration rateLimitBackoff;
+    private final Clock clock;
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private volatile Instant pausedUntil = Instant.MIN;
+
+    /**
+     * @param generator         豆知識を1件生成するMonoを返す関数
+     * @param capacity          プールの最大保持数（0の場合は無効）
+     * @param lowWatermark      補充を開始する保持数の下限（無効の場合は使用しない）
+     * @param highWatermark     補充する保持数の上限（無効の場合は使用しない）
+     * @param refillConcurrency 補充時に同時に生成する最大数
+     * @param rateLimitBackoff  レート制限時に補充を停止する期間（Retry-Afterヘッダーがある場合はその値を優先する）
+     * @param clock             時計
+     */
+    public TriviaPool(Supplier<Mono<String>> generator, int capacity, int lowWatermark, int highWatermark,
+                      int refillConcurrency, Duration rateLimitBackoff, Clock clock) {
+        if (capacity < 0 || capacity > 0 && (lowWatermark < 0 || lowWatermark > highWatermark
+                || highWatermark > capacity || refillConcurrency <= 0)) {
+            throw new IllegalArgumentException("豆知識プールの設定が不正です: capacity=" + capacity
+                    + ", lowWatermark=" + lowWatermark + ", highWatermark=" + highWatermark
+                    + ", refillConcurrency=" + refillConcurrency);
+        }
+        this.generator = generator;
+        this.pool = capacity > 0 ? new ArrayBlockingQueue<>(capacity) : null;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.refillConcurrency = refillConcurrency;
+        this.rateLimitBackoff = rateLimitBackoff;
+        this.clock = clock;
+    }
+
+    /**
+     * 豆知識を保持しない無効なプールを作成する
+     *
+     * @return 常に空を返すプール
+     */
+    public static TriviaPool disabled() {
+        return new TriviaPool(Mono::empty, 0, 0, 0, 1, Duration.ZERO, Clock.systemUTC());
+    }
+
+    /**
+     * @return 有効なプールの場合true
+     */
+    public boolean isEnabled() {
+        return pool != null;
+    }
+
+    /**
+     * プールから豆知識を1件取り出す
+     * 取り出した結果、保持数が下限を下回った場合は補充を開始する
+     *
+     * @return 豆知識（プールが空の場合は空）
+     */
+    public Optional<String> poll() {
+        if (pool == null) {
+            return Optional.empty();
+        }
+        String trivia = pool.poll();
+        if (pool.size() < lowWatermark) {
+            refill();
+        }
+        return Optional.ofNullable(trivia);
+    }
+
+    /**
+     * 保持数が下限を下回っている場合に、上限まで豆知識を補充する
+     * 補充は非同期に行い、完了を待たずに返す
+     * 補充中、またはレート制限により停止中の場合は何もしない
+     */
+    public void refill() {
+        if (pool == null || pool.size() >= lowWatermark && !pool.isEmpty()) {
+            return;
+        }
+        if (clock.instant().isBefore(pausedUntil) || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+
+        int needed = highWatermark - pool.size();
+        if (needed <= 0) {
+            refilling.set(false);
+            return;
+        }
+        logger.info("豆知識プールを補充します: 保持数={}, 補充数={}", pool.size(), needed);
+        Flux.range(0, needed)
+                .flatMap(i -> Mono.defer(generator), refillConcurrency)
+                .doOnNext(pool::offer)
+                .doFinally(signal -> refilling.set(false))
+                // 失敗した場合は今回の補充を打ち切り、次回の補充で再試行する
+                .subscribe(trivia -> {
+                }, this::onRefillError);
+    }
+
+    /**
+     * @return 現在の保持数
+     */
+    public int size() {
+        return pool == null ? 0 : pool.size();
+    }
+
+    /**
+     * @return レート制限により補充を停止している場合true
+     */
+    public boolean isPaused() {
+        return clock.instant().isBefore(pausedUntil);
+    }
+
+    private void onRefillError(Throwable e) {
+        if (e instanceof WebClientResponseException response
+                && response.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+            Duration backoff = retryAfter(response).orElse(rateLimitBackoff);
+            pausedUntil = clock.instant().plus(backoff);
+            logger.warn("Gemini APIのレート制限により豆知識プールの補充を {} 停止します", backoff);
+            return;
+        }
+        logger.warn("豆知識プールの補充に失敗しました: {}", e.getMessage());
+    }
+
+    private static Optional<Duration> retryAfter(WebClientResponseException response) {
+        String value = response.getHeaders().getFirst("Retry-After");
+        if (value == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Duration.ofSeconds(Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            // HTTP日付形式の場合は既定の停止期間を使用する
+            return Optional.empty();
+        }
+    }
+}
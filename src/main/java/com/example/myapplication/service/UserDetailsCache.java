@@ -0,0 +1,87 @@
+package com.example.myapplication.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 認証に使用するユーザー情報（UserDetails）をプロセス内に保持するキャッシュ
+ * 件数の上限とTTLを設定し、ユーザーの作成・無効化の際はUserServiceから該当ユーザーを削除する
+ * 認証後にSpring Securityがパスワードを消去（eraseCredentials）してもキャッシュの内容が変わらないよう、
+ * 格納時と取得時にコピーを作成する
+ */
+@Slf4j
+@Component
+public class UserDetailsCache implements UserCache {
+
+    private final boolean enabled;
+    private final Cache<String, UserDetails> cache;
+
+    @Autowired
+    public UserDetailsCache(@Value("${app.security.user-cache.enabled:true}") boolean enabled,
+                            @Value("${app.security.user-cache.max-size:1000}") long maxSize,
+                            @Value("${app.security.user-cache.ttl:PT5M}") Duration ttl,
+                            MeterRegistry meterRegistry) {
+        this(enabled, maxSize, ttl);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "users");
+    }
+
+    public UserDetailsCache(boolean enabled, long maxSize, Duration ttl) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        log.info("UserDetailsCache initialized: enabled={}, maxSize={}, ttl={}", enabled, maxSize, ttl);
+    }
+
+    /**
+     * キャッシュを使用しないインスタンスを作成する
+     *
+     * @return 常にキャッシュミスとなる無効なキャッシュ
+     */
+    public static UserDetailsCache disabled() {
+        return new UserDetailsCache(false, 0, Duration.ZERO);
+    }
+
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        if (!enabled) {
+            return null;
+        }
+        UserDetails cached = cache.getIfPresent(username);
+        return cached == null ? null : copyOf(cached);
+    }
+
+    @Override
+    public void putUserInCache(UserDetails user) {
+        if (enabled) {
+            cache.put(user.getUsername(), copyOf(user));
+        }
+    }
+
+    @Override
+    public void removeUserFromCache(String username) {
+        if (enabled) {
+            cache.invalidate(username);
+        }
+    }
+
+    /**
+     * 権限（GrantedAuthority）は不変のため、要素はコピーせずに共有する
+     */
+    private static UserDetails copyOf(UserDetails user) {
+        return User.withUserDetails(user).build();
+    }
+}
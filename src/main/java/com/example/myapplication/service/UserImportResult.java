@@ -0,0 +1,23 @@
+package com.example.myapplication.service;
+
+import java.util.List;
+
+/**
+ * ユーザーの一括登録の結果
+ *
+ * @param importedCount    登録したユーザー数
+ * @param skippedUsernames 既に存在する、または入力内で重複していたため登録しなかったユーザー名
+ * @param rejected         入力値が不正なため登録しなかったユーザー
+ */
+public record UserImportResult(int importedCount, List<String> skippedUsernames, List<Rejection> rejected) {
+
+    /**
+     * 入力値が不正なため登録しなかったユーザー
+     *
+     * @param index    入力のリスト内での位置（0始まり）
+     * @param username ユーザー名（未入力の場合はnull）
+     * @param messages 不正な理由（ユーザー登録画面と同じメッセージ）
+     */
+    public record Rejection(int index, String username, List<String> messages) {
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.myapplication.service;
+
+import com.example.myapplication.dto.UserRegistrationDto;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ユーザーを一括で登録するサービス
+ * JPAで1件ずつ保存せず、JDBCのバッチINSERTでまとめて登録する
+ * 各ユーザーはユーザー登録画面と同じ入力チェック（UserRegistrationDtoの制約とパスワードの一致）を行ってから登録する
+ */
+@Slf4j
+@Service
+public class UserImportService {
+
+    private static final String INSERT_SQL = "INSERT INTO users (username, password, roles, enabled) VALUES (?, ?, ?, ?)";
+
+    /**
+     * 既存ユーザー名の確認で、1回のクエリのIN句に含めるユーザー名の最大数
+     */
+    private static final int EXISTING_LOOKUP_CHUNK_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PasswordEncoder passwordEncoder;
+    private final UsernameIndex usernameIndex;
+    private final Validator validator;
+    private final int batchSize;
+
+    @Autowired
+    public UserImportService(JdbcTemplate jdbcTemplate, PasswordEncoder passwordEncoder, UsernameIndex usernameIndex,
+                             Validator validator, @Value("${app.users.import.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.passwordEncoder = passwordEncoder;
+        this.usernameIndex = usernameIndex;
+        this.validator = validator;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * ユーザーを一括で登録する（ロールはUSER、有効状態）
+     * 入力値が不正なユーザーと、既に存在するユーザー名・入力内で2件目以降に現れたユーザー名は登録せずに結果で返す
+     * 登録は1つのトランザクションで行い、途中で失敗した場合は1件も登録しない
+     * パスワードのハッシュ化は1件ずつ順に行うため、ログインなど他の処理のハッシュ化を妨げない
+     *
+     * @param users 登録するユーザー
+     * @return 登録結果
+     * @throws IllegalArgumentException 確認後に同じユーザー名が他から登録され、一意制約に違反した場合
+     */
+    @Transactional
+    public UserImportResult importUsers(List<UserRegistrationDto> users) {
+        Map<String, String> passwordsByUsername = new LinkedHashMap<>();
+        List<String> skipped = new ArrayList<>();
+        List<UserImportResult.Rejection> rejected = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            UserRegistrationDto user = users.get(i);
+            List<String> violations = validate(user);
+            if (!violations.isEmpty()) {
+                rejected.add(new UserImportResult.Rejection(i, user.getUsername(), violations));
+                continue;
+            }
+            if (passwordsByUsername.putIfAbsent(user.getUsername(), user.getPassword()) != null) {
+                skipped.add(user.getUsername());
+            }
+        }
+        Set<String> existing = findExistingUsernames(new ArrayList<>(passwordsByUsername.keySet()));
+        passwordsByUsername.keySet().removeIf(username -> {
+            if (!existing.contains(username)) {
+                return false;
+            }
+            skipped.add(username);
+            return true;
+        });
+
+        List<Object[]> rows = new ArrayList<>(passwordsByUsername.size());
+        passwordsByUsername.forEach((username, password) ->
+                rows.add(new Object[]{username, passwordEncoder.encode(password), "USER", true}));
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows, batchSize, (statement, row) -> {
+                for (int i = 0; i < row.length; i++) {
+                    statement.setObject(i + 1, row[i]);
+                }
+            });
+        } catch (DuplicateKeyException e) {
+            throw new IllegalArgumentException("一括登録中に同じユーザー名が登録されたため、登録を取り消しました。再度実行してください。", e);
+        }
+        // ロールバックされた場合もインデックスに残るが、存在する可能性があるという判定が増えるだけのため問題ない
+        passwordsByUsername.keySet().forEach(usernameIndex::add);
+
+        log.info("ユーザーを一括登録しました: 登録数={}, スキップ数={}, 不正な入力数={}", rows.size(), skipped.size(), rejected.size());
+        return new UserImportResult(rows.size(), Collections.unmodifiableList(skipped), Collections.unmodifiableList(rejected));
+    }
+
+    /**
+     * ユーザー登録画面と同じ入力チェックを行う
+     *
+     * @return 不正な理由のメッセージ（正しい場合は空）
+     */
+    private List<String> validate(UserRegistrationDto user) {
+        List<String> messages = new ArrayList<>();
+        for (ConstraintViolation<UserRegistrationDto> violation : validator.validate(user)) {
+            messages.add(violation.getMessage());
+        }
+        if (!user.isPasswordMatching()) {
+            messages.add("パスワードが一致しません");
+        }
+        // 検証の順序は実装に依存するため、結果が安定するよう並べ替える
+        Collections.sort(messages);
+        return messages;
+    }
+
+    private Set<String> findExistingUsernames(List<String> usernames) {
+        Set<String> existing = new HashSet<>();
+        for (int from = 0; from < usernames.size(); from += EXISTING_LOOKUP_CHUNK_SIZE) {
+            List<String> chunk = usernames.subList(from, Math.min(from + EXISTING_LOOKUP_CHUNK_SIZE, usernames.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            existing.addAll(jdbcTemplate.queryForList(
+                    "SELECT username FROM users WHERE username IN (" + placeholders + ")", String.class, chunk.toArray()));
+        }
+        return existing;
+    }
+}
@@ -4,60 +4,92 @@ import com.example.myapplication.dto.UserRegistrationDto;
 import com.example.myapplication.entity.User;
 import com.example.myapplication.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.core.userdetails.cache.NullUserCache;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * データベースベースのユーザー認証サービス
  * Spring SecurityのUserDetailsServiceを実装してデータベースからユーザー情報を取得
  * ユーザー登録機能も提供
+ * 取得したユーザー情報はUserCacheに保持し、認証のたびにデータベースを参照しないようにする
+ * 存在しないユーザー名はUsernameIndexで判定し、データベースを参照せずに応答する
  */
 @Service
 public class UserService implements UserDetailsService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UserCache userCache;
+    private final UsernameIndex usernameIndex;
+
+    /**
+     * roles列の値ごとに変換済みの権限のリスト
+     * roles列の値の種類はロールの組み合わせの数に限られるため、同じ値のユーザー間で同じリストを共有する
+     */
+    private final Map<String, List<GrantedAuthority>> authoritiesByRoles = new ConcurrentHashMap<>();
 
     @Autowired
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, UserCache userCache,
+                       UsernameIndex usernameIndex) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.userCache = userCache;
+        this.usernameIndex = usernameIndex;
+    }
+
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+        this(userRepository, passwordEncoder, new NullUserCache(), UsernameIndex.disabled());
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+        UserDetails cached = userCache.getUserFromCache(username);
+        if (cached != null) {
+            return cached;
+        }
 
-        List<SimpleGrantedAuthority> authorities = Arrays.stream(user.getRoles().split(","))
-                .map(role -> new SimpleGrantedAuthority("ROLE_" + role.trim()))
-                .toList();
+        User user = findUser(username)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
 
-        return org.springframework.security.core.userdetails.User.builder()
+        UserDetails userDetails = org.springframework.security.core.userdetails.User.builder()
                 .username(user.getUsername())
                 .password(user.getPassword())
-                .authorities(authorities)
+                .authorities(authoritiesOf(user.getRoles()))
                 .disabled(!user.getEnabled())
                 .build();
+        userCache.putUserInCache(userDetails);
+        return userDetails;
     }
 
     /**
      * 新規ユーザーを作成する
+     * 既に存在するユーザー名はパスワードをハッシュ化する前に拒否し、重複した登録の繰り返しでハッシュ化の処理枠を消費させない
+     * （存在の確認はUsernameIndexで存在する可能性があると判定された場合のみデータベースを参照する）
+     * 確認とINSERTの間に同じユーザー名が登録される競合は、usernameの一意制約の違反で検出する
      *
      * @param registrationDto 登録フォームからのデータ
      * @return 作成されたユーザーエンティティ
      * @throws IllegalArgumentException ユーザー名が既に存在する場合
      */
     public User createUser(UserRegistrationDto registrationDto) {
-        // ユーザー名の重複チェック
-        if (userRepository.findByUsername(registrationDto.getUsername()).isPresent()) {
+        if (isUsernameExists(registrationDto.getUsername())) {
             throw new IllegalArgumentException("ユーザー名 '" + registrationDto.getUsername() + "' は既に使用されています");
         }
 
@@ -71,7 +103,51 @@ public class UserService implements UserDetailsService {
                 "USER"
         );
 
-        return userRepository.save(newUser);
+        User savedUser;
+        try {
+            // 制約違反をこの場で検出するため、INSERTを即座に実行する
+            savedUser = userRepository.saveAndFlush(newUser);
+        } catch (DataIntegrityViolationException e) {
+            // usersテーブルでINSERT時に違反し得る制約はusernameの一意制約のみ（他の列は値を必ず設定している）
+            throw new IllegalArgumentException("ユーザー名 '" + registrationDto.getUsername() + "' は既に使用されています", e);
+        }
+        removeFromCacheAfterCommit(savedUser.getUsername());
+        usernameIndex.add(savedUser.getUsername());
+        return savedUser;
+    }
+
+    /**
+     * ユーザーを無効化する
+     * コミット後にキャッシュからも削除し、以降の認証ではデータベースの無効状態を参照させる
+     *
+     * @param username 無効化するユーザー名
+     * @throws UsernameNotFoundException ユーザーが存在しない場合
+     */
+    @Transactional
+    public void disableUser(String username) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+        user.setEnabled(false);
+        userRepository.save(user);
+        removeFromCacheAfterCommit(username);
+    }
+
+    /**
+     * トランザクションのコミット後にユーザー情報をキャッシュから削除する
+     * コミット前に削除すると、その間に認証したリクエストが更新前の行を読み込んでTTLの間キャッシュしてしまうため、
+     * 削除はコミットで更新後の行が参照できるようになってから行う（トランザクション外の場合はその場で削除する）
+     */
+    private void removeFromCacheAfterCommit(String username) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            userCache.removeUserFromCache(username);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                userCache.removeUserFromCache(username);
+            }
+        });
     }
 
     /**
@@ -81,6 +157,32 @@ public class UserService implements UserDetailsService {
      * @return ユーザー名が既に存在する場合true
      */
     public boolean isUsernameExists(String username) {
-        return userRepository.findByUsername(username).isPresent();
+        return findUser(username).isPresent();
+    }
+
+    /**
+     * ユーザーを取得する
+     * 確実に存在しないユーザー名の場合はデータベースを参照しない
+     */
+    private Optional<User> findUser(String username) {
+        UsernameIndex.Lookup lookup = usernameIndex.lookup(username);
+        if (lookup == UsernameIndex.Lookup.ABSENT) {
+            return Optional.empty();
+        }
+        Optional<User> user = userRepository.findByUsername(username);
+        if (user.isEmpty() && lookup == UsernameIndex.Lookup.MIGHT_CONTAIN) {
+            usernameIndex.recordFalsePositive();
+        }
+        return user;
+    }
+
+    /**
+     * roles列の値（カンマ区切り）を権限のリストに変換する
+     * 変換結果は値ごとに保持し、同じ値の場合は変換せずに同じリストを返す
+     */
+    private List<GrantedAuthority> authoritiesOf(String roles) {
+        return authoritiesByRoles.computeIfAbsent(roles, value -> Arrays.stream(value.split(","))
+                .map(role -> (GrantedAuthority) new SimpleGrantedAuthority("ROLE_" + role.trim()))
+                .toList());
     }
 }
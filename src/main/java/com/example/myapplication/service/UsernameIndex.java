@@ -0,0 +1,205 @@
+package com.example.myapplication.service;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 登録済みのユーザー名を保持するブルームフィルター
+ * 「存在しない」と判定したユーザー名は確実に存在しないため、データベースを参照せずに応答できる
+ * 「存在する可能性がある」と判定した場合のみデータベースを参照する（誤判定の割合はメトリクスで確認する）
+ * 起動時と一定間隔でusersテーブルから再構築し、アプリケーションから登録したユーザー名はその都度追加する
+ * ユーザーは削除しないため、フィルターから要素を削除する必要はない
+ * フィルターはインスタンスごとに保持するため、複数のインスタンスで同じデータベースを使用する場合
+ * （app.datasource.shared=true）は、他のインスタンスで登録されたユーザー名を存在しないと誤判定しないよう使用しない
+ */
+@Slf4j
+@Component
+public class UsernameIndex {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final LongAdder absentCount = new LongAdder();
+    private final LongAdder mightContainCount = new LongAdder();
+    private final LongAdder falsePositiveCount = new LongAdder();
+
+    /**
+     * 参照に使用するフィルター（最初の構築が完了するまではnull）
+     */
+    private volatile BloomFilter<CharSequence> filter;
+
+    /**
+     * 再構築中のフィルター（再構築中に登録されたユーザー名を取りこぼさないよう、両方に追加する）
+     */
+    private BloomFilter<CharSequence> rebuilding;
+
+    @Autowired
+    public UsernameIndex(JdbcTemplate jdbcTemplate,
+                         @Value("${app.users.username-index.enabled:true}") boolean enabled,
+                         @Value("${app.users.username-index.expected-insertions:100000}") long expectedInsertions,
+                         @Value("${app.users.username-index.false-positive-rate:0.01}") double falsePositiveRate,
+                         @Value("${app.datasource.shared:false}") boolean sharedDataSource,
+                         MeterRegistry meterRegistry) {
+        this(jdbcTemplate, enabled && !sharedDataSource, expectedInsertions, falsePositiveRate);
+        if (enabled && sharedDataSource) {
+            log.info("データベースを他のインスタンスと共有しているため、ユーザー名のインデックスを使用しません");
+        }
+        Gauge.builder("users.username-index.expected-fpp", this, UsernameIndex::expectedFalsePositiveRate)
+                .description("ブルームフィルターの現在の要素数から推定した誤判定率")
+                .register(meterRegistry);
+        FunctionCounter.builder("users.username-index.lookups", absentCount, LongAdder::sum)
+                .tag("result", "absent")
+                .description("ユーザー名の存在確認の回数")
+                .register(meterRegistry);
+        FunctionCounter.builder("users.username-index.lookups", mightContainCount, LongAdder::sum)
+                .tag("result", "might-contain")
+                .description("ユーザー名の存在確認の回数")
+                .register(meterRegistry);
+        FunctionCounter.builder("users.username-index.false-positives", falsePositiveCount, LongAdder::sum)
+                .description("存在する可能性があると判定したが、データベースに存在しなかった回数")
+                .register(meterRegistry);
+    }
+
+    public UsernameIndex(JdbcTemplate jdbcTemplate, boolean enabled, long expectedInsertions, double falsePositiveRate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        log.info("UsernameIndex initialized: enabled={}, expectedInsertions={}, falsePositiveRate={}",
+                enabled, expectedInsertions, falsePositiveRate);
+    }
+
+    /**
+     * フィルターを使用しないインスタンスを作成する
+     *
+     * @return 常に存在する可能性があると判定する無効なインデックス
+     */
+    public static UsernameIndex disabled() {
+        return new UsernameIndex(null, false, 0, 0);
+    }
+
+    /**
+     * ユーザー名が存在する可能性があるかどうかを判定する
+     * 無効な場合や最初の構築が完了していない場合は、常に存在する可能性があると判定する
+     *
+     * @param username ユーザー名
+     * @return 存在する可能性がある場合true（falseの場合は確実に存在しない）
+     */
+    public boolean mightContain(String username) {
+        return lookup(username) != Lookup.ABSENT;
+    }
+
+    /**
+     * ユーザー名の存在をフィルターで判定する
+     * 無効な場合や最初の構築が完了していない場合は、フィルターで判定せずにNOT_INDEXEDを返す
+     *
+     * @param username ユーザー名
+     * @return 判定結果
+     */
+    public Lookup lookup(String username) {
+        BloomFilter<CharSequence> current = filter;
+        if (current == null) {
+            return Lookup.NOT_INDEXED;
+        }
+        if (current.mightContain(username)) {
+            mightContainCount.increment();
+            return Lookup.MIGHT_CONTAIN;
+        }
+        absentCount.increment();
+        return Lookup.ABSENT;
+    }
+
+    /**
+     * 登録したユーザー名を追加する
+     *
+     * @param username ユーザー名
+     */
+    public synchronized void add(String username) {
+        if (filter != null) {
+            filter.put(username);
+        }
+        if (rebuilding != null) {
+            rebuilding.put(username);
+        }
+    }
+
+    /**
+     * 存在する可能性があると判定したユーザー名が、データベースに存在しなかったことを記録する
+     * lookupがMIGHT_CONTAINを返した場合にだけ記録する（誤判定率は might-contain の判定の回数に対する割合となる）
+     */
+    public void recordFalsePositive() {
+        falsePositiveCount.increment();
+    }
+
+    /**
+     * usersテーブルのユーザー名からフィルターを再構築する
+     * 起動時と一定間隔で実行し、アプリケーションを経由せずに登録されたユーザー名も反映する
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.users.username-index.rebuild-interval:PT10M}")
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        BloomFilter<CharSequence> next = BloomFilter.create(
+                Funnels.stringFunnel(StandardCharsets.UTF_8), expectedInsertions, falsePositiveRate);
+        synchronized (this) {
+            rebuilding = next;
+        }
+        try {
+            jdbcTemplate.query("SELECT username FROM users", resultSet -> {
+                next.put(resultSet.getString(1));
+            });
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                rebuilding = null;
+            }
+            log.warn("ユーザー名のインデックスを再構築できませんでした: {}", e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            filter = next;
+            rebuilding = null;
+        }
+        log.info("ユーザー名のインデックスを再構築しました: 推定要素数={}, 推定誤判定率={}",
+                next.approximateElementCount(), next.expectedFpp());
+    }
+
+    private double expectedFalsePositiveRate() {
+        BloomFilter<CharSequence> current = filter;
+        return current == null ? 0 : current.expectedFpp();
+    }
+
+    /**
+     * ユーザー名の存在の判定結果
+     */
+    public enum Lookup {
+
+        /**
+         * 確実に存在しない
+         */
+        ABSENT,
+
+        /**
+         * フィルターで存在する可能性があると判定した（誤判定の可能性がある）
+         */
+        MIGHT_CONTAIN,
+
+        /**
+         * 無効または構築前のため、フィルターで判定していない
+         */
+        NOT_INDEXED
+    }
+}
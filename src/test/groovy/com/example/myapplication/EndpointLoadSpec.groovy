@@ -0,0 +1,283 @@
+package com.example.myapplication
+
+import com.example.myapplication.dto.UserRegistrationDto
+import com.example.myapplication.service.BigQueryService
+import com.example.myapplication.service.UserService
+import com.google.api.gax.paging.Page
+import com.google.cloud.PageImpl
+import com.google.cloud.bigquery.BigQuery
+import com.google.cloud.bigquery.Field
+import com.google.cloud.bigquery.FieldList
+import com.google.cloud.bigquery.FieldValue
+import com.google.cloud.bigquery.FieldValueList
+import com.google.cloud.bigquery.Schema
+import com.google.cloud.bigquery.StandardSQLTypeName
+import com.google.cloud.bigquery.TableResult
+import com.sun.net.httpserver.HttpServer
+import groovy.util.logging.Slf4j
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.boot.test.context.TestConfiguration
+import org.springframework.boot.test.web.server.LocalServerPort
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Import
+import org.springframework.context.annotation.Primary
+import org.springframework.test.context.ContextConfiguration
+import org.springframework.test.context.DynamicPropertyRegistry
+import org.springframework.test.context.DynamicPropertySource
+import spock.lang.Requires
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.lang.reflect.InvocationHandler
+import java.lang.reflect.Proxy
+import java.net.http.HttpClient
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * BigQuery・Gemini APIを呼び出すエンドポイントの負荷テスト
+ * アプリケーションをランダムなポートで起動し、ログインしたうえでHTTPで同時にリクエストを送信する
+ * BigQueryとGemini APIの応答は一定時間待たせて返す模擬実装に置き換え、スループットと応答時間の分布をログに出力する
+ * 実行環境により結果が変わるため応答時間の判定は行わず、通常のテストでは実行しない（mvn test -Pload-test で実行する）
+ *
+ * 実行時に指定できるシステムプロパティ：
+ * load.requests（エンドポイントごとのリクエスト数）、load.concurrency（同時に送信するリクエスト数）、
+ * load.backend-latency-ms（BigQuery・Gemini APIの応答待ち時間）、spring.threads.virtual.enabled（仮想スレッドの使用）
+ */
+@Slf4j
+@Requires({ sys['load.test'] })
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = [
+        "spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        // 毎回バックエンドを呼び出すよう、豆知識のプールと同時呼び出し数の制限を無効にする
+        "app.ai.gemini.api-key=load-test",
+        "app.ai.trivia-pool.capacity=0",
+        "app.ai.resilience.enabled=false",
+        "app.bigquery.storage-read.enabled=false",
+        "logging.level.com.example.myapplication=WARN"
+])
+// Spock 2.3はSpring 6の@SpringBootTestのみではSpringのテストと判定しないため、@ContextConfigurationを併記する
+@ContextConfiguration
+@Import(LoadTestBackendConfig)
+class EndpointLoadSpec extends Specification {
+
+    static final int REQUESTS = Integer.getInteger("load.requests", 2000)
+    static final int CONCURRENCY = Integer.getInteger("load.concurrency", 400)
+    static final long BACKEND_LATENCY_MILLIS = Long.getLong("load.backend-latency-ms", 100)
+
+    static final String USERNAME = "loadtest"
+    static final String PASSWORD = "loadtest-password"
+
+    static final ScheduledExecutorService GEMINI_DELAY = Executors.newScheduledThreadPool(2)
+    static HttpServer geminiStub
+
+    @LocalServerPort
+    int port
+
+    @Autowired
+    UserService userService
+
+    @Shared
+    HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .cookieHandler(new CookieManager())
+            .build()
+
+    @Shared
+    String csrfToken
+
+    /**
+     * Gemini APIのgenerateContentの応答を、応答待ち時間の経過後に返すサーバーを起動する
+     * 待機中にスレッドを占有しないよう、応答はスケジューラーから送信する
+     */
+    @DynamicPropertySource
+    static void geminiProperties(DynamicPropertyRegistry registry) {
+        geminiStub = HttpServer.create(new InetSocketAddress("localhost", 0), 1000)
+        byte[] body = '{"candidates":[{"content":{"parts":[{"text":"負荷テストの豆知識"}]}}]}'
+                .getBytes(StandardCharsets.UTF_8)
+        geminiStub.createContext("/") { exchange ->
+            exchange.requestBody.readAllBytes()
+            GEMINI_DELAY.schedule({
+                exchange.responseHeaders.add("Content-Type", "application/json")
+                exchange.sendResponseHeaders(200, body.length)
+                exchange.responseBody.withCloseable { it.write(body) }
+            }, BACKEND_LATENCY_MILLIS, TimeUnit.MILLISECONDS)
+        }
+        geminiStub.start()
+        registry.add("app.ai.gemini.base-url") { "http://localhost:${geminiStub.address.port}/".toString() }
+    }
+
+    def setup() {
+        if (csrfToken != null) {
+            return
+        }
+        def dto = new UserRegistrationDto()
+        dto.username = USERNAME
+        dto.password = PASSWORD
+        dto.confirmPassword = PASSWORD
+        userService.createUser(dto)
+
+        def loginForm = "_csrf=${csrfOf(get("/login"))}&username=${USERNAME}&password=${PASSWORD}".toString()
+        client.send(HttpRequest.newBuilder(uri("/login"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(loginForm))
+                .build(), HttpResponse.BodyHandlers.discarding())
+        csrfToken = csrfOf(get("/ai"))
+    }
+
+    def cleanupSpec() {
+        geminiStub?.stop(0)
+        GEMINI_DELAY.shutdownNow()
+    }
+
+    def "BigQueryのクエリAPI（GET /bigquery/api/query）"() {
+        when:
+        def result = run("GET /bigquery/api/query", '"success":true') {
+            HttpRequest.newBuilder(uri("/bigquery/api/query?sql=SELECT%20id%2C%20name%20FROM%20users")).GET().build()
+        }
+
+        then:
+        result.errors == 0
+    }
+
+    def "豆知識の取得（POST /ai/trivia）"() {
+        when:
+        def result = run("POST /ai/trivia", "負荷テストの豆知識") {
+            HttpRequest.newBuilder(uri("/ai/trivia"))
+                    .header("X-CSRF-TOKEN", csrfToken)
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build()
+        }
+
+        then:
+        result.errors == 0
+    }
+
+    /**
+     * 同時に送信するリクエスト数を保ちながら、指定したリクエスト数を送信して結果をログに出力する
+     * 接続の確立やJITコンパイルを計測に含めないよう、先に同時実行数分のリクエストを送信しておく
+     * ステータスが200以外、またはレスポンスに期待する文字列を含まない場合はエラーとして数える
+     */
+    private LoadResult run(String name, String expected, Closure<HttpRequest> request) {
+        send(CONCURRENCY, expected, request)
+        def result = send(REQUESTS, expected, request)
+        log.warn("{}: リクエスト {} 件（同時 {} 件、応答待ち {} ms、仮想スレッド {}）: {} 秒、{} req/s、" +
+                "応答時間 p50={} ms p95={} ms p99={} ms max={} ms、エラー {} 件",
+                name, REQUESTS, CONCURRENCY, BACKEND_LATENCY_MILLIS,
+                System.getProperty("spring.threads.virtual.enabled", "false"),
+                String.format("%.2f", result.elapsedMillis / 1000d),
+                String.format("%.0f", REQUESTS * 1000d / result.elapsedMillis),
+                result.percentile(50), result.percentile(95), result.percentile(99), result.percentile(100),
+                result.errors)
+        if (result.errors > 0) {
+            log.warn("{}: 最初のエラー: {}", name, result.firstError)
+        }
+        result
+    }
+
+    private LoadResult send(int count, String expected, Closure<HttpRequest> request) {
+        def permits = new Semaphore(CONCURRENCY)
+        def latencies = new ConcurrentLinkedQueue<Long>()
+        def errors = new AtomicInteger()
+        def firstError = new AtomicReference<String>()
+        def futures = []
+        long start = System.nanoTime()
+        count.times {
+            permits.acquire()
+            long sent = System.nanoTime()
+            futures << client.sendAsync(request(), HttpResponse.BodyHandlers.ofString())
+                    .whenComplete { response, error ->
+                        latencies << (System.nanoTime() - sent).intdiv(1_000_000)
+                        if (error != null || response.statusCode() != 200 || !response.body().contains(expected)) {
+                            errors.incrementAndGet()
+                            firstError.compareAndSet(null, error != null ? error.toString() : describe(response))
+                        }
+                        permits.release()
+                    }
+        }
+        CompletableFuture.allOf(futures as CompletableFuture[]).handle { r, e -> null }.join()
+        new LoadResult((System.nanoTime() - start).intdiv(1_000_000), latencies.sort(), errors.get(), firstError.get())
+    }
+
+    /**
+     * エラーとしたレスポンスのステータスと、画面・JSONに含まれるエラーメッセージ（ない場合は先頭部分）を返す
+     */
+    private static String describe(HttpResponse<String> response) {
+        def message = response.body().find(/[^>"]*失敗しました: [^<"]*/) ?: response.body().take(200)
+        "status=${response.statusCode()} ${message.trim()}".toString()
+    }
+
+    private String get(String path) {
+        client.send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString()).body()
+    }
+
+    private URI uri(String path) {
+        URI.create("http://localhost:${port}${path}")
+    }
+
+    private static String csrfOf(String html) {
+        def matcher = html =~ /name="_csrf"[^>]*value="([^"]+)"/
+        assert matcher.find(): "CSRFトークンが見つかりません"
+        URLEncoder.encode(matcher.group(1), StandardCharsets.UTF_8)
+    }
+
+    static class LoadResult {
+        final long elapsedMillis
+        final List<Long> latencies
+        final int errors
+        final String firstError
+
+        LoadResult(long elapsedMillis, List<Long> latencies, int errors, String firstError) {
+            this.elapsedMillis = elapsedMillis
+            this.latencies = latencies
+            this.errors = errors
+            this.firstError = firstError
+        }
+
+        long percentile(int percent) {
+            latencies[Math.max(0, Math.ceil(latencies.size() * percent / 100d) as int - 1)]
+        }
+    }
+
+    /**
+     * クエリの実行を応答待ち時間の経過後に固定の結果を返すBigQueryに置き換えたBigQueryServiceを使用する
+     * 毎回BigQueryを呼び出すよう、クエリ結果のキャッシュと同一クエリの集約は使用しない
+     */
+    @TestConfiguration
+    static class LoadTestBackendConfig {
+
+        @Bean
+        @Primary
+        BigQueryService loadTestBigQueryService() {
+            def fields = FieldList.of(Field.of("id", StandardSQLTypeName.INT64), Field.of("name", StandardSQLTypeName.STRING))
+            def rows = (1..10).collect {
+                FieldValueList.of([FieldValue.of(FieldValue.Attribute.PRIMITIVE, "${it}".toString()),
+                                   FieldValue.of(FieldValue.Attribute.PRIMITIVE, "user${it}".toString())], fields)
+            }
+            def handler = { proxy, method, args ->
+                if (method.name != "query") {
+                    throw new UnsupportedOperationException("負荷テストでは使用しません: " + method.name)
+                }
+                Thread.sleep(BACKEND_LATENCY_MILLIS)
+                TableResult.newBuilder()
+                        .setSchema(Schema.of(fields))
+                        .setTotalRows((long) rows.size())
+                        .setPageNoSchema(new PageImpl<FieldValueList>(null, null, rows) as Page<FieldValueList>)
+                        .build()
+            } as InvocationHandler
+            def bigQuery = (BigQuery) Proxy.newProxyInstance(BigQuery.classLoader, [BigQuery] as Class[], handler)
+            new BigQueryService("load-test", "load_test", bigQuery)
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.myapplication.config
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder
+import org.springframework.security.crypto.password.PasswordEncoder
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * BoundedPasswordEncoderのSpockテスト
+ */
+class BoundedPasswordEncoderSpec extends Specification {
+
+    def "ハッシュ化・照合が専用のスレッドで実行されること"() {
+        given:
+        def encoder = new BoundedPasswordEncoder(new BCryptPasswordEncoder(4), 2, 10)
+
+        when:
+        def hash = encoder.encode("password")
+
+        then:
+        encoder.matches("password", hash)
+        !encoder.matches("wrong", hash)
+
+        cleanup:
+        encoder.shutdown()
+    }
+
+    def "実行中と待機中の数が上限に達している場合は即座に拒否されること"() {
+        given: "1スレッド・待機1件のエンコーダーで、実行中と待機中を1件ずつ作る"
+        def release = new CountDownLatch(1)
+        def started = new CountDownLatch(1)
+        def delegate = Mock(PasswordEncoder) {
+            encode(_) >> { started.countDown(); release.await(5, TimeUnit.SECONDS); "hash" }
+        }
+        def registry = new SimpleMeterRegistry()
+        def encoder = new BoundedPasswordEncoder(delegate, 1, 1, registry)
+        def callers = Executors.newFixedThreadPool(2)
+        def running = callers.submit({ encoder.encode("1") } as java.util.concurrent.Callable)
+        started.await(5, TimeUnit.SECONDS)
+        def queued = callers.submit({ encoder.encode("2") } as java.util.concurrent.Callable)
+        while (registry.get("password.hash.queue.size").gauge().value() < 1) {
+            Thread.sleep(5)
+        }
+
+        when:
+        encoder.encode("3")
+
+        then:
+        thrown(BoundedPasswordEncoder.HashingRejectedException)
+        registry.get("password.hash.rejected").functionCounter().count() == 1
+
+        when: "実行中の処理が終わると待機中の処理も実行される"
+        release.countDown()
+
+        then:
+        running.get(5, TimeUnit.SECONDS) == "hash"
+        queued.get(5, TimeUnit.SECONDS) == "hash"
+        registry.get("password.hash").tag("operation", "encode").timer().count() == 2
+
+        cleanup:
+        callers.shutdownNow()
+        encoder.shutdown()
+    }
+
+    def "委譲先の例外はそのまま返されること"() {
+        given:
+        def delegate = Mock(PasswordEncoder) {
+            matches(_, _) >> { throw new IllegalArgumentException("不正なハッシュ") }
+        }
+        def encoder = new BoundedPasswordEncoder(delegate, 1, 1)
+
+        when:
+        encoder.matches("password", "invalid")
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "不正なハッシュ"
+
+        cleanup:
+        encoder.shutdown()
+    }
+
+    def "コストは目標時間に応じて最小値から最大値の範囲で選択されること"() {
+        expect:
+        BoundedPasswordEncoder.calibrateStrength(Duration.ofNanos(1), 4, 8) == 4
+        BoundedPasswordEncoder.calibrateStrength(Duration.ofHours(1), 4, 8) == 8
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.myapplication.config
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Path
+import java.sql.DriverManager
+
+/**
+ * H2TcpServerConfigのSpockテスト
+ * このインスタンスが開いたデータベースファイルに、TCPサーバー経由で接続できることを検証する
+ */
+class H2TcpServerConfigSpec extends Specification {
+
+    @TempDir
+    Path directory
+
+    def "ファイルのURLで開いたデータベースにTCPサーバー経由で接続できること"() {
+        given: "このインスタンスがファイルのURLで開いたデータベース"
+        def database = directory.resolve("myapp").toAbsolutePath().toString()
+        def local = DriverManager.getConnection("jdbc:h2:file:" + database, "sa", "")
+        local.createStatement().execute("CREATE TABLE users (username VARCHAR(50)); INSERT INTO users VALUES ('alice')")
+        def port = new ServerSocket(0).withCloseable { it.localPort }
+        def server = new H2TcpServerConfig().h2TcpServer(port, false)
+        server.start()
+
+        when: "他のインスタンスと同じくTCPのURLで接続する"
+        def remote = DriverManager.getConnection("jdbc:h2:tcp://localhost:" + port + "/" + database, "sa", "")
+        def resultSet = remote.createStatement().executeQuery("SELECT username FROM users")
+
+        then:
+        resultSet.next()
+        resultSet.getString(1) == "alice"
+
+        cleanup:
+        remote?.close()
+        local?.close()
+        server?.stop()
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.myapplication.config
+
+import org.hibernate.cache.jcache.ConfigSettings
+import org.hibernate.cfg.AvailableSettings
+import spock.lang.Specification
+
+import javax.cache.CacheManager
+
+/**
+ * HibernateCacheConfigのSpockテスト
+ */
+class HibernateCacheConfigSpec extends Specification {
+
+    def cacheManager = Mock(CacheManager)
+
+    def "2次キャッシュに作成したCacheManagerを使用すること"() {
+        given:
+        def properties = [:]
+
+        when:
+        new HibernateCacheConfig().hibernateCacheManagerCustomizer(cacheManager, false).customize(properties)
+
+        then:
+        properties[ConfigSettings.CACHE_MANAGER].is(cacheManager)
+        !properties.containsKey(AvailableSettings.USE_SECOND_LEVEL_CACHE)
+    }
+
+    def "データベースを他のインスタンスと共有する場合は2次キャッシュを使用しないこと"() {
+        given:
+        def properties = [:]
+
+        when:
+        new HibernateCacheConfig().hibernateCacheManagerCustomizer(cacheManager, true).customize(properties)
+
+        then:
+        properties[AvailableSettings.USE_SECOND_LEVEL_CACHE] == false
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.myapplication.config
+
+import io.micrometer.core.instrument.Metrics
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.web.reactive.function.client.WebClient
+import reactor.core.publisher.Mono
+import reactor.netty.DisposableServer
+import reactor.netty.http.server.HttpServer
+import spock.lang.Specification
+
+import java.time.Duration
+
+/**
+ * WebClientConfigのSpockテスト
+ * ローカルに起動したHTTPサーバーに対してWebClientの接続設定を検証する
+ */
+class WebClientConfigSpec extends Specification {
+
+    def config = new WebClientConfig()
+    def registry = new SimpleMeterRegistry()
+    DisposableServer server
+
+    def setup() {
+        Metrics.addRegistry(registry)
+        server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.get("/hello", (request, response) -> response.sendString(Mono.just("hello"))))
+                .bindNow()
+    }
+
+    def cleanup() {
+        server.disposeNow()
+        Metrics.removeRegistry(registry)
+    }
+
+    def "設定した上限でコネクションプールが作成されること"() {
+        when:
+        def provider = config.webClientConnectionProvider(7, 20, Duration.ofSeconds(1), Duration.ofSeconds(30),
+                Duration.ofMinutes(5), Duration.ofSeconds(30))
+
+        then:
+        provider.maxConnections() == 7
+
+        cleanup:
+        provider?.dispose()
+    }
+
+    def "HTTP/2が有効でもTLSを使用しない接続先にはHTTP/1.1で接続し、プールのメトリクスが記録されること"() {
+        given:
+        def provider = config.webClientConnectionProvider(4, 20, Duration.ofSeconds(1), Duration.ofSeconds(30),
+                Duration.ofMinutes(5), Duration.ofSeconds(30))
+        def webClient = config.webClient(WebClient.builder(), provider, Duration.ofSeconds(1), Duration.ofSeconds(5), true)
+
+        when:
+        def body = webClient.get()
+                .uri("http://localhost:" + server.port() + "/hello")
+                .retrieve()
+                .bodyToMono(String)
+                .block(Duration.ofSeconds(5))
+
+        then:
+        body == "hello"
+        registry.find("reactor.netty.connection.provider.total.connections")
+                .tag("name", WebClientConfig.CONNECTION_POOL_NAME)
+                .gauge() != null
+        registry.find("reactor.netty.connection.provider.max.connections")
+                .tag("name", WebClientConfig.CONNECTION_POOL_NAME)
+                .gauge()?.value() == 4
+
+        cleanup:
+        provider.dispose()
+    }
+}
@@ -2,9 +2,15 @@ package com.example.myapplication.controller
 
 import com.example.myapplication.service.AiService
 import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.ResultActions
 import org.springframework.test.web.servlet.setup.MockMvcBuilders
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
 import spock.lang.Specification
 
+import java.nio.charset.StandardCharsets
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*
@@ -31,10 +37,10 @@ class AiControllerSpec extends Specification {
     def "POSTリクエストで豆知識が正常に取得されること"() {
         given: "サービスからの豆知識"
         def triviaText = "これは豆知識です。"
-        aiService.getTrivia() >> triviaText
+        aiService.getTrivia() >> Mono.just(triviaText)
 
         when: "/ai/triviaパスにPOSTリクエストを送信"
-        def result = mockMvc.perform(post("/ai/trivia"))
+        def result = performAsync(mockMvc, post("/ai/trivia"))
 
         then: "ステータスが200でai-sampleビューが返され、豆知識とsuccess=trueがモデルに設定される"
         result.andExpect(status().isOk())
@@ -46,10 +52,10 @@ class AiControllerSpec extends Specification {
     def "POSTリクエストでサービスからエラーが発生した場合の処理"() {
         given: "サービスからの例外"
         def errorMessage = "API呼び出しエラー"
-        aiService.getTrivia() >> { throw new RuntimeException(errorMessage) }
+        aiService.getTrivia() >> Mono.error(new RuntimeException(errorMessage))
 
         when: "/ai/triviaパスにPOSTリクエストを送信"
-        def result = mockMvc.perform(post("/ai/trivia"))
+        def result = performAsync(mockMvc, post("/ai/trivia"))
 
         then: "ステータスが200でai-sampleビューが返され、エラーメッセージとsuccess=falseがモデルに設定される"
         result.andExpect(status().isOk())
@@ -63,6 +69,42 @@ class AiControllerSpec extends Specification {
         mockMvc.perform(post("/ai/trivia"))
 
         then: "サービスのgetTriviaが1回呼び出される"
-        1 * aiService.getTrivia()
+        1 * aiService.getTrivia() >> Mono.just("豆知識")
+    }
+
+    def "GET /ai/trivia/stream でテキストの断片がServer-Sent Eventsで送信されること"() {
+        given: "サービスからのテキストの断片"
+        aiService.streamTrivia() >> Flux.just("富士山は", " 日本一高い山です。")
+
+        when: "/ai/trivia/streamパスにGETリクエストを送信"
+        def result = performAsync(mockMvc, get("/ai/trivia/stream"))
+        def body = result.andReturn().response.getContentAsString(StandardCharsets.UTF_8)
+
+        then: "断片ごとのtokenイベントの後にdoneイベントが送信される"
+        result.andExpect(status().isOk())
+              .andExpect(content().contentTypeCompatibleWith("text/event-stream"))
+        body == 'event:token\ndata:{"text":"富士山は"}\n\n' +
+                'event:token\ndata:{"text":" 日本一高い山です。"}\n\n' +
+                'event:done\ndata:{}\n\n'
+    }
+
+    def "GET /ai/trivia/stream でエラーが発生した場合はerrorイベントが送信されること"() {
+        given: "途中で失敗するサービス"
+        aiService.streamTrivia() >> Flux.concat(Flux.just("途中まで"), Flux.error(new RuntimeException("API呼び出しに失敗しました。")))
+
+        when:
+        def result = performAsync(mockMvc, get("/ai/trivia/stream"))
+        def body = result.andReturn().response.getContentAsString(StandardCharsets.UTF_8)
+
+        then:
+        body == 'event:token\ndata:{"text":"途中まで"}\n\n' +
+                'event:error\ndata:{"error":"豆知識の取得に失敗しました: API呼び出しに失敗しました。"}\n\n'
+    }
+
+    private static ResultActions performAsync(MockMvc mockMvc, def requestBuilder) {
+        def mvcResult = mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn()
+        mockMvc.perform(asyncDispatch(mvcResult))
     }
 }
@@ -1,12 +1,30 @@
 package com.example.myapplication.controller
 
+import com.example.myapplication.dto.QueryResult
 import com.example.myapplication.service.BigQueryService
+import com.example.myapplication.service.BigQueryWriteBuffer
+import com.example.myapplication.service.RowInsertException
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.google.cloud.PageImpl
+import com.google.cloud.bigquery.BigQueryError
+import com.google.cloud.bigquery.Field
+import com.google.cloud.bigquery.FieldList
+import com.google.cloud.bigquery.FieldValue
+import com.google.cloud.bigquery.FieldValueList
+import com.google.cloud.bigquery.Schema
+import com.google.cloud.bigquery.StandardSQLTypeName
+import com.google.cloud.bigquery.TableResult
+import org.apache.arrow.memory.RootAllocator
+import org.apache.arrow.vector.ipc.ArrowStreamReader
 import org.springframework.http.MediaType
 import org.springframework.test.web.servlet.MockMvc
 import org.springframework.test.web.servlet.setup.MockMvcBuilders
 import spock.lang.Specification
 
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.RejectedExecutionException
+
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*
 
@@ -17,15 +35,14 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 class BigQueryControllerSpec extends Specification {
 
     def bigQueryService = Mock(BigQueryService)
-    def bigQueryController = new BigQueryController(bigQueryService)
-    def mockMvc = MockMvcBuilders.standaloneSetup(bigQueryController).build()
+    def writeBuffer = Mock(BigQueryWriteBuffer)
     def objectMapper = new ObjectMapper()
+    def bigQueryController = new BigQueryController(bigQueryService, writeBuffer, objectMapper)
+    def mockMvc = MockMvcBuilders.standaloneSetup(bigQueryController).build()
 
     def "GET /bigquery/api/query でクエリが正常に実行されること"() {
         given: "サービスからのレスポンス"
-        def testData = [
-                ["id": 1, "name": "テストユーザー"]
-        ]
+        def testData = QueryResult.of(["id", "name"], [[1, "テストユーザー"] as Object[]])
 
         when: "クエリエンドポイントにGETリクエストを送信"
         def result = mockMvc.perform(get("/bigquery/api/query")
@@ -56,6 +73,93 @@ class BigQueryControllerSpec extends Specification {
               .andExpect(jsonPath('$.error').value("SQLクエリが空です"))
     }
 
+    def "GET /bigquery/api/query/stream でクエリ結果がNDJSON形式でストリーミングされること"() {
+        given: "サービスからの逐次取得される結果"
+        def testData = [
+                ["id": 1, "name": "テストユーザー1"],
+                ["id": 2, "name": "テストユーザー2"]
+        ]
+
+        when: "ストリーミングエンドポイントにGETリクエストを送信"
+        def mvcResult = mockMvc.perform(get("/bigquery/api/query/stream")
+                .param("sql", "SELECT * FROM test_table"))
+                .andExpect(request().asyncStarted())
+                .andReturn()
+        def result = mockMvc.perform(asyncDispatch(mvcResult))
+
+        then: "サービスのstreamQueryが1回呼び出される"
+        1 * bigQueryService.streamQuery("SELECT * FROM test_table") >> testData
+
+        and: "1行1JSONオブジェクトの形式でレスポンスが返される"
+        result.andExpect(status().isOk())
+              .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+        result.andReturn().response.getContentAsString(StandardCharsets.UTF_8) ==
+                '{"id":1,"name":"テストユーザー1"}\n{"id":2,"name":"テストユーザー2"}\n'
+    }
+
+    def "GET /bigquery/api/query/stream で無効なクエリパラメータを渡すとBadRequestが返されること"() {
+        when: "空のクエリでリクエストを送信"
+        def mvcResult = mockMvc.perform(get("/bigquery/api/query/stream")
+                .param("sql", ""))
+                .andReturn()
+        def result = mockMvc.perform(asyncDispatch(mvcResult))
+
+        then: "サービスから例外が発生"
+        1 * bigQueryService.streamQuery("") >> { throw new IllegalArgumentException("SQLクエリが空です") }
+
+        and: "行の書き出しは行われず、ステータスが400でエラーレスポンスが返される"
+        result.andExpect(status().isBadRequest())
+              .andExpect(jsonPath('$.success').value(false))
+              .andExpect(jsonPath('$.error').value("SQLクエリが空です"))
+    }
+
+    def "GET /bigquery/api/query.arrow でクエリ結果がArrowのIPCストリーム形式で返されること"() {
+        given: "サービスからのレスポンス（REST APIと同じ値の表現）"
+        def fields = FieldList.of(Field.of("id", StandardSQLTypeName.INT64), Field.of("name", StandardSQLTypeName.STRING))
+        def rows = [["1", "テストユーザー1"], ["2", "テストユーザー2"]].collect { values ->
+            FieldValueList.of(values.collect { FieldValue.of(FieldValue.Attribute.PRIMITIVE, it) }, fields)
+        }
+        def tableResult = TableResult.newBuilder()
+                .setSchema(Schema.of(fields))
+                .setTotalRows(2L)
+                .setPageNoSchema(new PageImpl<FieldValueList>(null, null, rows))
+                .build()
+
+        when: "Arrow形式のエンドポイントにGETリクエストを送信"
+        def mvcResult = mockMvc.perform(get("/bigquery/api/query.arrow")
+                .param("sql", "SELECT * FROM test_table"))
+                .andExpect(request().asyncStarted())
+                .andReturn()
+        def result = mockMvc.perform(asyncDispatch(mvcResult))
+
+        then: "結果をメモリに展開するrunQueryではなく、streamQueryResultが1回呼び出される"
+        1 * bigQueryService.streamQueryResult("SELECT * FROM test_table") >> tableResult
+        0 * bigQueryService.runQuery(_)
+
+        and: "Arrowのレコードバッチとして読み戻せる"
+        result.andExpect(status().isOk())
+              .andExpect(content().contentType("application/vnd.apache.arrow.stream"))
+        def read = readArrowRows(result.andReturn().response.contentAsByteArray)
+        read*.get("id") == [1L, 2L]
+        read*.get("name") == ["テストユーザー1", "テストユーザー2"]
+    }
+
+    def "GET /bigquery/api/query.arrow で無効なクエリパラメータを渡すとBadRequestが返されること"() {
+        when: "空のクエリでリクエストを送信"
+        def mvcResult = mockMvc.perform(get("/bigquery/api/query.arrow")
+                .param("sql", ""))
+                .andReturn()
+        def result = mockMvc.perform(asyncDispatch(mvcResult))
+
+        then: "サービスから例外が発生"
+        1 * bigQueryService.streamQueryResult("") >> { throw new IllegalArgumentException("SQLクエリが空です") }
+
+        and: "ステータスが400でエラーレスポンスが返される"
+        result.andExpect(status().isBadRequest())
+              .andExpect(jsonPath('$.success').value(false))
+              .andExpect(jsonPath('$.error').value("SQLクエリが空です"))
+    }
+
     def "POST /bigquery/api/table/{tableName} でテーブルが正常に作成されること"() {
         when: "テーブル作成エンドポイントにPOSTリクエストを送信"
         def result = mockMvc.perform(post("/bigquery/api/table/test_table"))
@@ -77,12 +181,15 @@ class BigQueryControllerSpec extends Specification {
         ]
 
         when: "データ挿入エンドポイントにPOSTリクエストを送信"
-        def result = mockMvc.perform(post("/bigquery/api/table/test_table/data")
+        def mvcResult = mockMvc.perform(post("/bigquery/api/table/test_table/data")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(testData)))
+                .andExpect(request().asyncStarted())
+                .andReturn()
+        def result = mockMvc.perform(asyncDispatch(mvcResult))
 
-        then: "サービスのinsertDataが1回呼び出される"
-        1 * bigQueryService.insertData("test_table", testData)
+        then: "書き込みバッファに1回追加される"
+        1 * writeBuffer.submit("test_table", testData) >> CompletableFuture.completedFuture(null)
 
         and: "ステータスが200で正しいレスポンスが返される"
         result.andExpect(status().isOk())
@@ -90,6 +197,62 @@ class BigQueryControllerSpec extends Specification {
               .andExpect(jsonPath('$.message').value("2 件のデータが正常に挿入されました"))
     }
 
+    def "POST /bigquery/api/table/{tableName}/data で書き込みバッファが満杯の場合Service Unavailableが返されること"() {
+        when: "データ挿入エンドポイントにPOSTリクエストを送信"
+        def mvcResult = mockMvc.perform(post("/bigquery/api/table/test_table/data")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content('[{"id": 1}]'))
+                .andReturn()
+        def result = mockMvc.perform(asyncDispatch(mvcResult))
+
+        then: "書き込みバッファへの追加が拒否される"
+        1 * writeBuffer.submit("test_table", _) >> { throw new RejectedExecutionException("書き込みバッファが満杯です") }
+
+        and: "ステータスが503でエラーレスポンスが返される"
+        result.andExpect(status().isServiceUnavailable())
+              .andExpect(jsonPath('$.success').value(false))
+              .andExpect(jsonPath('$.error').value("書き込みバッファが満杯です"))
+    }
+
+    def "POST /bigquery/api/table/{tableName}/data で送信に失敗した場合Internal Server Errorが返されること"() {
+        when: "データ挿入エンドポイントにPOSTリクエストを送信"
+        def mvcResult = mockMvc.perform(post("/bigquery/api/table/test_table/data")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content('[{"id": 1}]'))
+                .andReturn()
+        def result = mockMvc.perform(asyncDispatch(mvcResult))
+
+        then: "バッファの送信が失敗する"
+        1 * writeBuffer.submit("test_table", _) >> CompletableFuture.failedFuture(new RuntimeException("挿入失敗"))
+
+        and: "ステータスが500でエラーレスポンスが返される"
+        result.andExpect(status().isInternalServerError())
+              .andExpect(jsonPath('$.success').value(false))
+              .andExpect(jsonPath('$.error').value("データの挿入に失敗しました: 挿入失敗"))
+    }
+
+    def "POST /bigquery/api/table/{tableName}/data で一部の行がエラーとなった場合、エラーとなった行番号が返されること"() {
+        given:
+        def error = new BigQueryError("invalid", "id", "不正な値")
+
+        when: "データ挿入エンドポイントにPOSTリクエストを送信"
+        def mvcResult = mockMvc.perform(post("/bigquery/api/table/test_table/data")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content('[{"id": 1}, {"id": "x"}, {"id": "y"}]'))
+                .andReturn()
+        def result = mockMvc.perform(asyncDispatch(mvcResult))
+
+        then: "2行目と3行目がエラーとなる"
+        1 * writeBuffer.submit("test_table", _) >> CompletableFuture.failedFuture(
+                new RowInsertException([2L: [error], 1L: [error]]))
+
+        and: "ステータスが500で、再送すべき行番号が返される"
+        result.andExpect(status().isInternalServerError())
+              .andExpect(jsonPath('$.success').value(false))
+              .andExpect(jsonPath('$.failedRows[0]').value(1))
+              .andExpect(jsonPath('$.failedRows[1]').value(2))
+    }
+
     def "DELETE /bigquery/api/table/{tableName} でテーブルが正常に削除されること"() {
         when: "テーブル削除エンドポイントにDELETEリクエストを送信"
         def result = mockMvc.perform(delete("/bigquery/api/table/test_table"))
@@ -122,15 +285,27 @@ class BigQueryControllerSpec extends Specification {
               .andExpect(jsonPath('$.tables[2]').value("table3"))
     }
 
-    def "GET /bigquery/api/health でヘルスチェックが正常に実行されること"() {
-        given: "サービスからの正常なレスポンス"
-        def healthData = [["health_check": 1]]
+    def "GET /bigquery/api/tables?refresh=true でテーブル一覧が再取得されること"() {
+        when: "再取得を指定してテーブル一覧エンドポイントにGETリクエストを送信"
+        def result = mockMvc.perform(get("/bigquery/api/tables").param("refresh", "true"))
 
+        then: "キャッシュを使わずにサービスのrefreshTablesが呼び出される"
+        1 * bigQueryService.refreshTables() >> ["table1"]
+        0 * bigQueryService.listTables()
+
+        and: "ステータスが200で再取得した一覧が返される"
+        result.andExpect(status().isOk())
+              .andExpect(jsonPath('$.tableCount').value(1))
+              .andExpect(jsonPath('$.tables[0]').value("table1"))
+    }
+
+    def "GET /bigquery/api/health でヘルスチェックが正常に実行されること"() {
         when: "ヘルスチェックエンドポイントにGETリクエストを送信"
         def result = mockMvc.perform(get("/bigquery/api/health"))
 
-        then: "サービスのrunQueryが1回呼び出される"
-        1 * bigQueryService.runQuery("SELECT 1 as health_check") >> healthData
+        then: "キャッシュを経由するrunQueryではなく、接続確認が1回呼び出される"
+        1 * bigQueryService.checkConnection()
+        0 * bigQueryService.runQuery(_)
 
         and: "ステータスが200で正しいレスポンスが返される"
         result.andExpect(status().isOk())
@@ -143,7 +318,7 @@ class BigQueryControllerSpec extends Specification {
         def result = mockMvc.perform(get("/bigquery/api/health"))
 
         then: "サービスから例外が発生"
-        1 * bigQueryService.runQuery("SELECT 1 as health_check") >> { throw new RuntimeException("接続失敗") }
+        1 * bigQueryService.checkConnection() >> { throw new RuntimeException("接続失敗") }
 
         and: "ステータスが500でエラーレスポンスが返される"
         result.andExpect(status().isInternalServerError())
@@ -151,4 +326,22 @@ class BigQueryControllerSpec extends Specification {
               .andExpect(jsonPath('$.status').value("BigQuery connection failed"))
               .andExpect(jsonPath('$.error').value("接続失敗"))
     }
+
+    private static List<Map<String, Object>> readArrowRows(byte[] bytes) {
+        def rows = []
+        new RootAllocator().withCloseable { allocator ->
+            new ArrowStreamReader(new ByteArrayInputStream(bytes), allocator).withCloseable { reader ->
+                def root = reader.vectorSchemaRoot
+                while (reader.loadNextBatch()) {
+                    (0..<root.rowCount).each { i ->
+                        rows << root.fieldVectors.collectEntries { vector ->
+                            def value = vector.getObject(i)
+                            [(vector.name): value instanceof Long ? value : value?.toString()]
+                        }
+                    }
+                }
+            }
+        }
+        rows
+    }
 }
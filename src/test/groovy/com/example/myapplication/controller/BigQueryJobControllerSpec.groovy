@@ -0,0 +1,130 @@
+package com.example.myapplication.controller
+
+import com.example.myapplication.dto.QueryResult
+import com.example.myapplication.service.BigQueryService
+import com.example.myapplication.service.QueryJobRegistry
+import org.springframework.test.web.servlet.setup.MockMvcBuilders
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import static org.hamcrest.Matchers.anyOf
+import static org.hamcrest.Matchers.is
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*
+
+/**
+ * BigQueryJobControllerのSpockテスト
+ * MockMvcを使用してHTTPリクエストをテストする
+ */
+class BigQueryJobControllerSpec extends Specification {
+
+    def bigQueryService = Mock(BigQueryService)
+    def jobRegistry = new QueryJobRegistry(bigQueryService, 2, 10, Duration.ofMinutes(10), Clock.systemUTC())
+    def mockMvc = MockMvcBuilders.standaloneSetup(new BigQueryJobController(jobRegistry)).build()
+
+    def cleanup() {
+        jobRegistry.shutdown()
+    }
+
+    def "POST /bigquery/api/jobs でクエリが受け付けられ、完了後に結果をページ単位で取得できること"() {
+        given: "5行を返すクエリ"
+        def release = new CountDownLatch(1)
+        bigQueryService.runQuery("SELECT * FROM test_table", _) >> {
+            release.await(5, TimeUnit.SECONDS)
+            QueryResult.of(["id"], (1..5).collect { [it] as Object[] })
+        }
+
+        when: "クエリジョブを登録"
+        def submitted = mockMvc.perform(post("/bigquery/api/jobs").param("sql", "SELECT * FROM test_table"))
+
+        then: "クエリの完了を待たずに202でジョブIDが返される"
+        submitted.andExpect(status().isAccepted())
+                 .andExpect(jsonPath('$.success').value(true))
+                 .andExpect(jsonPath('$.jobId').isNotEmpty())
+                 .andExpect(jsonPath('$.status', anyOf(is("PENDING"), is("RUNNING"))))
+        def jobId = jobRegistry.find(jobIdOf(submitted)).get().id
+
+        when: "完了前に結果を取得"
+        def early = mockMvc.perform(get("/bigquery/api/jobs/" + jobId + "/results"))
+
+        then: "409が返される"
+        early.andExpect(status().isConflict())
+             .andExpect(jsonPath('$.success').value(false))
+
+        when: "クエリを完了させて状態と2ページ目を取得"
+        release.countDown()
+        awaitDone(jobId)
+        def statusResult = mockMvc.perform(get("/bigquery/api/jobs/" + jobId))
+        def page = mockMvc.perform(get("/bigquery/api/jobs/" + jobId + "/results")
+                .param("offset", "2").param("limit", "2"))
+
+        then:
+        statusResult.andExpect(status().isOk())
+                    .andExpect(jsonPath('$.status').value("SUCCEEDED"))
+                    .andExpect(jsonPath('$.rowCount').value(5))
+        page.andExpect(status().isOk())
+            .andExpect(jsonPath('$.rowCount').value(5))
+            .andExpect(jsonPath('$.offset').value(2))
+            .andExpect(jsonPath('$.nextOffset').value(4))
+            .andExpect(jsonPath('$.data.length()').value(2))
+            .andExpect(jsonPath('$.data[0].id').value(3))
+    }
+
+    def "POST /bigquery/api/jobs で空のクエリを渡すとBadRequestが返されること"() {
+        when:
+        def result = mockMvc.perform(post("/bigquery/api/jobs").param("sql", ""))
+
+        then:
+        result.andExpect(status().isBadRequest())
+              .andExpect(jsonPath('$.error').value("SQLクエリが空です"))
+    }
+
+    def "DELETE /bigquery/api/jobs/{jobId} でジョブがキャンセルされること"() {
+        given: "完了しないクエリ"
+        def release = new CountDownLatch(1)
+        bigQueryService.runQuery(_, _) >> {
+            release.await(5, TimeUnit.SECONDS)
+            QueryResult.of(["id"], [])
+        }
+        def job = jobRegistry.submit("SELECT 1")
+
+        when:
+        def result = mockMvc.perform(delete("/bigquery/api/jobs/" + job.id))
+
+        then:
+        result.andExpect(status().isOk())
+              .andExpect(jsonPath('$.status').value("CANCELLED"))
+
+        cleanup:
+        release.countDown()
+    }
+
+    def "存在しないジョブIDを指定するとNotFoundが返されること"() {
+        expect:
+        mockMvc.perform(get("/bigquery/api/jobs/unknown")).andExpect(status().isNotFound())
+        mockMvc.perform(get("/bigquery/api/jobs/unknown/results")).andExpect(status().isNotFound())
+        mockMvc.perform(delete("/bigquery/api/jobs/unknown")).andExpect(status().isNotFound())
+    }
+
+    def "結果の取得で不正なページ指定をするとBadRequestが返されること"() {
+        expect:
+        mockMvc.perform(get("/bigquery/api/jobs/any/results").param("limit", "0"))
+               .andExpect(status().isBadRequest())
+    }
+
+    private static String jobIdOf(def resultActions) {
+        def content = resultActions.andReturn().response.contentAsString
+        (content =~ /"jobId":"([^"]+)"/)[0][1]
+    }
+
+    private void awaitDone(String jobId) {
+        def deadline = System.currentTimeMillis() + 5000
+        while (!jobRegistry.find(jobId).get().status.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.myapplication.controller
 
+import com.example.myapplication.config.BoundedPasswordEncoder
 import com.example.myapplication.dto.UserRegistrationDto
 import com.example.myapplication.entity.User
 import com.example.myapplication.service.UserService
@@ -81,4 +82,21 @@ class UserControllerSpec extends Specification {
         result.andExpect(status().isOk())
                 .andExpect(view().name("register"))
     }
+
+    def "POST /registerでパスワードのハッシュ化が混み合っている場合は503となること"() {
+        given:
+        userService.createUser(_) >> { throw new BoundedPasswordEncoder.HashingRejectedException() }
+
+        when:
+        def result = mockMvc.perform(post("/register")
+                .param("username", "testuser")
+                .param("password", "password123")
+                .param("confirmPassword", "password123"))
+
+        then:
+        result.andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "5"))
+                .andExpect(view().name("register"))
+                .andExpect(model().attribute("errorMessage", "登録が混み合っています。しばらくしてから再度お試しください。"))
+    }
 }
@@ -0,0 +1,170 @@
+package com.example.myapplication.dto
+
+import com.google.cloud.bigquery.Field
+import com.google.cloud.bigquery.FieldList
+import com.google.cloud.bigquery.FieldValue
+import com.google.cloud.bigquery.FieldValueList
+import com.google.cloud.bigquery.LegacySQLTypeName
+import com.google.cloud.bigquery.Schema
+import com.google.cloud.bigquery.StandardSQLTypeName
+import org.apache.arrow.memory.RootAllocator
+import org.apache.arrow.vector.ipc.ArrowStreamReader
+import org.apache.arrow.vector.types.DateUnit
+import org.apache.arrow.vector.types.FloatingPointPrecision
+import org.apache.arrow.vector.types.TimeUnit
+import org.apache.arrow.vector.types.pojo.ArrowType
+import org.apache.arrow.vector.util.Text
+import spock.lang.Specification
+
+import java.time.LocalDateTime
+
+/**
+ * QueryResultArrowWriterのSpockテスト
+ * REST APIと同じ値の表現の行を書き出し、IPCストリームをArrowStreamReaderで読み戻して検証する
+ */
+class QueryResultArrowWriterSpec extends Specification {
+
+    def "BigQueryの型に応じたArrowの型でスキーマと値が書き出されること"() {
+        given:
+        def fields = FieldList.of(
+                Field.of("id", StandardSQLTypeName.INT64),
+                Field.of("score", StandardSQLTypeName.FLOAT64),
+                Field.of("price", StandardSQLTypeName.NUMERIC),
+                Field.of("active", StandardSQLTypeName.BOOL),
+                Field.of("payload", StandardSQLTypeName.BYTES),
+                Field.of("birthday", StandardSQLTypeName.DATE),
+                Field.of("start_time", StandardSQLTypeName.TIME),
+                Field.of("updated_at", StandardSQLTypeName.DATETIME),
+                Field.of("created_at", StandardSQLTypeName.TIMESTAMP),
+                Field.of("name", StandardSQLTypeName.STRING))
+        def rows = [
+                row(fields, "1", "1.5", "12.345", "true", "AQI=", "2023-01-02", "01:02:03.000004",
+                        "2023-01-01T00:00:00.5", "1.6725312E9", "テスト"),
+                row(fields, "2", null, null, "false", null, null, null, null, "1672531200.000001", null)]
+        def output = new ByteArrayOutputStream()
+
+        when:
+        def batches = QueryResultArrowWriter.write(Schema.of(fields), rows, output, 10)
+        def read = readAll(output.toByteArray())
+
+        then:
+        batches == 1
+        read.types == [new ArrowType.Int(64, true), new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE),
+                       new ArrowType.Decimal(38, 9, 128), ArrowType.Bool.INSTANCE, ArrowType.Binary.INSTANCE,
+                       new ArrowType.Date(DateUnit.DAY), new ArrowType.Time(TimeUnit.MICROSECOND, 64),
+                       new ArrowType.Timestamp(TimeUnit.MICROSECOND, null),
+                       new ArrowType.Timestamp(TimeUnit.MICROSECOND, "UTC"), ArrowType.Utf8.INSTANCE]
+        read.rows[0][0..3] == [1L, 1.5d, new BigDecimal("12.345000000"), true]
+        read.rows[0][4] == [1, 2] as byte[]
+        read.rows[0][5..9] == [19359, 3_723_000_004L, LocalDateTime.of(2023, 1, 1, 0, 0, 0, 500_000_000),
+                               1672531200000000L, "テスト"]
+        read.rows[1] == [2L, null, null, false, null, null, null, null, 1672531200000001L, null]
+    }
+
+    def "REPEATEDの列はList、RECORDの列はStructとして書き出されること"() {
+        given:
+        def address = Field.of("address", LegacySQLTypeName.RECORD,
+                Field.of("city", StandardSQLTypeName.STRING),
+                Field.of("zip", StandardSQLTypeName.INT64))
+        def fields = FieldList.of(
+                Field.newBuilder("tags", StandardSQLTypeName.STRING).setMode(Field.Mode.REPEATED).build(),
+                address)
+        def record = FieldValueList.of([primitive("Tokyo"), primitive("100")], address.subFields)
+        def rows = [
+                FieldValueList.of([FieldValue.of(FieldValue.Attribute.REPEATED, [primitive("a"), primitive("b")]),
+                                   FieldValue.of(FieldValue.Attribute.RECORD, record)], fields),
+                FieldValueList.of([FieldValue.of(FieldValue.Attribute.REPEATED, []), primitive(null)], fields)]
+        def output = new ByteArrayOutputStream()
+
+        when:
+        QueryResultArrowWriter.write(Schema.of(fields), rows, output, 10)
+        def read = readAll(output.toByteArray())
+
+        then:
+        read.types == [ArrowType.List.INSTANCE, ArrowType.Struct.INSTANCE]
+        read.rows[0][0]*.toString() == ["a", "b"]
+        read.rows[0][1].city.toString() == "Tokyo"
+        read.rows[0][1].zip == 100L
+        read.rows[1][0] == []
+        read.rows[1][1] == null
+    }
+
+    def "指定した行数ごとにレコードバッチが分割されること"() {
+        given:
+        def fields = FieldList.of(Field.of("id", StandardSQLTypeName.INT64))
+        def rows = (1..5).collect { row(fields, it.toString()) }
+        def output = new ByteArrayOutputStream()
+
+        when:
+        def batches = QueryResultArrowWriter.write(Schema.of(fields), rows, output, 2)
+        def read = readAll(output.toByteArray())
+
+        then:
+        batches == 3
+        read.batchSizes == [2, 2, 1]
+        read.rows*.get(0) == [1L, 2L, 3L, 4L, 5L]
+    }
+
+    def "行は反復しながら書き出され、結果全体を保持しないこと"() {
+        given: "書き出し済みの行数を記録しながら行を返すIterable"
+        def fields = FieldList.of(Field.of("id", StandardSQLTypeName.INT64))
+        def output = new ByteArrayOutputStream()
+        def sizesWhenRead = []
+        def rows = {
+            def iterator = (1..4).iterator()
+            [hasNext: { iterator.hasNext() },
+             next   : { sizesWhenRead << output.size(); row(fields, iterator.next().toString()) }] as Iterator
+        } as Iterable<FieldValueList>
+
+        when:
+        QueryResultArrowWriter.write(Schema.of(fields), rows, output, 2)
+
+        then: "3行目を読み出す時点で、最初のレコードバッチが書き出されている"
+        sizesWhenRead[2] > sizesWhenRead[1]
+    }
+
+    def "結果が0件の場合はスキーマのみが書き出されること"() {
+        given:
+        def fields = FieldList.of(Field.of("id", StandardSQLTypeName.INT64))
+        def output = new ByteArrayOutputStream()
+
+        when:
+        def batches = QueryResultArrowWriter.write(Schema.of(fields), [], output, 10)
+        def read = readAll(output.toByteArray())
+
+        then:
+        batches == 0
+        read.types == [new ArrowType.Int(64, true)]
+        read.rows.isEmpty()
+    }
+
+    private static FieldValue primitive(String value) {
+        FieldValue.of(FieldValue.Attribute.PRIMITIVE, value)
+    }
+
+    private static FieldValueList row(FieldList fields, String... values) {
+        FieldValueList.of(values.collect { primitive(it) }, fields)
+    }
+
+    private static Map readAll(byte[] bytes) {
+        def rows = []
+        def batchSizes = []
+        def types
+        new RootAllocator().withCloseable { allocator ->
+            new ArrowStreamReader(new ByteArrayInputStream(bytes), allocator).withCloseable { reader ->
+                def root = reader.vectorSchemaRoot
+                types = root.schema.fields*.type
+                while (reader.loadNextBatch()) {
+                    batchSizes << root.rowCount
+                    for (int i = 0; i < root.rowCount; i++) {
+                        rows << root.fieldVectors.collect { vector ->
+                            def value = vector.getObject(i)
+                            value instanceof Text ? value.toString() : value
+                        }
+                    }
+                }
+            }
+        }
+        [types: types, rows: rows, batchSizes: batchSizes]
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.myapplication.dto
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+
+/**
+ * QueryResultのSpockテスト
+ * 列位置ベースの行表現とJSONシリアライズ形式を検証する
+ */
+class QueryResultSpec extends Specification {
+
+    def objectMapper = new ObjectMapper()
+
+    def "列名をキーとするオブジェクトの配列としてJSONにシリアライズされること"() {
+        given: "NULLを含む2行のクエリ結果"
+        def result = QueryResult.of(["id", "name"], [
+                [1, "テストユーザー1"] as Object[],
+                [2, null] as Object[]
+        ])
+
+        when: "JSONにシリアライズする"
+        def json = objectMapper.writeValueAsString(result)
+
+        then: "従来のList<Map>と同じ形式で出力される"
+        json == '[{"id":1,"name":"テストユーザー1"},{"id":2,"name":null}]'
+    }
+
+    def "行をMapとして列名・列位置の両方で参照できること"() {
+        given: "1行のクエリ結果"
+        def result = QueryResult.of(["id", "name", "email"], [
+                [1, "テストユーザー", "test@example.com"] as Object[]
+        ])
+
+        when: "1行目を取得する"
+        def row = result[0]
+
+        then: "列名と列位置のどちらでも値が取得でき、キーは列順に並ぶ"
+        row["name"] == "テストユーザー"
+        row.getValue(2) == "test@example.com"
+        row["unknown"] == null
+        row.keySet() as List == ["id", "name", "email"]
+        row == ["id": 1, "name": "テストユーザー", "email": "test@example.com"]
+    }
+
+    def "1行単位でもJSONオブジェクトとしてシリアライズされること"() {
+        given: "共有の列情報を持つ行"
+        def columns = new QueryResult.Columns(["id", "name"])
+        def row = new QueryResult.Row(columns, [1, "テストユーザー"] as Object[])
+
+        expect: "列名をキーとするJSONオブジェクトが出力される"
+        objectMapper.writeValueAsString(row) == '{"id":1,"name":"テストユーザー"}'
+    }
+
+    def "列数がスキーマと一致しない行を追加するとIllegalArgumentExceptionが発生すること"() {
+        given: "2列のビルダー"
+        def builder = QueryResult.builder(new QueryResult.Columns(["id", "name"]))
+
+        when: "1列だけの行を追加する"
+        builder.addRow([1] as Object[])
+
+        then: "例外が発生"
+        def ex = thrown(IllegalArgumentException)
+        ex.message == "行の列数がスキーマと一致しません"
+    }
+}
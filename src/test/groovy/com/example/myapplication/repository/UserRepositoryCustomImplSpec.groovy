@@ -0,0 +1,97 @@
+package com.example.myapplication.repository
+
+import com.example.myapplication.config.HibernateCacheConfig
+import com.example.myapplication.entity.User
+import org.hibernate.SessionFactory
+import org.hibernate.boot.MetadataSources
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder
+import org.hibernate.cache.jcache.ConfigSettings
+import org.hibernate.cfg.AvailableSettings
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType
+import spock.lang.Specification
+
+import java.time.Duration
+
+/**
+ * UserRepositoryCustomImplのSpockテスト
+ * schema.sqlで作成したインメモリのH2データベースと、アプリケーションと同じ2次キャッシュの設定で検証する
+ */
+class UserRepositoryCustomImplSpec extends Specification {
+
+    EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("classpath:schema.sql")
+            .build()
+    def jdbcTemplate = new JdbcTemplate(database)
+    def cacheManager = HibernateCacheConfig.createCacheManager("test-" + UUID.randomUUID(), 100, Duration.ofMinutes(1))
+    SessionFactory sessionFactory = new MetadataSources(new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.JAKARTA_NON_JTA_DATASOURCE, database)
+            .applySetting(AvailableSettings.USE_SECOND_LEVEL_CACHE, true)
+            .applySetting(AvailableSettings.CACHE_REGION_FACTORY, "jcache")
+            .applySetting(ConfigSettings.CACHE_MANAGER, cacheManager)
+            .applySetting(ConfigSettings.MISSING_CACHE_STRATEGY, "fail")
+            .applySetting(AvailableSettings.GENERATE_STATISTICS, true)
+            .build())
+            .addAnnotatedClass(User)
+            .buildMetadata()
+            .buildSessionFactory()
+
+    def cleanup() {
+        sessionFactory.close()
+        cacheManager.close()
+        database.shutdown()
+    }
+
+    def "2回目以降の取得はデータベースを参照せずに2次キャッシュから返されること"() {
+        given:
+        jdbcTemplate.update("INSERT INTO users (username, password, roles) VALUES ('alice', 'encoded', 'USER,ADMIN')")
+
+        when: "リクエストごとに別のEntityManagerで取得する"
+        def first = findByUsername("alice")
+        def statementsAfterFirst = sessionFactory.statistics.prepareStatementCount
+        def second = findByUsername("alice")
+
+        then:
+        first.get().password == "encoded"
+        second.get().roles == "USER,ADMIN"
+        sessionFactory.statistics.prepareStatementCount == statementsAfterFirst
+        sessionFactory.statistics.naturalIdCacheHitCount == 1
+        sessionFactory.statistics.getDomainDataRegionStatistics(User.CACHE_REGION).hitCount == 1
+    }
+
+    def "存在しないユーザー名の場合は空を返すこと"() {
+        expect:
+        findByUsername("nobody").isEmpty()
+    }
+
+    def "更新した値がキャッシュにも反映されること"() {
+        given:
+        jdbcTemplate.update("INSERT INTO users (username, password) VALUES ('alice', 'encoded')")
+        findByUsername("alice")
+
+        when: "無効化する"
+        def entityManager = sessionFactory.createEntityManager()
+        entityManager.transaction.begin()
+        new UserRepositoryCustomImpl(entityManager).findByUsername("alice").get().enabled = false
+        entityManager.transaction.commit()
+        entityManager.close()
+        def statements = sessionFactory.statistics.prepareStatementCount
+
+        then:
+        !findByUsername("alice").get().enabled
+        sessionFactory.statistics.prepareStatementCount == statements
+    }
+
+    private Optional<User> findByUsername(String username) {
+        def entityManager = sessionFactory.createEntityManager()
+        try {
+            return new UserRepositoryCustomImpl(entityManager).findByUsername(username)
+        } finally {
+            entityManager.close()
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.myapplication.service
+
+import reactor.core.publisher.Mono
+import reactor.core.publisher.Sinks
+import spock.lang.Specification
+
+import java.util.concurrent.TimeoutException
+
+/**
+ * AdaptiveConcurrencyLimiterのSpockテスト
+ */
+class AdaptiveConcurrencyLimiterSpec extends Specification {
+
+    static final def IS_DROP = { Throwable e -> e instanceof TimeoutException }
+
+    def "上限に達している場合は即座にLimitExceededExceptionとなること"() {
+        given: "上限2のリミッターで2件を実行中にする"
+        def limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 0.5)
+        def pending = (1..2).collect { Sinks.<String> one() }
+        pending.each { sink -> limiter.limit(sink.asMono(), IS_DROP).subscribe() }
+
+        when:
+        limiter.limit(Mono.just("3件目"), IS_DROP).block()
+
+        then:
+        thrown(AdaptiveConcurrencyLimiter.LimitExceededException)
+        limiter.inFlight == 2
+        limiter.rejectedCount == 1
+    }
+
+    def "上限を使い切りつつある状態で成功すると上限が1増えること"() {
+        given:
+        def limiter = new AdaptiveConcurrencyLimiter(2, 1, 3, 0.5)
+        def first = Sinks.<String> one()
+        limiter.limit(first.asMono(), IS_DROP).subscribe()
+
+        when: "実行中1件（上限の半分）の状態で成功する"
+        first.tryEmitValue("成功")
+
+        then:
+        limiter.limit == 3
+        limiter.inFlight == 0
+
+        when: "余裕がある状態の成功では増えない"
+        limiter.limit(Mono.just("成功"), IS_DROP).block()
+
+        then:
+        limiter.limit == 3
+    }
+
+    def "過負荷を示すエラーで上限が係数倍に減り、最小値を下回らないこと"() {
+        given:
+        def limiter = new AdaptiveConcurrencyLimiter(8, 2, 10, 0.5)
+
+        when:
+        limiter.limit(Mono.error(new TimeoutException()), IS_DROP).onErrorResume { Mono.empty() }.block()
+
+        then:
+        limiter.limit == 4
+
+        when:
+        3.times { limiter.limit(Mono.error(new TimeoutException()), IS_DROP).onErrorResume { Mono.empty() }.block() }
+
+        then:
+        limiter.limit == 2
+    }
+
+    def "過負荷を示さないエラーやキャンセルでは上限が変わらないこと"() {
+        given:
+        def limiter = new AdaptiveConcurrencyLimiter(4, 1, 10, 0.5)
+
+        when:
+        limiter.limit(Mono.error(new IllegalArgumentException()), IS_DROP).onErrorResume { Mono.empty() }.block()
+        limiter.limit(Mono.never(), IS_DROP).subscribe().dispose()
+
+        then:
+        limiter.limit == 4
+        limiter.inFlight == 0
+    }
+
+    def "不正な設定はIllegalArgumentExceptionとなること"() {
+        when:
+        new AdaptiveConcurrencyLimiter(initial, min, max, ratio)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        initial | min | max | ratio
+        1       | 0   | 10  | 0.5
+        11      | 1   | 10  | 0.5
+        5       | 1   | 10  | 1.0
+    }
+}
@@ -1,9 +1,21 @@
 package com.example.myapplication.service
 
-import com.fasterxml.jackson.databind.ObjectMapper
+import org.springframework.http.HttpStatus
+import org.springframework.http.MediaType
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest
+import org.springframework.test.util.ReflectionTestUtils
+import org.springframework.web.reactive.function.client.ClientRequest
+import org.springframework.web.reactive.function.client.ClientResponse
+import org.springframework.web.reactive.function.client.ExchangeStrategies
+import org.springframework.web.reactive.function.client.ExchangeFunction
 import org.springframework.web.reactive.function.client.WebClient
+import reactor.core.publisher.Mono
 import spock.lang.Specification
 
+import java.time.Clock
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicInteger
+
 /**
  * AiServiceのSpockテスト
  * Spockの仕様記述形式でテストケースを記述する
@@ -11,23 +23,253 @@ import spock.lang.Specification
 class AiServiceSpec extends Specification {
 
     def webClient = Mock(WebClient)
-    def objectMapper = Mock(ObjectMapper)
-    def aiService = new AiService(webClient, objectMapper)
+    def aiService = new AiService(webClient)
 
     def "APIキーが設定されていない場合、例外がスローされること"() {
         given: "APIキーが設定されていないAiService"
         // デフォルトでAPIキーは空文字列
 
         when: "getTriviaを呼び出す"
-        aiService.getTrivia()
+        aiService.getTrivia().block()
 
         then: "IllegalStateExceptionがスローされる"
         def exception = thrown(IllegalStateException)
         exception.message == "APIキーが設定されていません。"
     }
 
-    def "WebClientとObjectMapperが正しく注入されること"() {
+    def "WebClientが正しく注入されること"() {
         expect: "依存関係が正しく設定されている"
         aiService != null
     }
+
+    def "Gemini APIのレスポンスから豆知識が取得されること"() {
+        given: "generateContentのレスポンスを返すWebClient"
+        def requests = []
+        def service = serviceRespondingWith(requests, HttpStatus.OK, MediaType.APPLICATION_JSON,
+                '{"candidates":[{"content":{"parts":[{"text":" 富士山は日本一高い山です。\\n"}]}}]}')
+
+        when:
+        def trivia = service.getTrivia().block()
+
+        then:
+        trivia == "富士山は日本一高い山です。"
+        requests[0].url().toString().endsWith("/models/gemini-test:generateContent")
+        requests[0].headers().getFirst("X-Goog-Api-Key") == "test-key"
+    }
+
+    def "レスポンスが期待される形式でない場合は解析エラーとなること"() {
+        given:
+        def service = serviceRespondingWith([], HttpStatus.OK, MediaType.APPLICATION_JSON, '{"candidates":[]}')
+
+        when:
+        service.getTrivia().block()
+
+        then:
+        def exception = thrown(RuntimeException)
+        exception.message == "AIからの応答を解析できませんでした。期待される形式ではありません。"
+    }
+
+    def "Gemini APIがエラーを返した場合はAPI呼び出しの失敗となること"() {
+        given:
+        def service = serviceRespondingWith([], HttpStatus.TOO_MANY_REQUESTS, MediaType.APPLICATION_JSON, '{}')
+
+        when:
+        service.getTrivia().block()
+
+        then:
+        def exception = thrown(RuntimeException)
+        exception.message == "API呼び出しに失敗しました。"
+    }
+
+    def "streamGenerateContentの要素ごとにテキストの断片が発行されること"() {
+        given: "テキストを含まない終了要素を含むレスポンスの配列"
+        def requests = []
+        def service = serviceRespondingWith(requests, HttpStatus.OK, MediaType.APPLICATION_JSON,
+                '[{"candidates":[{"content":{"parts":[{"text":"富士山は"}]}}]}\r\n,' +
+                '{"candidates":[{"content":{"parts":[{"text":"日本一高い山です。"}]}}]}\r\n,' +
+                '{"candidates":[{"finishReason":"STOP"}]}]')
+
+        when:
+        def tokens = service.streamTrivia().collectList().block()
+
+        then:
+        tokens == ["富士山は", "日本一高い山です。"]
+        requests[0].url().toString().endsWith("/models/gemini-test:streamGenerateContent")
+    }
+
+    def "レスポンスがJSONとして不正な場合は解析エラーとなること"() {
+        given:
+        def service = serviceRespondingWith([], HttpStatus.OK, MediaType.APPLICATION_JSON, '{"candidates":[}')
+
+        when:
+        service.getTrivia().block()
+
+        then:
+        def exception = thrown(RuntimeException)
+        exception.message == "AIからの応答を解析できませんでした。"
+    }
+
+    def "ストリーミングでもAPIキーが設定されていない場合は例外となること"() {
+        when:
+        aiService.streamTrivia().blockLast()
+
+        then:
+        def exception = thrown(IllegalStateException)
+        exception.message == "APIキーが設定されていません。"
+    }
+
+    def "プールに補充された豆知識はGemini APIを呼び出さずに返されること"() {
+        given: "豆知識のプールを有効にしたAiService"
+        def requests = []
+        ExchangeFunction exchange = { request ->
+            requests << request
+            Mono.just(ClientResponse.create(HttpStatus.OK)
+                    .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                    .body('{"candidates":[{"content":{"parts":[{"text":"豆知識' + requests.size() + '"}]}}]}')
+                    .build())
+        }
+        def service = new AiService(WebClient.builder().exchangeFunction(exchange).build(), GeminiResilience.disabled(), PromptResponseCache.disabled(), 10, 1, 3, 1, Duration.ofMinutes(1), 4, 100)
+        ReflectionTestUtils.setField(service, "apiKey", "test-key")
+        ReflectionTestUtils.setField(service, "model", "gemini-test")
+
+        when: "プールを補充してから取得する"
+        service.refillTriviaPool()
+        def trivia = service.getTrivia().block()
+
+        then: "補充時の3回以外にAPIは呼び出されない"
+        trivia == "豆知識1"
+        requests.size() == 3
+    }
+
+    def "APIキーが設定されていない場合はプールを補充しないこと"() {
+        given:
+        def service = new AiService(webClient, GeminiResilience.disabled(), PromptResponseCache.disabled(), 10, 1, 3, 1, Duration.ofMinutes(1), 4, 100)
+
+        when:
+        service.refillTriviaPool()
+
+        then:
+        0 * webClient._
+    }
+
+    def "Gemini APIの呼び出しを見合わせた場合は混雑のメッセージで即座に失敗すること"() {
+        given: "1回の失敗でブレーカーが開くAiService"
+        def resilience = new GeminiResilience(true, new AdaptiveConcurrencyLimiter(10, 1, 50, 0.9), 0,
+                Duration.ZERO, Duration.ZERO, 50f, 1, Duration.ofMinutes(1))
+        def requests = []
+        ExchangeFunction exchange = { request ->
+            requests << request
+            Mono.just(ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build())
+        }
+        def service = new AiService(WebClient.builder().exchangeFunction(exchange).build(), resilience, PromptResponseCache.disabled(), 0, 0, 0, 1, Duration.ofMinutes(1), 4, 100)
+        ReflectionTestUtils.setField(service, "apiKey", "test-key")
+        ReflectionTestUtils.setField(service, "model", "gemini-test")
+        service.getTrivia().onErrorResume { Mono.empty() }.block()
+
+        when:
+        service.getTrivia().block()
+
+        then:
+        def exception = thrown(RuntimeException)
+        exception.message == "AI機能が混み合っています。しばらくしてから再試行してください。"
+        requests.size() == 1
+    }
+
+    def "一括生成では同時実行数を制限して送信し、結果をプロンプトの順に返すこと"() {
+        given: "先に送信したリクエストほど応答が遅いWebClient"
+        def prompts = (1..6).collect { "プロンプト$it".toString() }
+        def inFlight = new AtomicInteger()
+        def maxInFlight = new AtomicInteger()
+        ExchangeFunction exchange = { request ->
+            bodyOf(request).map { body -> body.find(/プロンプト\d/) }.flatMap { prompt ->
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max)
+                Mono.just(ClientResponse.create(HttpStatus.OK)
+                        .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                        .body('{"candidates":[{"content":{"parts":[{"text":"' + prompt + 'の結果"}]}}]}')
+                        .build())
+                        .delayElement(Duration.ofMillis(70 - 10 * Integer.parseInt(prompt[-1])))
+                        .doOnNext { inFlight.decrementAndGet() }
+            }
+        }
+        def service = new AiService(WebClient.builder().exchangeFunction(exchange).build(), GeminiResilience.disabled(), PromptResponseCache.disabled(),
+                0, 0, 0, 1, Duration.ofMinutes(1), 2, 100)
+        ReflectionTestUtils.setField(service, "apiKey", "test-key")
+        ReflectionTestUtils.setField(service, "model", "gemini-test")
+
+        when:
+        def results = service.generateAll(prompts).collectList().block()
+
+        then:
+        results == prompts.collect { it + "の結果" }
+        maxInFlight.get() <= 2
+    }
+
+    def "一括生成のプロンプト数が上限を超える場合は送信せずに例外となること"() {
+        given:
+        def requests = []
+        def service = serviceRespondingWith(requests, HttpStatus.OK, MediaType.APPLICATION_JSON, '{}')
+
+        when:
+        service.generateAll((1..101).collect { "プロンプト$it".toString() }).blockLast()
+
+        then:
+        def exception = thrown(IllegalArgumentException)
+        exception.message == "一度に生成できるプロンプトは100件までです。"
+        requests.isEmpty()
+    }
+
+    def "一括生成でいずれかの生成に失敗した場合はAPI呼び出しの失敗となること"() {
+        given:
+        def service = serviceRespondingWith([], HttpStatus.BAD_REQUEST, MediaType.APPLICATION_JSON, '{}')
+
+        when:
+        service.generateAll(["プロンプト1", "プロンプト2"]).blockLast()
+
+        then:
+        def exception = thrown(RuntimeException)
+        exception.message == "API呼び出しに失敗しました。"
+    }
+
+    def "一括生成で同じプロンプトの結果はキャッシュから返されること"() {
+        given: "プロンプトキャッシュを有効にしたAiService"
+        def requests = []
+        ExchangeFunction exchange = { request ->
+            requests << request
+            Mono.just(ClientResponse.create(HttpStatus.OK)
+                    .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                    .body('{"candidates":[{"content":{"parts":[{"text":"結果"}]}}]}')
+                    .build())
+        }
+        def promptCache = new PromptResponseCache(true, 100, Duration.ofMinutes(5), 1.0, null, Duration.ofDays(1), Clock.systemUTC())
+        def service = new AiService(WebClient.builder().exchangeFunction(exchange).build(), GeminiResilience.disabled(), promptCache,
+                0, 0, 0, 1, Duration.ofMinutes(1), 1, 100)
+        ReflectionTestUtils.setField(service, "apiKey", "test-key")
+        ReflectionTestUtils.setField(service, "model", "gemini-test")
+
+        when:
+        def results = service.generateAll(["同じプロンプト", "同じプロンプト", "別のプロンプト"]).collectList().block()
+
+        then:
+        results == ["結果", "結果", "結果"]
+        requests.size() == 2
+    }
+
+    private static Mono<String> bodyOf(ClientRequest request) {
+        def mockRequest = new MockClientHttpRequest(request.method(), request.url())
+        request.writeTo(mockRequest, ExchangeStrategies.withDefaults()).then(Mono.defer { mockRequest.bodyAsString })
+    }
+
+    private static AiService serviceRespondingWith(List requests, HttpStatus status, MediaType contentType, String body) {
+        ExchangeFunction exchange = { request ->
+            requests << request
+            Mono.just(ClientResponse.create(status)
+                    .header("Content-Type", contentType.toString())
+                    .body(body)
+                    .build())
+        }
+        def service = new AiService(WebClient.builder().exchangeFunction(exchange).build())
+        ReflectionTestUtils.setField(service, "apiKey", "test-key")
+        ReflectionTestUtils.setField(service, "model", "gemini-test")
+        service
+    }
 }
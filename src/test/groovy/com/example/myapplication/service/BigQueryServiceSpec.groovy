@@ -1,9 +1,15 @@
 package com.example.myapplication.service
 
+import com.example.myapplication.dto.QueryResult
 import com.google.api.gax.paging.Page
 import com.google.cloud.bigquery.*
 import spock.lang.Specification
 
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
 /**
  * BigQueryServiceのSpockテスト
  * BigQueryの主要機能をモックを使用してテストする
@@ -28,12 +34,12 @@ class BigQueryServiceSpec extends Specification {
         when: "クエリを実行"
         def result = bigQueryService.runQuery(sql)
 
-        then: "BigQueryのqueryメソッドが呼び出され、正しい結果が返される"
+        then: "BigQueryのqueryメソッドが呼び出され、列位置で値が取得される"
         1 * bigQuery.query(_) >> mockResult
         1 * mockResult.getSchema() >> mockSchema
         1 * mockResult.iterateAll() >> [mockRow]
-        1 * mockRow.get("id") >> mockIdField
-        1 * mockRow.get("name") >> mockNameField
+        1 * mockRow.get(0) >> mockIdField
+        1 * mockRow.get(1) >> mockNameField
         1 * mockIdField.isNull() >> false
         1 * mockIdField.getValue() >> 1L
         1 * mockNameField.isNull() >> false
@@ -41,10 +47,256 @@ class BigQueryServiceSpec extends Specification {
 
         and: "結果が正しく変換される"
         result.size() == 1
+        result.columns.size() == 2
         result[0]["id"] == 1L
         result[0]["name"] == "テストユーザー"
     }
 
+    def "runQuery()で結果の行数が閾値以上の場合はStorage Read APIで読み込まれること"() {
+        given: "Storage Read APIの読み込み処理と、クエリ結果の一時テーブル"
+        def reader = Mock(StorageReadApiReader)
+        def service = new BigQueryService("test-project", "test-dataset", bigQuery, QueryResultCache.disabled(),
+                QueryCoalescer.disabled(), ChunkedInsertAllWriter.withDefaults(), reader)
+        def tableResult = Mock(TableResult)
+        def job = Mock(Job)
+        def jobId = JobId.of("job-1")
+        def destination = TableId.of("test-project", "_anon", "anon_table")
+        def expected = QueryResult.of(["id"], [["1"] as Object[]])
+
+        when: "ORDER BYを含むクエリを実行"
+        def result = service.runQuery("SELECT id FROM big_table ORDER BY id")
+
+        then: "一時テーブルが並び順を保って読み込まれ、REST APIでは読み込まれない"
+        1 * bigQuery.query(_) >> tableResult
+        tableResult.getSchema() >> Schema.of(Field.of("id", StandardSQLTypeName.INT64))
+        tableResult.getTotalRows() >> 500_000L
+        tableResult.getJobId() >> jobId
+        reader.isApplicable(_, 500_000L) >> true
+        1 * bigQuery.getJob(jobId) >> job
+        job.getConfiguration() >> QueryJobConfiguration.newBuilder("SELECT 1").setDestinationTable(destination).build()
+        1 * reader.read(destination, _, true) >> expected
+        0 * tableResult.iterateAll()
+        result.is(expected)
+    }
+
+    def "runQuery()でStorage Read APIの読み込みに失敗した場合はREST APIで読み込まれること（#failure.class.simpleName）"() {
+        given:
+        def reader = Mock(StorageReadApiReader)
+        def service = new BigQueryService("test-project", "test-dataset", bigQuery, QueryResultCache.disabled(),
+                QueryCoalescer.disabled(), ChunkedInsertAllWriter.withDefaults(), reader)
+        def tableResult = Mock(TableResult)
+        def job = Mock(Job)
+        def row = FieldValueList.of([FieldValue.of(FieldValue.Attribute.PRIMITIVE, "1")])
+
+        when:
+        def result = service.runQuery("SELECT id FROM big_table")
+
+        then:
+        1 * bigQuery.query(_) >> tableResult
+        tableResult.getSchema() >> Schema.of(Field.of("id", StandardSQLTypeName.INT64))
+        tableResult.getTotalRows() >> 500_000L
+        tableResult.getJobId() >> JobId.of("job-1")
+        reader.isApplicable(_, _) >> true
+        bigQuery.getJob(_) >> job
+        job.getConfiguration() >> QueryJobConfiguration.newBuilder("SELECT 1")
+                .setDestinationTable(TableId.of("test-project", "_anon", "anon_table")).build()
+        1 * reader.read(_, _, false) >> { throw failure }
+        1 * tableResult.iterateAll() >> [row]
+        result*.get("id") == ["1"]
+
+        where: "Arrowを初期化できない場合（JVMオプションの不足等）はErrorとなる"
+        failure << [new IllegalStateException("read failed"),
+                    new ExceptionInInitializerError("Failed to initialize MemoryUtil")]
+    }
+
+    def "streamQuery()で結果行が反復時に逐次変換されること"() {
+        given: "テスト用のクエリとモックレスポンス"
+        def sql = "SELECT * FROM test_table"
+        def mockSchema = Schema.of(
+                Field.of("id", StandardSQLTypeName.INT64),
+                Field.of("name", StandardSQLTypeName.STRING)
+        )
+        def mockResult = Mock(TableResult)
+        def row = FieldValueList.of([
+                FieldValue.of(FieldValue.Attribute.PRIMITIVE, "1"),
+                FieldValue.of(FieldValue.Attribute.PRIMITIVE, "テストユーザー")
+        ], mockSchema.getFields())
+
+        when: "ストリーミングクエリを実行"
+        def rows = bigQueryService.streamQuery(sql)
+
+        then: "クエリは実行されるが、結果行はまだ読み出されない"
+        1 * bigQuery.query(_) >> mockResult
+        1 * mockResult.getSchema() >> mockSchema
+        0 * mockResult.iterateAll()
+
+        when: "結果を反復する"
+        def collected = rows.collect()
+
+        then: "ページが読み出され、各行がMapに変換される"
+        1 * mockResult.iterateAll() >> [row]
+        collected.size() == 1
+        collected[0]["id"] == "1"
+        collected[0]["name"] == "テストユーザー"
+    }
+
+    def "streamQuery()で空のSQLクエリを渡すとIllegalArgumentExceptionが発生すること"() {
+        when: "空のクエリを実行"
+        bigQueryService.streamQuery(" ")
+
+        then: "例外が発生"
+        def ex = thrown(IllegalArgumentException)
+        ex.message == "SQLクエリが空です"
+    }
+
+    def "streamQueryResult()では結果をキャッシュせず、クエリ結果がそのまま返されること"() {
+        given: "クエリ結果キャッシュを有効にしたサービス"
+        def cachingService = new BigQueryService("test-project", "test-dataset", bigQuery,
+                new QueryResultCache(true, 1024 * 1024, Duration.ofMinutes(5)), QueryCoalescer.disabled())
+        def mockResult = Mock(TableResult)
+
+        when: "同じクエリを2回実行"
+        def first = cachingService.streamQueryResult("SELECT id FROM test_table")
+        cachingService.streamQueryResult("SELECT id FROM test_table")
+
+        then: "毎回ジョブが実行され、結果行は読み出されない"
+        2 * bigQuery.query(_) >> mockResult
+        0 * mockResult.iterateAll()
+        first.is(mockResult)
+    }
+
+    def "streamQueryResult()の開発モードではREST APIと同じ値の表現のサンプルデータが返されること"() {
+        given:
+        def devService = new BigQueryService("test-project", "test-dataset", null)
+
+        when:
+        def result = devService.streamQueryResult("SELECT * FROM users")
+
+        then:
+        result.schema.fields*.name == ["id", "name", "email", "created_at"]
+        result.iterateAll()*.get("id")*.longValue == [1L, 2L]
+        result.iterateAll()*.get("created_at")*.timestampValue == [1672531200000000L, 1672617600000000L]
+    }
+
+    def "runQuery()でジョブIDを指定した場合は、そのIDでジョブが発行され同一クエリの集約を行わないこと"() {
+        given: "同一クエリの集約を有効にしたサービスで、同じSQLのクエリを実行中にしておく"
+        def coalescer = new QueryCoalescer(true, Duration.ZERO)
+        def coalescingService = new BigQueryService("test-project", "test-dataset", bigQuery,
+                QueryResultCache.disabled(), coalescer)
+        def jobId = JobId.of("myapp_query_job_1")
+        def release = new CountDownLatch(1)
+        def started = new CountDownLatch(1)
+        def inFlight = CompletableFuture.supplyAsync {
+            coalescer.execute("SELECT id FROM t") {
+                started.countDown()
+                release.await(5, TimeUnit.SECONDS)
+                QueryResult.of(["id"], [])
+            }
+        }
+        started.await(5, TimeUnit.SECONDS)
+        def mockResult = Mock(TableResult)
+        mockResult.getSchema() >> Schema.of(Field.of("id", StandardSQLTypeName.INT64))
+        mockResult.iterateAll() >> []
+        def issued = []
+        bigQuery.query(_, _ as JobId) >> { arguments ->
+            issued << arguments[1]
+            mockResult
+        }
+
+        when:
+        coalescingService.runQuery("SELECT id FROM t", jobId)
+
+        then: "実行中のクエリの結果を待たずに、指定したジョブIDで別のジョブが発行される"
+        issued == [jobId]
+        !inFlight.isDone()
+
+        cleanup:
+        release.countDown()
+        inFlight.join()
+    }
+
+    def "cancelJob()でBigQueryのジョブがキャンセルされること"() {
+        given:
+        def jobId = JobId.of("myapp_query_job_1")
+
+        when:
+        def cancelled = bigQueryService.cancelJob(jobId)
+
+        then:
+        1 * bigQuery.cancel(jobId) >> true
+        cancelled
+    }
+
+    def "cancelJob()でキャンセルに失敗した場合はfalseが返されること"() {
+        when:
+        def cancelled = bigQueryService.cancelJob(JobId.of("myapp_query_job_1"))
+
+        then:
+        1 * bigQuery.cancel(_) >> { throw new BigQueryException(500, "backend error") }
+        !cancelled
+    }
+
+    def "runQuery()で同じSQLを繰り返し実行するとキャッシュから結果が返されること"() {
+        given: "クエリ結果キャッシュを有効にしたサービス"
+        def cachingService = new BigQueryService("test-project", "test-dataset", bigQuery,
+                new QueryResultCache(true, 1024 * 1024, Duration.ofMinutes(5)), QueryCoalescer.disabled())
+        def mockResult = Mock(TableResult)
+        mockResult.getSchema() >> Schema.of(Field.of("id", StandardSQLTypeName.INT64))
+        mockResult.iterateAll() >> []
+
+        when: "同じクエリを2回実行"
+        cachingService.runQuery("SELECT id FROM test_table")
+        cachingService.runQuery("SELECT id FROM test_table")
+
+        then: "BigQueryのジョブは1回だけ実行される"
+        1 * bigQuery.query(_) >> mockResult
+    }
+
+    def "checkConnection()ではクエリ結果キャッシュを使用せずに毎回クエリが実行されること"() {
+        given: "クエリ結果キャッシュを有効にしたサービス"
+        def cachingService = new BigQueryService("test-project", "test-dataset", bigQuery,
+                new QueryResultCache(true, 1024 * 1024, Duration.ofMinutes(5)), QueryCoalescer.disabled())
+
+        when: "接続確認を2回行う"
+        cachingService.checkConnection()
+        cachingService.checkConnection()
+
+        then: "BigQuery側のキャッシュも使用せずにジョブが2回実行される"
+        2 * bigQuery.query({ QueryJobConfiguration config -> !config.useQueryCache() }) >> Mock(TableResult)
+    }
+
+    def "checkConnection()でBigQueryに接続できない場合は例外が発生すること"() {
+        given:
+        bigQuery.query(_) >> { throw new BigQueryException(503, "unavailable") }
+
+        when:
+        bigQueryService.checkConnection()
+
+        then:
+        def ex = thrown(RuntimeException)
+        ex.message.startsWith("BigQueryに接続できません")
+    }
+
+    def "insertData()でデータを挿入すると対象テーブルのクエリ結果キャッシュが無効化されること"() {
+        given: "クエリ結果キャッシュを有効にしたサービス"
+        def cachingService = new BigQueryService("test-project", "test-dataset", bigQuery,
+                new QueryResultCache(true, 1024 * 1024, Duration.ofMinutes(5)), QueryCoalescer.disabled())
+        def mockResult = Mock(TableResult)
+        mockResult.getSchema() >> Schema.of(Field.of("id", StandardSQLTypeName.INT64))
+        mockResult.iterateAll() >> []
+        def mockResponse = Mock(InsertAllResponse)
+        mockResponse.hasErrors() >> false
+        bigQuery.insertAll(_) >> mockResponse
+
+        when: "クエリ実行、データ挿入、同じクエリの再実行を行う"
+        cachingService.runQuery("SELECT id FROM test_table")
+        cachingService.insertData("test_table", [["id": 1]])
+        cachingService.runQuery("SELECT id FROM test_table")
+
+        then: "挿入後はクエリが再実行される"
+        2 * bigQuery.query(_) >> mockResult
+    }
+
     def "runQuery()で空のSQLクエリを渡すとIllegalArgumentExceptionが発生すること"() {
         when: "空のクエリを実行"
         bigQueryService.runQuery("")
@@ -150,4 +402,60 @@ class BigQueryServiceSpec extends Specification {
         and: "実際にはRuntimeExceptionが発生する（モックの期待通り）"
         thrown(RuntimeException)
     }
+
+    def "listTables()の2回目以降はキャッシュからテーブル一覧が返されること"() {
+        given: "テスト用のテーブル一覧"
+        def mockPage = Mock(Page)
+        mockPage.iterateAll() >> [mockTable("table1"), mockTable("table2")]
+
+        when: "テーブル一覧を2回取得"
+        def first = bigQueryService.listTables()
+        def second = bigQueryService.listTables()
+
+        then: "BigQueryへの問い合わせは1回だけ行われる"
+        1 * bigQuery.listTables(_) >> mockPage
+        first == ["table1", "table2"]
+        second == ["table1", "table2"]
+    }
+
+    def "createTable()とdeleteTable()でテーブル一覧のキャッシュがその場で更新されること"() {
+        given: "テーブル一覧がキャッシュされている"
+        def mockPage = Mock(Page)
+        mockPage.iterateAll() >> [mockTable("table1")]
+        bigQuery.listTables(_) >> mockPage
+        bigQueryService.listTables()
+        def createdTable = mockTable("table0")
+
+        when: "テーブルを作成し、別のテーブルを削除する"
+        bigQueryService.createTable("table0", Schema.of(Field.of("id", StandardSQLTypeName.INT64)))
+        bigQueryService.deleteTable("table1")
+        def tables = bigQueryService.listTables()
+
+        then: "BigQueryに再問い合わせせずに一覧へ反映される"
+        1 * bigQuery.create(_) >> createdTable
+        1 * bigQuery.delete(_) >> true
+        0 * bigQuery.listTables(_)
+        tables == ["table0"]
+    }
+
+    def "refreshTableCache()で取得に失敗しても直前のテーブル一覧が維持されること"() {
+        given: "テーブル一覧がキャッシュされている"
+        def mockPage = Mock(Page)
+        mockPage.iterateAll() >> [mockTable("table1")]
+        bigQuery.listTables(_) >>> [mockPage, { throw new RuntimeException("接続失敗") }]
+        bigQueryService.listTables()
+
+        when: "バックグラウンド更新で取得に失敗する"
+        bigQueryService.refreshTableCache()
+
+        then: "例外は発生せず、直前の一覧が返される"
+        noExceptionThrown()
+        bigQueryService.listTables() == ["table1"]
+    }
+
+    private Table mockTable(String name) {
+        def table = Mock(Table)
+        table.getTableId() >> TableId.of("test-project", "test-dataset", name)
+        return table
+    }
 }
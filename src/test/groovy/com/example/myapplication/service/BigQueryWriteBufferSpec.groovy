@@ -0,0 +1,187 @@
+package com.example.myapplication.service
+
+import com.google.cloud.bigquery.BigQueryError
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+/**
+ * BigQueryWriteBufferのSpockテスト
+ * 複数の呼び出しがまとめて送信されること、送信条件、バックプレッシャーを検証する
+ */
+class BigQueryWriteBufferSpec extends Specification {
+
+    def bigQueryService = Mock(BigQueryService)
+
+    def "待機時間内に受け付けた複数の呼び出しが1回の挿入にまとめられること"() {
+        given: "待機時間を長めに設定したバッファ"
+        def buffer = newBuffer(100, Duration.ofMillis(200), 1000)
+        def inserted = new CountDownLatch(1)
+
+        when: "同じテーブルに3回に分けて行を追加する"
+        def futures = [
+                buffer.submit("test_table", [["id": 1]]),
+                buffer.submit("test_table", [["id": 2], ["id": 3]]),
+                buffer.submit("test_table", [["id": 4]])
+        ]
+        futures.each { it.get(5, TimeUnit.SECONDS) }
+
+        then: "待機時間の経過後に1回だけ挿入される"
+        1 * bigQueryService.insertRows("test_table", [["id": 1], ["id": 2], ["id": 3], ["id": 4]]) >> {
+            inserted.countDown()
+            succeeded(4)
+        }
+        inserted.count == 0
+        buffer.bufferedRows == 0
+
+        cleanup:
+        buffer.shutdown()
+    }
+
+    def "行数の上限に達すると待機時間を待たずに送信されること"() {
+        given: "2行で送信し、待機時間が十分長いバッファ"
+        def buffer = newBuffer(2, Duration.ofMinutes(1), 1000)
+
+        when: "1行ずつ2回追加する"
+        def first = buffer.submit("test_table", [["id": 1]])
+        def second = buffer.submit("test_table", [["id": 2]])
+        second.get(5, TimeUnit.SECONDS)
+
+        then: "上限に達した時点で送信される"
+        1 * bigQueryService.insertRows("test_table", [["id": 1], ["id": 2]]) >> succeeded(2)
+        first.isDone()
+
+        cleanup:
+        buffer.shutdown()
+    }
+
+    def "テーブルごとに別々のバッチとして送信されること"() {
+        given: "バッファ"
+        def buffer = newBuffer(100, Duration.ofMillis(50), 1000)
+
+        when: "異なるテーブルに行を追加する"
+        def futures = [
+                buffer.submit("table_a", [["id": 1]]),
+                buffer.submit("table_b", [["id": 2]])
+        ]
+        futures.each { it.get(5, TimeUnit.SECONDS) }
+
+        then: "テーブルごとに挿入される"
+        1 * bigQueryService.insertRows("table_a", [["id": 1]]) >> succeeded(1)
+        1 * bigQueryService.insertRows("table_b", [["id": 2]]) >> succeeded(1)
+
+        cleanup:
+        buffer.shutdown()
+    }
+
+    def "送信に失敗した場合、同じバッチの全ての呼び出し元に例外が通知されること"() {
+        given: "バッファ"
+        def buffer = newBuffer(100, Duration.ofMillis(50), 1000)
+        bigQueryService.insertRows(_, _) >> { throw new RuntimeException("挿入失敗") }
+
+        when: "2回に分けて行を追加し、完了を待つ"
+        def first = buffer.submit("test_table", [["id": 1]])
+        def second = buffer.submit("test_table", [["id": 2]])
+        CompletableFuture.allOf(first, second).join()
+
+        then: "例外が通知される"
+        def ex = thrown(CompletionException)
+        ex.cause.message == "挿入失敗"
+        first.isCompletedExceptionally()
+        second.isCompletedExceptionally()
+
+        and: "バッファの空きは返却される"
+        buffer.bufferedRows == 0
+
+        cleanup:
+        buffer.shutdown()
+    }
+
+    def "一部の行がエラーとなった場合、その行を含む呼び出し元にのみ自身の行番号でエラーが通知されること"() {
+        given: "バッチの3行目（2回目の呼び出しの2行目）がエラーとなるバッファ"
+        def buffer = newBuffer(100, Duration.ofMillis(50), 1000)
+        def error = new BigQueryError("invalid", "name", "不正な値")
+        bigQueryService.insertRows("test_table", _) >> new InsertResult(4, 1, 0, [2L: [error]])
+
+        when: "3回に分けて行を追加し、完了を待つ"
+        def first = buffer.submit("test_table", [["id": 1]])
+        def second = buffer.submit("test_table", [["id": 2], ["id": "x"]])
+        def third = buffer.submit("test_table", [["id": 4]])
+        first.get(5, TimeUnit.SECONDS)
+        third.get(5, TimeUnit.SECONDS)
+        second.join()
+
+        then: "エラーとなった行を含む呼び出し元のみ失敗し、行番号はその呼び出し元のリストでの位置となる"
+        def ex = thrown(CompletionException)
+        ex.cause instanceof RowInsertException
+        (ex.cause as RowInsertException).rowErrors == [1L: [error]]
+        !first.isCompletedExceptionally()
+        !third.isCompletedExceptionally()
+
+        cleanup:
+        buffer.shutdown()
+    }
+
+    def "バッファが満杯の場合、待機時間を超えると追加が拒否されること"() {
+        given: "2行までしかバッファできず、送信が完了しないバッファ"
+        def release = new CountDownLatch(1)
+        bigQueryService.insertData(_, _) >> { release.await(5, TimeUnit.SECONDS) }
+        def buffer = newBuffer(2, Duration.ofMinutes(1), 2)
+        buffer.submit("test_table", [["id": 1], ["id": 2]])
+
+        when: "さらに行を追加する"
+        buffer.submit("test_table", [["id": 3]])
+
+        then: "空きができないため拒否される"
+        thrown(RejectedExecutionException)
+
+        cleanup:
+        release.countDown()
+        buffer.shutdown()
+    }
+
+    def "空のデータを追加するとIllegalArgumentExceptionが発生すること"() {
+        given: "バッファ"
+        def buffer = newBuffer(100, Duration.ofMillis(50), 1000)
+
+        when: "空のデータを追加する"
+        buffer.submit("test_table", [])
+
+        then: "例外が発生"
+        def ex = thrown(IllegalArgumentException)
+        ex.message == "挿入するデータが空です"
+
+        cleanup:
+        buffer.shutdown()
+    }
+
+    def "無効な場合は呼び出し元のスレッドでそのまま挿入されること"() {
+        given: "無効なバッファ"
+        def buffer = new BigQueryWriteBuffer(bigQueryService, false, 100, 1024, Duration.ofMinutes(1),
+                1000, Duration.ofMillis(100), 1)
+
+        when: "行を追加する"
+        def future = buffer.submit("test_table", [["id": 1]])
+
+        then: "即座に挿入され、完了済みのFutureが返される"
+        1 * bigQueryService.insertData("test_table", [["id": 1]])
+        future.isDone()
+
+        cleanup:
+        buffer.shutdown()
+    }
+
+    private static InsertResult succeeded(int rowCount) {
+        return new InsertResult(rowCount, 1, 0, [:])
+    }
+
+    private BigQueryWriteBuffer newBuffer(int maxBatchRows, Duration linger, int maxBufferedRows) {
+        return new BigQueryWriteBuffer(bigQueryService, true, maxBatchRows, 5 * 1024 * 1024, linger,
+                maxBufferedRows, Duration.ofMillis(100), 2)
+    }
+}
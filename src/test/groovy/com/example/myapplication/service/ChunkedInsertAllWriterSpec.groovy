@@ -0,0 +1,208 @@
+package com.example.myapplication.service
+
+import com.google.cloud.bigquery.BigQuery
+import com.google.cloud.bigquery.BigQueryError
+import com.google.cloud.bigquery.BigQueryException
+import com.google.cloud.bigquery.InsertAllRequest
+import com.google.cloud.bigquery.InsertAllResponse
+import com.google.cloud.bigquery.TableId
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * ChunkedInsertAllWriterのSpockテスト
+ */
+class ChunkedInsertAllWriterSpec extends Specification {
+
+    def bigQuery = Mock(BigQuery)
+    def tableId = TableId.of("test-project", "test-dataset", "test_table")
+
+    def "上限以下の行数は1回のinsertAllで送信されること"() {
+        given:
+        def writer = new ChunkedInsertAllWriter(500, ChunkedInsertAllWriter.DEFAULT_MAX_CHUNK_BYTES, 4, 0, Duration.ZERO)
+        def response = Mock(InsertAllResponse)
+
+        when:
+        def result = writer.write(bigQuery, tableId, rows(3))
+
+        then:
+        1 * bigQuery.insertAll({ it.rows.size() == 3 }) >> response
+        1 * response.hasErrors() >> false
+        result.requestCount() == 1
+        !result.hasErrors()
+    }
+
+    def "行数の上限でチャンクに分割され、全チャンクが送信されること"() {
+        given:
+        def writer = new ChunkedInsertAllWriter(2, ChunkedInsertAllWriter.DEFAULT_MAX_CHUNK_BYTES, 4, 0, Duration.ZERO)
+        def requests = new CopyOnWriteArrayList<InsertAllRequest>()
+        bigQuery.insertAll(_) >> { InsertAllRequest request ->
+            requests << request
+            Stub(InsertAllResponse) { hasErrors() >> false }
+        }
+
+        when:
+        def result = writer.write(bigQuery, tableId, rows(5))
+
+        then:
+        result.requestCount() == 3
+        result.rowCount() == 5
+        requests*.rows*.size().sort() == [1, 2, 2]
+        requests.collectMany { it.rows*.content*.get("id") }.sort() == [0, 1, 2, 3, 4]
+    }
+
+    def "推定バイト数の上限でチャンクに分割されること"() {
+        given:
+        def row = ["payload": "x" * 100]
+        def rowBytes = RowSizes.estimate(row)
+        def writer = new ChunkedInsertAllWriter(500, rowBytes * 2, 1, 0, Duration.ZERO)
+
+        when:
+        def chunks = writer.split([row, row, row, row, row])
+
+        then:
+        chunks*.rows()*.size() == [2, 2, 1]
+        chunks*.firstIndex() == [0, 2, 4]
+    }
+
+    def "各行に一意のinsertIdが割り当てられること"() {
+        given:
+        def writer = ChunkedInsertAllWriter.withDefaults()
+
+        when:
+        def chunks = writer.split(rows(10))
+
+        then:
+        def ids = chunks.collectMany { it.rows()*.id }
+        ids.every { it != null }
+        ids.toSet().size() == 10
+    }
+
+    def "送信に失敗したチャンクは同じinsertIdで再送されること"() {
+        given:
+        def writer = new ChunkedInsertAllWriter(500, ChunkedInsertAllWriter.DEFAULT_MAX_CHUNK_BYTES, 1, 2, Duration.ZERO)
+        def sentIds = []
+
+        when:
+        def result = writer.write(bigQuery, tableId, rows(3))
+
+        then:
+        2 * bigQuery.insertAll(_) >> { InsertAllRequest request ->
+            sentIds << request.rows*.id
+            throw new BigQueryException(503, "backend error")
+        }
+        1 * bigQuery.insertAll(_) >> { InsertAllRequest request ->
+            sentIds << request.rows*.id
+            Stub(InsertAllResponse) { hasErrors() >> false }
+        }
+        result.retries() == 2
+        sentIds.size() == 3
+        sentIds.toSet().size() == 1
+    }
+
+    def "再送できないエラーの場合はチャンクの全行がエラーとなること"() {
+        given:
+        def writer = new ChunkedInsertAllWriter(500, ChunkedInsertAllWriter.DEFAULT_MAX_CHUNK_BYTES, 1, 3, Duration.ZERO)
+
+        when:
+        def result = writer.write(bigQuery, tableId, rows(3))
+
+        then:
+        1 * bigQuery.insertAll(_) >> { throw new BigQueryException(400, "invalid") }
+        result.rowErrors().keySet() == [0L, 1L, 2L] as Set
+        result.rowErrors()[0L]*.reason == [ChunkedInsertAllWriter.REQUEST_FAILED_REASON]
+    }
+
+    def "送信に失敗したチャンクがあっても、他のチャンクの結果と合わせて返されること"() {
+        given:
+        def writer = new ChunkedInsertAllWriter(2, ChunkedInsertAllWriter.DEFAULT_MAX_CHUNK_BYTES, 2, 0, Duration.ZERO)
+        bigQuery.insertAll(_) >> { InsertAllRequest request ->
+            if (request.rows*.content*.get("id").contains(2)) {
+                throw new BigQueryException(503, "backend error")
+            }
+            Stub(InsertAllResponse) { hasErrors() >> false }
+        }
+
+        when:
+        def result = writer.write(bigQuery, tableId, rows(5))
+
+        then: "失敗したチャンク（行2・3）のみがエラーとなる"
+        result.requestCount() == 3
+        result.rowErrors().keySet() == [2L, 3L] as Set
+    }
+
+    def "一時的な行エラーとなった行のみが同じinsertIdで再送されること"() {
+        given:
+        def writer = new ChunkedInsertAllWriter(500, ChunkedInsertAllWriter.DEFAULT_MAX_CHUNK_BYTES, 1, 2, Duration.ZERO)
+        def requests = []
+        def backendError = new BigQueryError("backendError", null, "temporary")
+        def invalid = new BigQueryError("invalid", "id", "bad value")
+        def stopped = new BigQueryError("stopped", null, "stopped")
+
+        when:
+        def result = writer.write(bigQuery, tableId, rows(4))
+
+        then: "1回目は行1が一時的なエラー、行2が不正な値、行3が巻き添えで停止"
+        1 * bigQuery.insertAll(_) >> { InsertAllRequest request ->
+            requests << request
+            Stub(InsertAllResponse) {
+                hasErrors() >> true
+                getInsertErrors() >> [1L: [backendError], 2L: [invalid], 3L: [stopped]]
+            }
+        }
+
+        then: "2回目は行1と行3のみを送信する"
+        1 * bigQuery.insertAll(_) >> { InsertAllRequest request ->
+            requests << request
+            Stub(InsertAllResponse) { hasErrors() >> false }
+        }
+        result.retries() == 1
+        requests[1].rows*.id == [requests[0].rows[1].id, requests[0].rows[3].id]
+        result.rowErrors() == [2L: [invalid]]
+    }
+
+    def "再送回数の上限に達した一時的な行エラーは結果に含まれること"() {
+        given:
+        def writer = new ChunkedInsertAllWriter(500, ChunkedInsertAllWriter.DEFAULT_MAX_CHUNK_BYTES, 1, 1, Duration.ZERO)
+        def backendError = new BigQueryError("backendError", null, "temporary")
+
+        when:
+        def result = writer.write(bigQuery, tableId, rows(2))
+
+        then:
+        2 * bigQuery.insertAll(_) >> { InsertAllRequest request ->
+            Stub(InsertAllResponse) {
+                hasErrors() >> true
+                getInsertErrors() >> [(request.rows.size() - 1L): [backendError]]
+            }
+        }
+        result.retries() == 1
+        result.rowErrors() == [1L: [backendError]]
+    }
+
+    def "各チャンクの行エラーが元のリストでの行番号にまとめられること"() {
+        given:
+        def writer = new ChunkedInsertAllWriter(2, ChunkedInsertAllWriter.DEFAULT_MAX_CHUNK_BYTES, 2, 0, Duration.ZERO)
+        def error = new BigQueryError("invalid", "id", "bad value")
+        bigQuery.insertAll(_) >> { InsertAllRequest request ->
+            def failing = request.rows*.content*.get("id").contains(3)
+            Stub(InsertAllResponse) {
+                hasErrors() >> failing
+                getInsertErrors() >> (failing ? [1L: [error]] : [:])
+            }
+        }
+
+        when:
+        def result = writer.write(bigQuery, tableId, rows(4))
+
+        then:
+        result.hasErrors()
+        result.rowErrors() == [3L: [error]]
+    }
+
+    private static List<Map<String, Object>> rows(int count) {
+        (0..<count).collect { ["id": it, "name": "user" + it] as Map<String, Object> }
+    }
+}
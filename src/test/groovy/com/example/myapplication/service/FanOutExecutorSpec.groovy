@@ -0,0 +1,89 @@
+package com.example.myapplication.service
+
+import spock.lang.Requires
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Supplier
+
+/**
+ * FanOutExecutorのSpockテスト
+ */
+class FanOutExecutorSpec extends Specification {
+
+    def "タスクの結果がタスクの順に返されること"() {
+        given:
+        def executor = FanOutExecutor.platform("test", 4)
+        def tasks = (1..10).collect { n -> { -> Thread.sleep(10 - n); n * 2 } as Supplier }
+
+        expect:
+        executor.invokeAll(tasks, 4) == (1..10).collect { it * 2 }
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "同時に実行するタスク数が並列数を超えないこと"() {
+        given: "スレッド数より小さい並列数"
+        def executor = FanOutExecutor.platform("test", 8)
+        def running = new AtomicInteger()
+        def maxRunning = new AtomicInteger()
+        def tasks = (1..12).collect {
+            { ->
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max)
+                Thread.sleep(20)
+                running.decrementAndGet()
+            } as Supplier
+        }
+
+        when:
+        executor.invokeAll(tasks, 3)
+
+        then:
+        maxRunning.get() == 3
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "タスクが失敗した場合はタスクが送出した例外がそのまま送出されること"() {
+        given:
+        def executor = FanOutExecutor.platform("test", 2)
+        def tasks = [{ -> 1 } as Supplier, { -> throw new IllegalStateException("失敗") } as Supplier]
+
+        when:
+        executor.invokeAll(tasks, 2)
+
+        then:
+        def ex = thrown(IllegalStateException)
+        ex.message == "失敗"
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "仮想スレッドを有効にしてもJava 21未満の場合はプラットフォームスレッドで実行されること"() {
+        when:
+        def executor = new FanOutExecutor(true, 2)
+
+        then:
+        executor.virtual == FanOutExecutor.isVirtualThreadSupported()
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    @Requires({ FanOutExecutor.isVirtualThreadSupported() })
+    def "仮想スレッドを使用する場合はタスクが仮想スレッドで実行されること"() {
+        given:
+        def executor = FanOutExecutor.virtual("test")
+
+        when:
+        def threads = executor.invokeAll([{ -> Thread.currentThread() } as Supplier], 1)
+
+        then:
+        executor.virtual
+        threads[0].isVirtual()
+        threads[0].name.startsWith("test-")
+    }
+}
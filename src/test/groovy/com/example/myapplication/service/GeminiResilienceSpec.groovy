@@ -0,0 +1,132 @@
+package com.example.myapplication.service
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException
+import io.github.resilience4j.circuitbreaker.CircuitBreaker
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.web.reactive.function.client.WebClientResponseException
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * GeminiResilienceのSpockテスト
+ */
+class GeminiResilienceSpec extends Specification {
+
+    def "429・5xxの場合は再試行され、成功した結果が返されること"() {
+        given: "2回失敗した後に成功する呼び出し"
+        def resilience = resilience(3, 50, 10)
+        def calls = new AtomicInteger()
+        def call = Mono.defer {
+            calls.incrementAndGet() <= 2 ? Mono.error(error(status)) : Mono.just("豆知識")
+        }
+
+        expect:
+        resilience.decorate(call).block() == "豆知識"
+        calls.get() == 3
+
+        where:
+        status << [429, 503]
+    }
+
+    def "再試行の対象でないエラーは再試行されずにそのまま返されること"() {
+        given:
+        def resilience = resilience(3, 50, 10)
+        def calls = new AtomicInteger()
+
+        when:
+        resilience.decorate(Mono.defer { calls.incrementAndGet(); Mono.error(error(400)) }).block()
+
+        then:
+        def e = thrown(WebClientResponseException)
+        e.statusCode.value() == 400
+        calls.get() == 1
+    }
+
+    def "再試行し尽くした場合は最後のエラーが返されること"() {
+        given:
+        def resilience = resilience(2, 100, 50)
+        def calls = new AtomicInteger()
+
+        when:
+        resilience.decorate(Mono.defer { calls.incrementAndGet(); Mono.error(error(500)) }).block()
+
+        then:
+        def e = thrown(WebClientResponseException)
+        e.statusCode.value() == 500
+        calls.get() == 3
+    }
+
+    def "失敗率が閾値を超えるとブレーカーが開き、呼び出さずに即座に失敗すること"() {
+        given: "4回の呼び出しで判定するブレーカー"
+        def resilience = resilience(0, 50, 4)
+        def calls = new AtomicInteger()
+        def failing = Mono.defer { calls.incrementAndGet(); Mono.error(error(503)) }
+
+        when: "4回失敗させる"
+        4.times { resilience.decorate(failing).onErrorResume { Mono.empty() }.block() }
+
+        then:
+        resilience.circuitBreakerState == CircuitBreaker.State.OPEN
+
+        when:
+        resilience.decorate(failing).block()
+
+        then:
+        thrown(CallNotPermittedException)
+        calls.get() == 4
+    }
+
+    def "ストリーミング呼び出しも再試行されること"() {
+        given:
+        def resilience = resilience(1, 50, 10)
+        def calls = new AtomicInteger()
+        def call = Flux.defer {
+            calls.incrementAndGet() == 1 ? Flux.error(error(429)) : Flux.just("一", "二")
+        }
+
+        expect:
+        resilience.decorate(call).collectList().block() == ["一", "二"]
+    }
+
+    def "上限・ブレーカーの状態・再試行回数がメトリクスとして登録されること"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        def resilience = new GeminiResilience(true, 10, 1, 50, 1, Duration.ofMillis(1), Duration.ofMillis(2),
+                50f, 10, Duration.ofSeconds(30), registry)
+        def calls = new AtomicInteger()
+
+        when:
+        resilience.decorate(Mono.defer { calls.incrementAndGet() == 1 ? Mono.error(error(503)) : Mono.just("豆知識") }).block()
+
+        then: "503により上限が10から9に減っている"
+        registry.get("gemini.concurrency.limit").gauge().value() == 9
+        registry.get("gemini.concurrency.in-flight").gauge().value() == 0
+        registry.get("gemini.retries").functionCounter().count() == 1
+        registry.get("resilience4j.circuitbreaker.state").tag("name", "gemini").tag("state", "closed").gauge().value() == 1
+    }
+
+    def "無効なインスタンスは呼び出しをそのまま実行すること"() {
+        given:
+        def calls = new AtomicInteger()
+
+        when:
+        GeminiResilience.disabled().decorate(Mono.defer { calls.incrementAndGet(); Mono.error(error(503)) }).block()
+
+        then:
+        thrown(WebClientResponseException)
+        calls.get() == 1
+    }
+
+    private static GeminiResilience resilience(int maxRetries, float failureRateThreshold, int slidingWindowSize) {
+        new GeminiResilience(true, new AdaptiveConcurrencyLimiter(10, 1, 50, 0.9), maxRetries,
+                Duration.ofMillis(1), Duration.ofMillis(5), failureRateThreshold, slidingWindowSize, Duration.ofMinutes(1))
+    }
+
+    private static WebClientResponseException error(int status) {
+        WebClientResponseException.create(status, "error", null, null, null)
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.myapplication.service
+
+import io.netty.buffer.UnpooledByteBufAllocator
+import org.springframework.core.codec.DecodingException
+import org.springframework.core.io.buffer.NettyDataBufferFactory
+import reactor.core.publisher.Flux
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+
+/**
+ * GeminiTextExtractorのSpockテスト
+ */
+class GeminiTextExtractorSpec extends Specification {
+
+    def bufferFactory = new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT)
+
+    def "レスポンスが任意の位置で分割されて届いてもテキストが抽出されること"() {
+        given: "1バイトずつに分割したレスポンス"
+        def json = '{"candidates":[{"content":{"role":"model","parts":[{"text":"富士山は\\"日本一\\"高い山です。"}]},' +
+                '"finishReason":"STOP"}],"usageMetadata":{"totalTokenCount":12}}'
+        def buffers = chunks(json, 1)
+
+        when:
+        def text = GeminiTextExtractor.extractText(Flux.fromIterable(buffers)).block()
+
+        then:
+        text == '富士山は"日本一"高い山です。'
+        buffers.every { it.nativeBuffer.refCnt() == 0 }
+    }
+
+    def "パスが一致しない位置のtextは抽出されないこと"() {
+        given: "2つ目の候補やpartsの2つ目、別の階層のtext"
+        def json = '{"text":"ルート","candidates":[{"content":{"parts":[{"thought":true},{"text":"2つ目"}]}},' +
+                '{"content":{"parts":[{"text":"別の候補"}]}}]}'
+
+        expect:
+        GeminiTextExtractor.extractText(Flux.fromIterable(chunks(json, 16))).block() == null
+    }
+
+    def "テキストを見つけた後のデータは解析されずに解放されること"() {
+        given: "テキストの後に不正なJSONが続くレスポンス"
+        def buffers = chunks('{"candidates":[{"content":{"parts":[{"text":"豆知識"}]}}]} これはJSONではない', 8)
+
+        when:
+        def text = GeminiTextExtractor.extractText(Flux.fromIterable(buffers)).block()
+
+        then:
+        text == "豆知識"
+        buffers.every { it.nativeBuffer.refCnt() == 0 }
+    }
+
+    def "レスポンスの配列から要素ごとにテキストが抽出されること"() {
+        given: "1つのバッファに複数の要素を含むレスポンスの配列"
+        def json = '[{"candidates":[{"content":{"parts":[{"text":"一"}]}}]},' +
+                '{"candidates":[{"content":{"parts":[{"text":"二"}]}}]},' +
+                '{"candidates":[{"finishReason":"STOP"}]}]'
+
+        expect:
+        GeminiTextExtractor.extractTexts(Flux.fromIterable(chunks(json, json.length()))).collectList().block() == ["一", "二"]
+        GeminiTextExtractor.extractTexts(Flux.fromIterable(chunks(json, 3))).collectList().block() == ["一", "二"]
+    }
+
+    def "不正なJSONの場合はDecodingExceptionとなりバッファが解放されること"() {
+        given:
+        def buffers = chunks('{"candidates":[}', 4)
+
+        when:
+        GeminiTextExtractor.extractText(Flux.fromIterable(buffers)).block()
+
+        then:
+        thrown(DecodingException)
+        buffers.every { it.nativeBuffer.refCnt() == 0 }
+    }
+
+    private List chunks(String json, int size) {
+        def bytes = json.getBytes(StandardCharsets.UTF_8)
+        (0..<bytes.length).step(size).collect { int from ->
+            bufferFactory.wrap(Arrays.copyOfRange(bytes, from, Math.min(from + size, bytes.length)))
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.myapplication.service
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import reactor.core.publisher.Mono
+import reactor.core.publisher.Sinks
+import spock.lang.Specification
+import spock.lang.TempDir
+import spock.util.concurrent.PollingConditions
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Supplier
+
+/**
+ * PromptResponseCacheのSpockテスト
+ * キャッシュヒット、temperatureによる除外、ディスクへの保存を検証する
+ */
+class PromptResponseCacheSpec extends Specification {
+
+    static final Map<String, Object> CONFIG = [maxOutputTokens: 1024]
+
+    @TempDir
+    Path directory
+
+    def cache = new PromptResponseCache(true, 100, Duration.ofMinutes(5), 1.0, null, Duration.ofDays(1), Clock.systemUTC())
+
+    def "同じモデル・プロンプト・生成設定の2回目以降はキャッシュから結果が返されること"() {
+        given:
+        def loader = Mock(Supplier)
+
+        when:
+        def first = cache.getOrLoad("gemini-test", "プロンプト", CONFIG, loader).block()
+        def second = cache.getOrLoad("gemini-test", "プロンプト", [maxOutputTokens: 1024], loader).block()
+
+        then: "ローダーは1回だけ呼び出される"
+        1 * loader.get() >> Mono.just("結果")
+        first == "結果"
+        second == "結果"
+    }
+
+    def "モデル・プロンプト・生成設定のいずれかが異なる場合は別のエントリとなること"() {
+        given:
+        def calls = new AtomicInteger()
+        Supplier<Mono<String>> loader = { Mono.just("結果" + calls.incrementAndGet()) }
+
+        when:
+        cache.getOrLoad("gemini-test", "プロンプト", CONFIG, loader).block()
+        cache.getOrLoad("gemini-other", "プロンプト", CONFIG, loader).block()
+        cache.getOrLoad("gemini-test", "別のプロンプト", CONFIG, loader).block()
+        cache.getOrLoad("gemini-test", "プロンプト", [maxOutputTokens: 200], loader).block()
+
+        then:
+        calls.get() == 4
+    }
+
+    def "生成設定の項目の順序が異なっても同じキーとなること"() {
+        given:
+        def ordered = new LinkedHashMap<String, Object>([temperature: 0.5, maxOutputTokens: 200])
+        def reversed = new LinkedHashMap<String, Object>([maxOutputTokens: 200, temperature: 0.5])
+
+        expect:
+        PromptResponseCache.key("gemini-test", "プロンプト", ordered) == PromptResponseCache.key("gemini-test", "プロンプト", reversed)
+    }
+
+    def "temperatureが閾値を超える場合はキャッシュせずに毎回生成すること"() {
+        given:
+        def loader = Mock(Supplier)
+
+        when:
+        2.times { cache.getOrLoad("gemini-test", "プロンプト", [temperature: 2.0], loader).block() }
+
+        then:
+        2 * loader.get() >> Mono.just("結果")
+    }
+
+    def "実行中の同じキーの生成は共有されること"() {
+        given:
+        def sink = Sinks.<String> one()
+        def loader = Mock(Supplier)
+
+        when:
+        def first = cache.getOrLoad("gemini-test", "プロンプト", CONFIG, loader).toFuture()
+        def second = cache.getOrLoad("gemini-test", "プロンプト", CONFIG, loader).toFuture()
+        sink.tryEmitValue("結果")
+
+        then:
+        1 * loader.get() >> sink.asMono()
+        first.get() == "結果"
+        second.get() == "結果"
+    }
+
+    def "生成に失敗した場合はキャッシュせず、次回は再度生成すること"() {
+        given:
+        def loader = Mock(Supplier)
+
+        when:
+        cache.getOrLoad("gemini-test", "プロンプト", CONFIG, loader).onErrorResume { Mono.empty() }.block()
+        def result = cache.getOrLoad("gemini-test", "プロンプト", CONFIG, loader).block()
+
+        then:
+        1 * loader.get() >> Mono.error(new IllegalStateException("失敗"))
+        1 * loader.get() >> Mono.just("結果")
+        result == "結果"
+    }
+
+    def "ディスクに保存した生成結果は再起動後も有効期間内は再利用されること"() {
+        given: "ディスクに保存するキャッシュで生成する"
+        def before = diskCache()
+        before.getOrLoad("gemini-test", "プロンプト", CONFIG, { Mono.just("結果") } as Supplier).block()
+        new PollingConditions(timeout: 5).eventually {
+            assert Files.exists(directory.resolve(PromptResponseCache.key("gemini-test", "プロンプト", CONFIG)))
+        }
+        def loader = Mock(Supplier)
+
+        when: "同じディレクトリを使う新しいインスタンスで取得する"
+        def result = diskCache().getOrLoad("gemini-test", "プロンプト", CONFIG, loader).block()
+
+        then:
+        0 * loader.get()
+        result == "結果"
+    }
+
+    def "有効期間を過ぎたファイルは使用せずに削除されること"() {
+        given: "1日前に保存されたファイル"
+        def file = directory.resolve(PromptResponseCache.key("gemini-test", "プロンプト", CONFIG))
+        Files.writeString(file, "古い結果")
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(Duration.ofDays(2))))
+
+        when:
+        def result = diskCache().getOrLoad("gemini-test", "プロンプト", CONFIG, { Mono.just("新しい結果") } as Supplier).block()
+
+        then:
+        result == "新しい結果"
+    }
+
+    def "定期的な整理で有効期間を過ぎたファイルが削除されること"() {
+        given: "有効期間を過ぎたファイル・書き込み途中で残った一時ファイルと、有効期間内のファイル"
+        def expired = saved("古い結果", Duration.ofDays(2))
+        def temp = saved("書きかけ", Duration.ofDays(3), "abc.tmp")
+        def fresh = saved("新しい結果", Duration.ofHours(1))
+
+        when:
+        def deleted = diskCache().cleanupDisk()
+
+        then:
+        deleted == 2
+        !Files.exists(expired)
+        !Files.exists(temp)
+        Files.exists(fresh)
+    }
+
+    def "合計サイズが上限を超える場合は古いファイルから上限以下になるまで削除されること"() {
+        given: "10バイトのファイル3つと、合計20バイトの上限"
+        def oldest = saved("0123456789", Duration.ofHours(3))
+        def older = saved("abcdefghij", Duration.ofHours(2))
+        def newest = saved("ABCDEFGHIJ", Duration.ofHours(1))
+        def cache = new PromptResponseCache(true, 100, Duration.ofMinutes(5), 1.0, directory, Duration.ofDays(1), 20, Clock.systemUTC())
+
+        when:
+        def deleted = cache.cleanupDisk()
+
+        then:
+        deleted == 1
+        !Files.exists(oldest)
+        Files.exists(older)
+        Files.exists(newest)
+    }
+
+    def "ディスクに保存しない場合は整理しないこと"() {
+        expect:
+        cache.cleanupDisk() == 0
+    }
+
+    def "ヒット率とディスクの参照数がメトリクスとして登録されること"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        def cache = new PromptResponseCache(true, 100, Duration.ofMinutes(5), 1.0, directory.toString(), Duration.ofDays(1),
+                PromptResponseCache.DEFAULT_DISK_MAX_SIZE_BYTES, registry)
+
+        when:
+        2.times { cache.getOrLoad("gemini-test", "プロンプト", CONFIG, { Mono.just("結果") } as Supplier).block() }
+        cache.getOrLoad("gemini-test", "プロンプト", [temperature: 2.0], { Mono.just("結果") } as Supplier).block()
+
+        then:
+        registry.get("cache.gets").tag("cache", "gemini.prompt-responses").tag("result", "hit").functionCounter().count() == 1
+        registry.get("cache.gets").tag("cache", "gemini.prompt-responses").tag("result", "miss").functionCounter().count() == 1
+        registry.get("gemini.prompt-cache.disk.gets").tag("result", "miss").functionCounter().count() == 1
+        registry.get("gemini.prompt-cache.skipped").functionCounter().count() == 1
+    }
+
+    def "無効なキャッシュは毎回生成すること"() {
+        given:
+        def loader = Mock(Supplier)
+
+        when:
+        2.times { PromptResponseCache.disabled().getOrLoad("gemini-test", "プロンプト", CONFIG, loader).block() }
+
+        then:
+        2 * loader.get() >> Mono.just("結果")
+    }
+
+    private Path saved(String text, Duration age, String name = UUID.randomUUID().toString()) {
+        def file = directory.resolve(name)
+        Files.writeString(file, text)
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(age)))
+        file
+    }
+
+    private PromptResponseCache diskCache() {
+        new PromptResponseCache(true, 100, Duration.ofMinutes(5), 1.0, directory, Duration.ofDays(1), Clock.systemUTC())
+    }
+}
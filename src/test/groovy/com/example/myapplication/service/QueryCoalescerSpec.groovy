@@ -0,0 +1,197 @@
+package com.example.myapplication.service
+
+import com.example.myapplication.dto.QueryResult
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Supplier
+
+/**
+ * QueryCoalescerのSpockテスト
+ * 同一クエリの同時実行が1回の実行に集約されることを検証する
+ */
+class QueryCoalescerSpec extends Specification {
+
+    def result = QueryResult.of(["id"], [[1] as Object[]])
+
+    def "同じSQLの同時呼び出しは1回のクエリ実行に集約されること"() {
+        given: "実行中に他の呼び出しを待ち合わせるローダー"
+        def coalescer = new QueryCoalescer(true, Duration.ZERO)
+        def executions = new AtomicInteger()
+        def release = new CountDownLatch(1)
+        def loader = {
+            executions.incrementAndGet()
+            release.await(5, TimeUnit.SECONDS)
+            result
+        } as Supplier
+        def executor = Executors.newFixedThreadPool(10)
+
+        when: "10スレッドから同じSQLを同時に実行する"
+        def futures = (1..10).collect { i ->
+            executor.submit({ coalescer.execute("SELECT id FROM  users", loader) } as java.util.concurrent.Callable)
+        }
+        // 先頭の呼び出しが実行中の間に残りの呼び出しが集約されるのを待つ
+        def deadline = System.currentTimeMillis() + 5000
+        while (coalescer.coalescedCount < 9 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        release.countDown()
+        def results = futures.collect { it.get(5, TimeUnit.SECONDS) }
+
+        then: "クエリは1回だけ実行され、全員が同じ結果を受け取る"
+        executions.get() == 1
+        results.every { it.is(result) }
+        coalescer.executedCount == 1
+        coalescer.coalescedCount == 9
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    def "集約ウィンドウ内であれば完了後の呼び出しにも結果が共有されること"() {
+        given: "集約ウィンドウを設定したインスタンス"
+        def coalescer = new QueryCoalescer(true, Duration.ofMinutes(1))
+        def loader = Mock(Supplier)
+
+        when: "同じSQLを順番に2回実行する"
+        coalescer.execute("SELECT id FROM users", loader)
+        def second = coalescer.execute("SELECT id FROM users", loader)
+
+        then: "2回目は完了済みの結果が共有される"
+        1 * loader.get() >> result
+        second.is(result)
+        coalescer.coalescedCount == 1
+    }
+
+    def "集約ウィンドウが0の場合、完了後の呼び出しは再実行されること"() {
+        given: "集約ウィンドウを設定しないインスタンス"
+        def coalescer = new QueryCoalescer(true, Duration.ZERO)
+        def loader = Mock(Supplier)
+
+        when: "同じSQLを順番に2回実行する"
+        coalescer.execute("SELECT id FROM users", loader)
+        coalescer.execute("SELECT id FROM users", loader)
+
+        then: "毎回クエリが実行される"
+        2 * loader.get() >> result
+    }
+
+    def "クエリが失敗した場合は例外がそのまま伝播し、次の呼び出しで再実行されること"() {
+        given: "集約ウィンドウを設定したインスタンス"
+        def coalescer = new QueryCoalescer(true, Duration.ofMinutes(1))
+        def loader = Mock(Supplier)
+
+        when: "失敗するクエリを実行する"
+        coalescer.execute("SELECT id FROM users", loader)
+
+        then: "例外が伝播する"
+        1 * loader.get() >> { throw new RuntimeException("クエリ失敗") }
+        def ex = thrown(RuntimeException)
+        ex.message == "クエリ失敗"
+
+        when: "同じSQLを再度実行する"
+        def retried = coalescer.execute("SELECT id FROM users", loader)
+
+        then: "失敗した結果は共有されずに再実行される"
+        1 * loader.get() >> result
+        retried.is(result)
+    }
+
+    def "更新系のクエリは集約されないこと"() {
+        given: "集約ウィンドウを設定したインスタンス"
+        def coalescer = new QueryCoalescer(true, Duration.ofMinutes(1))
+        def loader = Mock(Supplier)
+
+        when: "同じ更新系クエリを2回実行する"
+        coalescer.execute("DELETE FROM users WHERE id = 1", loader)
+        coalescer.execute("DELETE FROM users WHERE id = 1", loader)
+
+        then: "毎回実行される"
+        2 * loader.get() >> result
+        coalescer.coalescedCount == 0
+    }
+
+    def "テーブルが無効化された後の呼び出しは、無効化前から実行中のクエリに集約されないこと"() {
+        given: "実行中のusersを参照するクエリ"
+        def coalescer = new QueryCoalescer(true, Duration.ZERO)
+        def stale = QueryResult.of(["id"], [[1] as Object[]])
+        def fresh = QueryResult.of(["id"], [[2] as Object[]])
+        def release = new CountDownLatch(1)
+        def executor = Executors.newSingleThreadExecutor()
+        def leader = executor.submit({
+            coalescer.execute("SELECT id FROM users", { release.await(5, TimeUnit.SECONDS); stale } as Supplier)
+        } as java.util.concurrent.Callable)
+        waitUntil { coalescer.executedCount == 1 }
+
+        when: "usersを無効化してから同じSQLを実行する"
+        coalescer.invalidateTable("users")
+        def after = coalescer.execute("SELECT id FROM users", { fresh } as Supplier)
+        release.countDown()
+
+        then: "無効化後の呼び出しは新たに実行され、実行中だったクエリは自身の結果を返す"
+        after.is(fresh)
+        leader.get(5, TimeUnit.SECONDS).is(stale)
+        coalescer.coalescedCount == 0
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    def "更新系のクエリを実行すると、対象テーブルを参照する完了済みの結果も共有されなくなること"() {
+        given: "集約ウィンドウ内のusersとordersのクエリ結果"
+        def coalescer = new QueryCoalescer(true, Duration.ofMinutes(1))
+        def loader = Mock(Supplier)
+        coalescer.execute("SELECT id FROM users", { result } as Supplier)
+        coalescer.execute("SELECT id FROM orders", { result } as Supplier)
+
+        when: "usersを更新してから再度実行する"
+        coalescer.execute("UPDATE users SET name = 'x' WHERE id = 1", { result } as Supplier)
+        coalescer.execute("SELECT id FROM users", loader)
+        coalescer.execute("SELECT id FROM orders", loader)
+
+        then: "usersを参照するクエリのみ再実行される"
+        1 * loader.get() >> result
+    }
+
+    def "キャッシュと組み合わせた場合、更新前から実行中のクエリの結果はキャッシュされないこと"() {
+        given: "BigQueryServiceと同じ順序で組み合わせたキャッシュと集約"
+        def cache = new QueryResultCache(true, 1024 * 1024, Duration.ofMinutes(5))
+        def coalescer = new QueryCoalescer(true, Duration.ZERO)
+        def stale = QueryResult.of(["id"], [[1] as Object[]])
+        def fresh = QueryResult.of(["id"], [[2] as Object[]])
+        def release = new CountDownLatch(1)
+        def executor = Executors.newSingleThreadExecutor()
+        def query = { QueryResult value, CountDownLatch latch ->
+            cache.getOrLoad("SELECT id FROM users", {
+                coalescer.execute("SELECT id FROM users", { latch?.await(5, TimeUnit.SECONDS); value } as Supplier)
+            } as Supplier)
+        }
+        def leader = executor.submit({ query(stale, release) } as java.util.concurrent.Callable)
+        waitUntil { coalescer.executedCount == 1 }
+
+        when: "データ挿入と同じ順序で無効化してから取得し、実行中だったクエリを完了させる"
+        coalescer.invalidateTable("users")
+        cache.invalidateTable("users")
+        def after = query(fresh, null)
+        release.countDown()
+        leader.get(5, TimeUnit.SECONDS)
+
+        then: "更新後の結果が返され、以降もキャッシュから更新後の結果が返される"
+        after.is(fresh)
+        query(stale, null).is(fresh)
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    private static void waitUntil(Closure<Boolean> condition) {
+        def deadline = System.currentTimeMillis() + 5000
+        while (!condition() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+    }
+}
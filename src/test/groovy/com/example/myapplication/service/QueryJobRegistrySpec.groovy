@@ -0,0 +1,291 @@
+package com.example.myapplication.service
+
+import com.example.myapplication.dto.QueryResult
+import com.google.cloud.bigquery.JobId
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneOffset
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+/**
+ * QueryJobRegistryのSpockテスト
+ */
+class QueryJobRegistrySpec extends Specification {
+
+    def bigQueryService = Mock(BigQueryService)
+    def result = QueryResult.of(["id"], [[1] as Object[]])
+
+    def "受け付けたクエリがバックグラウンドで実行され、結果が保持されること"() {
+        given:
+        def registry = new QueryJobRegistry(bigQueryService, 2, 10, Duration.ofMinutes(10), Clock.systemUTC())
+        bigQueryService.runQuery("SELECT 1", _) >> result
+
+        when:
+        def job = registry.submit("SELECT 1")
+        awaitDone(job)
+
+        then:
+        job.status == QueryJobRegistry.Status.SUCCEEDED
+        job.result.is(result)
+        job.startedAt != null
+        job.completedAt != null
+        registry.find(job.id).get().is(job)
+    }
+
+    def "クエリの実行に失敗した場合はエラーが保持されること"() {
+        given:
+        def registry = new QueryJobRegistry(bigQueryService, 1, 10, Duration.ofMinutes(10), Clock.systemUTC())
+        bigQueryService.runQuery(_, _) >> { throw new RuntimeException("クエリの実行に失敗しました: syntax error") }
+
+        when:
+        def job = registry.submit("SELECT broken")
+        awaitDone(job)
+
+        then:
+        job.status == QueryJobRegistry.Status.FAILED
+        job.error == "クエリの実行に失敗しました: syntax error"
+        job.result == null
+    }
+
+    def "空のSQLはIllegalArgumentExceptionとなること"() {
+        given:
+        def registry = new QueryJobRegistry(bigQueryService, 1, 10, Duration.ofMinutes(10), Clock.systemUTC())
+
+        when:
+        registry.submit(" ")
+
+        then:
+        def ex = thrown(IllegalArgumentException)
+        ex.message == "SQLクエリが空です"
+    }
+
+    def "実行中のジョブをキャンセルするとBigQueryのジョブもキャンセルされること"() {
+        given:
+        def registry = new QueryJobRegistry(bigQueryService, 1, 10, Duration.ofMinutes(10), Clock.systemUTC())
+        def started = new CountDownLatch(1)
+        def interrupted = new CountDownLatch(1)
+        def cancelled = Collections.synchronizedList([])
+        bigQueryService.runQuery(_, _) >> {
+            started.countDown()
+            try {
+                Thread.sleep(10_000)
+            } catch (InterruptedException e) {
+                interrupted.countDown()
+                throw new RuntimeException("クエリが中断されました", e)
+            }
+            result
+        }
+        bigQueryService.cancelJob(_) >> { JobId jobId ->
+            cancelled << jobId
+            true
+        }
+
+        when:
+        def job = registry.submit("SELECT 1")
+        started.await(5, TimeUnit.SECONDS)
+        registry.cancel(job.id)
+
+        then: "実行スレッドに割り込みが行われ、クエリの実行時に指定したジョブIDでキャンセルされる"
+        interrupted.await(5, TimeUnit.SECONDS)
+        cancelled.contains(job.bigQueryJobId)
+        job.status == QueryJobRegistry.Status.CANCELLED
+        job.result == null
+    }
+
+    def "クエリはジョブごとのBigQueryのジョブIDを指定して実行されること"() {
+        given:
+        def registry = new QueryJobRegistry(bigQueryService, 2, 10, Duration.ofMinutes(10), Clock.systemUTC())
+        def jobIds = Collections.synchronizedList([])
+        bigQueryService.runQuery("SELECT 1", _) >> { String sql, JobId jobId ->
+            jobIds << jobId
+            result
+        }
+
+        when:
+        def first = registry.submit("SELECT 1")
+        def second = registry.submit("SELECT 1")
+        awaitDone(first)
+        awaitDone(second)
+
+        then:
+        jobIds as Set == [first.bigQueryJobId, second.bigQueryJobId] as Set
+        first.bigQueryJobId != second.bigQueryJobId
+    }
+
+    def "実行前のジョブをキャンセルした場合はBigQueryのジョブは発行されないこと"() {
+        given: "同時実行1のレジストリで、実行中のクエリを止めておく"
+        def registry = new QueryJobRegistry(bigQueryService, 1, 10, Duration.ofMinutes(10), Clock.systemUTC())
+        def release = new CountDownLatch(1)
+        def started = new CountDownLatch(1)
+        def executed = Collections.synchronizedList([])
+        def cancelled = Collections.synchronizedList([])
+        bigQueryService.runQuery(_, _) >> { String sql, JobId jobId ->
+            executed << sql
+            started.countDown()
+            release.await(5, TimeUnit.SECONDS)
+            result
+        }
+        bigQueryService.cancelJob(_) >> { JobId jobId ->
+            cancelled << jobId
+            true
+        }
+        def running = registry.submit("SELECT 1")
+        started.await(5, TimeUnit.SECONDS)
+
+        when:
+        def queued = registry.submit("SELECT 2")
+        registry.cancel(queued.id)
+        release.countDown()
+        awaitDone(running)
+
+        then:
+        queued.status == QueryJobRegistry.Status.CANCELLED
+        executed == ["SELECT 1"]
+        cancelled.isEmpty()
+    }
+
+    def "結果のサイズが上限を超えるジョブは結果を保持せずに失敗となること"() {
+        given:
+        def registry = new QueryJobRegistry(bigQueryService, 1, 10, Duration.ofMinutes(10), 10, 100, Clock.systemUTC())
+        def large = QueryResult.of(["name"], (1..10).collect { ["x" * 100] as Object[] })
+        bigQueryService.runQuery(_, _) >> large
+
+        when:
+        def job = registry.submit("SELECT name FROM big_table")
+        awaitDone(job)
+
+        then:
+        job.status == QueryJobRegistry.Status.FAILED
+        job.result == null
+        job.error.startsWith("クエリ結果が大きすぎるため保持できません")
+    }
+
+    def "保持するジョブ数が上限に達した場合は古い完了済みジョブから削除されること"() {
+        given:
+        def registry = new QueryJobRegistry(bigQueryService, 1, 10, Duration.ofMinutes(10), 2, Long.MAX_VALUE, Clock.systemUTC())
+        bigQueryService.runQuery(_, _) >> result
+        def first = registry.submit("SELECT 1")
+        awaitDone(first)
+        def second = registry.submit("SELECT 2")
+        awaitDone(second)
+
+        when:
+        def third = registry.submit("SELECT 3")
+        awaitDone(third)
+
+        then:
+        registry.find(first.id).isEmpty()
+        registry.find(second.id).isPresent()
+        registry.find(third.id).isPresent()
+    }
+
+    def "保持するジョブがすべて未完了で上限に達している場合はRejectedExecutionExceptionとなること"() {
+        given:
+        def registry = new QueryJobRegistry(bigQueryService, 1, 10, Duration.ofMinutes(10), 2, Long.MAX_VALUE, Clock.systemUTC())
+        def release = new CountDownLatch(1)
+        bigQueryService.runQuery(_, _) >> {
+            release.await(5, TimeUnit.SECONDS)
+            result
+        }
+        def running = registry.submit("SELECT 1")
+        def queued = registry.submit("SELECT 2")
+
+        when:
+        registry.submit("SELECT 3")
+
+        then:
+        def ex = thrown(RejectedExecutionException)
+        ex.message.startsWith("保持できるクエリジョブが上限に達しています")
+
+        cleanup:
+        release.countDown()
+        awaitDone(running)
+        awaitDone(queued)
+    }
+
+    def "同時実行数と待機数の上限を超えるとRejectedExecutionExceptionとなること"() {
+        given: "同時実行1・待機1のレジストリで、実行中のクエリを止めておく"
+        def registry = new QueryJobRegistry(bigQueryService, 1, 1, Duration.ofMinutes(10), Clock.systemUTC())
+        def release = new CountDownLatch(1)
+        def started = new CountDownLatch(1)
+        bigQueryService.runQuery(_, _) >> {
+            started.countDown()
+            release.await(5, TimeUnit.SECONDS)
+            result
+        }
+
+        when:
+        def running = registry.submit("SELECT 1")
+        started.await(5, TimeUnit.SECONDS)
+        def queued = registry.submit("SELECT 2")
+        registry.submit("SELECT 3")
+
+        then:
+        thrown(RejectedExecutionException)
+        queued.status == QueryJobRegistry.Status.PENDING
+
+        cleanup:
+        release.countDown()
+        awaitDone(running)
+        awaitDone(queued)
+    }
+
+    def "保持期限を過ぎた完了済みジョブが削除されること"() {
+        given:
+        def clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"))
+        def registry = new QueryJobRegistry(bigQueryService, 1, 10, Duration.ofMinutes(10), clock)
+        bigQueryService.runQuery(_, _) >> result
+        def job = registry.submit("SELECT 1")
+        awaitDone(job)
+
+        when: "保持期限内に削除処理を行う"
+        clock.now = clock.now.plus(Duration.ofMinutes(5))
+        registry.purgeExpired()
+
+        then:
+        registry.find(job.id).isPresent()
+
+        when: "保持期限を過ぎてから削除処理を行う"
+        clock.now = clock.now.plus(Duration.ofMinutes(6))
+        registry.purgeExpired()
+
+        then:
+        registry.find(job.id).isEmpty()
+    }
+
+    private static void awaitDone(QueryJobRegistry.QueryJob job) {
+        def deadline = System.currentTimeMillis() + 5000
+        while (!job.status.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+    }
+
+    static class MutableClock extends Clock {
+
+        volatile Instant now
+
+        MutableClock(Instant now) {
+            this.now = now
+        }
+
+        @Override
+        ZoneOffset getZone() {
+            ZoneOffset.UTC
+        }
+
+        @Override
+        Clock withZone(java.time.ZoneId zone) {
+            this
+        }
+
+        @Override
+        Instant instant() {
+            now
+        }
+    }
+}
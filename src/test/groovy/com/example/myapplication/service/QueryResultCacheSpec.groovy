@@ -0,0 +1,136 @@
+package com.example.myapplication.service
+
+import com.example.myapplication.dto.QueryResult
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.function.Supplier
+
+/**
+ * QueryResultCacheのSpockテスト
+ * キャッシュヒット、テーブル単位の無効化を検証する
+ */
+class QueryResultCacheSpec extends Specification {
+
+    def cache = new QueryResultCache(true, 1024 * 1024, Duration.ofMinutes(5))
+    def result = QueryResult.of(["id"], [[1] as Object[]])
+
+    def "同じSQLの2回目以降はキャッシュから結果が返されること"() {
+        given: "クエリを実行するローダー"
+        def loader = Mock(Supplier)
+
+        when: "正規化後に同じとなるSQLで2回取得する"
+        def first = cache.getOrLoad("SELECT * FROM users", loader)
+        def second = cache.getOrLoad("SELECT *  FROM users;", loader)
+
+        then: "ローダーは1回だけ呼び出される"
+        1 * loader.get() >> result
+        first.is(result)
+        second.is(result)
+    }
+
+    def "参照しているテーブルが無効化されるとキャッシュが破棄されること"() {
+        given: "usersとordersを参照するクエリがキャッシュされている"
+        def loader = Mock(Supplier)
+        cache.getOrLoad("SELECT * FROM users", { result } as Supplier)
+        cache.getOrLoad("SELECT * FROM orders", { result } as Supplier)
+
+        when: "usersテーブルを無効化して再度取得する"
+        cache.invalidateTable("users")
+        cache.getOrLoad("SELECT * FROM users", loader)
+        cache.getOrLoad("SELECT * FROM orders", loader)
+
+        then: "usersを参照するクエリのみ再実行される"
+        1 * loader.get() >> result
+    }
+
+    def "非決定的な関数を含むクエリや更新系のクエリはキャッシュされないこと"() {
+        given: "クエリを実行するローダー"
+        def loader = Mock(Supplier)
+
+        when: "同じクエリを2回実行する"
+        cache.getOrLoad(sql, loader)
+        cache.getOrLoad(sql, loader)
+
+        then: "毎回ローダーが呼び出される"
+        2 * loader.get() >> result
+
+        where:
+        sql << [
+                "SELECT CURRENT_TIMESTAMP() AS now",
+                "SELECT * FROM events WHERE day = CURRENT_DATE",
+                "SELECT * FROM `dataset.events_*`",
+                "SELECT RAND() AS r FROM users",
+                "DELETE FROM users WHERE id = 1"
+        ]
+    }
+
+    def "更新系のクエリを実行すると対象テーブルのキャッシュが無効化されること"() {
+        given: "usersを参照するクエリがキャッシュされている"
+        def loader = Mock(Supplier)
+        cache.getOrLoad("SELECT * FROM users", { result } as Supplier)
+
+        when: "usersを更新するクエリを実行してから再取得する"
+        cache.getOrLoad("UPDATE users SET name = 'x' WHERE id = 1", { result } as Supplier)
+        cache.getOrLoad("SELECT * FROM users", loader)
+
+        then: "クエリが再実行される"
+        1 * loader.get() >> result
+    }
+
+    def "テーブルを特定できない更新系のクエリを実行するとすべてのキャッシュが無効化されること"() {
+        given: "usersとordersを参照するクエリがキャッシュされている"
+        def loader = Mock(Supplier)
+        cache.getOrLoad("SELECT * FROM users", { result } as Supplier)
+        cache.getOrLoad("SELECT * FROM orders", { result } as Supplier)
+
+        when: "テーブル名がクエリパラメータの更新系のクエリを実行してから再取得する"
+        cache.getOrLoad("DELETE FROM @table_name WHERE id = 1", { result } as Supplier)
+        cache.getOrLoad("SELECT * FROM users", loader)
+        cache.getOrLoad("SELECT * FROM orders", loader)
+
+        then: "どちらのクエリも再実行される"
+        2 * loader.get() >> result
+    }
+
+    def "カンマ区切りで参照しているテーブルが無効化されるとキャッシュが破棄されること"() {
+        given: "usersとordersをカンマ区切りで参照するクエリがキャッシュされている"
+        def loader = Mock(Supplier)
+        cache.getOrLoad("SELECT * FROM `project`.`dataset`.`users` u, orders o WHERE u.id = o.user_id", { result } as Supplier)
+
+        when: "ordersテーブルを無効化して再度取得する"
+        cache.invalidateTable("orders")
+        cache.getOrLoad("SELECT * FROM `project`.`dataset`.`users` u, orders o WHERE u.id = o.user_id", loader)
+
+        then: "クエリが再実行される"
+        1 * loader.get() >> result
+    }
+
+    def "クエリ実行中にテーブルが無効化された場合、その結果はキャッシュされないこと"() {
+        given: "実行中に無効化が発生するローダー"
+        def loader = Mock(Supplier)
+
+        when: "クエリ実行中にusersを無効化し、その後再取得する"
+        cache.getOrLoad("SELECT * FROM users", {
+            cache.invalidateTable("users")
+            result
+        } as Supplier)
+        cache.getOrLoad("SELECT * FROM users", loader)
+
+        then: "古い可能性のある結果は格納されず、再実行される"
+        1 * loader.get() >> result
+    }
+
+    def "無効なキャッシュでは常にローダーが呼び出されること"() {
+        given: "無効なキャッシュ"
+        def disabled = QueryResultCache.disabled()
+        def loader = Mock(Supplier)
+
+        when: "同じクエリを2回実行する"
+        disabled.getOrLoad("SELECT * FROM users", loader)
+        disabled.getOrLoad("SELECT * FROM users", loader)
+
+        then: "毎回ローダーが呼び出される"
+        2 * loader.get() >> result
+    }
+}
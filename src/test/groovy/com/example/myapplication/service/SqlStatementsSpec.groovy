@@ -0,0 +1,83 @@
+package com.example.myapplication.service
+
+import spock.lang.Specification
+
+/**
+ * SqlStatementsのSpockテスト
+ * SQLの正規化と文の種類の判定を検証する
+ */
+class SqlStatementsSpec extends Specification {
+
+    def "空白や末尾のセミコロンのみ異なるSQLは同じキーに正規化されること"() {
+        expect: "引用符の外側の空白がまとめられ、リテラルはそのまま保持される"
+        SqlStatements.normalize(sql) == expected
+
+        where:
+        sql                                            || expected
+        "SELECT *\n  FROM  users ;"                    || "SELECT * FROM users"
+        "  SELECT 1"                                   || "SELECT 1"
+        "SELECT * FROM users WHERE name = 'A  b'"      || "SELECT * FROM users WHERE name = 'A  b'"
+        "SELECT * FROM `project.dataset.users`\t\t;;"  || "SELECT * FROM `project.dataset.users`"
+    }
+
+    def "SQLから参照しているテーブル名が抽出されること"() {
+        expect: "修飾を除いた小文字のテーブル名が抽出される"
+        SqlStatements.referencedTables(sql).get() == tables as Set
+
+        where:
+        sql                                                                       || tables
+        "SELECT * FROM users"                                                     || ["users"]
+        "SELECT * FROM `project.dataset.Users` u JOIN orders o ON u.id = o.id"     || ["users", "orders"]
+        "SELECT * FROM `project`.`dataset`.`users` AS u"                          || ["users"]
+        "SELECT * FROM dataset.users u, `dataset`.orders AS o, items WHERE u.id = o.id" || ["users", "orders", "items"]
+        "SELECT * FROM users, UNNEST(users.tags) AS tag"                          || ["users"]
+        "SELECT * FROM (SELECT id FROM users) t JOIN orders USING (id)"           || ["users", "orders"]
+        "DELETE FROM users WHERE id = 1"                                          || ["users"]
+        "INSERT INTO users (id) VALUES (1)"                                       || ["users"]
+        "CREATE TABLE IF NOT EXISTS dataset.events (id INT64)"                    || ["events"]
+        "SELECT 1"                                                                || []
+    }
+
+    def "テーブル名として解釈できない参照を含む場合は空が返されること"() {
+        expect: "呼び出し元は参照しているテーブルを特定できないものとして扱う"
+        SqlStatements.referencedTables(sql).isEmpty()
+
+        where:
+        sql << [
+                "SELECT * FROM `dataset.events_*`",
+                "SELECT * FROM dataset.events_* WHERE _TABLE_SUFFIX = '2024'",
+                "SELECT * FROM @table_name",
+                "SELECT * FROM dataset."
+        ]
+    }
+
+    def "参照系の文と非決定的な関数が判定されること"() {
+        expect: "SELECT/WITHのみ参照系と判定され、実行ごとに変わる関数が検出される"
+        SqlStatements.isReadStatement(sql) == read
+        SqlStatements.isNonDeterministic(sql) == nonDeterministic
+
+        where:
+        sql                                             || read  | nonDeterministic
+        "SELECT * FROM users"                           || true  | false
+        "WITH t AS (SELECT 1) SELECT * FROM t"          || true  | false
+        "(SELECT 1) UNION ALL (SELECT 2)"               || true  | false
+        "SELECT CURRENT_DATE() AS today"                || true  | true
+        "SELECT CURRENT_TIMESTAMP AS now"               || true  | true
+        "SELECT * FROM t WHERE d = current_date"        || true  | true
+        "SELECT current_date_label FROM t"              || true  | false
+        "INSERT INTO users (id) VALUES (1)"             || false | false
+        "DELETE FROM users WHERE created_at < NOW ()"   || false | true
+    }
+
+    def "ORDER BYを含むかどうかが判定されること"() {
+        expect:
+        SqlStatements.hasOrderBy(sql) == expected
+
+        where:
+        sql                                                          || expected
+        "SELECT * FROM users"                                        || false
+        "SELECT * FROM users ORDER BY id"                            || true
+        "select id, row_number() over (order  by id) from users"     || true
+        "SELECT border_by FROM users"                                || false
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.myapplication.service
+
+import com.example.myapplication.dto.QueryResult
+import com.google.cloud.bigquery.FieldValue
+import com.google.cloud.bigquery.TableId
+import org.apache.arrow.memory.BufferAllocator
+import org.apache.arrow.vector.BigIntVector
+import org.apache.arrow.vector.TimeStampMicroTZVector
+import org.apache.arrow.vector.VarCharVector
+import org.apache.arrow.vector.VectorSchemaRoot
+import org.apache.arrow.vector.complex.ListVector
+import org.apache.arrow.vector.complex.impl.UnionListWriter
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.util.function.Consumer
+
+/**
+ * StorageReadApiReaderのSpockテスト
+ * 実際のStorage Read APIの代わりにメモリ上のArrowレコードバッチを返す読み込みセッションを使用する
+ */
+class StorageReadApiReaderSpec extends Specification {
+
+    def tableId = TableId.of("test-project", "_anon", "anon_table")
+    def columns = new QueryResult.Columns(["id", "name"])
+
+    def "複数ストリームのレコードバッチがストリームの順に連結されて変換されること"() {
+        given: "2ストリーム・計3バッチのセッション"
+        def factory = new InMemorySessionFactory(streams: [
+                [[[1L, "a"], [2L, "b"]], [[3L, null]]],
+                [[[4L, "d"]]]
+        ])
+        def reader = new StorageReadApiReader(factory, true, 1, 4)
+
+        when:
+        def result = reader.read(tableId, columns, false)
+
+        then:
+        factory.requestedStreams == 4
+        result.size() == 4
+        result*.get("id") == ["1", "2", "3", "4"]
+        result*.get("name") == ["a", "b", null, "d"]
+    }
+
+    def "並び順を保つ場合は1ストリームで読み込まれること"() {
+        given:
+        def factory = new InMemorySessionFactory(streams: [[[[1L, "a"]]]])
+        def reader = new StorageReadApiReader(factory, true, 1, 4)
+
+        when:
+        reader.read(tableId, columns, true)
+
+        then:
+        factory.requestedStreams == 1
+    }
+
+    def "バッチの列は名前でクエリ結果の列位置に対応付けられること"() {
+        given: "列順が異なるクエリ結果"
+        def factory = new InMemorySessionFactory(streams: [[[[7L, "x"]]]])
+        def reader = new StorageReadApiReader(factory, true, 1, 1)
+
+        when:
+        def result = reader.read(tableId, new QueryResult.Columns(["name", "id"]), false)
+
+        then:
+        result.getValue(0, 0) == "x"
+        result.getValue(0, 1) == "7"
+    }
+
+    def "ストリームの読み込みに失敗した場合は例外となること"() {
+        given:
+        def factory = new InMemorySessionFactory(streams: [[[[1L, "a"]]]], failure: new IllegalStateException("read failed"))
+        def reader = new StorageReadApiReader(factory, true, 1, 2)
+
+        when:
+        reader.read(tableId, columns, false)
+
+        then:
+        def ex = thrown(IllegalStateException)
+        ex.message == "read failed"
+    }
+
+    def "TIMESTAMPの列はREST APIと同じくエポックからの秒数の文字列に変換されること"() {
+        given: "エポックからのマイクロ秒を格納したArrowのTIMESTAMP列"
+        def micros = [1672531200000000L, 1672531200123456L, 1672531200100000L, -1L]
+        def factory = new InMemorySessionFactory(roots: [{ BufferAllocator allocator ->
+            def timestamps = new TimeStampMicroTZVector("created_at", allocator, "UTC")
+            timestamps.allocateNew(micros.size())
+            micros.eachWithIndex { long value, int i -> timestamps.set(i, value) }
+            def root = new VectorSchemaRoot([timestamps])
+            root.setRowCount(micros.size())
+            root
+        }])
+        def reader = new StorageReadApiReader(factory, true, 1, 1)
+
+        when:
+        def values = reader.read(tableId, new QueryResult.Columns(["created_at"], ["TIMESTAMP"]), false)*.get("created_at")
+
+        then: "REST APIの値（サンプルデータの1672531200.0等）と同じ形式で、同じ時刻を表す"
+        values == ["1672531200.0", "1672531200.123456", "1672531200.1", "-0.000001"]
+        values.collect { FieldValue.of(FieldValue.Attribute.PRIMITIVE, it).getTimestampValue() } == micros
+    }
+
+    def "REPEATED・RECORDの列は変換されずに例外となること"() {
+        given:
+        def factory = new InMemorySessionFactory(roots: [{ BufferAllocator allocator ->
+            def tags = ListVector.empty("tags", allocator)
+            UnionListWriter writer = tags.getWriter()
+            writer.setPosition(0)
+            writer.startList()
+            writer.bigInt().writeBigInt(1L)
+            writer.endList()
+            tags.setValueCount(1)
+            def root = new VectorSchemaRoot([tags])
+            root.setRowCount(1)
+            root
+        }])
+        def reader = new StorageReadApiReader(factory, true, 1, 1)
+
+        when:
+        reader.read(tableId, new QueryResult.Columns(["tags"], ["ARRAY"]), false)
+
+        then:
+        thrown(UnsupportedOperationException)
+    }
+
+    def "行数が閾値以上の場合だけ適用されること"() {
+        expect:
+        new StorageReadApiReader(new InMemorySessionFactory(), true, 100, 1).isApplicable(columns, rows) == expected
+        !StorageReadApiReader.disabled().isApplicable(columns, Long.MAX_VALUE)
+
+        where:
+        rows || expected
+        99   || false
+        100  || true
+    }
+
+    def "REPEATED・RECORDの列を含む場合は適用されないこと（#type）"() {
+        given:
+        def reader = new StorageReadApiReader(new InMemorySessionFactory(), true, 100, 1)
+
+        expect:
+        !reader.isApplicable(new QueryResult.Columns(["id", "nested"], ["INT64", type]), 1_000_000L)
+
+        where:
+        type << ["ARRAY", "STRUCT"]
+    }
+
+    /**
+     * ストリームごとのバッチ（行の値のリスト）をArrowのレコードバッチとして返すセッションを作成する
+     */
+    static class InMemorySessionFactory implements StorageReadApiReader.ArrowReadSessionFactory {
+
+        List<List<List<List<Object>>>> streams = []
+        /**
+         * 1ストリーム・1バッチずつ任意の列のレコードバッチを返す場合に指定する
+         */
+        List<Closure<VectorSchemaRoot>> roots = []
+        RuntimeException failure
+        int requestedStreams
+
+        @Override
+        StorageReadApiReader.ArrowReadSession open(TableId tableId, int maxStreams) {
+            requestedStreams = maxStreams
+            new StorageReadApiReader.ArrowReadSession() {
+                @Override
+                int getStreamCount() {
+                    Math.min(maxStreams, roots ? roots.size() : streams.size())
+                }
+
+                @Override
+                void readStream(int stream, BufferAllocator allocator, Consumer<VectorSchemaRoot> consumer) {
+                    if (failure != null) {
+                        throw failure
+                    }
+                    def batches = roots ? [roots[stream]] : streams[stream]
+                    batches.each { batch ->
+                        def root = batch instanceof Closure ? batch(allocator) : toRoot(batch, allocator)
+                        try {
+                            consumer.accept(root)
+                        } finally {
+                            root.close()
+                        }
+                    }
+                }
+
+                @Override
+                void close() {
+                }
+            }
+        }
+
+        @Override
+        void close() {
+        }
+
+        private static VectorSchemaRoot toRoot(List<List<Object>> batch, BufferAllocator allocator) {
+            def ids = new BigIntVector("id", allocator)
+            def names = new VarCharVector("name", allocator)
+            ids.allocateNew(batch.size())
+            names.allocateNew(batch.size())
+            batch.eachWithIndex { List<Object> row, int i ->
+                ids.set(i, row[0] as long)
+                if (row[1] == null) {
+                    names.setNull(i)
+                } else {
+                    names.setSafe(i, (row[1] as String).getBytes(StandardCharsets.UTF_8))
+                }
+            }
+            def root = new VectorSchemaRoot([ids, names])
+            root.setRowCount(batch.size())
+            root
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.myapplication.service
+
+import com.google.cloud.bigquery.BigQuery
+import com.google.cloud.bigquery.TableId
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+/**
+ * StorageWriteApiWriterのSpockテスト
+ * 実際のStorage Write APIの代わりにローカルの疑似ストリームを使用する
+ */
+class StorageWriteApiWriterSpec extends Specification {
+
+    def bigQuery = Mock(BigQuery)
+    def tableId = TableId.of("test-project", "test-dataset", "events")
+    def factory = new FakeStreamFactory()
+
+    def "行が追記単位に分割され、応答を待たずに順番に追記されること"() {
+        given:
+        def writer = new StorageWriteApiWriter(factory, StorageWriteApiWriter.StreamType.DEFAULT, 2, Long.MAX_VALUE)
+        factory.autoComplete = false
+
+        when: "追記の応答を保留したまま書き込みを開始する"
+        def result = CompletableFuture.supplyAsync { writer.write(bigQuery, tableId, rows(5)) }
+        def stream = factory.awaitStream()
+        def pending = stream.awaitAppends(3)
+
+        then: "全ての追記が応答を待たずに送信されている"
+        pending*.rows*.size() == [2, 2, 1]
+        pending.collectMany { it.rows*.get("id") } == [0, 1, 2, 3, 4]
+        !result.isDone()
+
+        when: "追記の応答を返す"
+        pending*.future*.complete(null)
+
+        then:
+        result.get().requestCount() == 3
+        !result.get().hasErrors()
+    }
+
+    def "同じテーブルへの書き込みではストリームが再利用されること"() {
+        given:
+        def writer = new StorageWriteApiWriter(factory, StorageWriteApiWriter.StreamType.COMMITTED, 500, Long.MAX_VALUE)
+
+        when:
+        writer.write(bigQuery, tableId, rows(2))
+        writer.write(bigQuery, tableId, rows(3))
+
+        then:
+        factory.opened.size() == 1
+        factory.opened[0].type == StorageWriteApiWriter.StreamType.COMMITTED
+        factory.opened[0].appends*.rows*.size() == [2, 3]
+    }
+
+    def "不正な行を含む追記は全行がエラーとなり、ストリームが開き直されること"() {
+        given:
+        def writer = new StorageWriteApiWriter(factory, StorageWriteApiWriter.StreamType.DEFAULT, 2, Long.MAX_VALUE)
+        factory.failRowsWithId = 3
+
+        when:
+        def result = writer.write(bigQuery, tableId, rows(4))
+
+        then: "行3を含む追記（行2・3）のみがエラーとなる"
+        result.rowErrors().keySet() == [2L, 3L] as Set
+        result.rowErrors()[3L][0].reason == "invalid"
+        result.rowErrors()[3L][0].message == "invalid id"
+        result.rowErrors()[2L][0].reason == "stopped"
+        factory.opened[0].closed
+
+        when:
+        writer.write(bigQuery, tableId, rows(1))
+
+        then:
+        factory.opened.size() == 2
+    }
+
+    def "追記に失敗した場合は例外とせず、その追記の全行がエラーとなりストリームが閉じられること"() {
+        given:
+        def writer = new StorageWriteApiWriter(factory, StorageWriteApiWriter.StreamType.DEFAULT, 500, Long.MAX_VALUE)
+        factory.failure = new IllegalStateException("stream closed")
+
+        when:
+        def result = writer.write(bigQuery, tableId, rows(2))
+
+        then:
+        result.rowErrors().keySet() == [0L, 1L] as Set
+        result.rowErrors()[0L][0].reason == StorageWriteApiWriter.APPEND_FAILED_REASON
+        result.rowErrors()[0L][0].message == "stream closed"
+        factory.opened[0].closed
+    }
+
+    def "コミット済みストリームで追記が失敗した場合、成功した追記の行はエラーとならないこと"() {
+        given:
+        def writer = new StorageWriteApiWriter(factory, StorageWriteApiWriter.StreamType.COMMITTED, 2, Long.MAX_VALUE)
+        factory.autoComplete = false
+
+        when:
+        def result = CompletableFuture.supplyAsync { writer.write(bigQuery, tableId, rows(6)) }
+        def pending = factory.awaitStream().awaitAppends(3)
+        pending[0].future.complete(null)
+        pending[1].future.completeExceptionally(new IllegalStateException("internal error"))
+        pending[2].future.completeExceptionally(new IllegalStateException("offset mismatch"))
+
+        then: "1回目の追記（行0・1）は書き込み済みとして扱われる"
+        result.get().requestCount() == 3
+        result.get().rowErrors().keySet() == [2L, 3L, 4L, 5L] as Set
+        result.get().rowErrors()[5L][0].message == "offset mismatch"
+    }
+
+    def "他のスレッドが閉じたストリームには追記せず、開き直したストリームに追記すること"() {
+        given:
+        def writer = new StorageWriteApiWriter(factory, StorageWriteApiWriter.StreamType.DEFAULT, 500, Long.MAX_VALUE)
+        writer.write(bigQuery, tableId, rows(1))
+        def first = factory.opened[0]
+
+        when: "ストリームのロックを保持している間に書き込みを開始し、その間にストリームを閉じる"
+        def result
+        synchronized (first) {
+            result = CompletableFuture.supplyAsync { writer.write(bigQuery, tableId, rows(2)) }
+            Thread.sleep(100)
+            writer.@streams.remove(tableId, first)
+            first.close()
+        }
+
+        then:
+        !result.get().hasErrors()
+        first.appends.size() == 1
+        factory.opened.size() == 2
+        factory.opened[1].appends*.rows*.size() == [2]
+    }
+
+    private static List<Map<String, Object>> rows(int count) {
+        (0..<count).collect { ["id": it, "name": "user" + it] as Map<String, Object> }
+    }
+
+    /**
+     * 追記内容を記録する疑似ストリームを開くファクトリ
+     */
+    static class FakeStreamFactory implements StorageWriteApiWriter.AppendStreamFactory {
+
+        List<FakeStream> opened = Collections.synchronizedList([])
+        boolean autoComplete = true
+        Integer failRowsWithId
+        RuntimeException failure
+
+        @Override
+        StorageWriteApiWriter.AppendStream open(TableId tableId, StorageWriteApiWriter.StreamType streamType) {
+            def stream = new FakeStream(factory: this, type: streamType)
+            opened << stream
+            stream
+        }
+
+        @Override
+        void close() {
+        }
+
+        FakeStream awaitStream() {
+            def deadline = System.currentTimeMillis() + 5000
+            while (opened.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10)
+            }
+            opened[0]
+        }
+    }
+
+    static class FakeStream implements StorageWriteApiWriter.AppendStream {
+
+        FakeStreamFactory factory
+        StorageWriteApiWriter.StreamType type
+        List<Map> appends = Collections.synchronizedList([])
+        boolean closed
+
+        @Override
+        CompletableFuture<Void> append(List<Map<String, Object>> rows) {
+            def future = new CompletableFuture<Void>()
+            appends << [rows: rows, future: future]
+            if (factory.failure != null) {
+                future.completeExceptionally(factory.failure)
+            } else if (factory.failRowsWithId != null && rows*.get("id").contains(factory.failRowsWithId)) {
+                def index = rows*.get("id").indexOf(factory.failRowsWithId)
+                future.completeExceptionally(new StorageWriteApiWriter.AppendRowsException([(index): "invalid id"]))
+            } else if (factory.autoComplete) {
+                future.complete(null)
+            }
+            future
+        }
+
+        @Override
+        void close() {
+            closed = true
+        }
+
+        List<Map> awaitAppends(int count) {
+            def deadline = System.currentTimeMillis() + 5000
+            while (appends.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10)
+            }
+            new ArrayList<>(appends)
+        }
+    }
+}
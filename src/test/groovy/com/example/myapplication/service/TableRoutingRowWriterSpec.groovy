@@ -0,0 +1,51 @@
+package com.example.myapplication.service
+
+import com.google.cloud.bigquery.BigQuery
+import com.google.cloud.bigquery.TableId
+import spock.lang.Specification
+
+/**
+ * TableRoutingRowWriterのSpockテスト
+ */
+class TableRoutingRowWriterSpec extends Specification {
+
+    def bigQuery = Mock(BigQuery)
+    def insertAllWriter = Mock(BigQueryRowWriter)
+    def storageWriter = Mock(BigQueryRowWriter)
+    def result = new InsertResult(1, 1, 0, [:])
+
+    def "テーブルごとの設定に応じて書き込み方式が切り替わること"() {
+        given:
+        def writer = new TableRoutingRowWriter(insertAllWriter, storageWriter, TableRoutingRowWriter.Mode.INSERT_ALL,
+                TableRoutingRowWriter.parseTableModes("events:storage-write"))
+        def rows = [["id": 1] as Map<String, Object>]
+
+        when:
+        writer.write(bigQuery, TableId.of("p", "d", "events"), rows)
+        writer.write(bigQuery, TableId.of("p", "d", "users"), rows)
+
+        then:
+        1 * storageWriter.write(bigQuery, { it.table == "events" }, rows) >> result
+        1 * insertAllWriter.write(bigQuery, { it.table == "users" }, rows) >> result
+    }
+
+    def "設定値が解析されること"() {
+        expect:
+        TableRoutingRowWriter.parseTableModes(value) == expected
+
+        where:
+        value                                        | expected
+        ""                                           | [:]
+        "events:storage-write"                       | ["events": TableRoutingRowWriter.Mode.STORAGE_WRITE]
+        " events : storage-write , logs:insert-all " | ["events": TableRoutingRowWriter.Mode.STORAGE_WRITE,
+                                                        "logs"  : TableRoutingRowWriter.Mode.INSERT_ALL]
+    }
+
+    def "不正な設定値はIllegalArgumentExceptionとなること"() {
+        when:
+        TableRoutingRowWriter.parseTableModes("events")
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.myapplication.service
+
+import org.springframework.http.HttpHeaders
+import org.springframework.web.reactive.function.client.WebClientResponseException
+import reactor.core.publisher.Mono
+import reactor.core.publisher.Sinks
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZoneOffset
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Supplier
+
+/**
+ * TriviaPoolのSpockテスト
+ */
+class TriviaPoolSpec extends Specification {
+
+    def clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"))
+    def sequence = new AtomicInteger()
+    Supplier<Mono<String>> generator = { -> Mono.just("豆知識" + sequence.incrementAndGet()) }
+
+    def "保持数が下限を下回ると上限まで補充され、生成した順に取り出せること"() {
+        given:
+        def pool = new TriviaPool(generator, 10, 2, 5, 2, Duration.ofMinutes(1), clock)
+
+        when:
+        pool.refill()
+
+        then:
+        pool.size() == 5
+        pool.poll().get() == "豆知識1"
+        pool.poll().get() == "豆知識2"
+    }
+
+    def "取り出しで保持数が下限を下回った場合は補充が開始されること"() {
+        given: "下限ちょうどまで補充されたプール"
+        def pool = new TriviaPool(generator, 10, 3, 3, 1, Duration.ofMinutes(1), clock)
+        pool.refill()
+
+        when:
+        pool.poll()
+
+        then: "下限を下回ったため上限まで補充される"
+        pool.size() == 3
+        sequence.get() == 4
+    }
+
+    def "保持数が下限以上の場合は補充されないこと"() {
+        given:
+        def pool = new TriviaPool(generator, 10, 2, 5, 1, Duration.ofMinutes(1), clock)
+        pool.refill()
+
+        when:
+        pool.poll()
+        pool.poll()
+        pool.refill()
+
+        then:
+        pool.size() == 3
+        sequence.get() == 5
+    }
+
+    def "補充時に同時に生成する数が制限されること"() {
+        given: "完了を制御できる生成処理"
+        def sinks = []
+        def pool = new TriviaPool({ ->
+            def sink = Sinks.<String> one()
+            sinks << sink
+            sink.asMono()
+        } as Supplier, 10, 1, 6, 2, Duration.ofMinutes(1), clock)
+
+        when:
+        pool.refill()
+
+        then: "同時実行数までしか開始されない"
+        sinks.size() == 2
+
+        when: "1件完了させる"
+        sinks[0].tryEmitValue("豆知識")
+
+        then: "次の生成が開始される"
+        sinks.size() == 3
+        pool.size() == 1
+    }
+
+    def "レート制限を受けた場合はRetry-Afterの期間だけ補充が停止されること"() {
+        given: "1件目でレート制限を返す生成処理"
+        def headers = new HttpHeaders()
+        headers.add("Retry-After", "30")
+        def calls = new AtomicInteger()
+        def pool = new TriviaPool({ ->
+            calls.incrementAndGet() == 1
+                    ? Mono.error(WebClientResponseException.create(429, "Too Many Requests", headers, new byte[0], StandardCharsets.UTF_8))
+                    : Mono.just("豆知識")
+        } as Supplier, 10, 2, 5, 1, Duration.ofMinutes(5), clock)
+
+        when:
+        pool.refill()
+
+        then: "補充が打ち切られて停止する"
+        pool.size() == 0
+        pool.isPaused()
+
+        when: "停止期間内に補充する"
+        clock.now = clock.now.plusSeconds(29)
+        pool.refill()
+
+        then:
+        calls.get() == 1
+
+        when: "停止期間を過ぎてから補充する"
+        clock.now = clock.now.plusSeconds(2)
+        pool.refill()
+
+        then:
+        !pool.isPaused()
+        pool.size() == 5
+    }
+
+    def "レート制限以外の失敗では補充が停止されないこと"() {
+        given:
+        def calls = new AtomicInteger()
+        def pool = new TriviaPool({ ->
+            calls.incrementAndGet() == 1 ? Mono.error(new RuntimeException("接続エラー")) : Mono.just("豆知識")
+        } as Supplier, 10, 2, 5, 1, Duration.ofMinutes(5), clock)
+
+        when:
+        pool.refill()
+        pool.refill()
+
+        then:
+        !pool.isPaused()
+        pool.size() == 5
+    }
+
+    def "無効なプールは常に空を返すこと"() {
+        given:
+        def pool = TriviaPool.disabled()
+
+        when:
+        pool.refill()
+
+        then:
+        !pool.isEnabled()
+        pool.poll().isEmpty()
+        pool.size() == 0
+    }
+
+    def "最大保持数が0の場合は水位の設定に関わらず無効なプールとなること"() {
+        when: "application.propertiesの既定の水位のまま最大保持数を0にする"
+        def pool = new TriviaPool(generator, 0, 10, 40, 2, Duration.ofMinutes(1), clock)
+
+        then:
+        !pool.isEnabled()
+        pool.poll().isEmpty()
+    }
+
+    def "不正な水位の設定はIllegalArgumentExceptionとなること"() {
+        when:
+        new TriviaPool(generator, 10, 6, 5, 1, Duration.ofMinutes(1), clock)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    static class MutableClock extends Clock {
+
+        volatile Instant now
+
+        MutableClock(Instant now) {
+            this.now = now
+        }
+
+        @Override
+        ZoneOffset getZone() {
+            ZoneOffset.UTC
+        }
+
+        @Override
+        Clock withZone(ZoneId zone) {
+            this
+        }
+
+        @Override
+        Instant instant() {
+            now
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.myapplication.service
+
+import com.example.myapplication.dto.UserRegistrationDto
+import jakarta.validation.Validation
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType
+import org.springframework.security.crypto.password.PasswordEncoder
+import spock.lang.Specification
+
+/**
+ * UserImportServiceのSpockテスト
+ * schema.sqlで作成したインメモリのH2データベースに対して一括登録を検証する
+ */
+class UserImportServiceSpec extends Specification {
+
+    EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("classpath:schema.sql")
+            .build()
+    def jdbcTemplate = new JdbcTemplate(database)
+    def passwordEncoder = Mock(PasswordEncoder) {
+        encode(_) >> { CharSequence raw -> "encoded-" + raw }
+    }
+    def validatorFactory = Validation.buildDefaultValidatorFactory()
+    def service = new UserImportService(jdbcTemplate, passwordEncoder, UsernameIndex.disabled(), validatorFactory.validator, 2)
+
+    def cleanup() {
+        validatorFactory.close()
+        database.shutdown()
+    }
+
+    def "バッチサイズを超えるユーザーもすべて登録されること"() {
+        given:
+        def users = (1..5).collect { user("user$it", "password$it".toString()) }
+
+        when:
+        def result = service.importUsers(users)
+
+        then:
+        result.importedCount() == 5
+        result.skippedUsernames().isEmpty()
+        result.rejected().isEmpty()
+        jdbcTemplate.queryForList("SELECT username, password, roles, enabled FROM users ORDER BY id") == (1..5).collect {
+            [USERNAME: "user$it".toString(), PASSWORD: "encoded-password$it".toString(), ROLES: "USER", ENABLED: true]
+        }
+    }
+
+    def "既存のユーザー名と入力内で重複したユーザー名は登録せずに返されること"() {
+        given: "aliceが登録済み"
+        jdbcTemplate.update("INSERT INTO users (username, password) VALUES ('alice', 'old')")
+
+        when:
+        def result = service.importUsers([user("bob", "secret1"), user("alice", "secret2"), user("bob", "secret3"), user("carol", "secret4")])
+
+        then:
+        result.importedCount() == 2
+        result.skippedUsernames() == ["bob", "alice"]
+        jdbcTemplate.queryForObject("SELECT password FROM users WHERE username = 'alice'", String) == "old"
+        jdbcTemplate.queryForObject("SELECT password FROM users WHERE username = 'bob'", String) == "encoded-secret1"
+    }
+
+    def "入力値が不正なユーザーは登録せず、理由とともに返されること"() {
+        given: "未入力のユーザー名、短いパスワード、未入力のパスワード、一致しない確認用パスワード"
+        def mismatched = user("dave", "secret4")
+        mismatched.confirmPassword = "other"
+
+        when:
+        def result = service.importUsers([user(" ", "secret1"), user("bob", "short"), user("carol", null), mismatched,
+                                          user("erin", "secret5")])
+
+        then: "ハッシュ化は正しいユーザーのみ行われる"
+        1 * passwordEncoder.encode("secret5") >> "encoded-secret5"
+        0 * passwordEncoder.encode(_)
+
+        and:
+        result.importedCount() == 1
+        result.rejected() == [
+                new UserImportResult.Rejection(0, " ", ["ユーザー名は3文字以上50文字以下で入力してください", "ユーザー名は必須です"]),
+                new UserImportResult.Rejection(1, "bob", ["パスワードは6文字以上で入力してください"]),
+                new UserImportResult.Rejection(2, "carol", ["パスワードが一致しません", "パスワードは必須です", "パスワード確認は必須です"]),
+                new UserImportResult.Rejection(3, "dave", ["パスワードが一致しません"])
+        ]
+        jdbcTemplate.queryForList("SELECT username FROM users", String) == ["erin"]
+    }
+
+    def "空のリストの場合は何も登録しないこと"() {
+        expect:
+        service.importUsers([]) == new UserImportResult(0, [], [])
+    }
+
+    private static UserRegistrationDto user(String username, String password) {
+        def dto = new UserRegistrationDto()
+        dto.username = username
+        dto.password = password
+        dto.confirmPassword = password
+        dto
+    }
+}
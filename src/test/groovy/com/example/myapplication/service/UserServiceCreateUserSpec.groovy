@@ -3,6 +3,7 @@ package com.example.myapplication.service
 import com.example.myapplication.dto.UserRegistrationDto
 import com.example.myapplication.entity.User
 import com.example.myapplication.repository.UserRepository
+import org.springframework.dao.DataIntegrityViolationException
 import org.springframework.security.crypto.password.PasswordEncoder
 import spock.lang.Specification
 
@@ -29,14 +30,14 @@ class UserServiceCreateUserSpec extends Specification {
         when: "ユーザーを作成"
         def result = userService.createUser(registrationDto)
 
-        then: "ユーザー名の重複チェックが行われる"
+        then: "ハッシュ化の前に重複をチェックする"
         1 * userRepository.findByUsername("newuser") >> Optional.empty()
 
         and: "パスワードがエンコードされる"
         1 * passwordEncoder.encode("password123") >> encodedPassword
 
         and: "新規ユーザーが保存される"
-        1 * userRepository.save({ User user ->
+        1 * userRepository.saveAndFlush({ User user ->
             user.username == "newuser" &&
                     user.password == encodedPassword &&
                     user.roles == "USER" &&
@@ -47,28 +48,24 @@ class UserServiceCreateUserSpec extends Specification {
         result == savedUser
     }
 
-    def "既存ユーザー名で登録しようとした場合例外が発生すること"() {
+    def "重複チェックの後に同じユーザー名が登録された場合は一意制約の違反で例外が発生すること"() {
         given: "既存ユーザーと同じユーザー名での登録データ"
         def registrationDto = new UserRegistrationDto()
         registrationDto.username = "existinguser"
         registrationDto.password = "password123"
         registrationDto.confirmPassword = "password123"
 
-        def existingUser = new User("existinguser", "old-password", "USER")
-
         when: "既存ユーザー名でユーザー作成を試行"
         userService.createUser(registrationDto)
 
-        then: "ユーザー名の重複チェックで既存ユーザーが見つかる"
-        1 * userRepository.findByUsername("existinguser") >> Optional.of(existingUser)
+        then: "重複チェックの時点では存在せず、INSERTがusernameの一意制約に違反する"
+        1 * userRepository.findByUsername("existinguser") >> Optional.empty()
+        1 * passwordEncoder.encode("password123") >> "encoded-password"
+        1 * userRepository.saveAndFlush(_) >> { throw new DataIntegrityViolationException("Unique index or primary key violation") }
 
         and: "IllegalArgumentExceptionが発生する"
         def exception = thrown(IllegalArgumentException)
         exception.message == "ユーザー名 'existinguser' は既に使用されています"
-
-        and: "パスワードエンコードや保存は行われない"
-        0 * passwordEncoder.encode(_)
-        0 * userRepository.save(_)
     }
 
     def "ユーザー名存在チェックが正常に動作すること"() {
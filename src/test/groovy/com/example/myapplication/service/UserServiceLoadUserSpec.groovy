@@ -0,0 +1,236 @@
+package com.example.myapplication.service
+
+import com.example.myapplication.dto.UserRegistrationDto
+import com.example.myapplication.entity.User
+import com.example.myapplication.repository.UserRepository
+import org.springframework.security.core.userdetails.UsernameNotFoundException
+import org.springframework.security.crypto.password.PasswordEncoder
+import org.springframework.transaction.support.TransactionSynchronizationManager
+import spock.lang.Specification
+
+import java.time.Duration
+
+/**
+ * UserServiceのユーザー情報取得（キャッシュ）のSpockテスト
+ */
+class UserServiceLoadUserSpec extends Specification {
+
+    def userRepository = Mock(UserRepository)
+    def passwordEncoder = Mock(PasswordEncoder)
+    def userCache = new UserDetailsCache(true, 100, Duration.ofMinutes(5))
+    def userService = new UserService(userRepository, passwordEncoder, userCache, UsernameIndex.disabled())
+
+    def "2回目以降の取得ではデータベースを参照しないこと"() {
+        when: "同じユーザーを2回取得する"
+        def first = userService.loadUserByUsername("alice")
+        def second = userService.loadUserByUsername("alice")
+
+        then: "データベースは1回だけ参照される"
+        1 * userRepository.findByUsername("alice") >> Optional.of(new User("alice", "encoded", "USER, ADMIN"))
+        first.username == "alice"
+        second.password == "encoded"
+        second.authorities*.authority as Set == ["ROLE_USER", "ROLE_ADMIN"] as Set
+    }
+
+    def "認証後にパスワードが消去されてもキャッシュの内容は変わらないこと"() {
+        given:
+        userRepository.findByUsername("alice") >> Optional.of(new User("alice", "encoded", "USER"))
+        def first = userService.loadUserByUsername("alice")
+
+        when: "Spring Securityが認証後に行うようにパスワードを消去する"
+        first.eraseCredentials()
+
+        then:
+        userService.loadUserByUsername("alice").password == "encoded"
+    }
+
+    def "同じroles列の値を持つユーザー間で権限の要素が共有されること"() {
+        given:
+        userRepository.findByUsername("alice") >> Optional.of(new User("alice", "encoded", "USER"))
+        userRepository.findByUsername("bob") >> Optional.of(new User("bob", "encoded", "USER"))
+
+        when:
+        def alice = userService.loadUserByUsername("alice")
+        def bob = userService.loadUserByUsername("bob")
+
+        then:
+        alice.authorities[0].is(bob.authorities[0])
+    }
+
+    def "存在しないユーザーはキャッシュせずに例外となること"() {
+        when:
+        userService.loadUserByUsername("unknown")
+
+        then:
+        1 * userRepository.findByUsername("unknown") >> Optional.empty()
+        thrown(UsernameNotFoundException)
+    }
+
+    def "ユーザーを無効化するとキャッシュから削除され、無効状態が反映されること"() {
+        given: "キャッシュされた有効なユーザー"
+        def user = new User("alice", "encoded", "USER")
+        userRepository.findByUsername("alice") >> Optional.of(user)
+        userService.loadUserByUsername("alice")
+
+        when:
+        userService.disableUser("alice")
+
+        then:
+        1 * userRepository.save({ it.enabled == false })
+        !userService.loadUserByUsername("alice").enabled
+    }
+
+    def "トランザクション内で無効化した場合はコミットまでキャッシュから削除しないこと"() {
+        given: "キャッシュされた有効なユーザー"
+        userRepository.findByUsername("alice") >> Optional.of(new User("alice", "encoded", "USER"))
+        userService.loadUserByUsername("alice")
+        TransactionSynchronizationManager.initSynchronization()
+
+        when: "トランザクション内で無効化する"
+        userService.disableUser("alice")
+
+        then: "コミット前はキャッシュに残る"
+        userCache.getUserFromCache("alice") != null
+
+        when: "コミットする"
+        TransactionSynchronizationManager.synchronizations*.afterCommit()
+
+        then:
+        userCache.getUserFromCache("alice") == null
+
+        cleanup:
+        TransactionSynchronizationManager.clearSynchronization()
+    }
+
+    def "ユーザーを作成するとキャッシュから同じユーザー名のエントリが削除されること"() {
+        given: "同じユーザー名がキャッシュされている（削除済みユーザーなど）"
+        userCache.putUserInCache(org.springframework.security.core.userdetails.User
+                .withUsername("alice").password("old").roles("USER").build())
+        def registrationDto = new UserRegistrationDto()
+        registrationDto.username = "alice"
+        registrationDto.password = "password123"
+        registrationDto.confirmPassword = "password123"
+        userRepository.findByUsername("alice") >>> [Optional.empty(), Optional.of(new User("alice", "encoded", "USER"))]
+        passwordEncoder.encode("password123") >> "encoded"
+        userRepository.saveAndFlush(_) >> { User saved -> saved }
+
+        when:
+        userService.createUser(registrationDto)
+
+        then:
+        userService.loadUserByUsername("alice").password == "encoded"
+    }
+
+    def "無効なキャッシュでは毎回データベースを参照すること"() {
+        given:
+        def service = new UserService(userRepository, passwordEncoder, UserDetailsCache.disabled(), UsernameIndex.disabled())
+
+        when:
+        2.times { service.loadUserByUsername("alice") }
+
+        then:
+        2 * userRepository.findByUsername("alice") >> Optional.of(new User("alice", "encoded", "USER"))
+    }
+
+    def "インデックスで存在しないと判定されたユーザー名はデータベースを参照せずに例外となること"() {
+        given:
+        def usernameIndex = Mock(UsernameIndex)
+        def service = new UserService(userRepository, passwordEncoder, userCache, usernameIndex)
+
+        when:
+        service.loadUserByUsername("unknown")
+
+        then:
+        1 * usernameIndex.lookup("unknown") >> UsernameIndex.Lookup.ABSENT
+        0 * userRepository.findByUsername(_)
+        thrown(UsernameNotFoundException)
+    }
+
+    def "インデックスで存在する可能性があると判定されたが存在しなかった場合は誤判定として記録されること"() {
+        given:
+        def usernameIndex = Mock(UsernameIndex)
+        def service = new UserService(userRepository, passwordEncoder, userCache, usernameIndex)
+
+        when:
+        def exists = service.isUsernameExists("unknown")
+
+        then:
+        1 * usernameIndex.lookup("unknown") >> UsernameIndex.Lookup.MIGHT_CONTAIN
+        1 * userRepository.findByUsername("unknown") >> Optional.empty()
+        1 * usernameIndex.recordFalsePositive()
+        !exists
+    }
+
+    def "インデックスで判定していない場合は存在しなくても誤判定として記録されないこと"() {
+        given: "無効または構築前のインデックス"
+        def usernameIndex = Mock(UsernameIndex)
+        def service = new UserService(userRepository, passwordEncoder, userCache, usernameIndex)
+
+        when:
+        def exists = service.isUsernameExists("unknown")
+
+        then:
+        1 * usernameIndex.lookup("unknown") >> UsernameIndex.Lookup.NOT_INDEXED
+        1 * userRepository.findByUsername("unknown") >> Optional.empty()
+        0 * usernameIndex.recordFalsePositive()
+        !exists
+    }
+
+    def "既に存在するユーザー名はパスワードをハッシュ化せずに拒否されること"() {
+        given:
+        def usernameIndex = Mock(UsernameIndex)
+        def service = new UserService(userRepository, passwordEncoder, userCache, usernameIndex)
+
+        when:
+        service.createUser(registration("alice"))
+
+        then:
+        1 * usernameIndex.lookup("alice") >> UsernameIndex.Lookup.MIGHT_CONTAIN
+        1 * userRepository.findByUsername("alice") >> Optional.of(new User("alice", "encoded", "USER"))
+        0 * passwordEncoder.encode(_)
+        0 * userRepository.saveAndFlush(_)
+        def e = thrown(IllegalArgumentException)
+        e.message == "ユーザー名 'alice' は既に使用されています"
+    }
+
+    def "インデックスで存在しないと判定されたユーザー名はデータベースを確認せずに作成されること"() {
+        given:
+        def usernameIndex = Mock(UsernameIndex)
+        def service = new UserService(userRepository, passwordEncoder, userCache, usernameIndex)
+
+        when:
+        service.createUser(registration("dave"))
+
+        then:
+        1 * usernameIndex.lookup("dave") >> UsernameIndex.Lookup.ABSENT
+        0 * userRepository.findByUsername(_)
+        1 * passwordEncoder.encode("password123") >> "encoded"
+        1 * userRepository.saveAndFlush(_) >> { User saved -> saved }
+    }
+
+    def "作成したユーザー名はインデックスに追加されること"() {
+        given:
+        def usernameIndex = Mock(UsernameIndex)
+        def service = new UserService(userRepository, passwordEncoder, userCache, usernameIndex)
+        def registrationDto = new UserRegistrationDto()
+        registrationDto.username = "carol"
+        registrationDto.password = "password123"
+        registrationDto.confirmPassword = "password123"
+        usernameIndex.lookup("carol") >> UsernameIndex.Lookup.ABSENT
+        userRepository.saveAndFlush(_) >> { User saved -> saved }
+
+        when:
+        service.createUser(registrationDto)
+
+        then:
+        1 * usernameIndex.add("carol")
+    }
+
+    private static UserRegistrationDto registration(String username) {
+        def registrationDto = new UserRegistrationDto()
+        registrationDto.username = username
+        registrationDto.password = "password123"
+        registrationDto.confirmPassword = "password123"
+        registrationDto
+    }
+}
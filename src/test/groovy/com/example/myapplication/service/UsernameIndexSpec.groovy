@@ -0,0 +1,131 @@
+package com.example.myapplication.service
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType
+import spock.lang.Specification
+
+/**
+ * UsernameIndexのSpockテスト
+ * schema.sqlで作成したインメモリのH2データベースから構築したインデックスを検証する
+ */
+class UsernameIndexSpec extends Specification {
+
+    EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("classpath:schema.sql")
+            .build()
+    def jdbcTemplate = new JdbcTemplate(database)
+    def registry = new SimpleMeterRegistry()
+    def index = new UsernameIndex(jdbcTemplate, true, 1000, 0.01, false, registry)
+
+    def setup() {
+        jdbcTemplate.update("INSERT INTO users (username, password) VALUES ('alice', 'hash'), ('bob', 'hash')")
+    }
+
+    def cleanup() {
+        database.shutdown()
+    }
+
+    def "構築前はすべてのユーザー名が存在する可能性があると判定されること"() {
+        expect:
+        index.mightContain("alice")
+        index.mightContain("unknown")
+    }
+
+    def "構築後は登録済みのユーザー名のみが存在する可能性があると判定されること"() {
+        when:
+        index.rebuild()
+
+        then:
+        index.mightContain("alice")
+        index.mightContain("bob")
+        !index.mightContain("unknown")
+        registry.get("users.username-index.lookups").tag("result", "might-contain").functionCounter().count() == 2
+        registry.get("users.username-index.lookups").tag("result", "absent").functionCounter().count() == 1
+    }
+
+    def "追加したユーザー名は再構築を待たずに存在する可能性があると判定されること"() {
+        given:
+        index.rebuild()
+
+        when:
+        index.add("carol")
+
+        then:
+        index.mightContain("carol")
+    }
+
+    def "再構築でアプリケーションを経由せずに登録されたユーザー名が反映されること"() {
+        given:
+        index.rebuild()
+        jdbcTemplate.update("INSERT INTO users (username, password) VALUES ('dave', 'hash')")
+
+        when:
+        index.rebuild()
+
+        then:
+        index.mightContain("dave")
+    }
+
+    def "推定誤判定率と誤判定の回数がメトリクスとして登録されること"() {
+        given:
+        index.rebuild()
+
+        when:
+        index.recordFalsePositive()
+
+        then:
+        def fpp = registry.get("users.username-index.expected-fpp").gauge().value()
+        fpp > 0 && fpp < 0.01
+        registry.get("users.username-index.false-positives").functionCounter().count() == 1
+    }
+
+    def "構築前のインデックスはフィルターで判定せず、判定の回数に含めないこと"() {
+        when:
+        def lookup = index.lookup("unknown")
+
+        then:
+        lookup == UsernameIndex.Lookup.NOT_INDEXED
+        registry.get("users.username-index.lookups").tag("result", "might-contain").functionCounter().count() == 0
+        registry.get("users.username-index.lookups").tag("result", "absent").functionCounter().count() == 0
+    }
+
+    def "構築後はフィルターの判定結果を返すこと"() {
+        given:
+        index.rebuild()
+
+        expect:
+        index.lookup("alice") == UsernameIndex.Lookup.MIGHT_CONTAIN
+        index.lookup("unknown") == UsernameIndex.Lookup.ABSENT
+    }
+
+    def "無効なインデックスは常に存在する可能性があると判定すること"() {
+        given:
+        def disabled = UsernameIndex.disabled()
+
+        when:
+        disabled.rebuild()
+
+        then:
+        disabled.mightContain("unknown")
+        disabled.lookup("unknown") == UsernameIndex.Lookup.NOT_INDEXED
+    }
+
+    def "データベースを他のインスタンスと共有する場合は他のインスタンスで登録されたユーザー名も存在する可能性があると判定すること"() {
+        given:
+        def shared = new UsernameIndex(jdbcTemplate, true, 1000, 0.01, true, new SimpleMeterRegistry())
+        shared.rebuild()
+
+        when: "他のインスタンスがユーザーを登録する"
+        jdbcTemplate.update("INSERT INTO users (username, password) VALUES ('carol', 'hash')")
+
+        then:
+        shared.mightContain("carol")
+        shared.mightContain("unknown")
+        shared.lookup("carol") == UsernameIndex.Lookup.NOT_INDEXED
+    }
+}